@@ -22,25 +22,35 @@
 
 package net.solarnetwork.central.user.billing.snf.dao.mybatis.test;
 
+import static net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceItem.newItem;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisAccountDao;
 import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisAddressDao;
+import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisSnfInvoiceDao;
+import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisSnfInvoiceItemDao;
 import net.solarnetwork.central.user.billing.snf.domain.Account;
 import net.solarnetwork.central.user.billing.snf.domain.AccountBalance;
+import net.solarnetwork.central.user.billing.snf.domain.AccountInvoicedThrough;
 import net.solarnetwork.central.user.billing.snf.domain.Address;
+import net.solarnetwork.central.user.billing.snf.domain.InvoiceItemType;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
 import net.solarnetwork.central.user.domain.UserLongPK;
 
 /**
  * Test cases for the {@link MyBatisAccountDao} class.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.2
  */
 public class MyBatisAccountDaoTests extends AbstractMyBatisDaoTestSupport {
 
@@ -245,4 +255,121 @@ public class MyBatisAccountDaoTests extends AbstractMyBatisDaoTestSupport {
 		// THEN
 		assertThat("Negative claim clamped to 0", claimed.compareTo(BigDecimal.ZERO), equalTo(0));
 	}
+
+	@Test
+	public void projectCredit_noBalanceRecord() {
+		// GIVEN
+		Account account = dao.get(dao.save(createTestAccount(address)));
+
+		// WHEN
+		BigDecimal projected = dao.projectAccountBalanceCredit(account.getId().getId(), BigDecimal.TEN);
+
+		// THEN
+		assertThat("Project 0 when no claim available", projected.compareTo(BigDecimal.ZERO),
+				equalTo(0));
+	}
+
+	@Test
+	public void projectCredit_partial() {
+		// GIVEN
+		Account account = dao.get(dao.save(createTestAccount(address)));
+		insertAccountBalance(account.getId().getId(), BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.TEN);
+
+		// WHEN
+		BigDecimal projected = dao.projectAccountBalanceCredit(account.getId().getId(), BigDecimal.ONE);
+
+		// THEN
+		assertThat("Project requested amount when less than available credit",
+				projected.compareTo(BigDecimal.ONE), equalTo(0));
+	}
+
+	@Test
+	public void projectCredit_fullImplicitTwice() {
+		// GIVEN
+		Account account = dao.get(dao.save(createTestAccount(address)));
+		insertAccountBalance(account.getId().getId(), BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.TEN);
+
+		// WHEN
+		BigDecimal projected1 = dao.projectAccountBalanceCredit(account.getId().getId(), null);
+		BigDecimal projected2 = dao.projectAccountBalanceCredit(account.getId().getId(), null);
+
+		// THEN
+		assertThat("Project full amount", projected1.compareTo(BigDecimal.TEN), equalTo(0));
+		assertThat("Projection does not claim credit", projected2.compareTo(BigDecimal.TEN),
+				equalTo(0));
+		AccountBalance balance = dao.getBalanceForUser(account.getUserId());
+		assertThat("Balance available credit unchanged",
+				balance.getAvailableCredit().compareTo(BigDecimal.TEN), equalTo(0));
+	}
+
+	@Test
+	public void projectCredit_negative() {
+		// GIVEN
+		Account account = dao.get(dao.save(createTestAccount(address)));
+		insertAccountBalance(account.getId().getId(), BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.TEN);
+
+		// WHEN
+		BigDecimal projected = dao.projectAccountBalanceCredit(account.getId().getId(),
+				new BigDecimal("-1.11"));
+
+		// THEN
+		assertThat("Negative projection clamped to 0", projected.compareTo(BigDecimal.ZERO),
+				equalTo(0));
+	}
+
+	private SnfInvoice insertInvoice(MyBatisSnfInvoiceDao invoiceDao,
+			MyBatisSnfInvoiceItemDao itemDao, Account account, LocalDate startDate, String itemKey) {
+		SnfInvoice invoice = new SnfInvoice(account.getId().getId(), account.getUserId(),
+				Instant.ofEpochMilli(System.currentTimeMillis()));
+		invoice.setAddress(address);
+		invoice.setCurrencyCode("NZD");
+		invoice.setStartDate(startDate);
+		invoice.setEndDate(startDate.plusMonths(1));
+		invoice = invoiceDao.get(invoiceDao.save(invoice));
+		itemDao.save(newItem(invoice, InvoiceItemType.Fixed, itemKey, BigDecimal.ONE,
+				new BigDecimal("1.23")));
+		return invoice;
+	}
+
+	@Test
+	public void findInvoicedThrough() {
+		// GIVEN
+		MyBatisSnfInvoiceDao invoiceDao = new MyBatisSnfInvoiceDao();
+		invoiceDao.setSqlSessionTemplate(getSqlSessionTemplate());
+		MyBatisSnfInvoiceItemDao itemDao = new MyBatisSnfInvoiceItemDao();
+		itemDao.setSqlSessionTemplate(getSqlSessionTemplate());
+
+		Account account1 = dao.get(dao.save(createTestAccount(address)));
+		Account account2 = dao.get(dao.save(createTestAccount(address)));
+		Account account3 = dao.get(dao.save(createTestAccount(address)));
+
+		insertInvoice(invoiceDao, itemDao, account1, LocalDate.of(2019, 11, 1), "test.key");
+		insertInvoice(invoiceDao, itemDao, account1, LocalDate.of(2019, 12, 1), "test.key");
+
+		// latest invoice is credit-only, so should be ignored
+		insertInvoice(invoiceDao, itemDao, account1, LocalDate.of(2020, 1, 1),
+				"account-credit-add");
+
+		// WHEN
+		List<AccountInvoicedThrough> results = dao.findInvoicedThroughForUsers(
+				new Long[] { account1.getUserId(), account2.getUserId() });
+
+		// THEN
+		assertThat("Result for each requested account", results, hasSize(2));
+		AccountInvoicedThrough r1 = results.stream()
+				.filter(r -> r.getAccount().getId().equals(account1.getId())).findFirst().get();
+		assertThat("Account 1 populated", r1.getAccount().isSameAs(account1), equalTo(true));
+		assertThat("Account 1 invoiced through latest non-credit-only invoice", r1.getEndDate(),
+				equalTo(LocalDate.of(2020, 1, 1)));
+		assertThat("Account 1 invoice time zone", r1.getTimeZoneId(),
+				equalTo(address.getTimeZoneId()));
+
+		AccountInvoicedThrough r2 = results.stream()
+				.filter(r -> r.getAccount().getId().equals(account2.getId())).findFirst().get();
+		assertThat("Account 2 has no invoices", r2.getEndDate(), nullValue());
+		assertThat("Account 2 no invoiced through date", r2.getInvoicedThroughDate(), nullValue());
+
+		assertThat("Account 3 not requested", results.stream()
+				.anyMatch(r -> r.getAccount().getId().equals(account3.getId())), equalTo(false));
+	}
 }
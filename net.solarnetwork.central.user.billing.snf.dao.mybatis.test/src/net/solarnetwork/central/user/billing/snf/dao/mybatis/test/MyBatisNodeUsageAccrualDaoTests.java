@@ -0,0 +1,341 @@
+/* ==================================================================
+ * MyBatisNodeUsageAccrualDaoTests.java - 18/10/2026 3:12:41 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.dao.mybatis.test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import java.sql.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisAccountDao;
+import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisAddressDao;
+import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisNodeUsageAccrualDao;
+import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisNodeUsageDao;
+import net.solarnetwork.central.user.billing.snf.domain.Account;
+import net.solarnetwork.central.user.billing.snf.domain.Address;
+import net.solarnetwork.central.user.billing.snf.domain.NodeUsage;
+import net.solarnetwork.central.user.billing.snf.domain.UsageTiers;
+import net.solarnetwork.central.user.domain.UserLongPK;
+
+/**
+ * Test cases for the {@link MyBatisNodeUsageAccrualDao} class.
+ * 
+ * @author matt
+ * @version 1.1
+ */
+public class MyBatisNodeUsageAccrualDaoTests extends AbstractMyBatisDaoTestSupport {
+
+	private static final String TEST_TZ = "UTC";
+	private static final ZoneId TEST_ZONE = ZoneId.of(TEST_TZ);
+	private static final String TABLE = "solarbill.bill_account_daily_node_usage";
+	private static final LocalDate MONTH = LocalDate.of(2020, 7, 1);
+	private static final String SOURCE_ID = "S1";
+
+	private MyBatisAddressDao addressDao;
+	private MyBatisAccountDao accountDao;
+	private MyBatisNodeUsageDao usageDao;
+	private MyBatisNodeUsageAccrualDao dao;
+	private Long locId;
+
+	@Before
+	public void setup() {
+		addressDao = new MyBatisAddressDao();
+		addressDao.setSqlSessionTemplate(getSqlSessionTemplate());
+
+		accountDao = new MyBatisAccountDao();
+		accountDao.setSqlSessionTemplate(getSqlSessionTemplate());
+
+		usageDao = new MyBatisNodeUsageDao();
+		usageDao.setSqlSessionTemplate(getSqlSessionTemplate());
+
+		dao = new MyBatisNodeUsageAccrualDao();
+		dao.setSqlSessionTemplate(getSqlSessionTemplate());
+
+		locId = UUID.randomUUID().getMostSignificantBits();
+		setupTestLocation(locId, TEST_TZ);
+	}
+
+	private Account createAccount(Long userId, String timeZoneId) {
+		setupTestUser(userId);
+		Address addr = createTestAddress();
+		addr.setTimeZoneId(timeZoneId);
+		Address address = addressDao.get(addressDao.save(addr));
+		Account account = new Account(null, userId, Instant.now());
+		account.setAddress(address);
+		account.setCurrencyCode("NZD");
+		account.setLocale("en_NZ");
+		UserLongPK pk = accountDao.save(account);
+		return accountDao.get(pk);
+	}
+
+	private Long createTestNode(Long userId) {
+		Long nodeId = UUID.randomUUID().getMostSignificantBits();
+		setupTestNode(nodeId, locId);
+		setupTestUserNode(userId, nodeId);
+		return nodeId;
+	}
+
+	private void addDailyUsage(Long nodeId, int numDays) {
+		for ( int dayOffset = 0; dayOffset < numDays; dayOffset++ ) {
+			Instant day = MONTH.plusDays(dayOffset).atStartOfDay(TEST_ZONE).toInstant();
+			addAuditAccumulatingDatumDaily(nodeId, SOURCE_ID, day, 1_000_000, 2_000_000, 3_000_000,
+					4_000_000);
+			addAuditDatumMonthly(nodeId, SOURCE_ID, day, 100_000, 200_000, 300_000, (short) 400_000,
+					(short) 500_000, true);
+		}
+	}
+
+	private static Instant endOfDay(LocalDate day) {
+		// the end of the day in the time zone furthest behind UTC, so the day has ended everywhere
+		return day.plusDays(1).atStartOfDay(ZoneOffset.ofHours(-12)).toInstant();
+	}
+
+	private static void assertSameCounts(String msg, NodeUsage usage, NodeUsage expected) {
+		assertThat(msg + " node ID", usage.getId(), equalTo(expected.getId()));
+		assertThat(msg + " properties in", usage.getDatumPropertiesIn(),
+				equalTo(expected.getDatumPropertiesIn()));
+		assertThat(msg + " datum out", usage.getDatumOut(), equalTo(expected.getDatumOut()));
+		assertThat(msg + " datum stored", usage.getDatumDaysStored(),
+				equalTo(expected.getDatumDaysStored()));
+	}
+
+	@Test
+	public void accrue_none() {
+		// WHEN
+		int count = dao.accrueUsage(MONTH, endOfDay(MONTH));
+
+		// THEN
+		assertThat("No usage accrued", count, equalTo(0));
+		assertThat("Latest accrual date", dao.findLatestAccrualDate(), nullValue());
+	}
+
+	@Test
+	public void accrue_oneDay() {
+		// GIVEN
+		final Long userId = UUID.randomUUID().getMostSignificantBits();
+		final Account account = createAccount(userId, "Pacific/Auckland");
+		final Long nodeId = createTestNode(userId);
+		addDailyUsage(nodeId, 3);
+		final LocalDate day = MONTH.plusDays(1);
+
+		// WHEN
+		int count = dao.accrueUsage(day, endOfDay(day));
+
+		// THEN
+		assertThat("One node usage row accrued", count, equalTo(1));
+		List<NodeUsage> expected = usageDao.findNodeUsageForAccount(userId, day, day.plusDays(1));
+		List<Map<String, Object>> rows = rows(TABLE, "acct_id, usage_date, node_id");
+		assertThat("One accrued row", rows, hasSize(1));
+		Map<String, Object> row = rows.get(0);
+		assertThat("Accrued account", row.get("acct_id"), equalTo(account.getId().getId()));
+		assertThat("Accrued node", row.get("node_id"), equalTo(nodeId));
+		assertThat("Accrued day", row.get("usage_date"), equalTo(Date.valueOf(day)));
+		assertThat("Accrued properties in", ((Number) row.get("prop_in")).longValue(),
+				equalTo(expected.get(0).getDatumPropertiesIn().longValue()));
+		assertThat("Accrued datum out", ((Number) row.get("datum_out")).longValue(),
+				equalTo(expected.get(0).getDatumOut().longValue()));
+		assertThat("Accrued datum stored", ((Number) row.get("datum_stored")).longValue(),
+				equalTo(expected.get(0).getDatumDaysStored().longValue()));
+		assertThat("Latest accrual date", dao.findLatestAccrualDate(), equalTo(day));
+	}
+
+	@Test
+	public void accrue_replaceExisting() {
+		// GIVEN
+		final Long userId = UUID.randomUUID().getMostSignificantBits();
+		createAccount(userId, "Pacific/Auckland");
+		final Long nodeId = createTestNode(userId);
+		addDailyUsage(nodeId, 1);
+		dao.accrueUsage(MONTH, endOfDay(MONTH));
+		jdbcTemplate
+				.update("update " + TABLE + " set prop_in = 0, datum_out = 0, datum_stored = 0");
+
+		// WHEN
+		int count = dao.accrueUsage(MONTH, endOfDay(MONTH));
+
+		// THEN
+		assertThat("One node usage row re-accrued", count, equalTo(1));
+		List<Map<String, Object>> rows = rows(TABLE, "acct_id, usage_date, node_id");
+		assertThat("Still one accrued row", rows, hasSize(1));
+		List<NodeUsage> expected = usageDao.findNodeUsageForAccount(userId, MONTH,
+				MONTH.plusDays(1));
+		assertThat("Accrued properties in replaced",
+				((Number) rows.get(0).get("prop_in")).longValue(),
+				equalTo(expected.get(0).getDatumPropertiesIn().longValue()));
+	}
+
+	@Test
+	public void accrue_accountZoneBehindUtc() {
+		// GIVEN
+		final Long userId1 = UUID.randomUUID().getMostSignificantBits();
+		final Account account1 = createAccount(userId1, "Pacific/Auckland");
+		addDailyUsage(createTestNode(userId1), 3);
+
+		final Long userId2 = UUID.randomUUID().getMostSignificantBits();
+		createAccount(userId2, "America/Los_Angeles");
+		addDailyUsage(createTestNode(userId2), 3);
+
+		// 2020-07-03 14:00 in Auckland, but still 2020-07-02 19:00 in Los Angeles
+		final LocalDate day = MONTH.plusDays(1);
+		final Instant asOf = Instant.parse("2020-07-03T02:00:00Z");
+
+		// WHEN
+		int count = dao.accrueUsage(day, asOf);
+
+		// THEN
+		assertThat("Only account whose day has ended accrued", count, equalTo(1));
+		List<Map<String, Object>> rows = rows(TABLE, "acct_id, usage_date, node_id");
+		assertThat("One accrued row", rows, hasSize(1));
+		assertThat("Accrued account ahead of UTC", rows.get(0).get("acct_id"),
+				equalTo(account1.getId().getId()));
+
+		// WHEN
+		count = dao.accrueUsage(day, Instant.parse("2020-07-03T08:00:00Z"));
+
+		// THEN
+		assertThat("Both accounts accrued once day ended in Los Angeles", count, equalTo(2));
+		assertThat("Two accrued rows", rows(TABLE, "acct_id, usage_date, node_id"), hasSize(2));
+	}
+
+	@Test
+	public void monthToDate_accruedPlusLive() {
+		// GIVEN
+		final Long userId = UUID.randomUUID().getMostSignificantBits();
+		createAccount(userId, "Pacific/Auckland");
+		final Long nodeId1 = createTestNode(userId);
+		final Long nodeId2 = createTestNode(userId);
+		addDailyUsage(nodeId1, 10);
+		addDailyUsage(nodeId2, 10);
+
+		// accrue the first 5 days; remaining days come from the live usage
+		for ( int i = 0; i < 5; i++ ) {
+			LocalDate day = MONTH.plusDays(i);
+			dao.accrueUsage(day, endOfDay(day));
+		}
+
+		// WHEN
+		List<NodeUsage> expected = usageDao.findNodeUsageForAccount(userId, MONTH,
+				MONTH.plusMonths(1));
+		List<NodeUsage> results = new ArrayList<>(2);
+		dao.findMonthToDateNodeUsage(userId, MONTH.plusDays(12), results::add);
+
+		// THEN
+		assertThat("One result per node", results, hasSize(2));
+		for ( int i = 0; i < results.size(); i++ ) {
+			assertSameCounts("Month-to-date usage " + i, results.get(i), expected.get(i));
+		}
+	}
+
+	@Test
+	public void monthToDate_liveOnly() {
+		// GIVEN
+		final Long userId = UUID.randomUUID().getMostSignificantBits();
+		createAccount(userId, "Pacific/Auckland");
+		final Long nodeId = createTestNode(userId);
+		addDailyUsage(nodeId, 10);
+
+		// WHEN
+		List<NodeUsage> expected = usageDao.findNodeUsageForAccount(userId, MONTH,
+				MONTH.plusMonths(1));
+		List<NodeUsage> results = new ArrayList<>(1);
+		dao.findMonthToDateNodeUsage(userId, MONTH, results::add);
+
+		// THEN
+		assertThat("One result per node", results, hasSize(1));
+		assertSameCounts("Live usage", results.get(0), expected.get(0));
+	}
+
+	@Test
+	public void monthToDate_costsMatchUsageForAccount() {
+		// GIVEN
+		final Long userId = UUID.randomUUID().getMostSignificantBits();
+		createAccount(userId, "Pacific/Auckland");
+		addDailyUsage(createTestNode(userId), 10);
+		addDailyUsage(createTestNode(userId), 10);
+		for ( int i = 0; i < 5; i++ ) {
+			LocalDate day = MONTH.plusDays(i);
+			dao.accrueUsage(day, endOfDay(day));
+		}
+
+		// WHEN
+		// price the month-to-date counts with the effective tiers, as dry run invoices do
+		List<NodeUsage> nodeUsages = new ArrayList<>(2);
+		dao.findMonthToDateNodeUsage(userId, MONTH, nodeUsages::add);
+		NodeUsage usage = new NodeUsage(null, Instant.now());
+		for ( NodeUsage nodeUsage : nodeUsages ) {
+			usage.addCounts(nodeUsage);
+		}
+		UsageTiers tiers = usageDao.effectiveUsageTiers(MONTH);
+		tiers.applyTiers(usage);
+
+		// THEN
+		List<NodeUsage> expected = usageDao.findUsageForAccount(userId, MONTH,
+				MONTH.plusMonths(1));
+		assertThat("One account usage", expected, hasSize(1));
+		NodeUsage exp = expected.get(0);
+		assertThat("Properties in cost",
+				usage.getDatumPropertiesInCost().compareTo(exp.getDatumPropertiesInCost()),
+				equalTo(0));
+		assertThat("Datum out cost", usage.getDatumOutCost().compareTo(exp.getDatumOutCost()),
+				equalTo(0));
+		assertThat("Datum stored cost",
+				usage.getDatumDaysStoredCost().compareTo(exp.getDatumDaysStoredCost()),
+				equalTo(0));
+		assertThat("Total cost", usage.getTotalCost().compareTo(exp.getTotalCost()), equalTo(0));
+	}
+
+	@Test
+	public void deleteBefore() {
+		// GIVEN
+		final Long userId = UUID.randomUUID().getMostSignificantBits();
+		createAccount(userId, "Pacific/Auckland");
+		final Long nodeId = createTestNode(userId);
+		addDailyUsage(nodeId, 3);
+		for ( int i = 0; i < 3; i++ ) {
+			LocalDate day = MONTH.plusDays(i);
+			dao.accrueUsage(day, endOfDay(day));
+		}
+
+		// WHEN
+		int count = dao.deleteAccruedUsageBefore(MONTH.plusDays(2));
+
+		// THEN
+		assertThat("Rows before day deleted", count, equalTo(2));
+		List<Map<String, Object>> rows = rows(TABLE, "acct_id, usage_date, node_id");
+		assertThat("One accrued row remains", rows, hasSize(1));
+		assertThat("Remaining row day", rows.get(0).get("usage_date"),
+				equalTo(Date.valueOf(MONTH.plusDays(2))));
+		assertThat("Latest accrual date", dao.findLatestAccrualDate(), equalTo(MONTH.plusDays(2)));
+	}
+
+}
@@ -37,6 +37,7 @@ import java.math.BigInteger;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -53,7 +54,7 @@ import net.solarnetwork.central.user.billing.snf.domain.UsageTiers;
  * Test cases for the {@link MyBatisNodeUsageDao}.
  * 
  * @author matt
- * @version 2.0
+ * @version 2.3
  */
 public class MyBatisNodeUsageDaoTests extends AbstractMyBatisDaoTestSupport {
 
@@ -448,4 +449,89 @@ public class MyBatisNodeUsageDaoTests extends AbstractMyBatisDaoTestSupport {
 		// @formatter:on
 	}
 
+	@Test
+	public void nodeUsageForAccount_streamed() {
+		// GIVEN
+		Long nodeId2 = createTestNode(locId, userId);
+		final LocalDate month = LocalDate.of(2020, 7, 1);
+		final String sourceId = "S1";
+
+		// add 10 days worth of audit data
+		final int numDays = 10;
+		for ( int dayOffset = 0; dayOffset < numDays; dayOffset++ ) {
+			Instant day = month.plusDays(dayOffset).atStartOfDay(TEST_ZONE).toInstant();
+			addAuditAccumulatingDatumDaily(nodeId, sourceId, day, 1_000_000, 2_000_000, 3_000_000,
+					4_000_000);
+			addAuditAccumulatingDatumDaily(nodeId2, sourceId, day, 500_000, 1_500_000, 2_500_000,
+					3_500_000);
+
+			addAuditDatumMonthly(nodeId, sourceId, day, 100_000, 200_000, 300_000, (short) 400_000,
+					(short) 500_000, true);
+			addAuditDatumMonthly(nodeId2, sourceId, day, 50_000, 150_000, 250_000, (short) 350_000,
+					(short) 450_000, true);
+		}
+
+		// WHEN
+		List<NodeUsage> expected = dao.findNodeUsageForAccount(userId, month, month.plusMonths(1));
+		List<NodeUsage> results = new ArrayList<>(2);
+		dao.findNodeUsageForAccount(userId, month, month.plusMonths(1), results::add);
+
+		// THEN
+		assertThat("One result per node", results, hasSize(2));
+		for ( int i = 0; i < results.size(); i++ ) {
+			NodeUsage usage = results.get(i);
+			assertThat("Streamed node ID " + i, usage.getId(), equalTo(expected.get(i).getId()));
+			assertThat("Streamed usage same as list usage " + i, usage.isSameAs(expected.get(i)),
+					equalTo(true));
+		}
+	}
+
+	@Test
+	public void usageAndNodeUsageForAccount() {
+		// GIVEN
+		Long nodeId2 = createTestNode(locId, userId);
+		final LocalDate month = LocalDate.of(2020, 7, 1);
+		final String sourceId = "S1";
+
+		// add 10 days worth of audit data
+		final int numDays = 10;
+		for ( int dayOffset = 0; dayOffset < numDays; dayOffset++ ) {
+			Instant day = month.plusDays(dayOffset).atStartOfDay(TEST_ZONE).toInstant();
+			addAuditAccumulatingDatumDaily(nodeId, sourceId, day, 1_000_000, 2_000_000, 3_000_000,
+					4_000_000);
+			addAuditAccumulatingDatumDaily(nodeId2, sourceId, day, 500_000, 1_500_000, 2_500_000,
+					3_500_000);
+
+			addAuditDatumMonthly(nodeId, sourceId, day, 100_000, 200_000, 300_000, (short) 400_000,
+					(short) 500_000, true);
+			addAuditDatumMonthly(nodeId2, sourceId, day, 50_000, 150_000, 250_000, (short) 350_000,
+					(short) 450_000, true);
+		}
+
+		// WHEN
+		List<NodeUsage> expectedUsage = dao.findUsageForAccount(userId, month, month.plusMonths(1));
+		List<NodeUsage> expectedNodeUsage = dao.findNodeUsageForAccount(userId, month,
+				month.plusMonths(1));
+		List<NodeUsage> usage = new ArrayList<>(1);
+		List<NodeUsage> nodeUsage = new ArrayList<>(2);
+		dao.findUsageAndNodeUsageForAccount(userId, month, month.plusMonths(1), usage::add,
+				nodeUsage::add);
+
+		// THEN
+		assertThat("One account-level result", usage, hasSize(1));
+		assertThat("No node ID for account-level usage", usage.get(0).getId(), nullValue());
+		assertThat("Account usage same as individual query", usage.get(0).isSameAs(expectedUsage.get(0)),
+				equalTo(true));
+		assertThat("Account usage cost same as individual query",
+				usage.get(0).getTotalCost().compareTo(expectedUsage.get(0).getTotalCost()), equalTo(0));
+
+		assertThat("One result per node", nodeUsage, hasSize(2));
+		for ( int i = 0; i < nodeUsage.size(); i++ ) {
+			NodeUsage u = nodeUsage.get(i);
+			assertThat("Node ID " + i, u.getId(), equalTo(expectedNodeUsage.get(i).getId()));
+			assertThat("Node usage same as individual query " + i,
+					u.isSameAs(expectedNodeUsage.get(i)), equalTo(true));
+		}
+	}
+
 }
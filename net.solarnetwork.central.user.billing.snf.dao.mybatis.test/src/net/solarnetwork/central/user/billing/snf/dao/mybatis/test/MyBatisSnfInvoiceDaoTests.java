@@ -32,10 +32,13 @@ import static java.util.stream.Collectors.toList;
 import static java.util.stream.StreamSupport.stream;
 import static net.solarnetwork.central.user.billing.snf.domain.InvoiceItemType.Credit;
 import static net.solarnetwork.central.user.billing.snf.domain.InvoiceItemType.Fixed;
+import static net.solarnetwork.central.user.billing.snf.domain.InvoiceItemType.Tax;
 import static net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceItem.newItem;
+import static net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceNodeUsage.nodeUsage;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -43,6 +46,7 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -55,13 +59,17 @@ import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisAccountDao;
 import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisAddressDao;
 import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisSnfInvoiceDao;
 import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisSnfInvoiceItemDao;
+import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisSnfInvoiceNodeUsageDao;
 import net.solarnetwork.central.user.billing.snf.domain.Account;
 import net.solarnetwork.central.user.billing.snf.domain.AccountBalance;
 import net.solarnetwork.central.user.billing.snf.domain.Address;
 import net.solarnetwork.central.user.billing.snf.domain.PaymentType;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceFilter;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceFilter.TotalCountMode;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceItem;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceNodeUsage;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceRelatedPK;
 import net.solarnetwork.central.user.domain.UserLongPK;
 import net.solarnetwork.dao.FilterResults;
 
@@ -69,7 +77,7 @@ import net.solarnetwork.dao.FilterResults;
  * Test cases for the {@link MyBatisSnfInvoiceDao} class.
  * 
  * @author matt
- * @version 1.1
+ * @version 1.7
  */
 public class MyBatisSnfInvoiceDaoTests extends AbstractMyBatisDaoTestSupport {
 
@@ -78,6 +86,7 @@ public class MyBatisSnfInvoiceDaoTests extends AbstractMyBatisDaoTestSupport {
 	private MyBatisAddressDao addressDao;
 	private MyBatisAccountDao accountDao;
 	private MyBatisSnfInvoiceItemDao itemDao;
+	private MyBatisSnfInvoiceNodeUsageDao usageDao;
 	private MyBatisSnfInvoiceDao dao;
 
 	private SnfInvoice last;
@@ -93,6 +102,9 @@ public class MyBatisSnfInvoiceDaoTests extends AbstractMyBatisDaoTestSupport {
 		itemDao = new MyBatisSnfInvoiceItemDao();
 		itemDao.setSqlSessionTemplate(getSqlSessionTemplate());
 
+		usageDao = new MyBatisSnfInvoiceNodeUsageDao();
+		usageDao.setSqlSessionTemplate(getSqlSessionTemplate());
+
 		dao = new MyBatisSnfInvoiceDao();
 		dao.setSqlSessionTemplate(getSqlSessionTemplate());
 		last = null;
@@ -362,6 +374,174 @@ public class MyBatisSnfInvoiceDaoTests extends AbstractMyBatisDaoTestSupport {
 		}
 	}
 
+	@Test
+	public void filterForAccount_paged_withItems() {
+		// GIVEN
+		insert();
+		Account account = accountDao.get(new UserLongPK(last.getUserId(), last.getAccountId()));
+		List<SnfInvoice> others = createMonthlyInvoices(account, last.getAddress(), "NZD",
+				last.getStartDate().plusMonths(1), 3);
+
+		// WHEN
+		SnfInvoiceFilter filter = SnfInvoiceFilter.forAccount(last.getAccountId());
+		final FilterResults<SnfInvoice, UserLongPK> result = dao.findFiltered(filter, null, 0, 2);
+
+		// THEN
+		assertThat("Returned result page count", result.getReturnedResultCount(), equalTo(2));
+		assertThat("Total results provided", result.getTotalResults(), equalTo(4L));
+		List<SnfInvoice> invoices = stream(result.spliterator(), false).collect(toList());
+		for ( int i = 0; i < invoices.size(); i++ ) {
+			SnfInvoice invoice = invoices.get(i);
+			SnfInvoice expected = others.get(others.size() - 1 - i);
+			assertThat(format("Invoice %d returned in order", i), invoice, equalTo(expected));
+			assertThat(format("Invoice %d items returned", i), invoice.getItems(), hasSize(3));
+			Map<UUID, SnfInvoiceItem> itemMap = invoice.itemMap();
+			for ( SnfInvoiceItem item : expected.getItems() ) {
+				SnfInvoiceItem other = itemMap.remove(item.getId());
+				assertThat(format("Invoice %d item same as saved", i), other.isSameAs(item),
+						equalTo(true));
+			}
+			assertThat(format("Invoice %d only own items returned", i), itemMap.keySet(),
+					hasSize(0));
+		}
+	}
+
+	@Test
+	public void filterForAccount_withUsages() {
+		// GIVEN
+		insert();
+		Account account = accountDao.get(new UserLongPK(last.getUserId(), last.getAccountId()));
+		List<SnfInvoice> invoices = createMonthlyInvoices(account, last.getAddress(), "NZD",
+				last.getStartDate().plusMonths(1), 3);
+		Map<SnfInvoiceRelatedPK, SnfInvoiceNodeUsage> usages = new HashMap<>(6);
+		for ( SnfInvoice invoice : invoices ) {
+			for ( long nodeId = 1; nodeId <= 2; nodeId++ ) {
+				SnfInvoiceNodeUsage usage = nodeUsage(invoice.getId().getId(), nodeId,
+						invoice.getCreated(), nodeId * 2, nodeId * 3, nodeId * 4);
+				usageDao.save(usage);
+				usages.put(usage.getId(), usage);
+			}
+		}
+
+		// WHEN
+		SnfInvoiceFilter filter = SnfInvoiceFilter.forAccount(last.getAccountId());
+		final FilterResults<SnfInvoice, UserLongPK> result = dao.findFiltered(filter, null, null,
+				null);
+
+		// THEN
+		assertThat("Returned result count", result.getReturnedResultCount(), equalTo(4));
+		for ( SnfInvoice invoice : result ) {
+			if ( invoice.getId().equals(last.getId()) ) {
+				assertThat("Invoice without usage has no usages", invoice.getUsages(), nullValue());
+				continue;
+			}
+			assertThat(format("Invoice %s usages returned", invoice.getId()), invoice.getUsages(),
+					hasSize(2));
+			for ( SnfInvoiceNodeUsage usage : invoice.getUsages() ) {
+				SnfInvoiceNodeUsage expected = usages.remove(usage.getId());
+				assertThat(format("Invoice %s usage %s expected", invoice.getId(), usage.getId()),
+						expected, notNullValue());
+				assertThat(format("Invoice %s usage %s same as saved", invoice.getId(),
+						usage.getId()), usage.isSameAs(expected), equalTo(true));
+			}
+		}
+		assertThat("All saved usages returned", usages.keySet(), hasSize(0));
+	}
+
+	@Test
+	public void filterForAccount_continuationToken() {
+		// GIVEN
+		insert();
+		Account account = accountDao.get(new UserLongPK(last.getUserId(), last.getAccountId()));
+		List<SnfInvoice> others = createMonthlyInvoices(account, last.getAddress(), "NZD",
+				last.getStartDate().plusMonths(1), 4);
+
+		final List<SnfInvoice> expectedInvoices = Stream
+				.concat(singleton(last).stream(), others.stream())
+				.sorted(reverseOrder(SnfInvoice.SORT_BY_DATE)).collect(toList());
+
+		// WHEN
+		SnfInvoiceFilter filter = SnfInvoiceFilter.forAccount(last.getAccountId());
+		List<SnfInvoice> found = new ArrayList<>();
+		for ( int page = 0; page < 3; page++ ) {
+			final FilterResults<SnfInvoice, UserLongPK> result = dao.findFiltered(filter,
+					SnfInvoiceDao.SORT_BY_INVOICE_DATE_DESCENDING, null, 2);
+
+			// THEN
+			final int expectedCount = (page < 2 ? 2 : 1);
+			assertThat(format("Page %d result count", page), result.getReturnedResultCount(),
+					equalTo(expectedCount));
+			assertThat(format("Page %d starting offset", page), result.getStartingOffset(),
+					equalTo(0));
+			if ( page == 0 ) {
+				assertThat("Total results provided for first page", result.getTotalResults(),
+						equalTo(5L));
+			} else {
+				assertThat(format("Total results not computed for page %d", page),
+						result.getTotalResults(), nullValue());
+			}
+			List<SnfInvoice> invoices = stream(result.spliterator(), false).collect(toList());
+			found.addAll(invoices);
+			filter.setContinuationToken(
+					SnfInvoiceFilter.continuationToken(invoices.get(invoices.size() - 1)));
+		}
+		assertThat("All invoices returned in order", found, equalTo(expectedInvoices));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void filterForAccount_continuationToken_customSort() {
+		// GIVEN
+		SnfInvoiceFilter filter = SnfInvoiceFilter.forAccount(1L);
+		filter.setSeekDate(LocalDate.of(2020, 1, 1));
+		filter.setSeekId(1L);
+
+		// WHEN
+		dao.findFiltered(filter, SnfInvoiceDao.SORT_BY_INVOICE_DATE_DESCENDING.subList(0, 1), null,
+				2);
+	}
+
+	@Test
+	public void filterForAccount_noTotalCount() {
+		// GIVEN
+		insert();
+		Account account = accountDao.get(new UserLongPK(last.getUserId(), last.getAccountId()));
+		createMonthlyInvoices(account, last.getAddress(), "NZD", last.getStartDate().plusMonths(1),
+				3);
+
+		// WHEN
+		SnfInvoiceFilter filter = SnfInvoiceFilter.forAccount(last.getAccountId());
+		filter.setTotalCountMode(TotalCountMode.NONE);
+		final FilterResults<SnfInvoice, UserLongPK> result = dao.findFiltered(filter, null, 0, 2);
+
+		// THEN
+		assertThat("Returned result page count", result.getReturnedResultCount(), equalTo(2));
+		assertThat("Total results not computed", result.getTotalResults(), nullValue());
+	}
+
+	@Test
+	public void filterForAccount_estimatedTotalCount() {
+		// GIVEN
+		insert();
+		Account account = accountDao.get(new UserLongPK(last.getUserId(), last.getAccountId()));
+		createMonthlyInvoices(account, last.getAddress(), "NZD", last.getStartDate().plusMonths(1),
+				5);
+
+		// WHEN
+		SnfInvoiceFilter filter = SnfInvoiceFilter.forAccount(last.getAccountId());
+		filter.setTotalCountMode(TotalCountMode.ESTIMATE);
+		filter.setEstimatedCountLimit(3);
+		final FilterResults<SnfInvoice, UserLongPK> page1 = dao.findFiltered(filter, null, 0, 2);
+		final FilterResults<SnfInvoice, UserLongPK> page3 = dao.findFiltered(filter, null, 4, 2);
+		filter.setEstimatedCountLimit(100);
+		final FilterResults<SnfInvoice, UserLongPK> all = dao.findFiltered(filter, null, 0, 2);
+
+		// THEN
+		assertThat("Estimated total limited", page1.getTotalResults(), equalTo(3L));
+		assertThat("Estimated total at least results up to page", page3.getTotalResults(),
+				equalTo(6L));
+		assertThat("Estimated total exact under limit", all.getTotalResults(), equalTo(6L));
+	}
+
 	@Test
 	public void findLatestAccount() {
 		// GIVEN
@@ -500,6 +680,80 @@ public class MyBatisSnfInvoiceDaoTests extends AbstractMyBatisDaoTestSupport {
 		return last;
 	}
 
+	@Test
+	public void getByPK_totals() {
+		// GIVEN
+		final SnfInvoice invoice = insertWithItems();
+		final BigDecimal total = new BigDecimal("7.02");
+		final BigDecimal paymentAmount = new BigDecimal("2.00");
+		final UUID paymentId = insertPayment(last.getAccountId(), PaymentType.Payment, paymentAmount,
+				invoice.getCurrencyCode());
+		insertInvoicePayment(last.getAccountId(), paymentId, invoice.getId().getId(), paymentAmount);
+
+		// WHEN
+		SnfInvoice entity = dao.get(invoice.getId());
+
+		// THEN
+		assertThat("Persisted total amount", invoice.getTotalAmount().compareTo(total),
+				equalTo(0));
+		assertThat("Persisted paid amount before payment", invoice.getPaidAmount().signum(),
+				equalTo(0));
+		assertThat("Persisted total amount after payment", entity.getTotalAmount().compareTo(total),
+				equalTo(0));
+		assertThat("Persisted paid amount after payment",
+				entity.getPaidAmount().compareTo(paymentAmount), equalTo(0));
+		assertThat("Not fully paid", entity.isPaid(), equalTo(false));
+	}
+
+	@Test
+	public void findSummaries() {
+		// GIVEN
+		final SnfInvoice invoice = insertWithItems();
+
+		// WHEN
+		SnfInvoiceFilter filter = SnfInvoiceFilter.forAccount(last.getAccountId());
+		final FilterResults<SnfInvoice, UserLongPK> result = dao.findFilteredSummaries(filter,
+				SnfInvoiceDao.SORT_BY_INVOICE_DATE_DESCENDING, 0, 1);
+
+		// THEN
+		assertThat("Returned result page count", result.getReturnedResultCount(), equalTo(1));
+		assertThat("Total results provided", result.getTotalResults(), equalTo(1L));
+		SnfInvoice summary = result.iterator().next();
+		assertThat("Summary for invoice", summary, equalTo(invoice));
+		assertThat("Summary start date", summary.getStartDate(), equalTo(invoice.getStartDate()));
+		assertThat("Summary currency", summary.getCurrencyCode(),
+				equalTo(invoice.getCurrencyCode()));
+		assertThat("Summary has no items", summary.getItems(), nullValue());
+		assertThat("Summary has no usages", summary.getUsages(), nullValue());
+		assertThat("Summary total amount", summary.getTotalAmount(),
+				equalTo(invoice.getTotalAmount()));
+		assertThat("Summary paid amount", summary.getPaidAmount().signum(), equalTo(0));
+		assertThat("Summary tax amount", summary.getTaxAmount().signum(), equalTo(0));
+	}
+
+	@Test
+	public void findSummaries_tax() {
+		// GIVEN
+		final SnfInvoice invoice = insertWithItems();
+		final SnfInvoiceItem tax = newItem(invoice, Tax, "GST", BigDecimal.ONE,
+				new BigDecimal("1.05"));
+		itemDao.save(tax);
+
+		// WHEN
+		SnfInvoiceFilter filter = SnfInvoiceFilter.forAccount(last.getAccountId());
+		final FilterResults<SnfInvoice, UserLongPK> result = dao.findFilteredSummaries(filter,
+				SnfInvoiceDao.SORT_BY_INVOICE_DATE_DESCENDING, 0, 1);
+
+		// THEN
+		SnfInvoice summary = result.iterator().next();
+		assertThat("Summary for invoice", summary, equalTo(invoice));
+		assertThat("Summary has no items", summary.getItems(), nullValue());
+		assertThat("Summary tax amount from tax items",
+				summary.getTaxAmount().compareTo(tax.getAmount()), equalTo(0));
+		assertThat("Summary total amount includes tax", summary.getTotalAmount()
+				.compareTo(invoice.getTotalAmount().add(tax.getAmount())), equalTo(0));
+	}
+
 	@Test
 	public void findUnpaid_none() {
 		// GIVEN
@@ -27,6 +27,8 @@ import static org.junit.Assert.assertThat;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
@@ -44,7 +46,7 @@ import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceItem;
  * Test cases for the {@link MyBatisSnfInvoiceItemDao} class.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  */
 public class MyBatisSnfInvoiceItemDaoTests extends AbstractMyBatisDaoTestSupport {
 
@@ -108,4 +110,26 @@ public class MyBatisSnfInvoiceItemDaoTests extends AbstractMyBatisDaoTestSupport
 		assertThat("InvoiceImpl sameness", entity.isSameAs(last), equalTo(true));
 	}
 
+	@Test
+	public void saveAll() {
+		SnfInvoice invoice = createTestInvoice();
+
+		List<SnfInvoiceItem> items = new ArrayList<>(5);
+		BigDecimal total = BigDecimal.ZERO;
+		for ( int i = 1; i <= 5; i++ ) {
+			BigDecimal amount = new BigDecimal(i).add(new BigDecimal("0.45"));
+			items.add(SnfInvoiceItem.newItem(invoice.getId().getId(), InvoiceItemType.Usage,
+					TEST_PROD_KEY, BigDecimal.ONE, amount));
+			total = total.add(amount);
+		}
+		dao.setBatchSize(2);
+		dao.saveAll(items);
+		assertAccountBalance(invoice.getAccountId(), total, BigDecimal.ZERO);
+
+		for ( SnfInvoiceItem item : items ) {
+			SnfInvoiceItem entity = dao.get(item.getId());
+			assertThat("Item saved " + item.getId(), entity.isSameAs(item), equalTo(true));
+		}
+	}
+
 }
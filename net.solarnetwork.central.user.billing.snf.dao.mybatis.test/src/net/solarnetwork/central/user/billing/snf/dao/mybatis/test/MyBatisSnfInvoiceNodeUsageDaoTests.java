@@ -28,6 +28,8 @@ import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import net.solarnetwork.central.user.billing.snf.dao.mybatis.MyBatisAccountDao;
@@ -44,7 +46,7 @@ import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceRelatedPK;
  * Test cases for the {@link MyBatisSnfInvoiceNodeUsageDao} class.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  */
 public class MyBatisSnfInvoiceNodeUsageDaoTests extends AbstractMyBatisDaoTestSupport {
 
@@ -105,4 +107,22 @@ public class MyBatisSnfInvoiceNodeUsageDaoTests extends AbstractMyBatisDaoTestSu
 		assertThat("Sameness", entity.isSameAs(last), is(equalTo(true)));
 	}
 
+	@Test
+	public void saveAll() {
+		SnfInvoice invoice = createTestInvoice();
+
+		List<SnfInvoiceNodeUsage> usages = new ArrayList<>(5);
+		for ( long i = 1; i <= 5; i++ ) {
+			usages.add(nodeUsage(invoice.getId().getId(), i, invoice.getCreated(), i * 2, i * 3, i * 4));
+		}
+		dao.setBatchSize(2);
+		dao.saveAll(usages);
+		getSqlSessionTemplate().flushStatements();
+
+		for ( SnfInvoiceNodeUsage usage : usages ) {
+			SnfInvoiceNodeUsage entity = dao.get(usage.getId());
+			assertThat("Usage saved " + usage.getId(), entity.isSameAs(usage), is(equalTo(true)));
+		}
+	}
+
 }
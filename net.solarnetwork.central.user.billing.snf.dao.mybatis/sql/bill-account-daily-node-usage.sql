@@ -0,0 +1,28 @@
+/**
+ * Add the per-account, per-node, per-day rollup of node usage counts maintained by the
+ * NodeUsageAccrual job.
+ *
+ * Required by the NodeUsageAccrual.xml MyBatis mapping, which accrues usage into this table
+ * and sums the accrued days to calculate month-to-date usage. The usage_date is a day in the
+ * account's time zone.
+ */
+
+CREATE TABLE IF NOT EXISTS solarbill.bill_account_daily_node_usage (
+	acct_id			BIGINT NOT NULL,
+	node_id			BIGINT NOT NULL,
+	usage_date		DATE NOT NULL,
+	prop_in			BIGINT NOT NULL DEFAULT 0,
+	datum_out		BIGINT NOT NULL DEFAULT 0,
+	datum_stored	BIGINT NOT NULL DEFAULT 0,
+	CONSTRAINT bill_account_daily_node_usage_pkey PRIMARY KEY (acct_id, usage_date, node_id),
+	CONSTRAINT bill_account_daily_node_usage_acct_fk FOREIGN KEY (acct_id)
+		REFERENCES solarbill.bill_account (id) MATCH SIMPLE
+		ON UPDATE NO ACTION ON DELETE CASCADE
+);
+
+-- support finding the latest accrued day and purging old days
+CREATE INDEX IF NOT EXISTS bill_account_daily_node_usage_date_idx
+	ON solarbill.bill_account_daily_node_usage (usage_date);
+
+ALTER TABLE solarbill.bill_account_daily_node_usage OWNER TO solarnet;
+GRANT SELECT, INSERT, UPDATE, DELETE ON TABLE solarbill.bill_account_daily_node_usage TO solarnet;
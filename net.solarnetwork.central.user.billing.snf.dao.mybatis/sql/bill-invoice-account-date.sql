@@ -0,0 +1,7 @@
+/**
+ * Support finding the latest invoice for each account, as used by the
+ * find-AccountInvoicedThrough-for-users query in the Account.xml MyBatis mapping.
+ */
+
+CREATE INDEX IF NOT EXISTS bill_invoice_acct_date_idx
+	ON solarbill.bill_invoice (acct_id, date_start DESC, id);
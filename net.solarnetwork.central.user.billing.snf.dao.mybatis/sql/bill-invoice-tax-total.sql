@@ -0,0 +1,37 @@
+/**
+ * Add a persisted invoice tax amount column to the bill_invoice table, maintained by a
+ * trigger on the bill_invoice_item table for tax items (item_type 5).
+ *
+ * Required by the SnfInvoice.xml MyBatis mapping, which maps this column onto SnfInvoice
+ * so invoice summaries loaded without items still report their tax amount.
+ */
+
+ALTER TABLE solarbill.bill_invoice
+	ADD COLUMN tax_amount NUMERIC NOT NULL DEFAULT 0;
+
+CREATE OR REPLACE FUNCTION solarbill.bill_invoice_item_tax_total()
+	RETURNS TRIGGER LANGUAGE plpgsql VOLATILE AS
+$$
+BEGIN
+	IF TG_OP IN ('UPDATE', 'DELETE') AND OLD.item_type = 5 THEN
+		UPDATE solarbill.bill_invoice SET tax_amount = tax_amount - OLD.amount
+		WHERE id = OLD.inv_id;
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') AND NEW.item_type = 5 THEN
+		UPDATE solarbill.bill_invoice SET tax_amount = tax_amount + NEW.amount
+		WHERE id = NEW.inv_id;
+	END IF;
+	RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER bill_invoice_item_tax_total
+	AFTER INSERT OR UPDATE OF inv_id, item_type, amount OR DELETE ON solarbill.bill_invoice_item
+	FOR EACH ROW EXECUTE PROCEDURE solarbill.bill_invoice_item_tax_total();
+
+-- populate tax amounts for existing invoices
+UPDATE solarbill.bill_invoice inv SET
+	tax_amount = COALESCE((
+		SELECT SUM(invi.amount) FROM solarbill.bill_invoice_item invi
+		WHERE invi.inv_id = inv.id AND invi.item_type = 5
+	), 0);
@@ -0,0 +1,64 @@
+/**
+ * Add persisted invoice total and paid amount columns to the bill_invoice table,
+ * maintained by triggers on the bill_invoice_item and bill_invoice_payment tables.
+ *
+ * Required by the SnfInvoice.xml MyBatis mapping, which maps these columns onto SnfInvoice
+ * and uses them to find unpaid invoices.
+ */
+
+ALTER TABLE solarbill.bill_invoice
+	ADD COLUMN total_amount NUMERIC NOT NULL DEFAULT 0,
+	ADD COLUMN paid_amount NUMERIC NOT NULL DEFAULT 0;
+
+CREATE OR REPLACE FUNCTION solarbill.bill_invoice_item_total()
+	RETURNS TRIGGER LANGUAGE plpgsql VOLATILE AS
+$$
+BEGIN
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		UPDATE solarbill.bill_invoice SET total_amount = total_amount - OLD.amount
+		WHERE id = OLD.inv_id;
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		UPDATE solarbill.bill_invoice SET total_amount = total_amount + NEW.amount
+		WHERE id = NEW.inv_id;
+	END IF;
+	RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER bill_invoice_item_total
+	AFTER INSERT OR UPDATE OF inv_id, amount OR DELETE ON solarbill.bill_invoice_item
+	FOR EACH ROW EXECUTE PROCEDURE solarbill.bill_invoice_item_total();
+
+CREATE OR REPLACE FUNCTION solarbill.bill_invoice_payment_total()
+	RETURNS TRIGGER LANGUAGE plpgsql VOLATILE AS
+$$
+BEGIN
+	IF TG_OP IN ('UPDATE', 'DELETE') THEN
+		UPDATE solarbill.bill_invoice SET paid_amount = paid_amount - OLD.amount
+		WHERE id = OLD.inv_id;
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		UPDATE solarbill.bill_invoice SET paid_amount = paid_amount + NEW.amount
+		WHERE id = NEW.inv_id;
+	END IF;
+	RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER bill_invoice_payment_total
+	AFTER INSERT OR UPDATE OF inv_id, amount OR DELETE ON solarbill.bill_invoice_payment
+	FOR EACH ROW EXECUTE PROCEDURE solarbill.bill_invoice_payment_total();
+
+-- populate totals for existing invoices
+UPDATE solarbill.bill_invoice inv SET
+	total_amount = COALESCE((
+		SELECT SUM(invi.amount) FROM solarbill.bill_invoice_item invi WHERE invi.inv_id = inv.id
+	), 0)
+	, paid_amount = COALESCE((
+		SELECT SUM(ipay.amount) FROM solarbill.bill_invoice_payment ipay WHERE ipay.inv_id = inv.id
+	), 0);
+
+-- support finding unpaid invoices for an account
+CREATE INDEX bill_invoice_unpaid_idx ON solarbill.bill_invoice (acct_id, date_start DESC)
+	WHERE paid_amount < total_amount;
@@ -23,7 +23,9 @@
 package net.solarnetwork.central.user.billing.snf.dao.mybatis;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -31,13 +33,14 @@ import net.solarnetwork.central.dao.mybatis.support.BaseMyBatisGenericDaoSupport
 import net.solarnetwork.central.user.billing.snf.dao.AccountDao;
 import net.solarnetwork.central.user.billing.snf.domain.Account;
 import net.solarnetwork.central.user.billing.snf.domain.AccountBalance;
+import net.solarnetwork.central.user.billing.snf.domain.AccountInvoicedThrough;
 import net.solarnetwork.central.user.domain.UserLongPK;
 
 /**
  * MyBatis implementation of {@link AccountDao}.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.2
  */
 public class MyBatisAccountDao extends BaseMyBatisGenericDaoSupport<Account, UserLongPK>
 		implements AccountDao {
@@ -47,9 +50,23 @@ public class MyBatisAccountDao extends BaseMyBatisGenericDaoSupport<Account, Use
 
 		ClaimCreditFromAccountBalance("claim-AccountBalance-credit"),
 
+		/**
+		 * Project the credit that would be claimed from an account balance.
+		 * 
+		 * @since 1.1
+		 */
+		ProjectCreditFromAccountBalance("project-AccountBalance-credit"),
+
 		GetAccountBalanceForUser("get-AccountBalance-for-user"),
 
-		GetForUser("get-Account-for-user");
+		GetForUser("get-Account-for-user"),
+
+		/**
+		 * Find the date accounts have been invoiced through.
+		 * 
+		 * @since 1.2
+		 */
+		FindInvoicedThroughForUsers("find-AccountInvoicedThrough-for-users");
 
 		private final String queryName;
 
@@ -96,4 +113,28 @@ public class MyBatisAccountDao extends BaseMyBatisGenericDaoSupport<Account, Use
 		return claimed != null ? claimed : BigDecimal.ZERO;
 	}
 
+	@Override
+	public BigDecimal projectAccountBalanceCredit(Long accountId, BigDecimal max) {
+		Map<String, Object> params = new HashMap<>(2);
+		params.put("accountId", accountId);
+		if ( max != null ) {
+			params.put("max", max);
+		}
+		BigDecimal projected = selectFirst(QueryName.ProjectCreditFromAccountBalance.getQueryName(),
+				params);
+		return projected != null ? projected : BigDecimal.ZERO;
+	}
+
+	@Override
+	public List<AccountInvoicedThrough> findInvoicedThroughForUsers(Long[] userIds) {
+		if ( userIds != null && userIds.length < 1 ) {
+			return Collections.emptyList();
+		}
+		Map<String, Object> params = new HashMap<>(2);
+		if ( userIds != null ) {
+			params.put("userIds", userIds);
+		}
+		return selectList(QueryName.FindInvoicedThroughForUsers.getQueryName(), params, null, null);
+	}
+
 }
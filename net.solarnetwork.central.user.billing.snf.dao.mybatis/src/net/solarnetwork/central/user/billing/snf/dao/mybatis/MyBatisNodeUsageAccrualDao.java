@@ -0,0 +1,140 @@
+/* ==================================================================
+ * MyBatisNodeUsageAccrualDao.java - 18/10/2026 10:31:08 AM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.dao.mybatis;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.ibatis.session.ResultHandler;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import net.solarnetwork.central.dao.mybatis.support.BaseMyBatisGenericDaoSupport;
+import net.solarnetwork.central.user.billing.snf.dao.NodeUsageAccrualDao;
+import net.solarnetwork.central.user.billing.snf.domain.NodeUsage;
+
+/**
+ * MyBatis implementation of {@link NodeUsageAccrualDao}.
+ * 
+ * @author matt
+ * @version 1.1
+ * @since 2.1
+ */
+public class MyBatisNodeUsageAccrualDao extends BaseMyBatisGenericDaoSupport<NodeUsage, Long>
+		implements NodeUsageAccrualDao {
+
+	/** Query name enumeration. */
+	public enum QueryName {
+
+		/** Accrue the node usage for all accounts for a single day. */
+		AccrueUsageForDay("accrue-NodeUsage-for-day"),
+
+		/** Find the latest accrued day. */
+		FindLatestAccrualDate("find-NodeUsageAccrual-latest-date"),
+
+		/** Delete accrued usage older than a given day. */
+		DeleteAccruedUsageBefore("delete-NodeUsageAccrual-before"),
+
+		/** Find the month-to-date node usage for a given user. */
+		FindMonthToDateNodeUsageForAccount("find-NodeUsage-month-to-date-for-account"),
+
+		;
+
+		private final String queryName;
+
+		private QueryName(String queryName) {
+			this.queryName = queryName;
+		}
+
+		/**
+		 * Get the query name.
+		 * 
+		 * @return the query name
+		 */
+		public String getQueryName() {
+			return queryName;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 */
+	public MyBatisNodeUsageAccrualDao() {
+		super(NodeUsage.class, Long.class);
+	}
+
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Override
+	public int accrueUsage(LocalDate day, Instant asOf) {
+		if ( day == null ) {
+			throw new IllegalArgumentException("The day argument must be provided.");
+		}
+		if ( asOf == null ) {
+			throw new IllegalArgumentException("The asOf argument must be provided.");
+		}
+		Map<String, Object> params = new LinkedHashMap<>(4);
+		params.put("startDate", day);
+		params.put("endDate", day.plusDays(1));
+		params.put("effectiveDate", day.withDayOfMonth(1));
+		params.put("asOf", asOf);
+		Number count = selectFirst(QueryName.AccrueUsageForDay.getQueryName(), params);
+		return (count != null ? count.intValue() : 0);
+	}
+
+	@Override
+	public LocalDate findLatestAccrualDate() {
+		return selectFirst(QueryName.FindLatestAccrualDate.getQueryName(), null);
+	}
+
+	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
+	@Override
+	public int deleteAccruedUsageBefore(LocalDate day) {
+		if ( day == null ) {
+			throw new IllegalArgumentException("The day argument must be provided.");
+		}
+		Number count = selectFirst(QueryName.DeleteAccruedUsageBefore.getQueryName(), day);
+		return (count != null ? count.intValue() : 0);
+	}
+
+	@Override
+	public void findMonthToDateNodeUsage(Long userId, LocalDate month, Consumer<NodeUsage> handler) {
+		if ( userId == null ) {
+			throw new IllegalArgumentException("The userId argument must be provided.");
+		}
+		if ( month == null ) {
+			throw new IllegalArgumentException("The month argument must be provided.");
+		}
+		if ( handler == null ) {
+			throw new IllegalArgumentException("The handler argument must be provided.");
+		}
+		final LocalDate startDate = month.withDayOfMonth(1);
+		Map<String, Object> params = new LinkedHashMap<>(3);
+		params.put("userId", userId);
+		params.put("startDate", startDate);
+		params.put("endDate", startDate.plusMonths(1));
+		getSqlSession().select(QueryName.FindMonthToDateNodeUsageForAccount.getQueryName(), params,
+				(ResultHandler<NodeUsage>) ctx -> handler.accept(ctx.getResultObject()));
+	}
+
+}
@@ -26,6 +26,8 @@ import java.time.LocalDate;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import org.apache.ibatis.session.ResultHandler;
 import net.solarnetwork.central.dao.mybatis.support.BaseMyBatisGenericDaoSupport;
 import net.solarnetwork.central.user.billing.snf.dao.NodeUsageDao;
 import net.solarnetwork.central.user.billing.snf.domain.NodeUsage;
@@ -36,7 +38,7 @@ import net.solarnetwork.central.user.billing.snf.domain.UsageTiers;
  * MyBatis implementation of {@link NodeUsageDao}.
  * 
  * @author matt
- * @version 2.0
+ * @version 2.1
  */
 public class MyBatisNodeUsageDao extends BaseMyBatisGenericDaoSupport<NodeUsage, Long>
 		implements NodeUsageDao {
@@ -54,6 +56,14 @@ public class MyBatisNodeUsageDao extends BaseMyBatisGenericDaoSupport<NodeUsage,
 		 */
 		FindMonthlyNodeUsageForAccount("find-NodeUsage-for-account"),
 
+		/**
+		 * Find all available account and node usage for a given user and date
+		 * range.
+		 * 
+		 * @since 2.1
+		 */
+		FindMonthlyUsageAndNodeUsageForAccount("find-UsageAndNodeUsage-for-account"),
+
 		;
 
 		private final String queryName;
@@ -92,18 +102,23 @@ public class MyBatisNodeUsageDao extends BaseMyBatisGenericDaoSupport<NodeUsage,
 		return new UsageTiers(results, date);
 	}
 
-	private List<NodeUsage> usageForUser(String queryName, Long userId, LocalDate startDate,
-			LocalDate endDate) {
+	private static Map<String, Object> usageForUserParameters(Long userId, LocalDate startDate) {
 		if ( userId == null ) {
 			throw new IllegalArgumentException("The userId argument must be provided.");
 		}
 		if ( startDate == null ) {
 			throw new IllegalArgumentException("The month argument must be provided.");
 		}
-		Map<String, Object> params = new LinkedHashMap<>(2);
+		Map<String, Object> params = new LinkedHashMap<>(3);
 		params.put("userId", userId);
 		params.put("startDate", startDate);
 		params.put("endDate", startDate.plusMonths(1));
+		return params;
+	}
+
+	private List<NodeUsage> usageForUser(String queryName, Long userId, LocalDate startDate,
+			LocalDate endDate) {
+		Map<String, Object> params = usageForUserParameters(userId, startDate);
 		return selectList(queryName, params, null, null);
 	}
 
@@ -119,4 +134,36 @@ public class MyBatisNodeUsageDao extends BaseMyBatisGenericDaoSupport<NodeUsage,
 				endDate);
 	}
 
+	@Override
+	public void findNodeUsageForAccount(Long userId, LocalDate startDate, LocalDate endDate,
+			Consumer<NodeUsage> handler) {
+		Map<String, Object> params = usageForUserParameters(userId, startDate);
+		if ( handler == null ) {
+			throw new IllegalArgumentException("The handler argument must be provided.");
+		}
+		getSqlSession().select(QueryName.FindMonthlyNodeUsageForAccount.getQueryName(), params,
+				(ResultHandler<NodeUsage>) ctx -> handler.accept(ctx.getResultObject()));
+	}
+
+	@Override
+	public void findUsageAndNodeUsageForAccount(Long userId, LocalDate startDate, LocalDate endDate,
+			Consumer<NodeUsage> usageHandler, Consumer<NodeUsage> nodeUsageHandler) {
+		Map<String, Object> params = usageForUserParameters(userId, startDate);
+		if ( usageHandler == null ) {
+			throw new IllegalArgumentException("The usageHandler argument must be provided.");
+		}
+		if ( nodeUsageHandler == null ) {
+			throw new IllegalArgumentException("The nodeUsageHandler argument must be provided.");
+		}
+		getSqlSession().select(QueryName.FindMonthlyUsageAndNodeUsageForAccount.getQueryName(),
+				params, (ResultHandler<NodeUsage>) ctx -> {
+					NodeUsage usage = ctx.getResultObject();
+					if ( usage.getId() == null ) {
+						usageHandler.accept(usage);
+					} else {
+						nodeUsageHandler.accept(usage);
+					}
+				});
+	}
+
 }
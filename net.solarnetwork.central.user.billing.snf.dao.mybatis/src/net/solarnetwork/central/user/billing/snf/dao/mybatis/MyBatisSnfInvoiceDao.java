@@ -22,11 +22,20 @@
 
 package net.solarnetwork.central.user.billing.snf.dao.mybatis;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import net.solarnetwork.central.dao.mybatis.support.BaseMyBatisGenericDaoSupport;
 import net.solarnetwork.central.user.billing.snf.dao.SnfInvoiceDao;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceFilter;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceFilter.TotalCountMode;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceItem;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceNodeUsage;
 import net.solarnetwork.central.user.domain.UserLongPK;
 import net.solarnetwork.dao.BasicFilterResults;
 import net.solarnetwork.dao.FilterResults;
@@ -35,8 +44,25 @@ import net.solarnetwork.domain.SortDescriptor;
 /**
  * MyBatis implementation of {@link SnfInvoiceDao}.
  * 
+ * <p>
+ * Invoice items and node usages are loaded with one query each for all the
+ * invoices returned by a query, rather than joined to the invoice query.
+ * </p>
+ * 
+ * <p>
+ * When the filter has a continuation token, results are found by seeking past
+ * the invoice the token was created from, any {@code offset} is ignored, and
+ * the total result count is not computed.
+ * </p>
+ * 
+ * <p>
+ * The filter's {@code totalCountMode} determines if the total result count is
+ * computed. An estimated count will never be less than the number of invoices
+ * up to and including the returned page.
+ * </p>
+ * 
  * @author matt
- * @version 1.0
+ * @version 1.3
  */
 public class MyBatisSnfInvoiceDao extends BaseMyBatisGenericDaoSupport<SnfInvoice, UserLongPK>
 		implements SnfInvoiceDao {
@@ -44,7 +70,21 @@ public class MyBatisSnfInvoiceDao extends BaseMyBatisGenericDaoSupport<SnfInvoic
 	/** Query name enumeration. */
 	public enum QueryName {
 
-		FindFiltered("find-SnfInvoice-for-filter");
+		FindFiltered("find-SnfInvoice-for-filter"),
+
+		/**
+		 * Find the items for a set of invoices.
+		 * 
+		 * @since 1.1
+		 */
+		FindItemsForInvoices("find-SnfInvoiceItem-for-invoices"),
+
+		/**
+		 * Find the node usages for a set of invoices.
+		 * 
+		 * @since 1.1
+		 */
+		FindUsagesForInvoices("find-SnfInvoiceNodeUsage-for-invoices");
 
 		private final String queryName;
 
@@ -69,6 +109,16 @@ public class MyBatisSnfInvoiceDao extends BaseMyBatisGenericDaoSupport<SnfInvoic
 		public String getCountQueryName() {
 			return queryName + "-count";
 		}
+
+		/**
+		 * Get the query name to use for an estimated count-only result.
+		 * 
+		 * @return the estimated count query name
+		 * @since 1.2
+		 */
+		public String getEstimatedCountQueryName() {
+			return queryName + "-count-estimate";
+		}
 	}
 
 	/**
@@ -78,37 +128,127 @@ public class MyBatisSnfInvoiceDao extends BaseMyBatisGenericDaoSupport<SnfInvoic
 		super(SnfInvoice.class, UserLongPK.class);
 	}
 
+	@Override
+	public SnfInvoice get(UserLongPK id) {
+		SnfInvoice result = super.get(id);
+		if ( result != null ) {
+			populateRelated(Collections.singletonList(result));
+		}
+		return result;
+	}
+
 	@Override
 	public FilterResults<SnfInvoice, UserLongPK> findFiltered(SnfInvoiceFilter filter,
 			List<SortDescriptor> sorts, Integer offset, Integer max) {
+		return findFiltered(filter, sorts, offset, max, true);
+	}
+
+	@Override
+	public FilterResults<SnfInvoice, UserLongPK> findFilteredSummaries(SnfInvoiceFilter filter,
+			List<SortDescriptor> sorts, Integer offset, Integer max) {
+		return findFiltered(filter, sorts, offset, max, false);
+	}
+
+	private FilterResults<SnfInvoice, UserLongPK> findFiltered(SnfInvoiceFilter filter,
+			List<SortDescriptor> sorts, Integer offset, Integer max, boolean withRelated) {
+		final boolean seek = filter.hasSeek();
+		if ( seek && !isDefaultSort(sorts) ) {
+			throw new IllegalArgumentException(
+					"A continuation token can only be used with the default sort order.");
+		}
 		if ( offset != null || max != null || sorts != null ) {
 			filter = filter.clone();
 			filter.setSorts(sorts);
 			filter.setMax(max);
-			if ( offset == null ) {
-				// force offset to 0 if implied
+			if ( offset == null || seek ) {
+				// force offset to 0 if implied, or seeking from a previous page
 				filter.setOffset(0);
 			} else {
 				filter.setOffset(offset);
 			}
 		}
 
-		// attempt count first, if max NOT specified as -1 and NOT a mostRecent query
+		// attempt count first, unless max is -1, counting is disabled, or seeking from previous page
+		final TotalCountMode countMode = filter.getTotalCountMode();
 		Long totalCount = null;
-		if ( max == null || max.intValue() != -1 ) {
+		if ( !seek && countMode != TotalCountMode.NONE && (max == null || max.intValue() != -1) ) {
 			SnfInvoiceFilter countFilter = filter.clone();
 			countFilter.setOffset(null);
 			countFilter.setMax(null);
-			Number n = getSqlSession().selectOne(QueryName.FindFiltered.getCountQueryName(),
-					countFilter);
+			Number n = getSqlSession().selectOne(countMode == TotalCountMode.ESTIMATE
+					? QueryName.FindFiltered.getEstimatedCountQueryName()
+					: QueryName.FindFiltered.getCountQueryName(), countFilter);
 			if ( n != null ) {
 				totalCount = n.longValue();
 			}
 		}
 
 		List<SnfInvoice> results = selectList(QueryName.FindFiltered.getQueryName(), filter, null, null);
-		return new BasicFilterResults<>(results, totalCount, offset != null ? offset.intValue() : 0,
-				results.size());
+		if ( withRelated ) {
+			populateRelated(results);
+		}
+		if ( totalCount != null && countMode == TotalCountMode.ESTIMATE ) {
+			long minCount = (offset != null && !seek ? offset.longValue() : 0L) + results.size();
+			if ( totalCount.longValue() < minCount ) {
+				totalCount = minCount;
+			}
+		}
+		return new BasicFilterResults<>(results, totalCount,
+				offset != null && !seek ? offset.intValue() : 0, results.size());
+	}
+
+	private static boolean isDefaultSort(List<SortDescriptor> sorts) {
+		return (sorts == null || sorts.isEmpty() || SORT_BY_INVOICE_DATE_DESCENDING.equals(sorts));
+	}
+
+	/**
+	 * Load the items and node usages for a list of invoices.
+	 * 
+	 * @param invoices
+	 *        the invoices to populate
+	 */
+	private void populateRelated(List<SnfInvoice> invoices) {
+		if ( invoices == null || invoices.isEmpty() ) {
+			return;
+		}
+		final Map<Long, SnfInvoice> invoiceMap = new HashMap<>(invoices.size());
+		final List<Long> invoiceIds = new ArrayList<>(invoices.size());
+		for ( SnfInvoice invoice : invoices ) {
+			if ( invoiceMap.putIfAbsent(invoice.getId().getId(), invoice) == null ) {
+				invoiceIds.add(invoice.getId().getId());
+			}
+		}
+		// pass the IDs as a single array parameter so the statement size is fixed
+		final Map<String, Object> params = Collections.singletonMap("invoiceIds",
+				invoiceIds.toArray(new Long[invoiceIds.size()]));
+
+		final List<SnfInvoiceItem> items = selectList(QueryName.FindItemsForInvoices.getQueryName(),
+				params, null, null);
+		for ( SnfInvoiceItem item : items ) {
+			SnfInvoice invoice = invoiceMap.get(item.getInvoiceId());
+			if ( invoice != null ) {
+				Set<SnfInvoiceItem> set = invoice.getItems();
+				if ( set == null ) {
+					set = new LinkedHashSet<>(8);
+					invoice.setItems(set);
+				}
+				set.add(item);
+			}
+		}
+
+		final List<SnfInvoiceNodeUsage> usages = selectList(
+				QueryName.FindUsagesForInvoices.getQueryName(), params, null, null);
+		for ( SnfInvoiceNodeUsage usage : usages ) {
+			SnfInvoice invoice = invoiceMap.get(usage.getInvoiceId());
+			if ( invoice != null ) {
+				Set<SnfInvoiceNodeUsage> set = invoice.getUsages();
+				if ( set == null ) {
+					set = new LinkedHashSet<>(8);
+					invoice.setUsages(set);
+				}
+				set.add(usage);
+			}
+		}
 	}
 
 }
@@ -22,6 +22,10 @@
 
 package net.solarnetwork.central.user.billing.snf.dao.mybatis;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import net.solarnetwork.central.dao.mybatis.support.BaseMyBatisGenericDaoSupport;
 import net.solarnetwork.central.user.billing.snf.dao.SnfInvoiceNodeUsageDao;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceNodeUsage;
@@ -31,13 +35,39 @@ import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceRelatedPK;
  * MyBatis implementation of {@link SnfInvoiceNodeUsageDao}.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  * @since 2.0
  */
 public class MyBatisSnfInvoiceNodeUsageDao
 		extends BaseMyBatisGenericDaoSupport<SnfInvoiceNodeUsage, SnfInvoiceRelatedPK>
 		implements SnfInvoiceNodeUsageDao {
 
+	/** The default value for the {@code batchSize} property. */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	/** Query name enumeration. */
+	public enum QueryName {
+
+		InsertList("insert-SnfInvoiceNodeUsage-list");
+
+		private final String queryName;
+
+		private QueryName(String queryName) {
+			this.queryName = queryName;
+		}
+
+		/**
+		 * Get the query name.
+		 * 
+		 * @return the query name
+		 */
+		public String getQueryName() {
+			return queryName;
+		}
+	}
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
 	/**
 	 * Constructor.
 	 */
@@ -45,4 +75,48 @@ public class MyBatisSnfInvoiceNodeUsageDao
 		super(SnfInvoiceNodeUsage.class, SnfInvoiceRelatedPK.class);
 	}
 
+	@Override
+	public void saveAll(Collection<SnfInvoiceNodeUsage> usages) {
+		if ( usages == null || usages.isEmpty() ) {
+			return;
+		}
+		final List<SnfInvoiceNodeUsage> list = (usages instanceof List ? (List<SnfInvoiceNodeUsage>) usages
+				: new ArrayList<>(usages));
+		final int size = list.size();
+		final int max = (batchSize > 0 ? batchSize : size);
+		for ( int i = 0; i < size; i += max ) {
+			List<SnfInvoiceNodeUsage> batch = list.subList(i, Math.min(i + max, size));
+			getSqlSession().insert(QueryName.InsertList.getQueryName(),
+					Collections.singletonMap("usages", batch));
+		}
+	}
+
+	/**
+	 * Get the maximum number of rows to insert per statement in
+	 * {@link #saveAll(Collection)}.
+	 * 
+	 * @return the batch size; defaults to {@link #DEFAULT_BATCH_SIZE}
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Set the maximum number of rows to insert per statement in
+	 * {@link #saveAll(Collection)}.
+	 * 
+	 * <p>
+	 * PostgreSQL limits the number of parameters allowed in a single
+	 * statement, so large collections are split into multiple statements of
+	 * at most this many rows.
+	 * </p>
+	 * 
+	 * @param batchSize
+	 *        the batch size to set; anything less than {@literal 1} means no
+	 *        limit
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
 }
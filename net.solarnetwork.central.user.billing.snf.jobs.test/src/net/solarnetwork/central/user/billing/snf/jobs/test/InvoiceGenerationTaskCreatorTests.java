@@ -25,6 +25,7 @@ package net.solarnetwork.central.user.billing.snf.jobs.test;
 import static java.lang.String.format;
 import static java.util.Arrays.asList;
 import static java.util.UUID.randomUUID;
+import static org.easymock.EasyMock.aryEq;
 import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
@@ -38,6 +39,8 @@ import static org.junit.Assert.assertThat;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.easymock.Capture;
 import org.easymock.CaptureType;
 import org.easymock.EasyMock;
@@ -51,10 +54,10 @@ import net.solarnetwork.central.user.billing.snf.SnfBillingSystem;
 import net.solarnetwork.central.user.billing.snf.SnfInvoicingSystem;
 import net.solarnetwork.central.user.billing.snf.dao.AccountTaskDao;
 import net.solarnetwork.central.user.billing.snf.domain.Account;
+import net.solarnetwork.central.user.billing.snf.domain.AccountInvoicedThrough;
 import net.solarnetwork.central.user.billing.snf.domain.AccountTask;
 import net.solarnetwork.central.user.billing.snf.domain.AccountTaskType;
 import net.solarnetwork.central.user.billing.snf.domain.Address;
-import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
 import net.solarnetwork.central.user.billing.snf.jobs.InvoiceGenerationTaskCreator;
 import net.solarnetwork.central.user.dao.UserDao;
 import net.solarnetwork.central.user.domain.UserFilter;
@@ -65,7 +68,7 @@ import net.solarnetwork.central.user.domain.UserMatch;
  * Test cases for the {@link InvoiceGenerationTaskCreator} class.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.2
  */
 public class InvoiceGenerationTaskCreatorTests {
 
@@ -122,13 +125,11 @@ public class InvoiceGenerationTaskCreatorTests {
 		expect(userDao.findFiltered(capture(userFilterCaptor), isNull(), eq(0),
 				eq(InvoiceGenerationTaskCreator.DEFAULT_BATCH_SIZE))).andReturn(userMatches);
 
-		// get Account for found user
 		final Account account = createAccount(TEST_USER_ID, "en_NZ",
 				createAddress("NZ", "Pacific/Auckland"));
-		expect(invoicingSystem.accountForUser(TEST_USER_ID)).andReturn(account);
-
-		// get latest invoice for account (there is none)
-		expect(invoicingSystem.findLatestInvoiceForAccount(account.getId())).andReturn(null);
+		// get Account and latest invoice for found user (there is none)
+		expect(invoicingSystem.invoicedThroughForUsers(aryEq(new Long[] { TEST_USER_ID })))
+				.andReturn(asList(new AccountInvoicedThrough(account, null, null)));
 
 		// create task for month ending on endDate
 		final Capture<AccountTask> taskCaptor = new Capture<>();
@@ -164,13 +165,11 @@ public class InvoiceGenerationTaskCreatorTests {
 		expect(userDao.findFiltered(capture(userFilterCaptor), isNull(), eq(0),
 				eq(InvoiceGenerationTaskCreator.DEFAULT_BATCH_SIZE))).andReturn(userMatches);
 
-		// get Account for found user
 		final Account account = createAccount(TEST_USER_ID, "en_US",
 				createAddress("US", "America/Los_Angeles"));
-		expect(invoicingSystem.accountForUser(TEST_USER_ID)).andReturn(account);
-
-		// get latest invoice for account (there is none)
-		expect(invoicingSystem.findLatestInvoiceForAccount(account.getId())).andReturn(null);
+		// get Account and latest invoice for found user (there is none)
+		expect(invoicingSystem.invoicedThroughForUsers(aryEq(new Long[] { TEST_USER_ID })))
+				.andReturn(asList(new AccountInvoicedThrough(account, null, null)));
 
 		// create task for month ending on endDate
 		final Capture<AccountTask> taskCaptor = new Capture<>();
@@ -206,18 +205,11 @@ public class InvoiceGenerationTaskCreatorTests {
 		expect(userDao.findFiltered(capture(userFilterCaptor), isNull(), eq(0),
 				eq(InvoiceGenerationTaskCreator.DEFAULT_BATCH_SIZE))).andReturn(userMatches);
 
-		// get Account for found user
+		// get Account and latest invoice for found user, which is a few months behind
 		final Account account = createAccount(TEST_USER_ID, "en_GB", createAddress("GB", "UTC"));
-		expect(invoicingSystem.accountForUser(TEST_USER_ID)).andReturn(account);
-
-		// get latest invoice for account, which is a few months behind
-		SnfInvoice lastInvoice = new SnfInvoice(randomUUID().getMostSignificantBits(),
-				account.getUserId(), account.getId().getId(),
-				Instant.ofEpochMilli(System.currentTimeMillis()));
-		lastInvoice.setStartDate(LocalDate.of(2019, 9, 1));
-		lastInvoice.setEndDate(LocalDate.of(2019, 10, 1));
-		lastInvoice.setAddress(account.getAddress());
-		expect(invoicingSystem.findLatestInvoiceForAccount(account.getId())).andReturn(lastInvoice);
+		expect(invoicingSystem.invoicedThroughForUsers(aryEq(new Long[] { TEST_USER_ID })))
+				.andReturn(asList(new AccountInvoicedThrough(account, LocalDate.of(2019, 10, 1),
+						account.getAddress().getTimeZoneId())));
 
 		// create tasks for months ending between lastInvoice.endDate and endDate (2019-11 - 2020-01)
 		final Capture<AccountTask> taskCaptor = new Capture<>(CaptureType.ALL);
@@ -249,4 +241,92 @@ public class InvoiceGenerationTaskCreatorTests {
 		}
 	}
 
+	@Test
+	public void generateInitialInvoiceGenerationTasks_parallel_toleratesFailure() {
+		// GIVEN
+		final LocalDate endDate = LocalDate.of(2020, 1, 1);
+		final Long otherUserId = 2L;
+		final UserMatch user1 = new UserMatch(TEST_USER_ID, TEST_EMAIL);
+		final UserMatch user2 = new UserMatch(otherUserId, "other@localhost");
+
+		// find users configured with SNF billing, one user per partition
+		expect(userDao.findFiltered(EasyMock.anyObject(), isNull(), eq(0), eq(1)))
+				.andReturn(new BasicFilterResults<>(asList(user1), 2L, 0, 1));
+		expect(userDao.findFiltered(EasyMock.anyObject(), isNull(), eq(1), eq(1)))
+				.andReturn(new BasicFilterResults<>(asList(user2), 2L, 1, 1));
+
+		// first partition fails
+		expect(invoicingSystem.invoicedThroughForUsers(aryEq(new Long[] { TEST_USER_ID })))
+				.andThrow(new RuntimeException("Test failure"));
+
+		// second partition still processed
+		final Account account = createAccount(otherUserId, "en_NZ",
+				createAddress("NZ", "Pacific/Auckland"));
+		expect(invoicingSystem.invoicedThroughForUsers(aryEq(new Long[] { otherUserId })))
+				.andReturn(asList(new AccountInvoicedThrough(account, null, null)));
+
+		final Capture<AccountTask> taskCaptor = new Capture<>();
+		expect(accountTaskDao.save(capture(taskCaptor))).andReturn(null);
+
+		// WHEN
+		replayAll();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			creator.setBatchSize(1);
+			creator.setExecutor(executor);
+			creator.setParallelism(2);
+			creator.createTasks(endDate);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// THEN
+		AccountTask task = taskCaptor.getValue();
+		assertThat("Task created", task, notNullValue());
+		assertThat("Task account", task.getAccountId(), equalTo(account.getId().getId()));
+		assertThat("Task date", task.getCreated(),
+				equalTo(endDate.atStartOfDay(account.getTimeZone()).minusMonths(1).toInstant()));
+	}
+
+	@Test
+	public void generateInvoiceGenerationTasks_batch() {
+		// GIVEN
+		final LocalDate endDate = LocalDate.of(2020, 1, 1);
+		final Long otherUserId = 2L;
+		final Long noAccountUserId = 3L;
+		final UserMatch user1 = new UserMatch(TEST_USER_ID, TEST_EMAIL);
+		final UserMatch user2 = new UserMatch(otherUserId, "other@localhost");
+		final UserMatch user3 = new UserMatch(noAccountUserId, "none@localhost");
+		final FilterResults<UserFilterMatch> userMatches = new BasicFilterResults<>(
+				asList(user1, user2, user3));
+
+		// find users configured with SNF billing
+		expect(userDao.findFiltered(EasyMock.anyObject(), isNull(), eq(0),
+				eq(InvoiceGenerationTaskCreator.DEFAULT_BATCH_SIZE))).andReturn(userMatches);
+
+		// get Account and latest invoice for all users with one query; first user up to date
+		final Account account1 = createAccount(TEST_USER_ID, "en_GB", createAddress("GB", "UTC"));
+		final Account account2 = createAccount(otherUserId, "en_GB", createAddress("GB", "UTC"));
+		expect(invoicingSystem.invoicedThroughForUsers(
+				aryEq(new Long[] { TEST_USER_ID, otherUserId, noAccountUserId })))
+						.andReturn(asList(new AccountInvoicedThrough(account1, endDate, "UTC"),
+								new AccountInvoicedThrough(account2, LocalDate.of(2019, 12, 1),
+										"UTC")));
+
+		// create task for second user only
+		final Capture<AccountTask> taskCaptor = new Capture<>();
+		expect(accountTaskDao.save(capture(taskCaptor))).andReturn(null);
+
+		// WHEN
+		replayAll();
+		creator.createTasks(endDate);
+
+		// THEN
+		AccountTask task = taskCaptor.getValue();
+		assertThat("Task created", task, notNullValue());
+		assertThat("Task account", task.getAccountId(), equalTo(account2.getId().getId()));
+		assertThat("Task date", task.getCreated(),
+				equalTo(endDate.atStartOfDay(account2.getTimeZone()).minusMonths(1).toInstant()));
+	}
+
 }
@@ -0,0 +1,128 @@
+/* ==================================================================
+ * NodeUsageAccrualJobTests.java - 18/10/2026 11:20:51 AM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.jobs.test;
+
+import static org.easymock.EasyMock.expect;
+import java.time.Instant;
+import java.time.LocalDate;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.EventAdmin;
+import net.solarnetwork.central.user.billing.snf.dao.NodeUsageAccrualDao;
+import net.solarnetwork.central.user.billing.snf.jobs.NodeUsageAccrualJob;
+
+/**
+ * Test cases for the {@link NodeUsageAccrualJob} class.
+ * 
+ * @author matt
+ * @version 1.1
+ */
+public class NodeUsageAccrualJobTests {
+
+	private EventAdmin eventAdmin;
+	private NodeUsageAccrualDao accrualDao;
+	private NodeUsageAccrualJob job;
+
+	@Before
+	public void setup() {
+		eventAdmin = EasyMock.createMock(EventAdmin.class);
+		accrualDao = EasyMock.createMock(NodeUsageAccrualDao.class);
+		job = new NodeUsageAccrualJob(eventAdmin, accrualDao);
+	}
+
+	private void replayAll() {
+		EasyMock.replay(eventAdmin, accrualDao);
+	}
+
+	@After
+	public void teardown() {
+		EasyMock.verify(eventAdmin, accrualDao);
+	}
+
+	@Test
+	public void accrue_firstTime() {
+		// GIVEN
+		final Instant now = Instant.parse("2021-07-04T12:00:00Z");
+		expect(accrualDao.findLatestAccrualDate()).andReturn(null);
+		for ( int i = 1; i < 5; i++ ) {
+			expect(accrualDao.accrueUsage(LocalDate.of(2021, 7, i), now)).andReturn(1);
+		}
+		expect(accrualDao.deleteAccruedUsageBefore(LocalDate.of(2021, 6, 1))).andReturn(0);
+
+		// WHEN
+		replayAll();
+		job.accrueUsage(now);
+	}
+
+	@Test
+	public void accrue_reaccrueRecentDays() {
+		// GIVEN
+		final Instant now = Instant.parse("2021-07-10T12:00:00Z");
+		expect(accrualDao.findLatestAccrualDate()).andReturn(LocalDate.of(2021, 7, 9));
+		for ( int i = 8; i < 11; i++ ) {
+			expect(accrualDao.accrueUsage(LocalDate.of(2021, 7, i), now)).andReturn(1);
+		}
+		expect(accrualDao.deleteAccruedUsageBefore(LocalDate.of(2021, 6, 1))).andReturn(0);
+
+		// WHEN
+		replayAll();
+		job.accrueUsage(now);
+	}
+
+	@Test
+	public void accrue_fillMissedDays() {
+		// GIVEN
+		final Instant now = Instant.parse("2021-07-10T12:00:00Z");
+		expect(accrualDao.findLatestAccrualDate()).andReturn(LocalDate.of(2021, 7, 5));
+		for ( int i = 4; i < 11; i++ ) {
+			expect(accrualDao.accrueUsage(LocalDate.of(2021, 7, i), now)).andReturn(1);
+		}
+		expect(accrualDao.deleteAccruedUsageBefore(LocalDate.of(2021, 6, 1))).andReturn(0);
+
+		// WHEN
+		replayAll();
+		job.accrueUsage(now);
+	}
+
+	@Test
+	public void accrue_accountZoneBehindUtc() {
+		// GIVEN
+		// 2021-07-10 in UTC, but still 2021-07-09 in America/Los_Angeles
+		final Instant now = Instant.parse("2021-07-10T02:00:00Z");
+		expect(accrualDao.findLatestAccrualDate()).andReturn(LocalDate.of(2021, 7, 8));
+
+		// days up to the day that has ended in the zone furthest ahead are passed to the DAO,
+		// which only accrues accounts whose zone has reached the end of the day
+		for ( int i = 7; i < 10; i++ ) {
+			expect(accrualDao.accrueUsage(LocalDate.of(2021, 7, i), now)).andReturn(1);
+		}
+		expect(accrualDao.deleteAccruedUsageBefore(LocalDate.of(2021, 6, 1))).andReturn(0);
+
+		// WHEN
+		replayAll();
+		job.accrueUsage(now);
+	}
+
+}
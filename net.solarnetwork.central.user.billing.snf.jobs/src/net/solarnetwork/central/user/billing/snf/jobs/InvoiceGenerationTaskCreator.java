@@ -27,8 +27,15 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import net.solarnetwork.central.domain.FilterResults;
@@ -37,9 +44,9 @@ import net.solarnetwork.central.user.billing.snf.SnfBillingSystem;
 import net.solarnetwork.central.user.billing.snf.SnfInvoicingSystem;
 import net.solarnetwork.central.user.billing.snf.dao.AccountTaskDao;
 import net.solarnetwork.central.user.billing.snf.domain.Account;
+import net.solarnetwork.central.user.billing.snf.domain.AccountInvoicedThrough;
 import net.solarnetwork.central.user.billing.snf.domain.AccountTask;
 import net.solarnetwork.central.user.billing.snf.domain.AccountTaskType;
-import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
 import net.solarnetwork.central.user.dao.UserDao;
 import net.solarnetwork.central.user.domain.UserFilterCommand;
 import net.solarnetwork.central.user.domain.UserFilterMatch;
@@ -48,14 +55,35 @@ import net.solarnetwork.central.user.domain.UserFilterMatch;
  * Create {@link AccountTask} entities for accounts that need to have invoices
  * generated.
  * 
+ * <p>
+ * Users are processed in partitions of up to {@code batchSize} users, each
+ * partition being one page of user results. By default partitions are
+ * processed sequentially on the calling thread. If an {@code executor} is
+ * configured and {@code parallelism} is greater than {@literal 1} then
+ * partitions are processed concurrently on the executor, with at most
+ * {@code parallelism} partitions in flight at once.
+ * </p>
+ * 
+ * <p>
+ * The billing accounts and the dates they have been invoiced through are
+ * resolved for all users in a partition with a single query.
+ * </p>
+ * 
  * @author matt
- * @version 1.0
+ * @version 1.2
  */
 public class InvoiceGenerationTaskCreator {
 
 	/** The default batch size. */
 	public static final int DEFAULT_BATCH_SIZE = 50;
 
+	/**
+	 * The default parallelism.
+	 * 
+	 * @since 1.1
+	 */
+	public static final int DEFAULT_PARALLELISM = 1;
+
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
 	private final UserDao userDao;
@@ -63,6 +91,8 @@ public class InvoiceGenerationTaskCreator {
 	private final SnfInvoicingSystem invoicingSystem;
 
 	private int batchSize = DEFAULT_BATCH_SIZE;
+	private ExecutorService executor;
+	private int parallelism = DEFAULT_PARALLELISM;
 
 	/**
 	 * Constructor.
@@ -107,28 +137,143 @@ public class InvoiceGenerationTaskCreator {
 				SnfBillingSystem.ACCOUNTING_SYSTEM_KEY);
 		UserFilterCommand criteria = new UserFilterCommand();
 		criteria.setInternalData(billingDataFilter);
+
+		final ExecutorService executor = this.executor;
+		final int parallelism = this.parallelism;
+		if ( executor != null && parallelism > 1 ) {
+			createTasksInParallel(criteria, endDate, executor, parallelism);
+			return;
+		}
+
+		final int max = this.batchSize;
+		int offset = 0;
+		int partition = 0;
+		FilterResults<UserFilterMatch> userResults;
+		do {
+			userResults = userDao.findFiltered(criteria, null, offset, max);
+			processPartition(++partition, offset, userResults, endDate);
+			offset += max;
+		} while ( hasMoreResults(userResults) );
+	}
+
+	private void createTasksInParallel(final UserFilterCommand criteria, final LocalDate endDate,
+			final ExecutorService executor, final int parallelism) {
+		final long start = System.currentTimeMillis();
+		final Semaphore permits = new Semaphore(parallelism);
+		final List<Future<Integer>> results = new ArrayList<>(8);
 		final int max = this.batchSize;
 		int offset = 0;
+		int partition = 0;
 		FilterResults<UserFilterMatch> userResults;
 		do {
 			userResults = userDao.findFiltered(criteria, null, offset, max);
+			final List<UserFilterMatch> users = new ArrayList<>(max);
 			for ( UserFilterMatch match : userResults ) {
+				users.add(match);
+			}
+			if ( !users.isEmpty() ) {
+				try {
+					permits.acquire();
+				} catch ( InterruptedException e ) {
+					log.warn("Interrupted creating invoice generation tasks after {} partitions.",
+							partition);
+					Thread.currentThread().interrupt();
+					break;
+				}
+				final int p = ++partition;
+				final int o = offset;
 				try {
-					processOneAccount(match, endDate);
-				} catch ( RuntimeException e ) {
-					// log error, but continue to next user
-					log.error("Error generating invoice for user {}", match.getEmail(), e);
+					results.add(executor.submit(() -> {
+						try {
+							return processPartition(p, o, users, endDate);
+						} finally {
+							permits.release();
+						}
+					}));
+				} catch ( RejectedExecutionException e ) {
+					permits.release();
+					throw e;
 				}
 			}
 			offset += max;
-		} while ( userResults.getStartingOffset() != null && userResults.getReturnedResultCount() != null
-				&& userResults.getTotalResults() != null && (userResults.getStartingOffset()
-						+ userResults.getReturnedResultCount() < userResults.getTotalResults()) );
+		} while ( hasMoreResults(userResults) );
+
+		int failureCount = 0;
+		for ( Future<Integer> f : results ) {
+			try {
+				failureCount += f.get();
+			} catch ( ExecutionException e ) {
+				log.error("Error processing invoice generation task partition", e.getCause());
+			} catch ( InterruptedException e ) {
+				log.warn("Interrupted waiting for invoice generation task partitions to complete.");
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		log.info(
+				"Processed {} invoice generation task partitions with {} parallelism and {} failures in {}ms",
+				results.size(), parallelism, failureCount, System.currentTimeMillis() - start);
+	}
+
+	private static boolean hasMoreResults(FilterResults<?> results) {
+		return (results.getStartingOffset() != null && results.getReturnedResultCount() != null
+				&& results.getTotalResults() != null && (results.getStartingOffset()
+						+ results.getReturnedResultCount() < results.getTotalResults()));
 	}
 
-	private void processOneAccount(final UserFilterMatch user, final LocalDate endDate) {
+	/**
+	 * Process one partition of users.
+	 * 
+	 * @param partition
+	 *        the partition number
+	 * @param offset
+	 *        the user result offset of the partition
+	 * @param users
+	 *        the users to process
+	 * @param endDate
+	 *        the end date
+	 * @return the number of users that failed to be processed
+	 */
+	private int processPartition(final int partition, final int offset,
+			final Iterable<UserFilterMatch> users, final LocalDate endDate) {
+		final long start = System.currentTimeMillis();
+		final List<UserFilterMatch> matches = new ArrayList<>(batchSize);
+		for ( UserFilterMatch match : users ) {
+			matches.add(match);
+		}
+		final int count = matches.size();
+		if ( count < 1 ) {
+			return 0;
+		}
+		int failureCount = 0;
+		final Map<Long, AccountInvoicedThrough> accounts;
+		try {
+			accounts = invoicedThroughForUsers(matches);
+		} catch ( RuntimeException e ) {
+			log.error(
+					"Error finding billing accounts for invoice generation task partition {} (offset {}) of {} users",
+					partition, offset, count, e);
+			return count;
+		}
+		for ( UserFilterMatch match : matches ) {
+			try {
+				processOneAccount(match, accounts.get(match.getId()), endDate);
+			} catch ( RuntimeException e ) {
+				// log error, but continue to next user
+				failureCount++;
+				log.error("Error generating invoice for user {}", match.getEmail(), e);
+			}
+		}
+		log.info(
+				"Processed invoice generation task partition {} (offset {}) of {} users with {} failures in {}ms",
+				partition, offset, count, failureCount, System.currentTimeMillis() - start);
+		return failureCount;
+	}
+
+	private void processOneAccount(final UserFilterMatch user,
+			final AccountInvoicedThrough invoicedThrough, final LocalDate endDate) {
 		// get billing account
-		final Account account = accountForUser(user);
+		final Account account = (invoicedThrough != null ? invoicedThrough.getAccount() : null);
 		if ( account == null ) {
 			log.error("Unable to generate invoices for user {} because billing account not available.",
 					user.getEmail());
@@ -149,8 +294,10 @@ public class InvoiceGenerationTaskCreator {
 		final ZonedDateTime invoiceEndDate = endDate.atStartOfDay(accountTimeZone);
 
 		// find up to what point in time invoicing has already been completed
-		final ZonedDateTime invoicedThroughDate = invoicedThroughDate(account,
-				invoiceEndDate.minusMonths(1));
+		ZonedDateTime invoicedThroughDate = invoicedThrough.getInvoicedThroughDate();
+		if ( invoicedThroughDate == null ) {
+			invoicedThroughDate = invoiceEndDate.minusMonths(1);
+		}
 		if ( !invoicedThroughDate.isBefore(invoiceEndDate) ) {
 			log.debug("User {} invoicing up to date, nothing further to do.", user.getEmail());
 			return;
@@ -170,21 +317,23 @@ public class InvoiceGenerationTaskCreator {
 		} while ( currInvoiceDate.isBefore(invoiceEndDate) );
 	}
 
-	private Account accountForUser(final UserFilterMatch user) {
-		return invoicingSystem.accountForUser(user.getId());
-	}
-
-	private ZonedDateTime invoicedThroughDate(Account account, ZonedDateTime initialInvoiceStartDate) {
-		SnfInvoice invoice = invoicingSystem.findLatestInvoiceForAccount(account.getId());
-		if ( invoice == null ) {
-			return initialInvoiceStartDate;
+	private Map<Long, AccountInvoicedThrough> invoicedThroughForUsers(
+			final List<UserFilterMatch> users) {
+		final Long[] userIds = new Long[users.size()];
+		for ( int i = 0; i < userIds.length; i++ ) {
+			userIds[i] = users.get(i).getId();
 		}
-		ZoneId zone = invoice.getTimeZone();
-		if ( zone == null ) {
-			throw new RuntimeException(
-					String.format("InvoiceImpl %s has no time zone available.", invoice.getId()));
+		final List<AccountInvoicedThrough> results = invoicingSystem.invoicedThroughForUsers(userIds);
+		final Map<Long, AccountInvoicedThrough> accounts = new HashMap<>(userIds.length);
+		if ( results != null ) {
+			for ( AccountInvoicedThrough r : results ) {
+				Account account = r.getAccount();
+				if ( account != null && account.getUserId() != null ) {
+					accounts.put(account.getUserId(), r);
+				}
+			}
 		}
-		return invoice.getEndDate().atStartOfDay(zone);
+		return accounts;
 	}
 
 	/**
@@ -203,4 +352,59 @@ public class InvoiceGenerationTaskCreator {
 		this.batchSize = batchSize;
 	}
 
+	/**
+	 * Get the executor to process user partitions with.
+	 * 
+	 * @return the executor, or {@literal null} to process partitions
+	 *         sequentially on the calling thread
+	 * @since 1.1
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Set the executor to process user partitions with.
+	 * 
+	 * <p>
+	 * This is only used if {@link #setParallelism(int)} is greater than
+	 * {@literal 1}.
+	 * </p>
+	 * 
+	 * @param executor
+	 *        the executor to set, or {@literal null} to process partitions
+	 *        sequentially on the calling thread
+	 * @since 1.1
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Get the maximum number of user partitions to process concurrently.
+	 * 
+	 * @return the parallelism; defaults to {@link #DEFAULT_PARALLELISM}
+	 * @since 1.1
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Set the maximum number of user partitions to process concurrently.
+	 * 
+	 * <p>
+	 * Each partition contains up to {@code batchSize} users. Values greater
+	 * than {@literal 1} enable parallel processing, as long as an
+	 * {@code executor} is also configured.
+	 * </p>
+	 * 
+	 * @param parallelism
+	 *        the parallelism to set
+	 * @since 1.1
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
 }
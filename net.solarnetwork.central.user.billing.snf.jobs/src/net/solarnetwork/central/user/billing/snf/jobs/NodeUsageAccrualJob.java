@@ -0,0 +1,193 @@
+/* ==================================================================
+ * NodeUsageAccrualJob.java - 18/10/2026 11:02:37 AM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.jobs;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+import net.solarnetwork.central.scheduler.JobSupport;
+import net.solarnetwork.central.user.billing.snf.dao.NodeUsageAccrualDao;
+
+/**
+ * Job to accrue daily node usage, so month-to-date usage can be calculated
+ * without re-scanning the entire month.
+ * 
+ * <p>
+ * Each execution accrues the usage for the {@code accrualDays} days before the
+ * current day, re-accruing those days to pick up any late-arriving usage. If
+ * the job has not run for longer than that, all days following the latest
+ * accrued day are accrued as well, so that the accrued days are always
+ * contiguous. The current day is never accrued, as its usage is still
+ * accumulating.
+ * </p>
+ * 
+ * <p>
+ * Days are relative to each account's time zone: at any given instant the
+ * current day differs between accounts, so each execution considers every day
+ * that has ended in at least one time zone, and the DAO only accrues a day for
+ * the accounts whose time zone has passed the end of that day.
+ * </p>
+ * 
+ * @author matt
+ * @version 1.1
+ * @since 1.1
+ */
+public class NodeUsageAccrualJob extends JobSupport {
+
+	/** The default {@code accrualDays} property value. */
+	public static final int DEFAULT_ACCRUAL_DAYS = 2;
+
+	/** The default {@code retainMonths} property value. */
+	public static final int DEFAULT_RETAIN_MONTHS = 1;
+
+	/** The offset of the time zone furthest behind UTC. */
+	private static final ZoneOffset EARLIEST_OFFSET = ZoneOffset.ofHours(-12);
+
+	/** The offset of the time zone furthest ahead of UTC. */
+	private static final ZoneOffset LATEST_OFFSET = ZoneOffset.ofHours(14);
+
+	private final NodeUsageAccrualDao accrualDao;
+	private int accrualDays = DEFAULT_ACCRUAL_DAYS;
+	private int retainMonths = DEFAULT_RETAIN_MONTHS;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param eventAdmin
+	 *        the event admin
+	 * @param accrualDao
+	 *        the accrual DAO
+	 * @throws IllegalArgumentException
+	 *         if {@code accrualDao} is {@literal null}
+	 */
+	public NodeUsageAccrualJob(EventAdmin eventAdmin, NodeUsageAccrualDao accrualDao) {
+		super(eventAdmin);
+		if ( accrualDao == null ) {
+			throw new IllegalArgumentException("The accrualDao argument must be provided.");
+		}
+		this.accrualDao = accrualDao;
+		setJobGroup("Billing");
+	}
+
+	@Override
+	protected boolean handleJob(Event job) throws Exception {
+		accrueUsage(Instant.now());
+		return true;
+	}
+
+	/**
+	 * Accrue usage for the days that have ended as of a given instant.
+	 * 
+	 * <p>
+	 * The days up to the current day in the time zone furthest ahead of UTC
+	 * are accrued, with each account only accrued for the days that have ended
+	 * in its own time zone. The re-accrual window and retention period are
+	 * relative to the current day in the time zone furthest behind UTC, so
+	 * every account has its most recent days re-accrued.
+	 * </p>
+	 * 
+	 * @param now
+	 *        the current instant
+	 */
+	public void accrueUsage(Instant now) {
+		final LocalDate today = now.atOffset(EARLIEST_OFFSET).toLocalDate();
+		final LocalDate end = now.atOffset(LATEST_OFFSET).toLocalDate();
+		final LocalDate monthStart = today.withDayOfMonth(1);
+		final LocalDate oldest = monthStart.minusMonths(retainMonths);
+		LocalDate day = today.minusDays(Math.max(1, accrualDays));
+		LocalDate latest = accrualDao.findLatestAccrualDate();
+		if ( latest == null ) {
+			// nothing accrued yet, so start at the beginning of the month
+			day = monthStart;
+		} else if ( latest.minusDays(1).isBefore(day) ) {
+			// fill in any days missed since the last accrual; the latest day comes from the
+			// accounts furthest ahead, which other accounts can lag by up to two days
+			day = latest.minusDays(1);
+		}
+		if ( day.isBefore(oldest) ) {
+			day = oldest;
+		}
+		for ( ; day.isBefore(end); day = day.plusDays(1) ) {
+			long start = System.currentTimeMillis();
+			int count = accrualDao.accrueUsage(day, now);
+			log.info("Accrued {} node usage records for day {} in {}ms", count, day,
+					System.currentTimeMillis() - start);
+		}
+		int deleted = accrualDao.deleteAccruedUsageBefore(oldest);
+		if ( deleted > 0 ) {
+			log.info("Deleted {} accrued node usage records older than {}", deleted, oldest);
+		}
+	}
+
+	/**
+	 * Get the number of days to accrue.
+	 * 
+	 * @return the number of days; defaults to {@link #DEFAULT_ACCRUAL_DAYS}
+	 */
+	public int getAccrualDays() {
+		return accrualDays;
+	}
+
+	/**
+	 * Set the number of days to accrue.
+	 * 
+	 * <p>
+	 * This is the number of days before the current day to accrue on each job
+	 * execution. Values larger than {@literal 1} allow usage that arrives late
+	 * to be accrued.
+	 * </p>
+	 * 
+	 * @param accrualDays
+	 *        the number of days to set
+	 */
+	public void setAccrualDays(int accrualDays) {
+		this.accrualDays = accrualDays;
+	}
+
+	/**
+	 * Get the number of months of accrued usage to retain.
+	 * 
+	 * @return the number of months; defaults to {@link #DEFAULT_RETAIN_MONTHS}
+	 */
+	public int getRetainMonths() {
+		return retainMonths;
+	}
+
+	/**
+	 * Set the number of months of accrued usage to retain.
+	 * 
+	 * <p>
+	 * Accrued usage older than this many months before the start of the
+	 * current month will be deleted.
+	 * </p>
+	 * 
+	 * @param retainMonths
+	 *        the number of months to set
+	 */
+	public void setRetainMonths(int retainMonths) {
+		this.retainMonths = retainMonths;
+	}
+
+}
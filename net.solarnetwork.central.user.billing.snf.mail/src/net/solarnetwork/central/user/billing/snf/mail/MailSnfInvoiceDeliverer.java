@@ -23,11 +23,15 @@
 package net.solarnetwork.central.user.billing.snf.mail;
 
 import static java.lang.String.format;
+import static java.util.Arrays.asList;
 import static java.util.Collections.singleton;
+import static java.util.Collections.unmodifiableList;
 import static org.springframework.util.FileCopyUtils.copyToString;
 import java.io.InputStreamReader;
 import java.time.YearMonth;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import org.springframework.context.MessageSource;
@@ -50,7 +54,7 @@ import net.solarnetwork.domain.Result;
  * Deliver invoices by mail.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  */
 public class MailSnfInvoiceDeliverer extends BaseStringIdentity implements SnfInvoiceDeliverer {
 
@@ -58,6 +62,9 @@ public class MailSnfInvoiceDeliverer extends BaseStringIdentity implements SnfIn
 
 	private static final MimeType APPLICATION_PDF = MimeType.valueOf("application/pdf");
 
+	private static final List<MimeType> OUTPUT_TYPES = unmodifiableList(
+			asList(MimeTypeUtils.TEXT_HTML, APPLICATION_PDF));
+
 	private final SnfInvoicingSystem invoicingSystem;
 	private final MailService mailService;
 	private final Executor executor;
@@ -104,9 +111,10 @@ public class MailSnfInvoiceDeliverer extends BaseStringIdentity implements SnfIn
 					Locale locale = account.locale();
 
 					// TODO: allow output type to be specified via configuration; for now assume HTML
-					Resource content = invoicingSystem.renderInvoice(invoice, MimeTypeUtils.TEXT_HTML,
-							locale);
-					Resource pdf = invoicingSystem.renderInvoice(invoice, APPLICATION_PDF, locale);
+					Map<MimeType, Resource> rendered = invoicingSystem.renderInvoice(invoice,
+							OUTPUT_TYPES, locale);
+					Resource content = rendered.get(MimeTypeUtils.TEXT_HTML);
+					Resource pdf = rendered.get(APPLICATION_PDF);
 
 					// TODO: allow rendering to attachment
 					BasicMailAddress to = new BasicMailAddress(account.getAddress().getName(),
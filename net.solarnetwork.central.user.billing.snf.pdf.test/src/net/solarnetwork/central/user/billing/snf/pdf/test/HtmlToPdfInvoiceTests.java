@@ -66,7 +66,7 @@ import net.solarnetwork.support.TemplateRenderer;
  * Test to render a PDF from HTML.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  */
 public class HtmlToPdfInvoiceTests {
 
@@ -185,6 +185,26 @@ public class HtmlToPdfInvoiceTests {
 		};
 	}
 
+	@Test
+	public void renderHtml() throws IOException {
+		// GIVEN
+		final String html = FileCopyUtils.copyToString(new InputStreamReader(
+				getClass().getResourceAsStream("test-01.html"), HtmlToPdfTemplateRenderer.UTF8));
+		HtmlToPdfTemplateRenderer t = new HtmlToPdfTemplateRenderer(htmlRenderer("test-02.html"));
+
+		// WHEN
+		Path tmpFile = Files.createTempFile("HtmlToPdfInvoiceTests-HTML-", ".pdf");
+		try (BufferedOutputStream out = new BufferedOutputStream(
+				new FileOutputStream(tmpFile.toFile()))) {
+			t.renderHtml(Locale.ENGLISH, HtmlToPdfTemplateRenderer.PDF_MIME_TYPE, html, out);
+		}
+
+		// THEN
+		assertThat(String.format("PDF generated to temp file %s", tmpFile), Files.size(tmpFile),
+				greaterThan(0L));
+		log.info("PDF generated at {}", tmpFile);
+	}
+
 	@Test
 	public void render_withFloats() throws IOException {
 		// GIVEN
@@ -0,0 +1,232 @@
+/* ==================================================================
+ * PdfRenderingEngineTests.java - 18/10/2026 5:41:09 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.pdf.test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.FileCopyUtils;
+import net.solarnetwork.central.user.billing.snf.pdf.PdfRenderingEngine;
+
+/**
+ * Test cases for the {@link PdfRenderingEngine} class.
+ * 
+ * @author matt
+ * @version 1.0
+ */
+public class PdfRenderingEngineTests {
+
+	private static final String SVG = "<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 20 20\">"
+			+ "<text x=\"1\" y=\"15\">1+1 &amp; 50%</text></svg>";
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	private String html;
+
+	@Before
+	public void setup() throws IOException {
+		html = FileCopyUtils.copyToString(new InputStreamReader(
+				getClass().getResourceAsStream("test-02.html"), StandardCharsets.UTF_8));
+	}
+
+	private static byte[] render(PdfRenderingEngine engine, String html) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+		engine.render(html, out);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void init_warmUpExcludedFromStatistics() throws IOException {
+		// GIVEN
+		PdfRenderingEngine engine = new PdfRenderingEngine();
+
+		// WHEN
+		engine.init();
+
+		// THEN
+		assertThat("Warm up not counted", engine.getRenderCount(), equalTo(0L));
+	}
+
+	@Test
+	public void render_reuseEngine() throws IOException {
+		// GIVEN
+		PdfRenderingEngine engine = new PdfRenderingEngine();
+		engine.setWarmUpCount(0);
+		engine.init();
+
+		// WHEN
+		byte[] pdf1 = render(engine, html);
+		byte[] pdf2 = render(engine, html);
+
+		// THEN
+		assertThat("PDF 1 rendered", pdf1.length, greaterThan(0));
+		assertThat("PDF 2 rendered", pdf2.length, greaterThan(0));
+		assertThat("Render count", engine.getRenderCount(), equalTo(2L));
+		assertThat("Max render time", engine.getRenderTotalMillis(),
+				greaterThanOrEqualTo(engine.getRenderMaxMillis()));
+	}
+
+	@Test
+	public void render_concurrent() throws Exception {
+		// GIVEN
+		final int count = 8;
+		PdfRenderingEngine engine = new PdfRenderingEngine("file:///tmp", 2);
+		engine.init();
+
+		// WHEN
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<byte[]>> results = new ArrayList<>(count);
+		try {
+			for ( int i = 0; i < count; i++ ) {
+				results.add(executor.submit(() -> render(engine, html)));
+			}
+
+			// THEN
+			for ( Future<byte[]> f : results ) {
+				assertThat("PDF rendered", f.get().length, greaterThan(0));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertThat("Render count", engine.getRenderCount(), equalTo((long) count));
+	}
+
+	@Test
+	public void render_withStylesheet() throws IOException {
+		// GIVEN
+		Path css = Files.createTempFile("PdfRenderingEngineTests-", ".css");
+		try {
+			Files.write(css, "body { margin: 2cm; color: #333; }".getBytes(StandardCharsets.UTF_8));
+			PdfRenderingEngine engine = new PdfRenderingEngine();
+			engine.setStylesheets(css.toString());
+			engine.init();
+
+			// WHEN
+			byte[] pdf = render(engine, html);
+
+			// THEN
+			assertThat("PDF rendered", pdf.length, greaterThan(0));
+		} finally {
+			Files.deleteIfExists(css);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void init_badFont() throws IOException {
+		// GIVEN
+		PdfRenderingEngine engine = new PdfRenderingEngine();
+		engine.setFonts("/no/family/given.ttf");
+
+		// WHEN
+		engine.init();
+	}
+
+	private static String urlEncodedSvgDataUri() {
+		return "data:image/svg+xml," + SVG.replace("%", "%25").replace("<", "%3C")
+				.replace(">", "%3E").replace("\"", "%22").replace("#", "%23");
+	}
+
+	@Test
+	public void inlineSvgDataImages_urlEncoded() {
+		// GIVEN
+		Document doc = Jsoup.parse("<html><body><p><img class=\"logo\" src=\""
+				+ urlEncodedSvgDataUri() + "\"></p></body></html>");
+
+		// WHEN
+		int count = PdfRenderingEngine.inlineSvgDataImages(doc);
+
+		// THEN
+		assertThat("Image replaced", count, equalTo(1));
+		assertThat("No images remain", doc.select("img"), hasSize(0));
+		Element svg = doc.selectFirst("p > svg");
+		assertThat("Image attribute copied to SVG", svg.attr("class"), equalTo("logo"));
+		assertThat("SVG attribute case preserved", svg.attr("viewBox"), equalTo("0 0 20 20"));
+		assertThat("SVG text decoded", svg.selectFirst("text").text(), equalTo("1+1 & 50%"));
+	}
+
+	@Test
+	public void inlineSvgDataImages_base64() {
+		// GIVEN
+		String data = Base64.getEncoder().encodeToString(SVG.getBytes(StandardCharsets.UTF_8));
+		Document doc = Jsoup.parse("<html><body><img src=\"data:image/svg+xml;base64," + data
+				+ "\"><img src=\"data:image/svg+xml;base64,!!\"></body></html>");
+
+		// WHEN
+		int count = PdfRenderingEngine.inlineSvgDataImages(doc);
+
+		// THEN
+		assertThat("Valid image replaced", count, equalTo(1));
+		assertThat("SVG inlined", doc.select("body > svg"), hasSize(1));
+		assertThat("Invalid image left unchanged", doc.select("img"), hasSize(1));
+	}
+
+	@Test
+	public void render_manySvgImages() throws IOException {
+		// GIVEN
+		final int count = 200;
+		StringBuilder buf = new StringBuilder("<html><body>");
+		for ( int i = 0; i < count; i++ ) {
+			buf.append("<p>Chart ").append(i).append("</p><img src=\"").append(urlEncodedSvgDataUri())
+					.append("\">");
+		}
+		buf.append("</body></html>");
+		final String html = buf.toString();
+		PdfRenderingEngine engine = new PdfRenderingEngine();
+		engine.init();
+
+		// WHEN
+		long start = System.nanoTime();
+		Document doc = Jsoup.parse(html);
+		int inlined = PdfRenderingEngine.inlineSvgDataImages(doc);
+		long inlineNanos = System.nanoTime() - start;
+		byte[] pdf = render(engine, html);
+
+		// THEN
+		assertThat("All images inlined", inlined, equalTo(count));
+		assertThat("PDF rendered", pdf.length, greaterThan(0));
+		log.info("Inlined {} SVG images ({} HTML chars) in {}ms; rendered PDF in {}ms", count,
+				html.length(), inlineNanos / 1000000, engine.getRenderTotalMillis());
+	}
+
+}
@@ -33,25 +33,55 @@ import net.solarnetwork.support.TemplateRenderer;
  * {@link SnfInvoiceRendererResolver} that resolves
  * {@link HtmlToPdfTemplateRenderer} instances.
  * 
+ * <p>
+ * All resolved renderers share a single {@link PdfRenderingEngine}.
+ * </p>
+ * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  */
 public class HtmlToPdfSnfInvoiceRendererResolver implements SnfInvoiceRendererResolver {
 
+	/** The ID used for resolved renderers. */
+	public static final String RENDERER_ID = HtmlToPdfTemplateRenderer.class.getName();
+
 	private final SnfInvoiceRendererResolver htmlRendererResolver;
+	private final PdfRenderingEngine engine;
 
 	/**
 	 * Constructor.
 	 * 
+	 * <p>
+	 * A default {@link PdfRenderingEngine} will be used.
+	 * </p>
+	 * 
 	 * @param htmlRendererResolver
 	 *        the renderer resolver for HTML output
 	 */
 	public HtmlToPdfSnfInvoiceRendererResolver(SnfInvoiceRendererResolver htmlRendererResolver) {
+		this(htmlRendererResolver, new PdfRenderingEngine());
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param htmlRendererResolver
+	 *        the renderer resolver for HTML output
+	 * @param engine
+	 *        the PDF rendering engine
+	 * @since 1.1
+	 */
+	public HtmlToPdfSnfInvoiceRendererResolver(SnfInvoiceRendererResolver htmlRendererResolver,
+			PdfRenderingEngine engine) {
 		super();
 		if ( htmlRendererResolver == null ) {
 			throw new IllegalArgumentException("The htmlRendererResolver argument must be provided.");
 		}
 		this.htmlRendererResolver = htmlRendererResolver;
+		if ( engine == null ) {
+			throw new IllegalArgumentException("The engine argument must be provided.");
+		}
+		this.engine = engine;
 	}
 
 	@Override
@@ -64,7 +94,7 @@ public class HtmlToPdfSnfInvoiceRendererResolver implements SnfInvoiceRendererRe
 		if ( renderer == null || !renderer.supportsMimeType(MimeTypeUtils.TEXT_HTML) ) {
 			return null;
 		}
-		return new HtmlToPdfTemplateRenderer(renderer);
+		return new HtmlToPdfTemplateRenderer(RENDERER_ID, renderer, engine);
 	}
 
 }
@@ -26,22 +26,14 @@ import static java.util.Collections.singletonList;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.net.URLDecoder;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import org.jsoup.Jsoup;
-import org.jsoup.helper.W3CDom;
 import org.springframework.util.MimeType;
 import org.springframework.util.MimeTypeUtils;
-import org.w3c.dom.Document;
-import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
-import com.openhtmltopdf.slf4j.Slf4jLogger;
-import com.openhtmltopdf.svgsupport.BatikSVGDrawer;
-import com.openhtmltopdf.util.XRLog;
+import net.solarnetwork.central.user.billing.snf.HtmlDerivedTemplateRenderer;
 import net.solarnetwork.domain.BasicIdentity;
 import net.solarnetwork.support.TemplateRenderer;
 
@@ -49,10 +41,21 @@ import net.solarnetwork.support.TemplateRenderer;
  * {@link TemplateRenderer} that takes the UTF-8 encoded HTML output of another
  * renderer and transforms that to PDF.
  * 
+ * <p>
+ * HTML that has already been rendered can be transformed to PDF directly via
+ * {@link #renderHtml(Locale, MimeType, String, OutputStream)}.
+ * </p>
+ * 
+ * <p>
+ * The PDF is rendered by a {@link PdfRenderingEngine}, which can be shared by
+ * any number of renderer instances.
+ * </p>
+ * 
  * @author matt
- * @version 1.0
+ * @version 1.2
  */
-public class HtmlToPdfTemplateRenderer extends BasicIdentity<String> implements TemplateRenderer {
+public class HtmlToPdfTemplateRenderer extends BasicIdentity<String>
+		implements HtmlDerivedTemplateRenderer {
 
 	/** The UTF-8 character set. */
 	public static final Charset UTF8 = Charset.forName("UTF-8");
@@ -73,17 +76,16 @@ public class HtmlToPdfTemplateRenderer extends BasicIdentity<String> implements
 	 * Has two matching groups: first one matches optional attributes before the
 	 * <code>src</code> attribute. The second matches the SVG content.
 	 * </p>
+	 * 
+	 * @deprecated since 1.2 SVG images are inlined in the parsed HTML document
+	 *             by {@link PdfRenderingEngine#inlineSvgDataImages(org.jsoup.nodes.Document)}
 	 */
+	@Deprecated
 	public static final Pattern SVG_DATA_IMG_PAT = Pattern
 			.compile("<img([^>]*) src=\"data:image/svg\\+xml,%3Csvg(.*)svg%3E\">(?:</img>)?");
 
-	static {
-		XRLog.setLoggerImpl(new Slf4jLogger());
-	}
-
 	private final TemplateRenderer htmlRenderer;
-	private final String baseUri;
-	private final W3CDom w3cDom;
+	private final PdfRenderingEngine engine;
 
 	/**
 	 * Constructor.
@@ -128,16 +130,31 @@ public class HtmlToPdfTemplateRenderer extends BasicIdentity<String> implements
 	 *        the HTML renderer
 	 */
 	public HtmlToPdfTemplateRenderer(String id, String baseUri, TemplateRenderer htmlRenderer) {
+		this(id, htmlRenderer, new PdfRenderingEngine(baseUri, 1));
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param id
+	 *        the identifier
+	 * @param htmlRenderer
+	 *        the HTML renderer
+	 * @param engine
+	 *        the PDF rendering engine
+	 * @since 1.2
+	 */
+	public HtmlToPdfTemplateRenderer(String id, TemplateRenderer htmlRenderer,
+			PdfRenderingEngine engine) {
 		super(id);
-		if ( baseUri == null ) {
-			throw new IllegalArgumentException("The baseUri argument must be provided.");
-		}
-		this.baseUri = baseUri;
 		if ( htmlRenderer == null ) {
 			throw new IllegalArgumentException("The htmlRenderer argument must be provided.");
 		}
 		this.htmlRenderer = htmlRenderer;
-		this.w3cDom = new W3CDom();
+		if ( engine == null ) {
+			throw new IllegalArgumentException("The engine argument must be provided.");
+		}
+		this.engine = engine;
 	}
 
 	@Override
@@ -156,44 +173,23 @@ public class HtmlToPdfTemplateRenderer extends BasicIdentity<String> implements
 		// render HTML to memory
 		try (ByteArrayOutputStream byos = new ByteArrayOutputStream(8192)) {
 			htmlRenderer.render(locale, MimeTypeUtils.TEXT_HTML, parameters, byos);
-			String html = new String(byos.toByteArray(), UTF8);
-			html = replaceImgDataSvg(html);
-			renderPdf(html, out);
-			out.flush();
-			out.close();
+			// decode directly from the buffer, to avoid another copy of the HTML
+			String html = byos.toString(UTF8.name());
+			renderHtml(locale, mimeType, html, out);
 		}
 	}
 
-	private void renderPdf(String html, OutputStream out) throws IOException {
-		org.jsoup.nodes.Document html5Doc = Jsoup.parse(html, baseUri);
-		Document doc = w3cDom.fromJsoup(html5Doc);
-		PdfRendererBuilder builder = new PdfRendererBuilder();
-		builder.useFastMode();
-		builder.withW3cDocument(doc, baseUri);
-		builder.toStream(out);
-		builder.useSVGDrawer(new BatikSVGDrawer());
-		builder.run();
-	}
-
-	private String replaceImgDataSvg(String html) throws IOException {
-		if ( html == null ) {
-			return null;
-		}
-		StringBuilder buf = new StringBuilder(html.length());
-		Matcher m = SVG_DATA_IMG_PAT.matcher(html);
-		int pos = 0;
-		while ( m.find(pos) ) {
-			buf.append(html.substring(pos, m.start()));
-			buf.append("<svg");
-			buf.append(m.group(1));
-			buf.append(URLDecoder.decode(m.group(2), UTF8.name()));
-			buf.append("svg>");
-			pos = m.end();
-		}
-		if ( pos < html.length() ) {
-			buf.append(html.subSequence(pos, html.length()));
-		}
-		return buf.toString();
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @since 1.1
+	 */
+	@Override
+	public void renderHtml(Locale locale, MimeType mimeType, String html, OutputStream out)
+			throws IOException {
+		engine.render(html, out);
+		out.flush();
+		out.close();
 	}
 
 }
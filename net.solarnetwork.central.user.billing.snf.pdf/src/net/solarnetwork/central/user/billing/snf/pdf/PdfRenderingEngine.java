@@ -0,0 +1,537 @@
+/* ==================================================================
+ * PdfRenderingEngine.java - 18/10/2026 5:12:44 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.pdf;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.unmodifiableMap;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jsoup.Jsoup;
+import org.jsoup.helper.W3CDom;
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+import org.w3c.dom.Document;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import com.openhtmltopdf.slf4j.Slf4jLogger;
+import com.openhtmltopdf.svgsupport.BatikSVGDrawer;
+import com.openhtmltopdf.util.XRLog;
+
+/**
+ * Long-lived, thread-safe HTML to PDF rendering engine.
+ * 
+ * <p>
+ * The engine keeps a pool of rendering contexts, each with a jsoup to W3C DOM
+ * converter and an SVG drawer, so these are created once and then reused for
+ * each PDF rendered. A context is used by only one thread at a time. Any
+ * configured fonts and stylesheets are loaded into memory once by
+ * {@link #init()}; the fonts are registered with every PDF and the
+ * stylesheets are added to the start of the HTML {@literal head} of every
+ * document, so styles in the document itself take precedence.
+ * </p>
+ * 
+ * <p>
+ * HTML <code>&lt;img src="data:image/svg+xml,..."&gt;</code> elements are
+ * replaced by their SVG content in the parsed document, so they are rendered
+ * into the PDF as vector graphics. See {@link #inlineSvgDataImages(org.jsoup.nodes.Document)}.
+ * </p>
+ * 
+ * <p>
+ * Calling {@link #init()} also warms up the engine by rendering a small
+ * document with text and SVG content, so the class loading and font setup
+ * costs are paid at startup rather than by the first invoice rendered.
+ * </p>
+ * 
+ * <p>
+ * Render latency statistics are maintained and can be read via
+ * {@link #getRenderCount()}, {@link #getRenderAverageMillis()}, and
+ * {@link #getRenderMaxMillis()}. A summary of the statistics is also logged
+ * at {@literal INFO} level every {@code statisticsLogFrequency} renders.
+ * </p>
+ * 
+ * @author matt
+ * @version 1.1
+ * @since 1.2
+ */
+public class PdfRenderingEngine {
+
+	/** The default {@code poolSize} property value. */
+	public static final int DEFAULT_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+	/** The data URI prefix for SVG images. */
+	public static final String SVG_DATA_URI_PREFIX = "data:image/svg+xml";
+
+	/** The default {@code warmUpCount} property value. */
+	public static final int DEFAULT_WARM_UP_COUNT = 2;
+
+	/**
+	 * The default {@code statisticsLogFrequency} property value.
+	 * 
+	 * @since 1.1
+	 */
+	public static final int DEFAULT_STATISTICS_LOG_FREQUENCY = 100;
+
+	/** The HTML rendered to warm up the engine. */
+	// @formatter:off
+	private static final String WARM_UP_HTML = "<!DOCTYPE html><html><head>"
+			+ "<style>body { font-family: sans-serif; } td { text-align: right; }</style>"
+			+ "</head><body><h1>Warm up</h1>"
+			+ "<table><tr><th>Item</th><td>1,234.56</td></tr></table>"
+			+ "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"20\" height=\"20\" viewBox=\"0 0 20 20\">"
+			+ "<circle cx=\"10\" cy=\"10\" r=\"8\" fill=\"#333\"/></svg>"
+			+ "</body></html>";
+	// @formatter:on
+
+	static {
+		XRLog.setLoggerImpl(new Slf4jLogger());
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(PdfRenderingEngine.class);
+
+	private final String baseUri;
+	private final BlockingQueue<RenderContext> contexts;
+	private int warmUpCount = DEFAULT_WARM_UP_COUNT;
+	private int statisticsLogFrequency = DEFAULT_STATISTICS_LOG_FREQUENCY;
+	private String fonts;
+	private String stylesheets;
+
+	private volatile Map<String, byte[]> fontData = emptyMap();
+	private volatile String stylesheetData;
+
+	private final AtomicLong renderCount = new AtomicLong(0);
+	private final AtomicLong renderNanos = new AtomicLong(0);
+	private final AtomicLong renderMaxNanos = new AtomicLong(0);
+
+	/**
+	 * The resources used to render one PDF at a time.
+	 */
+	private static final class RenderContext {
+
+		private final W3CDom w3cDom = new W3CDom();
+		private final BatikSVGDrawer svgDrawer = new BatikSVGDrawer();
+
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * <p>
+	 * The {@code baseUri} value will be set to the system temp directory and
+	 * the {@code poolSize} to {@link #DEFAULT_POOL_SIZE}.
+	 * </p>
+	 */
+	public PdfRenderingEngine() {
+		this("file://" + System.getProperty("java.io.tmpdir"), DEFAULT_POOL_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param baseUri
+	 *        the base URI to use when parsing HTML
+	 * @param poolSize
+	 *        the maximum number of idle rendering contexts to keep for reuse
+	 * @throws IllegalArgumentException
+	 *         if {@code baseUri} is {@literal null} or {@code poolSize} is less
+	 *         than {@literal 1}
+	 */
+	public PdfRenderingEngine(String baseUri, int poolSize) {
+		super();
+		if ( baseUri == null ) {
+			throw new IllegalArgumentException("The baseUri argument must be provided.");
+		}
+		if ( poolSize < 1 ) {
+			throw new IllegalArgumentException("The poolSize argument must be at least 1.");
+		}
+		this.baseUri = baseUri;
+		this.contexts = new ArrayBlockingQueue<>(poolSize);
+	}
+
+	/**
+	 * Load the configured fonts and stylesheets and warm up the engine.
+	 * 
+	 * <p>
+	 * Errors warming up the engine are logged but otherwise ignored.
+	 * </p>
+	 * 
+	 * @throws IOException
+	 *         if any configured font or stylesheet cannot be loaded
+	 */
+	public void init() throws IOException {
+		loadResources();
+		warmUp();
+	}
+
+	private void loadResources() throws IOException {
+		Map<String, byte[]> fd = new LinkedHashMap<>(4);
+		for ( String font : StringUtils.commaDelimitedListToStringArray(fonts) ) {
+			if ( !StringUtils.hasText(font) ) {
+				continue;
+			}
+			String[] familyPath = StringUtils.split(font.trim(), "=");
+			if ( familyPath == null ) {
+				throw new IllegalArgumentException(
+						"The font [" + font + "] must be in the form family=path.");
+			}
+			byte[] data = Files.readAllBytes(Paths.get(familyPath[1].trim()));
+			fd.put(familyPath[0].trim(), data);
+			log.info("Loaded PDF font {} ({} bytes) from {}", familyPath[0].trim(), data.length,
+					familyPath[1].trim());
+		}
+		StringBuilder css = new StringBuilder();
+		for ( String path : StringUtils.commaDelimitedListToStringArray(stylesheets) ) {
+			if ( !StringUtils.hasText(path) ) {
+				continue;
+			}
+			css.append(new String(Files.readAllBytes(Paths.get(path.trim())),
+					StandardCharsets.UTF_8)).append('\n');
+			log.info("Loaded PDF stylesheet {}", path.trim());
+		}
+		this.fontData = (fd.isEmpty() ? emptyMap() : unmodifiableMap(fd));
+		this.stylesheetData = (css.length() > 0 ? css.toString() : null);
+	}
+
+	/**
+	 * Warm up the engine by rendering {@code warmUpCount} small documents.
+	 * 
+	 * <p>
+	 * The warm up renders are not included in the render statistics.
+	 * </p>
+	 */
+	public void warmUp() {
+		final long start = System.nanoTime();
+		int count = 0;
+		try {
+			for ( ; count < warmUpCount; count++ ) {
+				renderPdf(WARM_UP_HTML, NullOutputStream.INSTANCE);
+			}
+			log.info("PDF rendering engine warmed up with {} renders in {}ms", count,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		} catch ( IOException | RuntimeException e ) {
+			log.warn("Error warming up PDF rendering engine: {}", e.toString(), e);
+		}
+	}
+
+	/**
+	 * Render HTML as PDF.
+	 * 
+	 * <p>
+	 * The output stream is not closed.
+	 * </p>
+	 * 
+	 * @param html
+	 *        the HTML to render
+	 * @param out
+	 *        the destination for the PDF
+	 * @throws IOException
+	 *         if any IO error occurs
+	 */
+	public void render(String html, OutputStream out) throws IOException {
+		final long start = System.nanoTime();
+		renderPdf(html, out);
+		final long nanos = System.nanoTime() - start;
+		final long count = renderCount.incrementAndGet();
+		final long total = renderNanos.addAndGet(nanos);
+		renderMaxNanos.accumulateAndGet(nanos, Math::max);
+		if ( log.isDebugEnabled() ) {
+			log.debug("Rendered PDF in {}ms; {} renders averaging {}ms", nanosToMillis(nanos), count,
+					nanosToMillis(total / count));
+		}
+		final int freq = statisticsLogFrequency;
+		if ( freq > 0 && count % freq == 0 ) {
+			log.info("PDF render statistics: {} renders averaging {}ms, max {}ms", count,
+					nanosToMillis(total / count), getRenderMaxMillis());
+		}
+	}
+
+	private void renderPdf(String html, OutputStream out) throws IOException {
+		RenderContext ctx = contexts.poll();
+		if ( ctx == null ) {
+			ctx = new RenderContext();
+		}
+		try {
+			org.jsoup.nodes.Document html5Doc = Jsoup.parse(html, baseUri);
+			inlineSvgDataImages(html5Doc);
+			final String css = stylesheetData;
+			if ( css != null ) {
+				Element style = html5Doc.head().prependElement("style");
+				style.appendChild(new DataNode(css));
+			}
+			Document doc = ctx.w3cDom.fromJsoup(html5Doc);
+			PdfRendererBuilder builder = new PdfRendererBuilder();
+			builder.useFastMode();
+			for ( Map.Entry<String, byte[]> me : fontData.entrySet() ) {
+				final byte[] data = me.getValue();
+				builder.useFont(() -> new ByteArrayInputStream(data), me.getKey());
+			}
+			builder.withW3cDocument(doc, baseUri);
+			builder.toStream(out);
+			builder.useSVGDrawer(ctx.svgDrawer);
+			builder.run();
+		} finally {
+			// if the pool is full the context is simply discarded
+			contexts.offer(ctx);
+		}
+	}
+
+	/**
+	 * Replace all HTML <code>&lt;img&gt;</code> elements with an SVG data URI
+	 * {@code src} by their SVG content.
+	 * 
+	 * <p>
+	 * Both URL encoded and {@literal base64} encoded data URIs are supported.
+	 * Any attributes of the image other than {@code src} are copied to the
+	 * SVG element, unless the SVG already has an attribute of the same name.
+	 * Images whose SVG content cannot be decoded are left unchanged.
+	 * </p>
+	 * 
+	 * @param doc
+	 *        the document to update
+	 * @return the number of images replaced
+	 */
+	public static int inlineSvgDataImages(org.jsoup.nodes.Document doc) {
+		int count = 0;
+		for ( Element img : doc.select("img[src^=" + SVG_DATA_URI_PREFIX + "]") ) {
+			Element svg = svgElement(img.attr("src"));
+			if ( svg == null ) {
+				continue;
+			}
+			for ( Attribute a : img.attributes() ) {
+				if ( !"src".equals(a.getKey()) && !svg.hasAttr(a.getKey()) ) {
+					svg.attr(a.getKey(), a.getValue());
+				}
+			}
+			img.replaceWith(svg);
+			count++;
+		}
+		return count;
+	}
+
+	private static Element svgElement(String dataUri) {
+		final int dataStart = dataUri.indexOf(',');
+		if ( dataStart < 0 ) {
+			return null;
+		}
+		final String data = dataUri.substring(dataStart + 1);
+		String svg;
+		try {
+			if ( dataUri.substring(0, dataStart).endsWith(";base64") ) {
+				svg = new String(Base64.getMimeDecoder().decode(data), StandardCharsets.UTF_8);
+			} else {
+				svg = StringUtils.uriDecode(data, StandardCharsets.UTF_8);
+			}
+		} catch ( IllegalArgumentException e ) {
+			log.warn("Ignoring invalid SVG image data URI: {}", e.getMessage());
+			return null;
+		}
+		// parse as XML to preserve the case of SVG element and attribute names
+		return Jsoup.parse(svg, "", Parser.xmlParser()).selectFirst("svg");
+	}
+
+	private static long nanosToMillis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	/**
+	 * An output stream that discards all output.
+	 */
+	private static final class NullOutputStream extends OutputStream {
+
+		private static final NullOutputStream INSTANCE = new NullOutputStream();
+
+		@Override
+		public void write(int b) throws IOException {
+			// ignore
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			// ignore
+		}
+
+	}
+
+	/**
+	 * Reset the render statistics.
+	 */
+	public void resetStatistics() {
+		renderCount.set(0);
+		renderNanos.set(0);
+		renderMaxNanos.set(0);
+	}
+
+	/**
+	 * Get the number of PDFs rendered.
+	 * 
+	 * @return the count
+	 */
+	public long getRenderCount() {
+		return renderCount.get();
+	}
+
+	/**
+	 * Get the total time spent rendering PDFs.
+	 * 
+	 * @return the total time, in milliseconds
+	 */
+	public long getRenderTotalMillis() {
+		return nanosToMillis(renderNanos.get());
+	}
+
+	/**
+	 * Get the average time spent rendering a PDF.
+	 * 
+	 * @return the average time, in milliseconds
+	 */
+	public double getRenderAverageMillis() {
+		final long count = renderCount.get();
+		return (count > 0 ? renderNanos.get() / (count * 1000000.0) : 0.0);
+	}
+
+	/**
+	 * Get the maximum time spent rendering a PDF.
+	 * 
+	 * @return the maximum time, in milliseconds
+	 */
+	public long getRenderMaxMillis() {
+		return nanosToMillis(renderMaxNanos.get());
+	}
+
+	/**
+	 * Get the base URI used when parsing HTML.
+	 * 
+	 * @return the base URI
+	 */
+	public String getBaseUri() {
+		return baseUri;
+	}
+
+	/**
+	 * Get the number of documents to render when warming up.
+	 * 
+	 * @return the count; defaults to {@link #DEFAULT_WARM_UP_COUNT}
+	 */
+	public int getWarmUpCount() {
+		return warmUpCount;
+	}
+
+	/**
+	 * Set the number of documents to render when warming up.
+	 * 
+	 * @param warmUpCount
+	 *        the count to set, or {@literal 0} to disable warming up
+	 */
+	public void setWarmUpCount(int warmUpCount) {
+		this.warmUpCount = warmUpCount;
+	}
+
+	/**
+	 * Get the number of renders between logging the render statistics.
+	 * 
+	 * @return the frequency; defaults to
+	 *         {@link #DEFAULT_STATISTICS_LOG_FREQUENCY}
+	 * @since 1.1
+	 */
+	public int getStatisticsLogFrequency() {
+		return statisticsLogFrequency;
+	}
+
+	/**
+	 * Set the number of renders between logging the render statistics.
+	 * 
+	 * @param statisticsLogFrequency
+	 *        the frequency to set, or {@literal 0} to disable logging the
+	 *        statistics
+	 * @since 1.1
+	 */
+	public void setStatisticsLogFrequency(int statisticsLogFrequency) {
+		this.statisticsLogFrequency = statisticsLogFrequency;
+	}
+
+	/**
+	 * Get the fonts to register with every PDF.
+	 * 
+	 * @return the comma-delimited list of {@literal family=path} font
+	 *         definitions
+	 */
+	public String getFonts() {
+		return fonts;
+	}
+
+	/**
+	 * Set the fonts to register with every PDF.
+	 * 
+	 * <p>
+	 * Each font is defined as a font family name and the path to a TrueType
+	 * font file, delimited by {@literal =}, for example
+	 * {@literal Open Sans=/var/fonts/OpenSans-Regular.ttf}. The fonts are
+	 * loaded by {@link #init()}.
+	 * </p>
+	 * 
+	 * @param fonts
+	 *        the comma-delimited list of {@literal family=path} font
+	 *        definitions to set
+	 */
+	public void setFonts(String fonts) {
+		this.fonts = fonts;
+	}
+
+	/**
+	 * Get the stylesheets to add to every document.
+	 * 
+	 * @return the comma-delimited list of stylesheet file paths
+	 */
+	public String getStylesheets() {
+		return stylesheets;
+	}
+
+	/**
+	 * Set the stylesheets to add to every document.
+	 * 
+	 * <p>
+	 * The stylesheets are loaded by {@link #init()}.
+	 * </p>
+	 * 
+	 * @param stylesheets
+	 *        the comma-delimited list of stylesheet file paths to set
+	 */
+	public void setStylesheets(String stylesheets) {
+		this.stylesheets = stylesheets;
+	}
+
+}
@@ -0,0 +1,162 @@
+/* ==================================================================
+ * VersionedMessageSourceSnfInvoiceRendererResolverTests.java - 18/10/2026 7:22:03 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.st4.test;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Properties;
+import javax.cache.Cache;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.MimeTypeUtils;
+import net.solarnetwork.central.dao.VersionedMessageDao;
+import net.solarnetwork.central.dao.VersionedMessageDao.VersionedMessages;
+import net.solarnetwork.central.user.billing.snf.domain.Address;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
+import net.solarnetwork.central.user.billing.snf.st4.VersionedMessageSourceSnfInvoiceRendererResolver;
+import net.solarnetwork.common.tmpl.st4.ST4TemplateRenderer;
+import net.solarnetwork.support.TemplateRenderer;
+
+/**
+ * Test cases for the {@link VersionedMessageSourceSnfInvoiceRendererResolver}
+ * class.
+ * 
+ * @author matt
+ * @version 1.0
+ */
+public class VersionedMessageSourceSnfInvoiceRendererResolverTests {
+
+	private static final String TEST_BUNDLE = "/snf/text/html/invoice";
+	private static final String TEST_VERSION = "2";
+	private static final String TEST_CACHE_KEY = TEST_BUNDLE + ":text/html:" + TEST_VERSION;
+
+	private VersionedMessageDao messageDao;
+	private Cache<String, VersionedMessages> messageCache;
+	private Cache<String, ST4TemplateRenderer> templateCache;
+	private VersionedMessageSourceSnfInvoiceRendererResolver resolver;
+
+	@SuppressWarnings("unchecked")
+	@Before
+	public void setup() {
+		messageDao = EasyMock.createMock(VersionedMessageDao.class);
+		messageCache = EasyMock.createNiceMock(Cache.class);
+		templateCache = EasyMock.createMock(Cache.class);
+		resolver = new VersionedMessageSourceSnfInvoiceRendererResolver(TEST_BUNDLE, "invoice",
+				MimeTypeUtils.TEXT_HTML, messageDao, messageCache, templateCache);
+
+		Properties messages = new Properties();
+		messages.put("version", TEST_VERSION);
+		messages.put("invoice", "Invoice $invoice.invoiceNumber$");
+		expect(messageDao.findMessages(anyObject(Instant.class), aryEq(new String[] { TEST_BUNDLE }),
+				anyString())).andReturn(messages).anyTimes();
+	}
+
+	@After
+	public void teardown() {
+		EasyMock.verify(messageDao, messageCache, templateCache);
+	}
+
+	private void replayAll() {
+		EasyMock.replay(messageDao, messageCache, templateCache);
+	}
+
+	private Capture<ST4TemplateRenderer> expectCompile() {
+		Capture<ST4TemplateRenderer> captor = Capture.newInstance();
+		expect(templateCache.get(TEST_CACHE_KEY)).andReturn(null);
+		expect(templateCache.putIfAbsent(eq(TEST_CACHE_KEY), capture(captor))).andReturn(true);
+		expect(templateCache.get(TEST_CACHE_KEY)).andAnswer(captor::getValue).anyTimes();
+		return captor;
+	}
+
+	private static SnfInvoice invoice(LocalDate date) {
+		Address addr = new Address();
+		addr.setTimeZoneId("Pacific/Auckland");
+		SnfInvoice invoice = new SnfInvoice(1L);
+		invoice.setAddress(addr);
+		invoice.setStartDate(date);
+		return invoice;
+	}
+
+	@Test
+	public void rendererForInvoice_compileOnceThenCached() {
+		// GIVEN
+		Capture<ST4TemplateRenderer> captor = expectCompile();
+
+		// WHEN
+		replayAll();
+		TemplateRenderer r1 = resolver.rendererForInvoice(invoice(LocalDate.of(2020, 1, 1)),
+				MimeTypeUtils.TEXT_HTML, Locale.ENGLISH);
+		TemplateRenderer r2 = resolver.rendererForInvoice(invoice(LocalDate.of(2020, 2, 1)),
+				MimeTypeUtils.TEXT_HTML, Locale.ENGLISH);
+
+		// THEN
+		assertThat("Compiled renderer cached", r1, sameInstance(captor.getValue()));
+		assertThat("Cached renderer returned", r2, sameInstance(r1));
+		assertThat("Cache misses", resolver.getTemplateCacheMisses(), equalTo(1L));
+		assertThat("Cache hits", resolver.getTemplateCacheHits(), equalTo(1L));
+		assertThat("Compile count", resolver.getCompileCount(), equalTo(1L));
+	}
+
+	@Test
+	public void rendererForInvoice_unsupportedMimeType() {
+		// WHEN
+		replayAll();
+		TemplateRenderer r = resolver.rendererForInvoice(invoice(LocalDate.of(2020, 1, 1)),
+				MimeTypeUtils.TEXT_PLAIN, Locale.ENGLISH);
+
+		// THEN
+		assertThat("No renderer for unsupported type", r, nullValue());
+		assertThat("Cache not used", resolver.getTemplateCacheMisses(), equalTo(0L));
+	}
+
+	@Test
+	public void precompile() {
+		// GIVEN
+		expectCompile();
+		resolver.setPrecompileDates("2020-01-01, 2020-06-01");
+
+		// WHEN
+		replayAll();
+		int count = resolver.precompile();
+
+		// THEN
+		assertThat("Shared template version compiled once", count, equalTo(1));
+		assertThat("Cache misses", resolver.getTemplateCacheMisses(), equalTo(1L));
+		assertThat("Cache hits for other dates", resolver.getTemplateCacheHits(), equalTo(2L));
+	}
+
+}
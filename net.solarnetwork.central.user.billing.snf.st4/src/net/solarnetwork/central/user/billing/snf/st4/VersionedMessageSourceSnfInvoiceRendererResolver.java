@@ -22,13 +22,25 @@
 
 package net.solarnetwork.central.user.billing.snf.st4;
 
+import java.io.StringWriter;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.cache.Cache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.MessageSource;
 import org.springframework.util.MimeType;
+import org.springframework.util.StringUtils;
+import org.stringtemplate.v4.AutoIndentWriter;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.misc.ErrorBuffer;
 import net.solarnetwork.central.dao.VersionedMessageDao;
 import net.solarnetwork.central.dao.VersionedMessageDao.VersionedMessages;
 import net.solarnetwork.central.support.VersionedMessageDaoMessageSource;
@@ -47,17 +59,59 @@ import net.solarnetwork.support.TemplateRenderer;
  * character.
  * </p>
  * 
+ * <p>
+ * Compiled renderers are cached by bundle name, MIME type, and the template
+ * {@literal version} message. The renderers for a set of template versions can
+ * be compiled ahead of time via {@link #precompile()}, so the first invoice
+ * rendered with each version does not pay the compile cost. As the message DAO
+ * cannot list all template versions, the versions to compile are configured as
+ * {@code precompileDates}, each date selecting the template version in effect
+ * at the start of that day (UTC). The current template version is always
+ * compiled.
+ * </p>
+ * 
+ * <p>
+ * A summary of the template cache and compile statistics is logged at
+ * {@literal INFO} level every {@code statisticsLogFrequency} renderer
+ * lookups.
+ * </p>
+ * 
  * @author matt
- * @version 1.1
+ * @version 1.3
  */
 public class VersionedMessageSourceSnfInvoiceRendererResolver implements SnfInvoiceRendererResolver {
 
+	/**
+	 * The default {@code precompileLocales} property value.
+	 * 
+	 * @since 1.2
+	 */
+	public static final String DEFAULT_PRECOMPILE_LOCALES = "en";
+
+	/**
+	 * The default {@code statisticsLogFrequency} property value.
+	 * 
+	 * @since 1.3
+	 */
+	public static final int DEFAULT_STATISTICS_LOG_FREQUENCY = 100;
+
 	private final String[] bundleNames;
 	private final String rootTemplateName;
 	private final List<MimeType> mimeTypes;
 	private final VersionedMessageDao messageDao;
 	private final Cache<String, VersionedMessages> messageCache;
 	private final Cache<String, ST4TemplateRenderer> templateCache;
+	private String precompileDates;
+	private String precompileLocales = DEFAULT_PRECOMPILE_LOCALES;
+	private int statisticsLogFrequency = DEFAULT_STATISTICS_LOG_FREQUENCY;
+
+	private final AtomicLong templateCacheHits = new AtomicLong();
+	private final AtomicLong templateCacheMisses = new AtomicLong();
+	private final AtomicLong compileCount = new AtomicLong();
+	private final AtomicLong compileNanos = new AtomicLong();
+	private final AtomicLong lookupCount = new AtomicLong();
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
 
 	/**
 	 * Constructor.
@@ -121,17 +175,220 @@ public class VersionedMessageSourceSnfInvoiceRendererResolver implements SnfInvo
 			return null;
 		}
 		final Instant version = invoice.getStartDate().atStartOfDay(invoice.getTimeZone()).toInstant();
+		return renderer(version, locale, false);
+	}
+
+	private ST4TemplateRenderer renderer(Instant version, Locale locale, boolean warm) {
 		MessageSource messageSource = new VersionedMessageDaoMessageSource(messageDao, bundleNames,
 				version, messageCache);
 		String templateVersion = messageSource.getMessage("version", null, "", locale);
-		ST4TemplateRenderer renderer = templateCache.get(templateVersion);
-		if ( renderer == null ) {
-			renderer = new ST4TemplateRenderer(bundleNames[0],
-					new MessageSourceGroup(bundleNames[0], messageSource, '$', '$'), rootTemplateName,
-					mimeTypes, ST4TemplateRenderer.UTF8);
-			templateCache.putIfAbsent(templateVersion, renderer);
+		final String key = templateCacheKey(templateVersion);
+		logStatistics(lookupCount.incrementAndGet());
+		ST4TemplateRenderer renderer = templateCache.get(key);
+		if ( renderer != null ) {
+			templateCacheHits.incrementAndGet();
+			return renderer;
+		}
+		templateCacheMisses.incrementAndGet();
+		renderer = compile(messageSource, templateVersion, locale, warm);
+		if ( !templateCache.putIfAbsent(key, renderer) ) {
+			// another thread compiled the same version first; use that one
+			ST4TemplateRenderer existing = templateCache.get(key);
+			if ( existing != null ) {
+				renderer = existing;
+			}
+		}
+		return renderer;
+	}
+
+	private void logStatistics(long lookups) {
+		final int freq = statisticsLogFrequency;
+		if ( freq < 1 || lookups % freq != 0 ) {
+			return;
+		}
+		log.info("{} {} template statistics: {} lookups, {} cache hits, {} cache misses, "
+				+ "{} compiled in {}ms", bundleNames[0], mimeTypes.get(0), lookups,
+				templateCacheHits.get(), templateCacheMisses.get(), compileCount.get(),
+				getCompileTotalMillis());
+	}
+
+	private String templateCacheKey(String templateVersion) {
+		return bundleNames[0] + ':' + mimeTypes.get(0) + ':' + templateVersion;
+	}
+
+	private ST4TemplateRenderer compile(MessageSource messageSource, String templateVersion,
+			Locale locale, boolean warm) {
+		final long start = System.nanoTime();
+		MessageSourceGroup group = new MessageSourceGroup(bundleNames[0], messageSource, '$', '$');
+
+		// compile the root template now, rather than on the first render
+		ST root = group.getInstanceOf(rootTemplateName);
+		if ( root == null ) {
+			log.warn("Root template [{}] not found in bundle {} version [{}]", rootTemplateName,
+					bundleNames[0], templateVersion);
+		} else if ( warm ) {
+			// render without attributes to compile the templates the root template uses
+			root.write(new AutoIndentWriter(new StringWriter()), locale, new ErrorBuffer());
 		}
+		ST4TemplateRenderer renderer = new ST4TemplateRenderer(bundleNames[0], group,
+				rootTemplateName, mimeTypes, ST4TemplateRenderer.UTF8);
+		final long nanos = System.nanoTime() - start;
+		compileCount.incrementAndGet();
+		compileNanos.addAndGet(nanos);
+		log.info("Compiled {} {} template version [{}] in {}ms", bundleNames[0], mimeTypes.get(0),
+				templateVersion, TimeUnit.NANOSECONDS.toMillis(nanos));
 		return renderer;
 	}
 
+	/**
+	 * Compile the renderers for the configured template versions and locales.
+	 * 
+	 * <p>
+	 * Renderers are compiled for the current time and each of the configured
+	 * {@code precompileDates}, for each of the configured
+	 * {@code precompileLocales}. Renderers already in the cache are not
+	 * compiled again. Errors compiling a renderer are logged but otherwise
+	 * ignored.
+	 * </p>
+	 * 
+	 * @return the number of renderers compiled
+	 * @since 1.2
+	 */
+	public int precompile() {
+		final long start = System.currentTimeMillis();
+		final long compiled = compileCount.get();
+		final List<Instant> versions = new ArrayList<>(8);
+		versions.add(Instant.now());
+		for ( String date : StringUtils.commaDelimitedListToStringArray(precompileDates) ) {
+			if ( StringUtils.hasText(date) ) {
+				versions.add(LocalDate.parse(date.trim()).atStartOfDay(ZoneOffset.UTC).toInstant());
+			}
+		}
+		for ( String lang : StringUtils.commaDelimitedListToStringArray(precompileLocales) ) {
+			if ( !StringUtils.hasText(lang) ) {
+				continue;
+			}
+			final Locale locale = Locale.forLanguageTag(lang.trim());
+			for ( Instant version : versions ) {
+				try {
+					renderer(version, locale, true);
+				} catch ( RuntimeException e ) {
+					log.warn("Error precompiling {} templates for version {} locale {}: {}",
+							bundleNames[0], version, locale, e.toString());
+				}
+			}
+		}
+		final int count = (int) (compileCount.get() - compiled);
+		log.info("Precompiled {} {} {} template versions in {}ms", count, bundleNames[0],
+				mimeTypes.get(0), System.currentTimeMillis() - start);
+		return count;
+	}
+
+	/**
+	 * Get the number of template cache hits.
+	 * 
+	 * @return the count of cache hits
+	 * @since 1.2
+	 */
+	public long getTemplateCacheHits() {
+		return templateCacheHits.get();
+	}
+
+	/**
+	 * Get the number of template cache misses.
+	 * 
+	 * @return the count of cache misses
+	 * @since 1.2
+	 */
+	public long getTemplateCacheMisses() {
+		return templateCacheMisses.get();
+	}
+
+	/**
+	 * Get the number of renderers compiled.
+	 * 
+	 * @return the count of compiled renderers
+	 * @since 1.2
+	 */
+	public long getCompileCount() {
+		return compileCount.get();
+	}
+
+	/**
+	 * Get the total time spent compiling renderers.
+	 * 
+	 * @return the total time, in milliseconds
+	 * @since 1.2
+	 */
+	public long getCompileTotalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(compileNanos.get());
+	}
+
+	/**
+	 * Get the dates to select the template versions to precompile with.
+	 * 
+	 * @return the comma-delimited list of ISO dates
+	 * @since 1.2
+	 */
+	public String getPrecompileDates() {
+		return precompileDates;
+	}
+
+	/**
+	 * Set the dates to select the template versions to precompile with.
+	 * 
+	 * @param precompileDates
+	 *        the comma-delimited list of ISO dates to set, for example
+	 *        {@literal 2020-01-01,2020-08-01}
+	 * @since 1.2
+	 */
+	public void setPrecompileDates(String precompileDates) {
+		this.precompileDates = precompileDates;
+	}
+
+	/**
+	 * Get the locales to precompile templates for.
+	 * 
+	 * @return the comma-delimited list of language tags; defaults to
+	 *         {@link #DEFAULT_PRECOMPILE_LOCALES}
+	 * @since 1.2
+	 */
+	public String getPrecompileLocales() {
+		return precompileLocales;
+	}
+
+	/**
+	 * Set the locales to precompile templates for.
+	 * 
+	 * @param precompileLocales
+	 *        the comma-delimited list of language tags to set
+	 * @since 1.2
+	 */
+	public void setPrecompileLocales(String precompileLocales) {
+		this.precompileLocales = precompileLocales;
+	}
+
+	/**
+	 * Get the number of renderer lookups between logging the statistics.
+	 * 
+	 * @return the frequency; defaults to
+	 *         {@link #DEFAULT_STATISTICS_LOG_FREQUENCY}
+	 * @since 1.3
+	 */
+	public int getStatisticsLogFrequency() {
+		return statisticsLogFrequency;
+	}
+
+	/**
+	 * Set the number of renderer lookups between logging the statistics.
+	 * 
+	 * @param statisticsLogFrequency
+	 *        the frequency to set, or {@literal 0} to disable logging the
+	 *        statistics
+	 * @since 1.3
+	 */
+	public void setStatisticsLogFrequency(int statisticsLogFrequency) {
+		this.statisticsLogFrequency = statisticsLogFrequency;
+	}
+
 }
@@ -27,6 +27,7 @@ import static java.util.UUID.randomUUID;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -53,7 +54,7 @@ import net.solarnetwork.central.user.billing.snf.util.SnfBillingUtils;
  * Test cases for the {@link InvoiceImpl} class.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  */
 public class InvoiceTests {
 
@@ -114,6 +115,42 @@ public class InvoiceTests {
 		assertInvoiceItem("Item 4", tax2, items.get(3));
 	}
 
+	@Test
+	public void summaryTaxAmount() {
+		// GIVEN
+		SnfInvoice inv = new SnfInvoice(randomUUID().getMostSignificantBits(),
+				randomUUID().getMostSignificantBits(), randomUUID().getMostSignificantBits(),
+				Instant.now());
+		inv.setTotalAmount(new BigDecimal("12.34"));
+		inv.setTaxAmount(new BigDecimal("1.61"));
+
+		// WHEN
+		InvoiceImpl invoice = new InvoiceImpl(inv);
+
+		// THEN
+		assertThat("Summary has no items", invoice.getInvoiceItems(), hasSize(0));
+		assertThat("Amount same as persisted total", invoice.getAmount(),
+				equalTo(inv.getTotalAmount()));
+		assertThat("Tax same as persisted tax", invoice.getTaxAmount(),
+				equalTo(new BigDecimal("1.61")));
+	}
+
+	@Test
+	public void summaryTaxAmount_unknown() {
+		// GIVEN
+		SnfInvoice inv = new SnfInvoice(randomUUID().getMostSignificantBits(),
+				randomUUID().getMostSignificantBits(), randomUUID().getMostSignificantBits(),
+				Instant.now());
+		inv.setTotalAmount(new BigDecimal("12.34"));
+
+		// WHEN
+		InvoiceImpl invoice = new InvoiceImpl(inv);
+
+		// THEN
+		assertThat("Tax unknown without items or persisted tax", invoice.getTaxAmount(),
+				nullValue());
+	}
+
 	@Test
 	public void invoiceUsageItemsSortOrder() {
 		// GIVEN
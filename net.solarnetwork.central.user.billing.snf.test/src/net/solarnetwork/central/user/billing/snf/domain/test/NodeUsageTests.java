@@ -0,0 +1,162 @@
+/* ==================================================================
+ * NodeUsageTests.java - 18/10/2026 2:14:09 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.domain.test;
+
+import static net.solarnetwork.central.user.billing.snf.domain.NodeUsages.DATUM_OUT_KEY;
+import static net.solarnetwork.central.user.billing.snf.domain.NodeUsages.DATUM_PROPS_IN_KEY;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import net.solarnetwork.central.user.billing.snf.domain.NamedCost;
+import net.solarnetwork.central.user.billing.snf.domain.NodeUsage;
+import net.solarnetwork.central.user.billing.snf.domain.UsageInfo;
+
+/**
+ * Test cases for the {@link NodeUsage} class.
+ * 
+ * @author matt
+ * @version 1.0
+ */
+public class NodeUsageTests {
+
+	private static final BigInteger OVERFLOW = BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE);
+
+	@Test
+	public void counts_default() {
+		// WHEN
+		NodeUsage usage = new NodeUsage(1L);
+
+		// THEN
+		assertThat("Props in defaults to zero", usage.getDatumPropertiesIn(),
+				equalTo(BigInteger.ZERO));
+		assertThat("Datum out defaults to zero", usage.getDatumOut(), equalTo(BigInteger.ZERO));
+		assertThat("Days stored defaults to zero", usage.getDatumDaysStored(),
+				equalTo(BigInteger.ZERO));
+	}
+
+	@Test
+	public void counts_overflow() {
+		// GIVEN
+		NodeUsage usage = new NodeUsage(1L);
+
+		// WHEN
+		usage.setDatumPropertiesIn(OVERFLOW);
+		usage.setDatumOut(BigInteger.TEN);
+		usage.setDatumPropertiesInTiers(new BigInteger[] { BigInteger.ONE, OVERFLOW });
+
+		// THEN
+		assertThat("Overflow count preserved", usage.getDatumPropertiesIn(), equalTo(OVERFLOW));
+		assertThat("Count preserved", usage.getDatumOut(), equalTo(BigInteger.TEN));
+		assertThat("Overflow tier counts preserved", usage.getDatumPropertiesInTiers(),
+				arrayContaining(BigInteger.ONE, OVERFLOW));
+		assertThat("Overflow usage info amount",
+				usage.getUsageInfo().get(DATUM_PROPS_IN_KEY).getAmount(),
+				equalTo(new BigDecimal(OVERFLOW)));
+	}
+
+	@Test
+	public void addCounts() {
+		// GIVEN
+		NodeUsage usage = new NodeUsage();
+		usage.setDatumPropertiesIn(BigInteger.valueOf(Long.MAX_VALUE));
+		usage.setDatumOut(BigInteger.ONE);
+		NodeUsage other = new NodeUsage(1L);
+		other.setDatumPropertiesIn(BigInteger.ONE);
+		other.setDatumOut(BigInteger.TEN);
+		other.setDatumDaysStored(BigInteger.TEN);
+
+		// WHEN
+		usage.addCounts(other);
+
+		// THEN
+		assertThat("Props in overflowed to BigInteger", usage.getDatumPropertiesIn(),
+				equalTo(OVERFLOW));
+		assertThat("Datum out added", usage.getDatumOut(), equalTo(BigInteger.valueOf(11L)));
+		assertThat("Days stored added", usage.getDatumDaysStored(), equalTo(BigInteger.TEN));
+	}
+
+	@Test
+	public void usageInfo_cached() {
+		// GIVEN
+		NodeUsage usage = new NodeUsage(1L);
+		usage.setDatumOut(BigInteger.TEN);
+
+		// WHEN
+		Map<String, UsageInfo> info1 = usage.getUsageInfo();
+		Map<String, UsageInfo> info2 = usage.getUsageInfo();
+		usage.setDatumOutCost(BigDecimal.ONE);
+		Map<String, UsageInfo> info3 = usage.getUsageInfo();
+
+		// THEN
+		assertThat("Usage info cached", info2, sameInstance(info1));
+		assertThat("Usage info recomputed after change", info3, not(sameInstance(info1)));
+		assertThat("Changed cost reflected", info3.get(DATUM_OUT_KEY).getCost(),
+				equalTo(BigDecimal.ONE));
+	}
+
+	@Test
+	public void tiersCostBreakdown_cached() {
+		// GIVEN
+		NodeUsage usage = new NodeUsage(1L);
+		usage.setDatumOutTiers(new BigInteger[] { BigInteger.TEN, BigInteger.ONE, BigInteger.ZERO });
+		usage.setDatumOutCostTiers(new BigDecimal[] { new BigDecimal("1.00"), new BigDecimal("0.10"),
+				BigDecimal.ZERO });
+
+		// WHEN
+		Map<String, List<NamedCost>> breakdown1 = usage.getTiersCostBreakdown();
+		Map<String, List<NamedCost>> breakdown2 = usage.getTiersCostBreakdown();
+
+		// THEN
+		assertThat("Breakdown cached", breakdown2, sameInstance(breakdown1));
+		assertThat("Breakdown stops at first zero tier", breakdown1.get(DATUM_OUT_KEY),
+				contains(NamedCost.forTier(1, "10", "1.00"), NamedCost.forTier(2, "1", "0.10")));
+	}
+
+	@Test
+	public void costTiers_perProperty() {
+		// GIVEN
+		NodeUsage usage = new NodeUsage(1L);
+
+		// WHEN
+		usage.setDatumPropertiesInCostTiers(new BigDecimal[] { new BigDecimal("1") });
+		usage.setDatumOutCostTiers(new BigDecimal[] { new BigDecimal("2") });
+		usage.setDatumDaysStoredCostTiers(new BigDecimal[] { new BigDecimal("3") });
+
+		// THEN
+		assertThat("Props in cost tiers", usage.getDatumPropertiesInCostTiers(),
+				arrayContaining(new BigDecimal("1")));
+		assertThat("Datum out cost tiers", usage.getDatumOutCostTiers(),
+				arrayContaining(new BigDecimal("2")));
+		assertThat("Days stored cost tiers", usage.getDatumDaysStoredCostTiers(),
+				arrayContaining(new BigDecimal("3")));
+	}
+
+}
@@ -50,7 +50,7 @@ import net.solarnetwork.central.user.domain.UserLongPK;
  * Test cases for the {@link SnfInvoice} class.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  */
 public class SnfInvoiceTests {
 
@@ -288,4 +288,44 @@ public class SnfInvoiceTests {
 		}
 	}
 
+	@Test
+	public void totalAmount_fromItems() {
+		// GIVEN
+		SnfInvoice inv = new SnfInvoice(1L, 2L, 3L, Instant.now());
+		inv.setItems(new HashSet<>(Arrays.asList(
+				newItem(inv, InvoiceItemType.Fixed, TEST_PROD_KEY, BigDecimal.ONE,
+						new BigDecimal("1.23")),
+				newItem(inv, InvoiceItemType.Fixed, TEST_PROD_KEY, BigDecimal.ONE,
+						new BigDecimal("2.34")))));
+
+		// THEN
+		assertThat("Total from items", inv.getTotalAmount(), equalTo(new BigDecimal("3.57")));
+		assertThat("Paid amount not known", inv.getPaidAmount(), nullValue());
+		assertThat("Balance is total when paid not known", inv.getBalanceAmount(),
+				equalTo(new BigDecimal("3.57")));
+		assertThat("Not paid when paid not known", inv.isPaid(), equalTo(false));
+	}
+
+	@Test
+	public void totalAmount_stored() {
+		// GIVEN
+		SnfInvoice inv = new SnfInvoice(1L, 2L, 3L, Instant.now());
+		inv.setItems(new HashSet<>(Arrays.asList(newItem(inv, InvoiceItemType.Fixed, TEST_PROD_KEY,
+				BigDecimal.ONE, new BigDecimal("1.23")))));
+		inv.setTotalAmount(new BigDecimal("10.00"));
+		inv.setPaidAmount(new BigDecimal("4.00"));
+
+		// THEN
+		assertThat("Stored total used", inv.getTotalAmount(), equalTo(new BigDecimal("10.00")));
+		assertThat("Balance is total less paid", inv.getBalanceAmount(),
+				equalTo(new BigDecimal("6.00")));
+		assertThat("Not fully paid", inv.isPaid(), equalTo(false));
+
+		// WHEN
+		inv.setPaidAmount(new BigDecimal("10.00"));
+
+		// THEN
+		assertThat("Fully paid", inv.isPaid(), equalTo(true));
+	}
+
 }
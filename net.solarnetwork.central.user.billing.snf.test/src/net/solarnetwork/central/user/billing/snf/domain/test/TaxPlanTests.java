@@ -0,0 +1,122 @@
+/* ==================================================================
+ * TaxPlanTests.java - 18/10/2026 3:31:40 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.domain.test;
+
+import static java.util.Arrays.asList;
+import static net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceItem.newItem;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.List;
+import org.junit.Test;
+import net.solarnetwork.central.user.billing.snf.domain.InvoiceItemType;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceItem;
+import net.solarnetwork.central.user.billing.snf.domain.TaxCode;
+import net.solarnetwork.central.user.billing.snf.domain.TaxPlan;
+
+/**
+ * Test cases for the {@link TaxPlan} class.
+ * 
+ * @author matt
+ * @version 1.0
+ */
+public class TaxPlanTests {
+
+	private static SnfInvoice invoice(Long id, SnfInvoiceItem... items) {
+		SnfInvoice invoice = new SnfInvoice(id, 1L, 2L, Instant.now());
+		invoice.setItems(new LinkedHashSet<>(asList(items)));
+		return invoice;
+	}
+
+	private static void assertTaxItem(String msg, SnfInvoiceItem item, String code, String amount) {
+		assertThat(msg + " type", item.getItemType(), equalTo(InvoiceItemType.Tax));
+		assertThat(msg + " code", item.getKey(), equalTo(code));
+		assertThat(msg + " amount", item.getAmount(), equalTo(new BigDecimal(amount)));
+	}
+
+	@Test
+	public void compile_null() {
+		// WHEN
+		TaxPlan plan = TaxPlan.compile(null);
+
+		// THEN
+		assertThat("Empty plan", plan.isEmpty(), equalTo(true));
+		assertThat("No tax items", plan.taxItems(invoice(1L)), hasSize(0));
+	}
+
+	@Test
+	public void taxItems() {
+		// GIVEN
+		// @formatter:off
+		TaxPlan plan = TaxPlan.compile(asList(
+				new TaxCode("NZ", "a", "GST", new BigDecimal("0.15"), null, null),
+				new TaxCode("NZ", "b", "GST", new BigDecimal("0.15"), null, null),
+				new TaxCode("NZ", "b", "OTHER", new BigDecimal("0.01"), null, null)));
+		SnfInvoice invoice = invoice(1L,
+				newItem(1L, InvoiceItemType.Usage, "A", BigDecimal.ONE, new BigDecimal("10.00")),
+				newItem(1L, InvoiceItemType.Usage, "b", BigDecimal.ONE, new BigDecimal("1.00")),
+				newItem(1L, InvoiceItemType.Usage, "c", BigDecimal.ONE, new BigDecimal("5.00")),
+				newItem(1L, InvoiceItemType.Tax, "a", BigDecimal.ONE, new BigDecimal("99.00")));
+		// @formatter:on
+
+		// WHEN
+		List<SnfInvoiceItem> items = plan.taxItems(invoice);
+
+		// THEN
+		assertThat("Tax item per code", items, hasSize(2));
+		assertTaxItem("GST", items.get(0), "GST", "1.65");
+		assertTaxItem("Other", items.get(1), "OTHER", "0.01");
+	}
+
+	@Test
+	public void taxItems_batch() {
+		// GIVEN
+		TaxPlan plan = TaxPlan.compile(
+				asList(new TaxCode("NZ", "a", "GST", new BigDecimal("0.15"), null, null)));
+		SnfInvoice inv1 = invoice(1L,
+				newItem(1L, InvoiceItemType.Usage, "a", BigDecimal.ONE, new BigDecimal("2.00")));
+		SnfInvoice inv2 = invoice(2L,
+				newItem(2L, InvoiceItemType.Usage, "b", BigDecimal.ONE, new BigDecimal("2.00")));
+		SnfInvoice inv3 = invoice(3L,
+				newItem(3L, InvoiceItemType.Usage, "a", BigDecimal.ONE, new BigDecimal("4.00")));
+
+		// WHEN
+		List<List<SnfInvoiceItem>> results = plan.taxItems(asList(inv1, inv2, inv3));
+
+		// THEN
+		assertThat("Result per invoice", results, hasSize(3));
+		assertThat("Invoice 1 taxed", results.get(0), hasSize(1));
+		assertTaxItem("Invoice 1", results.get(0).get(0), "GST", "0.30");
+		assertThat("Invoice 1 tax item for invoice", results.get(0).get(0).getInvoiceId(),
+				equalTo(1L));
+		assertThat("Invoice 2 not taxed", results.get(1), hasSize(0));
+		assertTaxItem("Invoice 3", results.get(2).get(0), "GST", "0.60");
+		assertThat("Invoice 3 tax item for invoice", results.get(2).get(0).getInvoiceId(),
+				equalTo(3L));
+	}
+
+}
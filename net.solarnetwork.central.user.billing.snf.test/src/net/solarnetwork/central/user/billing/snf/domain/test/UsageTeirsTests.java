@@ -23,8 +23,12 @@
 package net.solarnetwork.central.user.billing.snf.domain.test;
 
 import static java.util.Arrays.asList;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.comparesEqualTo;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import org.junit.Test;
 import net.solarnetwork.central.user.billing.snf.domain.NodeUsage;
 import net.solarnetwork.central.user.billing.snf.domain.UsageTier;
@@ -34,7 +38,7 @@ import net.solarnetwork.central.user.billing.snf.domain.UsageTiers;
  * Test cases for the {@link UsageTiers} class.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  */
 public class UsageTeirsTests {
 
@@ -73,4 +77,43 @@ public class UsageTeirsTests {
 		// @formatter:on
 	}
 
+	@Test
+	public void applyTiers() {
+		// GIVEN
+		// @formatter:off
+		UsageTiers tiers = new UsageTiers(asList(
+				UsageTier.tier(NodeUsage.DATUM_OUT_KEY, 0,  "1"),
+				UsageTier.tier(NodeUsage.DATUM_OUT_KEY, 10,  "0.5"),
+				UsageTier.tier(NodeUsage.DATUM_OUT_KEY, 100,  "0.1"),
+				UsageTier.tier(NodeUsage.DATUM_PROPS_IN_KEY, 0,  "1"),
+				UsageTier.tier(NodeUsage.DATUM_PROPS_IN_KEY, 10,  "0.5"),
+				UsageTier.tier(NodeUsage.DATUM_PROPS_IN_KEY, 100,  "0.1"),
+				UsageTier.tier(NodeUsage.DATUM_DAYS_STORED_KEY, 0,  "1"),
+				UsageTier.tier(NodeUsage.DATUM_DAYS_STORED_KEY, 10,  "0.5"),
+				UsageTier.tier(NodeUsage.DATUM_DAYS_STORED_KEY, 100,  "0.1")
+				));
+		// @formatter:on
+		NodeUsage usage = new NodeUsage();
+		usage.setDatumPropertiesIn(BigInteger.valueOf(150));
+		usage.setDatumOut(BigInteger.valueOf(5));
+		usage.setDatumDaysStored(BigInteger.valueOf(100));
+
+		// WHEN
+		tiers.applyTiers(usage);
+
+		// THEN
+		assertThat("Properties in tier counts", usage.getDatumPropertiesInTiers(), arrayContaining(
+				BigInteger.valueOf(10), BigInteger.valueOf(90), BigInteger.valueOf(50)));
+		assertThat("Properties in cost", usage.getDatumPropertiesInCost(),
+				comparesEqualTo(new BigDecimal("60")));
+		assertThat("Datum out tier counts", usage.getDatumOutTiers(),
+				arrayContaining(BigInteger.valueOf(5), BigInteger.ZERO, BigInteger.ZERO));
+		assertThat("Datum out cost", usage.getDatumOutCost(), comparesEqualTo(new BigDecimal("5")));
+		assertThat("Datum stored tier counts", usage.getDatumDaysStoredTiers(),
+				arrayContaining(BigInteger.valueOf(10), BigInteger.valueOf(90), BigInteger.ZERO));
+		assertThat("Datum stored cost", usage.getDatumDaysStoredCost(),
+				comparesEqualTo(new BigDecimal("55")));
+		assertThat("Total cost", usage.getTotalCost(), comparesEqualTo(new BigDecimal("120")));
+	}
+
 }
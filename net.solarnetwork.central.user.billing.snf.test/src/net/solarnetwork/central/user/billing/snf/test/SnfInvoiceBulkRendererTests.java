@@ -0,0 +1,265 @@
+/* ==================================================================
+ * SnfInvoiceBulkRendererTests.java - 18/10/2026 6:47:15 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.test;
+
+import static java.util.Arrays.asList;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.same;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StreamUtils;
+import net.solarnetwork.central.user.billing.snf.SnfInvoiceBulkRenderer;
+import net.solarnetwork.central.user.billing.snf.SnfInvoicingSystem;
+import net.solarnetwork.central.user.billing.snf.dao.SnfInvoiceDao;
+import net.solarnetwork.central.user.billing.snf.domain.Account;
+import net.solarnetwork.central.user.billing.snf.domain.InvoiceRenderResult;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
+import net.solarnetwork.central.user.domain.UserLongPK;
+
+/**
+ * Test cases for the {@link SnfInvoiceBulkRenderer} class.
+ * 
+ * @author matt
+ * @version 1.1
+ */
+public class SnfInvoiceBulkRendererTests {
+
+	private static final Long TEST_USER_ID = 1L;
+	private static final Long TEST_ACCOUNT_ID = 2L;
+
+	private SnfInvoicingSystem invoicingSystem;
+	private SnfInvoiceDao invoiceDao;
+	private ExecutorService executor;
+	private SnfInvoiceBulkRenderer renderer;
+
+	@Before
+	public void setup() {
+		invoicingSystem = EasyMock.createMock(SnfInvoicingSystem.class);
+		invoiceDao = EasyMock.createMock(SnfInvoiceDao.class);
+		executor = Executors.newFixedThreadPool(2);
+		renderer = new SnfInvoiceBulkRenderer(invoicingSystem, invoiceDao, executor);
+		renderer.setParallelism(2);
+	}
+
+	@After
+	public void teardown() {
+		executor.shutdownNow();
+		EasyMock.verify(invoicingSystem, invoiceDao);
+	}
+
+	private void replayAll() {
+		EasyMock.replay(invoicingSystem, invoiceDao);
+	}
+
+	private SnfInvoice expectInvoice(Long id) {
+		SnfInvoice invoice = new SnfInvoice(id, TEST_USER_ID, TEST_ACCOUNT_ID, Instant.now());
+		expect(invoiceDao.get(invoice.getId())).andReturn(invoice);
+		return invoice;
+	}
+
+	private void expectRender(SnfInvoice invoice, MimeType type, Locale locale) throws IOException {
+		expect(invoicingSystem.renderInvoice(same(invoice), EasyMock.eq(type), EasyMock.eq(locale),
+				anyObject(OutputStream.class))).andAnswer(() -> {
+					OutputStream out = (OutputStream) EasyMock.getCurrentArguments()[3];
+					out.write(content(invoice).getBytes(StandardCharsets.UTF_8));
+					return "invoice-" + invoice.getId().getId() + ".html";
+				});
+	}
+
+	private static String content(SnfInvoice invoice) {
+		return "<p>Invoice " + invoice.getId().getId() + "</p>";
+	}
+
+	@Test
+	public void renderToDirectory() throws IOException {
+		// GIVEN
+		final SnfInvoice inv1 = expectInvoice(10L);
+		final SnfInvoice inv2 = expectInvoice(11L);
+		final UserLongPK missingId = new UserLongPK(TEST_USER_ID, 12L);
+		expect(invoiceDao.get(missingId)).andReturn(null);
+
+		expectRender(inv1, MimeTypeUtils.TEXT_HTML, Locale.ENGLISH);
+		expect(invoicingSystem.renderInvoice(same(inv2), EasyMock.eq(MimeTypeUtils.TEXT_HTML),
+				EasyMock.eq(Locale.ENGLISH), anyObject(OutputStream.class)))
+						.andThrow(new IllegalArgumentException("Boom"));
+
+		// WHEN
+		replayAll();
+		Path dir = Files.createTempDirectory("SnfInvoiceBulkRendererTests-");
+		List<InvoiceRenderResult> results;
+		try {
+			results = renderer.renderToDirectory(asList(inv1.getId(), inv2.getId(), missingId),
+					MimeTypeUtils.TEXT_HTML, Locale.ENGLISH, dir);
+
+			// THEN
+			assertThat("Result per invoice", results, hasSize(3));
+
+			InvoiceRenderResult r = results.get(0);
+			assertThat("Invoice 1 ID", r.getInvoiceId(), equalTo(inv1.getId()));
+			assertThat("Invoice 1 rendered", r.isSuccess(), equalTo(true));
+			assertThat("Invoice 1 file name", r.getFilename(), equalTo("invoice-10.html"));
+			Path f = dir.resolve(r.getFilename());
+			assertThat("Invoice 1 content", new String(Files.readAllBytes(f), StandardCharsets.UTF_8),
+					equalTo(content(inv1)));
+			assertThat("Invoice 1 size", r.getSize(), equalTo(Files.size(f)));
+
+			r = results.get(1);
+			assertThat("Invoice 2 ID", r.getInvoiceId(), equalTo(inv2.getId()));
+			assertThat("Invoice 2 failed", r.isSuccess(), equalTo(false));
+			assertThat("Invoice 2 failure message", r.getMessage(),
+					equalTo(new IllegalArgumentException("Boom").toString()));
+
+			r = results.get(2);
+			assertThat("Missing invoice ID", r.getInvoiceId(), equalTo(missingId));
+			assertThat("Missing invoice failed", r.isSuccess(), equalTo(false));
+			assertThat("Missing invoice no file name", r.getFilename(), nullValue());
+
+			try (Stream<Path> files = Files.list(dir)) {
+				assertThat("Only rendered invoice in directory", files.count(), equalTo(1L));
+			}
+		} finally {
+			FileSystemUtils.deleteRecursively(dir.toFile());
+		}
+	}
+
+	@Test
+	public void renderToZip_accountLocale() throws IOException {
+		// GIVEN
+		final SnfInvoice inv1 = expectInvoice(10L);
+		final SnfInvoice inv2 = expectInvoice(11L);
+
+		final Account account = new Account(TEST_ACCOUNT_ID, TEST_USER_ID, Instant.now());
+		account.setLocale("en-NZ");
+		// account looked up once for both invoices
+		expect(invoicingSystem.accountForUser(TEST_USER_ID)).andReturn(account);
+
+		final Locale locale = Locale.forLanguageTag("en-NZ");
+		expectRender(inv1, MimeTypeUtils.TEXT_HTML, locale);
+		expectRender(inv2, MimeTypeUtils.TEXT_HTML, locale);
+
+		// WHEN
+		replayAll();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		List<InvoiceRenderResult> results = renderer.renderToZip(asList(inv1.getId(), inv2.getId()),
+				MimeTypeUtils.TEXT_HTML, null, out);
+
+		// THEN
+		assertThat("Result per invoice", results, hasSize(2));
+		assertThat("Invoice 1 rendered", results.get(0).isSuccess(), equalTo(true));
+		assertThat("Invoice 2 rendered", results.get(1).isSuccess(), equalTo(true));
+
+		Map<String, String> entries = new LinkedHashMap<>(2);
+		try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+			ZipEntry entry;
+			while ( (entry = zin.getNextEntry()) != null ) {
+				entries.put(entry.getName(), StreamUtils.copyToString(zin, StandardCharsets.UTF_8));
+			}
+		}
+		assertThat("ZIP entry per invoice", entries.keySet(), hasSize(2));
+		assertThat("Invoice 1 entry", entries.get("invoice-10.html"), equalTo(content(inv1)));
+		assertThat("Invoice 2 entry", entries.get("invoice-11.html"), equalTo(content(inv2)));
+	}
+
+	@Test
+	public void renderToZip_backPressure() throws IOException, InterruptedException {
+		// GIVEN
+		final int parallelism = 2;
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		final List<UserLongPK> ids = new ArrayList<>(8);
+		for ( long id = 10; id < 18; id++ ) {
+			SnfInvoice invoice = expectInvoice(id);
+			ids.add(invoice.getId());
+			expect(invoicingSystem.renderInvoice(same(invoice),
+					EasyMock.eq(MimeTypeUtils.TEXT_HTML), EasyMock.eq(Locale.ENGLISH),
+					anyObject(OutputStream.class))).andAnswer(() -> {
+						maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+						try {
+							Thread.sleep(20);
+							OutputStream out = (OutputStream) EasyMock.getCurrentArguments()[3];
+							out.write(content(invoice).getBytes(StandardCharsets.UTF_8));
+						} finally {
+							inFlight.decrementAndGet();
+						}
+						return "invoice-" + invoice.getId().getId() + ".html";
+					});
+		}
+
+		// use more threads than the parallelism, so only the renderer limits concurrency
+		final ExecutorService wideExecutor = Executors.newFixedThreadPool(ids.size());
+		final SnfInvoiceBulkRenderer wideRenderer = new SnfInvoiceBulkRenderer(invoicingSystem,
+				invoiceDao, wideExecutor);
+		wideRenderer.setParallelism(parallelism);
+
+		// WHEN
+		replayAll();
+		List<InvoiceRenderResult> results;
+		try {
+			results = wideRenderer.renderToZip(ids, MimeTypeUtils.TEXT_HTML, Locale.ENGLISH,
+					new ByteArrayOutputStream());
+		} finally {
+			wideExecutor.shutdown();
+			wideExecutor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+
+		// THEN
+		assertThat("Result per invoice", results, hasSize(ids.size()));
+		for ( int i = 0; i < results.size(); i++ ) {
+			assertThat("Invoice rendered " + i, results.get(i).isSuccess(), equalTo(true));
+		}
+		assertThat("No more than parallelism invoices in flight", maxInFlight.get(),
+				lessThanOrEqualTo(parallelism));
+	}
+
+}
@@ -25,14 +25,20 @@ package net.solarnetwork.central.user.billing.snf.test;
 import static java.lang.String.format;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
 import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static java.util.UUID.randomUUID;
 import static net.solarnetwork.central.user.billing.snf.domain.SnfInvoicingOptions.dryRunOptions;
 import static net.solarnetwork.central.user.billing.snf.test.SnfMatchers.matchesFilter;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.aryEq;
 import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
 import static org.easymock.EasyMock.isNull;
 import static org.easymock.EasyMock.same;
 import static org.hamcrest.Matchers.contains;
@@ -43,21 +49,49 @@ import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.cache.Cache;
 import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.easymock.EasyMock;
 import org.junit.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import net.solarnetwork.central.user.billing.domain.Invoice;
+import net.solarnetwork.central.domain.FilterResults;
+import net.solarnetwork.central.user.billing.domain.InvoiceFilter;
+import net.solarnetwork.central.user.billing.domain.InvoiceGenerationOptions;
+import net.solarnetwork.central.user.billing.domain.InvoiceMatch;
+import net.solarnetwork.central.user.billing.snf.HtmlDerivedTemplateRenderer;
 import net.solarnetwork.central.user.billing.snf.SnfBillingSystem;
+import net.solarnetwork.central.user.billing.snf.SnfInvoiceRendererResolver;
 import net.solarnetwork.central.user.billing.snf.SnfInvoicingSystem;
+import net.solarnetwork.central.user.billing.snf.dao.NodeUsageAccrualDao;
 import net.solarnetwork.central.user.billing.snf.dao.SnfInvoiceDao;
 import net.solarnetwork.central.user.billing.snf.domain.Account;
 import net.solarnetwork.central.user.billing.snf.domain.AccountBalance;
 import net.solarnetwork.central.user.billing.snf.domain.Address;
+import net.solarnetwork.central.user.billing.snf.domain.ContinuationFilterResults;
 import net.solarnetwork.central.user.billing.snf.domain.InvoiceItemType;
 import net.solarnetwork.central.user.billing.snf.domain.NodeUsage;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
@@ -67,15 +101,20 @@ import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceNodeUsage;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoicingOptions;
 import net.solarnetwork.central.user.billing.snf.domain.TaxCode;
 import net.solarnetwork.central.user.billing.snf.domain.TaxCodeFilter;
+import net.solarnetwork.central.user.billing.snf.domain.UsageTier;
+import net.solarnetwork.central.user.billing.snf.domain.UsageTiers;
 import net.solarnetwork.central.user.domain.UserLongPK;
 import net.solarnetwork.dao.BasicFilterResults;
+import net.solarnetwork.support.TemplateRenderer;
+import net.solarnetwork.util.StaticOptionalService;
+import net.solarnetwork.util.StaticOptionalServiceCollection;
 
 /**
  * Test cases for the {@link SnfBillingSystem} implementation of
  * {@link SnfInvoicingSystem}.
  * 
  * @author matt
- * @version 2.0
+ * @version 2.5
  */
 public class SnfInvoicingSystemTests extends AbstractSnfBililngSystemTest {
 
@@ -148,6 +187,114 @@ public class SnfInvoicingSystemTests extends AbstractSnfBililngSystemTest {
 		assertThat("DAO result returned.", result, sameInstance(account));
 	}
 
+	@Test
+	public void findFilteredInvoices_summaryTax() {
+		// GIVEN
+		final Account account = new Account(randomUUID().getMostSignificantBits(), userId,
+				Instant.now());
+		expect(accountDao.getForUser(userId)).andReturn(account);
+
+		final SnfInvoice inv1 = new SnfInvoice(randomUUID().getMostSignificantBits(), userId,
+				account.getId().getId(), Instant.now());
+		inv1.setStartDate(startDate);
+		inv1.setTotalAmount(new BigDecimal("11.50"));
+		inv1.setTaxAmount(new BigDecimal("1.50"));
+		final SnfInvoice inv2 = new SnfInvoice(randomUUID().getMostSignificantBits(), userId,
+				account.getId().getId(), Instant.now());
+		inv2.setStartDate(startDate.minusMonths(1));
+		inv2.setTotalAmount(new BigDecimal("10.00"));
+		inv2.setTaxAmount(BigDecimal.ZERO);
+		expect(invoiceDao.findFilteredSummaries(anyObject(),
+				same(SnfInvoiceDao.SORT_BY_INVOICE_DATE_DESCENDING), eq(0), eq(2)))
+						.andReturn(new BasicFilterResults<>(asList(inv1, inv2)));
+
+		final InvoiceFilter filter = EasyMock.createMock(InvoiceFilter.class);
+		expect(filter.getUserId()).andReturn(userId).anyTimes();
+		expect(filter.getUnpaid()).andReturn(null).anyTimes();
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(filter);
+		FilterResults<InvoiceMatch> results = system.findFilteredInvoices(filter, null, 0, 2);
+
+		// THEN
+		assertThat("Summaries returned", results.getReturnedResultCount(), equalTo(2));
+		int i = 0;
+		for ( InvoiceMatch match : results ) {
+			SnfInvoice expected = (i == 0 ? inv1 : inv2);
+			assertThat(format("Invoice %d tax from summary", i), ((Invoice) match).getTaxAmount(),
+					equalTo(expected.getTaxAmount()));
+			i++;
+		}
+	}
+
+	@Test
+	public void findFilteredInvoices_continuation() {
+		// GIVEN
+		final Account account = new Account(randomUUID().getMostSignificantBits(), userId,
+				Instant.now());
+		expect(accountDao.getForUser(userId)).andReturn(account).times(2);
+
+		final SnfInvoice inv1 = new SnfInvoice(randomUUID().getMostSignificantBits(), userId,
+				account.getId().getId(), Instant.now());
+		inv1.setStartDate(startDate);
+		final SnfInvoice inv2 = new SnfInvoice(randomUUID().getMostSignificantBits(), userId,
+				account.getId().getId(), Instant.now());
+		inv2.setStartDate(startDate.minusMonths(1));
+		final SnfInvoice inv3 = new SnfInvoice(randomUUID().getMostSignificantBits(), userId,
+				account.getId().getId(), Instant.now());
+		inv3.setStartDate(startDate.minusMonths(2));
+
+		Capture<SnfInvoiceFilter> filterCaptor = Capture.newInstance(CaptureType.ALL);
+		expect(invoiceDao.findFilteredSummaries(capture(filterCaptor),
+				same(SnfInvoiceDao.SORT_BY_INVOICE_DATE_DESCENDING), isNull(), eq(2)))
+						.andReturn(new BasicFilterResults<>(asList(inv1, inv2)))
+						.andReturn(new BasicFilterResults<>(asList(inv3)));
+
+		final InvoiceFilter filter = EasyMock.createMock(InvoiceFilter.class);
+		expect(filter.getUserId()).andReturn(userId).anyTimes();
+		expect(filter.getUnpaid()).andReturn(null).anyTimes();
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(filter);
+		SnfInvoicingSystem invoicingSystem = system;
+		ContinuationFilterResults<InvoiceMatch> page1 = invoicingSystem.findFilteredInvoices(filter,
+				null, 2);
+		ContinuationFilterResults<InvoiceMatch> page2 = invoicingSystem.findFilteredInvoices(filter,
+				page1.getContinuationToken(), 2);
+
+		// THEN
+		assertThat("First page returned", page1.getReturnedResultCount(), equalTo(2));
+		assertThat("First page continuation token for last invoice",
+				page1.getContinuationToken(), equalTo(SnfInvoiceFilter.continuationToken(inv2)));
+		assertThat("First page query without continuation",
+				filterCaptor.getValues().get(0).getContinuationToken(), nullValue());
+
+		assertThat("Second page query continues from first page",
+				filterCaptor.getValues().get(1).getContinuationToken(),
+				equalTo(page1.getContinuationToken()));
+		assertThat("Second page returned", page2.getReturnedResultCount(), equalTo(1));
+		assertThat("Second page invoice", page2.iterator().next().getId(),
+				equalTo(inv3.getId().getId().toString()));
+		assertThat("No continuation token after last page", page2.getContinuationToken(),
+				nullValue());
+	}
+
+	private void expectUsageAndNodeUsage(NodeUsage usage, NodeUsage nodeUsage) {
+		usageDao.findUsageAndNodeUsageForAccount(eq(userId), eq(startDate), eq(endDate),
+				EasyMock.anyObject(), EasyMock.anyObject());
+		expectLastCall().andAnswer(() -> {
+			@SuppressWarnings("unchecked")
+			Consumer<NodeUsage> usageHandler = (Consumer<NodeUsage>) getCurrentArguments()[3];
+			usageHandler.accept(usage);
+			@SuppressWarnings("unchecked")
+			Consumer<NodeUsage> nodeUsageHandler = (Consumer<NodeUsage>) getCurrentArguments()[4];
+			nodeUsageHandler.accept(nodeUsage);
+			return null;
+		});
+	}
+
 	private static void assertUsageItem(SnfInvoice invoice, SnfInvoiceItem item, BigInteger quantity,
 			BigDecimal amount) {
 		assertThat(item.getKey() + " Item ID generated", item.getId(), notNullValue());
@@ -219,15 +366,12 @@ public class SnfInvoicingSystemTests extends AbstractSnfBililngSystemTest {
 		usage.setDatumDaysStoredCost(new BigDecimal("3.45"));
 		usage.setTotalCost(new BigDecimal("7.02"));
 
-		expect(usageDao.findUsageForAccount(userId, startDate, endDate)).andReturn(singletonList(usage));
-
 		final NodeUsage nodeUsage = new NodeUsage(randomUUID().getMostSignificantBits());
 		usage.setDatumPropertiesIn(new BigInteger("123"));
 		usage.setDatumOut(new BigInteger("234"));
 		usage.setDatumDaysStored(new BigInteger("345"));
 
-		expect(usageDao.findNodeUsageForAccount(userId, startDate, endDate))
-				.andReturn(singletonList(nodeUsage));
+		expectUsageAndNodeUsage(usage, nodeUsage);
 
 		Capture<TaxCodeFilter> taxCodeFilterCaptor = new Capture<>();
 		BasicFilterResults<TaxCode, Long> taxCodeResults = new BasicFilterResults<>(emptyList());
@@ -264,6 +408,192 @@ public class SnfInvoicingSystemTests extends AbstractSnfBililngSystemTest {
 		assertInvoiceNodeUsage(invoice, invoiceNodeUsage, nodeUsage);
 	}
 
+	@Test
+	public void generateInvoice_accrued_dryRun() {
+		// GIVEN
+		final NodeUsageAccrualDao usageAccrualDao = EasyMock.createMock(NodeUsageAccrualDao.class);
+		system.setUsageAccrualDao(new StaticOptionalService<>(usageAccrualDao));
+
+		final Address addr = new Address();
+		addr.setCountry("NZ");
+		addr.setTimeZoneId("Pacific/Auckland");
+		final Account account = new Account(randomUUID().getMostSignificantBits(), userId,
+				Instant.now());
+		account.setAddress(addr);
+		expect(accountDao.getForUser(userId)).andReturn(account);
+
+		final NodeUsage nodeUsage1 = new NodeUsage(randomUUID().getMostSignificantBits());
+		nodeUsage1.setDatumPropertiesIn(new BigInteger("100"));
+		nodeUsage1.setDatumOut(new BigInteger("200"));
+		nodeUsage1.setDatumDaysStored(new BigInteger("300"));
+		final NodeUsage nodeUsage2 = new NodeUsage(randomUUID().getMostSignificantBits());
+		nodeUsage2.setDatumPropertiesIn(new BigInteger("23"));
+		nodeUsage2.setDatumOut(new BigInteger("34"));
+		nodeUsage2.setDatumDaysStored(new BigInteger("45"));
+
+		expect(usageAccrualDao.findLatestAccrualDate()).andReturn(startDate.plusDays(2));
+		usageAccrualDao.findMonthToDateNodeUsage(eq(userId), eq(startDate), EasyMock.anyObject());
+		expectLastCall().andAnswer(() -> {
+			@SuppressWarnings("unchecked")
+			Consumer<NodeUsage> handler = (Consumer<NodeUsage>) getCurrentArguments()[2];
+			handler.accept(nodeUsage1);
+			handler.accept(nodeUsage2);
+			return null;
+		});
+
+		// @formatter:off
+		final UsageTiers tiers = new UsageTiers(asList(
+				UsageTier.tier(NodeUsage.DATUM_PROPS_IN_KEY, 0, "0.01"),
+				UsageTier.tier(NodeUsage.DATUM_OUT_KEY, 0, "0.01"),
+				UsageTier.tier(NodeUsage.DATUM_DAYS_STORED_KEY, 0, "0.01")
+				), startDate);
+		// @formatter:on
+		expect(usageDao.effectiveUsageTiers(startDate)).andReturn(tiers);
+
+		Capture<TaxCodeFilter> taxCodeFilterCaptor = new Capture<>();
+		BasicFilterResults<TaxCode, Long> taxCodeResults = new BasicFilterResults<>(emptyList());
+		expect(taxCodeDao.findFiltered(EasyMock.capture(taxCodeFilterCaptor), isNull(), isNull(),
+				isNull())).andReturn(taxCodeResults);
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(usageAccrualDao);
+		SnfInvoice invoice = system.generateInvoice(userId, startDate, endDate, dryRunOptions());
+
+		// THEN
+		EasyMock.verify(usageAccrualDao);
+		assertThat("Invoice created", invoice, notNullValue());
+		assertThat("Invoice has draft ID", invoice.getId(),
+				equalTo(new UserLongPK(userId, SnfBillingSystem.DRAFT_INVOICE_ID)));
+
+		Map<String, SnfInvoiceItem> itemMap = invoice.getItemsByKey();
+		assertThat("Invoice item mapping contains all items", itemMap.keySet(), contains(
+				NodeUsage.DATUM_PROPS_IN_KEY, NodeUsage.DATUM_OUT_KEY, NodeUsage.DATUM_DAYS_STORED_KEY));
+
+		SnfInvoiceItem item;
+		item = itemMap.get(NodeUsage.DATUM_PROPS_IN_KEY);
+		assertUsageItem(invoice, item, new BigInteger("123"), new BigDecimal("1.23"));
+		item = itemMap.get(NodeUsage.DATUM_OUT_KEY);
+		assertUsageItem(invoice, item, new BigInteger("234"), new BigDecimal("2.34"));
+		item = itemMap.get(NodeUsage.DATUM_DAYS_STORED_KEY);
+		assertUsageItem(invoice, item, new BigInteger("345"), new BigDecimal("3.45"));
+
+		assertThat("Invoice node usage items created", invoice.getUsages(), hasSize(2));
+	}
+
+	@Test
+	public void generateInvoice_accrued_noneAccruedForMonth_dryRun() {
+		// GIVEN
+		final NodeUsageAccrualDao usageAccrualDao = EasyMock.createMock(NodeUsageAccrualDao.class);
+		system.setUsageAccrualDao(new StaticOptionalService<>(usageAccrualDao));
+
+		final Address addr = new Address();
+		addr.setCountry("NZ");
+		addr.setTimeZoneId("Pacific/Auckland");
+		final Account account = new Account(randomUUID().getMostSignificantBits(), userId,
+				Instant.now());
+		account.setAddress(addr);
+		expect(accountDao.getForUser(userId)).andReturn(account);
+
+		// latest accrued day is from the previous month, so fall back to the usage query
+		expect(usageAccrualDao.findLatestAccrualDate()).andReturn(startDate.minusDays(1));
+
+		final NodeUsage usage = new NodeUsage();
+		usage.setDatumPropertiesIn(new BigInteger("123"));
+		usage.setDatumPropertiesInCost(new BigDecimal("1.23"));
+		usage.setDatumOut(new BigInteger("234"));
+		usage.setDatumOutCost(new BigDecimal("2.34"));
+		usage.setDatumDaysStored(new BigInteger("345"));
+		usage.setDatumDaysStoredCost(new BigDecimal("3.45"));
+		usage.setTotalCost(new BigDecimal("7.02"));
+
+		final NodeUsage nodeUsage = new NodeUsage(randomUUID().getMostSignificantBits());
+		nodeUsage.setDatumPropertiesIn(new BigInteger("123"));
+		nodeUsage.setDatumOut(new BigInteger("234"));
+		nodeUsage.setDatumDaysStored(new BigInteger("345"));
+
+		expectUsageAndNodeUsage(usage, nodeUsage);
+
+		BasicFilterResults<TaxCode, Long> taxCodeResults = new BasicFilterResults<>(emptyList());
+		expect(taxCodeDao.findFiltered(EasyMock.anyObject(), isNull(), isNull(), isNull()))
+				.andReturn(taxCodeResults);
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(usageAccrualDao);
+		SnfInvoice invoice = system.generateInvoice(userId, startDate, endDate, dryRunOptions());
+
+		// THEN
+		EasyMock.verify(usageAccrualDao);
+		assertThat("Invoice created", invoice, notNullValue());
+		assertThat("Invoice items created from usage query", invoice.getItems(), hasSize(3));
+		assertThat("Invoice node usage items created from usage query", invoice.getUsages(),
+				hasSize(1));
+		assertInvoiceNodeUsage(invoice, invoice.getUsages().iterator().next(), nodeUsage);
+	}
+
+	@Test
+	public void generateInvoice_accrued_partialMonth_dryRun() {
+		// GIVEN
+		final NodeUsageAccrualDao usageAccrualDao = EasyMock.createMock(NodeUsageAccrualDao.class);
+		system.setUsageAccrualDao(new StaticOptionalService<>(usageAccrualDao));
+
+		final Address addr = new Address();
+		addr.setCountry("NZ");
+		addr.setTimeZoneId("Pacific/Auckland");
+		final Account account = new Account(randomUUID().getMostSignificantBits(), userId,
+				Instant.now());
+		account.setAddress(addr);
+		expect(accountDao.getForUser(userId)).andReturn(account);
+
+		// the period is not a whole month, so the accrued usage is not used
+		final LocalDate partialEndDate = startDate.plusDays(10);
+
+		final NodeUsage usage = new NodeUsage();
+		usage.setDatumPropertiesIn(new BigInteger("123"));
+		usage.setDatumPropertiesInCost(new BigDecimal("1.23"));
+		usage.setDatumOut(new BigInteger("234"));
+		usage.setDatumOutCost(new BigDecimal("2.34"));
+		usage.setDatumDaysStored(new BigInteger("345"));
+		usage.setDatumDaysStoredCost(new BigDecimal("3.45"));
+		usage.setTotalCost(new BigDecimal("7.02"));
+
+		final NodeUsage nodeUsage = new NodeUsage(randomUUID().getMostSignificantBits());
+		nodeUsage.setDatumPropertiesIn(new BigInteger("123"));
+		nodeUsage.setDatumOut(new BigInteger("234"));
+		nodeUsage.setDatumDaysStored(new BigInteger("345"));
+
+		usageDao.findUsageAndNodeUsageForAccount(eq(userId), eq(startDate), eq(partialEndDate),
+				EasyMock.anyObject(), EasyMock.anyObject());
+		expectLastCall().andAnswer(() -> {
+			@SuppressWarnings("unchecked")
+			Consumer<NodeUsage> usageHandler = (Consumer<NodeUsage>) getCurrentArguments()[3];
+			usageHandler.accept(usage);
+			@SuppressWarnings("unchecked")
+			Consumer<NodeUsage> nodeUsageHandler = (Consumer<NodeUsage>) getCurrentArguments()[4];
+			nodeUsageHandler.accept(nodeUsage);
+			return null;
+		});
+
+		BasicFilterResults<TaxCode, Long> taxCodeResults = new BasicFilterResults<>(emptyList());
+		expect(taxCodeDao.findFiltered(EasyMock.anyObject(), isNull(), isNull(), isNull()))
+				.andReturn(taxCodeResults);
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(usageAccrualDao);
+		SnfInvoice invoice = system.generateInvoice(userId, startDate, partialEndDate,
+				dryRunOptions());
+
+		// THEN
+		EasyMock.verify(usageAccrualDao);
+		assertThat("Invoice created", invoice, notNullValue());
+		assertThat("Invoice items created from usage query", invoice.getItems(), hasSize(3));
+		assertThat("Invoice node usage items created from usage query", invoice.getUsages(),
+				hasSize(1));
+		assertInvoiceNodeUsage(invoice, invoice.getUsages().iterator().next(), nodeUsage);
+	}
+
 	@Test
 	public void generateInvoice_withTax_dryRun() {
 		// GIVEN
@@ -284,15 +614,12 @@ public class SnfInvoicingSystemTests extends AbstractSnfBililngSystemTest {
 		usage.setDatumDaysStoredCost(new BigDecimal("3.45"));
 		usage.setTotalCost(new BigDecimal("7.02"));
 
-		expect(usageDao.findUsageForAccount(userId, startDate, endDate)).andReturn(singletonList(usage));
-
 		final NodeUsage nodeUsage = new NodeUsage(randomUUID().getMostSignificantBits());
 		usage.setDatumPropertiesIn(new BigInteger("123"));
 		usage.setDatumOut(new BigInteger("234"));
 		usage.setDatumDaysStored(new BigInteger("345"));
 
-		expect(usageDao.findNodeUsageForAccount(userId, startDate, endDate))
-				.andReturn(singletonList(nodeUsage));
+		expectUsageAndNodeUsage(usage, nodeUsage);
 
 		Capture<TaxCodeFilter> taxCodeFilterCaptor = new Capture<>();
 		TaxCode datumPropsTax = new TaxCode("NZ", NodeUsage.DATUM_PROPS_IN_KEY, "GST",
@@ -346,6 +673,64 @@ public class SnfInvoicingSystemTests extends AbstractSnfBililngSystemTest {
 		assertInvoiceNodeUsage(invoice, invoiceNodeUsage, nodeUsage);
 	}
 
+	private SnfInvoice taxTestInvoice(String country, String timeZoneId, String amount) {
+		final Address addr = new Address();
+		addr.setCountry(country);
+		addr.setTimeZoneId(timeZoneId);
+		final SnfInvoice invoice = new SnfInvoice(randomUUID().getMostSignificantBits(), userId,
+				randomUUID().getMostSignificantBits(), Instant.now());
+		invoice.setAddress(addr);
+		invoice.setStartDate(startDate);
+		invoice.setEndDate(endDate);
+		invoice.setItems(singleton(SnfInvoiceItem.newItem(invoice, InvoiceItemType.Usage,
+				NodeUsage.DATUM_PROPS_IN_KEY, BigDecimal.ONE, new BigDecimal(amount))));
+		return invoice;
+	}
+
+	@Test
+	public void computeInvoiceTaxItems_batch() {
+		// GIVEN
+		final SnfInvoice inv1 = taxTestInvoice("NZ", "Pacific/Auckland", "1.23");
+		final SnfInvoice inv2 = taxTestInvoice("AU", "Australia/Sydney", "2.34");
+		final SnfInvoice inv3 = taxTestInvoice("NZ", "Pacific/Auckland", "3.45");
+
+		TaxCode gst = new TaxCode("NZ", NodeUsage.DATUM_PROPS_IN_KEY, "GST", new BigDecimal("0.10"),
+				LocalDate.of(2020, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant(), null);
+		BasicFilterResults<TaxCode, Long> taxCodeResults = new BasicFilterResults<>(
+				singletonList(gst));
+
+		// tax codes looked up once per distinct zone and date, not once per invoice
+		expect(taxCodeDao.findFiltered(EasyMock.anyObject(), isNull(), isNull(), isNull()))
+				.andReturn(taxCodeResults).times(2);
+
+		// WHEN
+		replayAll();
+		List<List<SnfInvoiceItem>> results = system
+				.computeInvoiceTaxItems(asList(inv1, inv2, inv3));
+
+		// THEN
+		assertThat("Tax items returned for every invoice", results, hasSize(3));
+		String[] expectedTax = new String[] { "0.12", "0.23", "0.35" };
+		for ( int i = 0; i < results.size(); i++ ) {
+			List<SnfInvoiceItem> taxItems = results.get(i);
+			assertThat("One tax item for invoice " + i, taxItems, hasSize(1));
+			assertThat("Tax item key " + i, taxItems.get(0).getKey(), equalTo("GST"));
+			assertThat("Tax item amount " + i, taxItems.get(0).getAmount(),
+					equalTo(new BigDecimal(expectedTax[i])));
+		}
+		assertThat("Invoice not mutated", inv1.getItems(), hasSize(1));
+	}
+
+	@Test
+	public void computeInvoiceTaxItems_batch_empty() {
+		// WHEN
+		replayAll();
+		List<List<SnfInvoiceItem>> results = system.computeInvoiceTaxItems(emptyList());
+
+		// THEN
+		assertThat("Empty result for no invoices", results, hasSize(0));
+	}
+
 	@Test
 	public void generateInvoice_withTax_withFullCredit_dryRun() {
 		// GIVEN
@@ -366,15 +751,12 @@ public class SnfInvoicingSystemTests extends AbstractSnfBililngSystemTest {
 		usage.setDatumDaysStoredCost(new BigDecimal("3.45"));
 		usage.setTotalCost(new BigDecimal("7.02"));
 
-		expect(usageDao.findUsageForAccount(userId, startDate, endDate)).andReturn(singletonList(usage));
-
 		final NodeUsage nodeUsage = new NodeUsage(randomUUID().getMostSignificantBits());
 		usage.setDatumPropertiesIn(new BigInteger("123"));
 		usage.setDatumOut(new BigInteger("234"));
 		usage.setDatumDaysStored(new BigInteger("345"));
 
-		expect(usageDao.findNodeUsageForAccount(userId, startDate, endDate))
-				.andReturn(singletonList(nodeUsage));
+		expectUsageAndNodeUsage(usage, nodeUsage);
 
 		Capture<TaxCodeFilter> taxCodeFilterCaptor = new Capture<>();
 		TaxCode datumPropsTax = new TaxCode("NZ", NodeUsage.DATUM_PROPS_IN_KEY, "GST",
@@ -397,11 +779,13 @@ public class SnfInvoicingSystemTests extends AbstractSnfBililngSystemTest {
 
 		final BigDecimal expectedTotal = usage.getTotalCost().add(expectedTax);
 
-		expect(accountDao.claimAccountBalanceCredit(account.getId().getId(),
+		expect(accountDao.projectAccountBalanceCredit(account.getId().getId(),
 				usage.getTotalCost().add(expectedTax))).andReturn(expectedTotal);
 		final AccountBalance remainingBalance = new AccountBalance(account.getId(), Instant.now(),
 				BigDecimal.ZERO, BigDecimal.ZERO, new BigDecimal("22.33"));
-		expect(accountDao.getBalanceForUser(account.getUserId())).andReturn(remainingBalance);
+		final AccountBalance balance = new AccountBalance(account.getId(), Instant.now(),
+				BigDecimal.ZERO, BigDecimal.ZERO, remainingBalance.getAvailableCredit().add(expectedTotal));
+		expect(accountDao.getBalanceForUser(account.getUserId())).andReturn(balance);
 
 		// WHEN
 		replayAll();
@@ -464,15 +848,12 @@ public class SnfInvoicingSystemTests extends AbstractSnfBililngSystemTest {
 		usage.setDatumDaysStoredCost(new BigDecimal("3.45"));
 		usage.setTotalCost(new BigDecimal("7.02"));
 
-		expect(usageDao.findUsageForAccount(userId, startDate, endDate)).andReturn(singletonList(usage));
-
 		final NodeUsage nodeUsage = new NodeUsage(randomUUID().getMostSignificantBits());
 		usage.setDatumPropertiesIn(new BigInteger("123"));
 		usage.setDatumOut(new BigInteger("234"));
 		usage.setDatumDaysStored(new BigInteger("345"));
 
-		expect(usageDao.findNodeUsageForAccount(userId, startDate, endDate))
-				.andReturn(singletonList(nodeUsage));
+		expectUsageAndNodeUsage(usage, nodeUsage);
 
 		Capture<TaxCodeFilter> taxCodeFilterCaptor = new Capture<>();
 		TaxCode datumPropsTax = new TaxCode("NZ", NodeUsage.DATUM_PROPS_IN_KEY, "GST",
@@ -497,11 +878,13 @@ public class SnfInvoicingSystemTests extends AbstractSnfBililngSystemTest {
 
 		final BigDecimal partialCredit = new BigDecimal("5.67");
 
-		expect(accountDao.claimAccountBalanceCredit(account.getId().getId(),
+		expect(accountDao.projectAccountBalanceCredit(account.getId().getId(),
 				usage.getTotalCost().add(expectedTax))).andReturn(partialCredit);
 		final AccountBalance remainingBalance = new AccountBalance(account.getId(), Instant.now(),
 				BigDecimal.ZERO, BigDecimal.ZERO, new BigDecimal("0.00"));
-		expect(accountDao.getBalanceForUser(account.getUserId())).andReturn(remainingBalance);
+		final AccountBalance balance = new AccountBalance(account.getId(), Instant.now(),
+				BigDecimal.ZERO, BigDecimal.ZERO, partialCredit);
+		expect(accountDao.getBalanceForUser(account.getUserId())).andReturn(balance);
 
 		// WHEN
 		replayAll();
@@ -543,4 +926,584 @@ public class SnfInvoicingSystemTests extends AbstractSnfBililngSystemTest {
 		SnfInvoiceNodeUsage invoiceNodeUsage = invoice.getUsages().iterator().next();
 		assertInvoiceNodeUsage(invoice, invoiceNodeUsage, nodeUsage);
 	}
+
+	@Test
+	public void generateInvoice_basic() {
+		// GIVEN
+		final Address addr = new Address();
+		addr.setCountry("NZ");
+		addr.setTimeZoneId("Pacific/Auckland");
+		final Account account = new Account(randomUUID().getMostSignificantBits(), userId,
+				Instant.now());
+		account.setAddress(addr);
+		expect(accountDao.getForUser(userId)).andReturn(account);
+
+		final NodeUsage usage = new NodeUsage();
+		usage.setDatumPropertiesIn(new BigInteger("123"));
+		usage.setDatumPropertiesInCost(new BigDecimal("1.23"));
+		usage.setDatumOut(new BigInteger("234"));
+		usage.setDatumOutCost(new BigDecimal("2.34"));
+		usage.setDatumDaysStored(new BigInteger("345"));
+		usage.setDatumDaysStoredCost(new BigDecimal("3.45"));
+		usage.setTotalCost(new BigDecimal("7.02"));
+
+		expect(usageDao.findUsageForAccount(userId, startDate, endDate)).andReturn(singletonList(usage));
+
+		final Long invoiceId = randomUUID().getMostSignificantBits();
+		expect(invoiceDao.save(EasyMock.anyObject())).andReturn(new UserLongPK(userId, invoiceId));
+
+		Capture<TaxCodeFilter> taxCodeFilterCaptor = new Capture<>();
+		BasicFilterResults<TaxCode, Long> taxCodeResults = new BasicFilterResults<>(emptyList());
+		expect(taxCodeDao.findFiltered(EasyMock.capture(taxCodeFilterCaptor), isNull(), isNull(),
+				isNull())).andReturn(taxCodeResults);
+
+		// items saved in bulk
+		Capture<Collection<SnfInvoiceItem>> itemsCaptor = new Capture<>();
+		invoiceItemDao.saveAll(capture(itemsCaptor));
+
+		// node usage streamed and saved in bulk
+		final NodeUsage nodeUsage = new NodeUsage(randomUUID().getMostSignificantBits());
+		nodeUsage.setDatumPropertiesIn(new BigInteger("123"));
+		nodeUsage.setDatumOut(new BigInteger("234"));
+		nodeUsage.setDatumDaysStored(new BigInteger("345"));
+
+		final AtomicBoolean streaming = new AtomicBoolean(false);
+		usageDao.findNodeUsageForAccount(eq(userId), eq(startDate), eq(endDate), EasyMock.anyObject());
+		expectLastCall().andAnswer(() -> {
+			@SuppressWarnings("unchecked")
+			Consumer<NodeUsage> handler = (Consumer<NodeUsage>) getCurrentArguments()[3];
+			streaming.set(true);
+			handler.accept(nodeUsage);
+			streaming.set(false);
+			return null;
+		});
+
+		// node usage not saved until streaming query completes
+		Capture<Collection<SnfInvoiceNodeUsage>> nodeUsagesCaptor = new Capture<>();
+		invoiceNodeUsageDao.saveAll(capture(nodeUsagesCaptor));
+		expectLastCall().andAnswer(() -> {
+			assertThat("Node usage saved after query completes", streaming.get(), equalTo(false));
+			return null;
+		});
+
+		// WHEN
+		replayAll();
+		SnfInvoice invoice = system.generateInvoice(userId, startDate, endDate,
+				new SnfInvoicingOptions(false, false));
+
+		// THEN
+		assertThat("Invoice created", invoice, notNullValue());
+		assertThat("Invoice has saved ID", invoice.getId(), equalTo(new UserLongPK(userId, invoiceId)));
+		assertThat("Invoice items created for all usage", invoice.getItems(), hasSize(3));
+		assertThat("All invoice items saved in bulk", itemsCaptor.getValue(), hasSize(3));
+
+		Map<String, SnfInvoiceItem> itemMap = invoice.getItemsByKey();
+		SnfInvoiceItem item;
+		item = itemMap.get(NodeUsage.DATUM_PROPS_IN_KEY);
+		assertUsageItem(invoice, item, usage.getDatumPropertiesIn(), usage.getDatumPropertiesInCost());
+		item = itemMap.get(NodeUsage.DATUM_OUT_KEY);
+		assertUsageItem(invoice, item, usage.getDatumOut(), usage.getDatumOutCost());
+		item = itemMap.get(NodeUsage.DATUM_DAYS_STORED_KEY);
+		assertUsageItem(invoice, item, usage.getDatumDaysStored(), usage.getDatumDaysStoredCost());
+
+		assertThat("Invoice node usage items created", invoice.getUsages(), hasSize(1));
+		SnfInvoiceNodeUsage invoiceNodeUsage = invoice.getUsages().iterator().next();
+		assertInvoiceNodeUsage(invoice, invoiceNodeUsage, nodeUsage);
+		assertThat("Invoice node usage saved in bulk", nodeUsagesCaptor.getValue(), hasSize(1));
+		assertInvoiceNodeUsage(invoice, nodeUsagesCaptor.getValue().iterator().next(), nodeUsage);
+	}
+
+	@Test
+	public void previewInvoice_cached() {
+		// GIVEN
+		@SuppressWarnings("unchecked")
+		final Cache<String, SnfInvoice> cache = EasyMock.createMock(Cache.class);
+		system.setPreviewInvoiceCache(cache);
+
+		final Address addr = new Address();
+		addr.setCountry("NZ");
+		addr.setTimeZoneId("Pacific/Auckland");
+		final Account account = new Account(randomUUID().getMostSignificantBits(), userId,
+				Instant.now());
+		account.setAddress(addr);
+		expect(accountDao.getForUser(userId)).andReturn(account);
+
+		final LocalDate month = LocalDate.now(addr.getTimeZone()).withDayOfMonth(1);
+		final SnfInvoice cached = new SnfInvoice(account.getId().getId(), userId, Instant.now());
+		cached.getId().setId(SnfBillingSystem.DRAFT_INVOICE_ID);
+		cached.setAddress(addr);
+		cached.setStartDate(month);
+		cached.setEndDate(month.plusMonths(1));
+		cached.setItems(emptySet());
+		expect(cache.get(format("%d:0:%s:false", userId, month))).andReturn(cached);
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(cache);
+		Invoice result = system.getPreviewInvoice(userId, null, null);
+
+		// THEN
+		EasyMock.verify(cache);
+		assertThat("Preview invoice returned", result, notNullValue());
+		assertThat("Preview invoice from cache", result.getId(),
+				equalTo(SnfBillingSystem.DRAFT_INVOICE_ID.toString()));
+		assertThat("Cache hit counted", system.getPreviewCacheHits(), equalTo(1L));
+		assertThat("No cache miss counted", system.getPreviewCacheMisses(), equalTo(0L));
+	}
+
+	@Test
+	public void previewInvoice_cached_notMutated() {
+		// GIVEN
+		@SuppressWarnings("unchecked")
+		final Cache<String, SnfInvoice> cache = EasyMock.createMock(Cache.class);
+		system.setPreviewInvoiceCache(cache);
+
+		final Address addr = new Address();
+		addr.setCountry("NZ");
+		addr.setTimeZoneId("Pacific/Auckland");
+		final Account account = new Account(randomUUID().getMostSignificantBits(), userId,
+				Instant.now());
+		account.setAddress(addr);
+		expect(accountDao.getForUser(userId)).andReturn(account);
+
+		final LocalDate month = LocalDate.now(addr.getTimeZone()).withDayOfMonth(1);
+		final SnfInvoice cached = new SnfInvoice(account.getId().getId(), userId, Instant.now());
+		cached.getId().setId(SnfBillingSystem.DRAFT_INVOICE_ID);
+		cached.setAddress(addr);
+		cached.setCurrencyCode("NZD");
+		cached.setStartDate(month);
+		cached.setEndDate(month.plusMonths(1));
+		final SnfInvoiceItem credit = SnfInvoiceItem.newItem(cached, InvoiceItemType.Credit,
+				AccountBalance.ACCOUNT_CREDIT_KEY, BigDecimal.ONE, new BigDecimal("-1.00"));
+		credit.setMetadata(new LinkedHashMap<>(
+				singletonMap(SnfInvoiceItem.META_AVAILABLE_CREDIT, "9.00")));
+		cached.setItems(singleton(credit));
+		expect(cache.get(format("%d:0:%s:false", userId, month))).andReturn(cached);
+
+		expect(messageDao.findMessages(anyObject(), anyObject(), anyObject()))
+				.andReturn(new Properties()).anyTimes();
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(cache);
+		Invoice result = system.getPreviewInvoice(userId, null, Locale.US);
+
+		// THEN
+		EasyMock.verify(cache);
+		assertThat("Preview invoice returned", result, notNullValue());
+		assertThat("Localized credit item returned", result.getInvoiceItems(), hasSize(1));
+		assertThat("Cached invoice item metadata not localized", credit.getMetadata().keySet(),
+				contains(SnfInvoiceItem.META_AVAILABLE_CREDIT));
+	}
+
+	@Test
+	public void previewInvoice_cacheMiss_thenInvalidate() {
+		// GIVEN
+		@SuppressWarnings("unchecked")
+		final Cache<String, SnfInvoice> cache = EasyMock.createMock(Cache.class);
+		system.setPreviewInvoiceCache(cache);
+		@SuppressWarnings("unchecked")
+		final Cache<String, byte[]> renderCache = EasyMock.createMock(Cache.class);
+		system.setPreviewRenderCache(renderCache);
+
+		final Address addr = new Address();
+		addr.setCountry("NZ");
+		addr.setTimeZoneId("Pacific/Auckland");
+		final Account account = new Account(randomUUID().getMostSignificantBits(), userId,
+				Instant.now());
+		account.setAddress(addr);
+		expect(accountDao.getForUser(userId)).andReturn(account).times(3);
+
+		final YearMonth month = YearMonth.from(startDate);
+		final String cacheKey = format("%d:0:%s:false", userId, startDate);
+		expect(cache.get(cacheKey)).andReturn(null);
+
+		final NodeUsage usage = new NodeUsage();
+		usage.setDatumPropertiesIn(new BigInteger("123"));
+		usage.setDatumPropertiesInCost(new BigDecimal("1.23"));
+		usage.setDatumOut(new BigInteger("234"));
+		usage.setDatumOutCost(new BigDecimal("2.34"));
+		usage.setDatumDaysStored(new BigInteger("345"));
+		usage.setDatumDaysStoredCost(new BigDecimal("3.45"));
+		usage.setTotalCost(new BigDecimal("7.02"));
+		final NodeUsage nodeUsage = new NodeUsage(randomUUID().getMostSignificantBits());
+		expectUsageAndNodeUsage(usage, nodeUsage);
+
+		BasicFilterResults<TaxCode, Long> taxCodeResults = new BasicFilterResults<>(emptyList());
+		expect(taxCodeDao.findFiltered(EasyMock.anyObject(), isNull(), isNull(), isNull()))
+				.andReturn(taxCodeResults);
+
+		Capture<SnfInvoice> cachedCaptor = new Capture<>();
+		cache.put(eq(cacheKey), capture(cachedCaptor));
+
+		// invalidating moves the user to a new key generation, without touching the caches
+		final String nextCacheKey = format("%d:1:%s:false", userId, startDate);
+		final SnfInvoice nextCached = new SnfInvoice(randomUUID().getMostSignificantBits(), userId,
+				account.getId().getId(), Instant.now());
+		nextCached.setAddress(addr);
+		nextCached.setStartDate(startDate);
+		nextCached.setEndDate(endDate);
+		nextCached.setItems(emptySet());
+		expect(cache.get(nextCacheKey)).andReturn(nextCached);
+
+		final InvoiceGenerationOptions options = EasyMock
+				.createMock(InvoiceGenerationOptions.class);
+		expect(options.getMonth()).andReturn(month).anyTimes();
+		expect(options.isUseAccountCredit()).andReturn(false).anyTimes();
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(cache, renderCache, options);
+		Invoice result = system.getPreviewInvoice(userId, options, null);
+		system.invalidatePreviewInvoices(userId);
+		Invoice next = system.getPreviewInvoice(userId, options, null);
+
+		// THEN
+		EasyMock.verify(cache, renderCache);
+		assertThat("Preview invoice generated", result, notNullValue());
+		assertThat("Generated invoice cached", cachedCaptor.getValue().getStartDate(),
+				equalTo(startDate));
+		assertThat("Invoice for new generation returned", next.getId(),
+				equalTo(nextCached.getId().getId().toString()));
+		assertThat("Cache hit counted", system.getPreviewCacheHits(), equalTo(1L));
+		assertThat("Cache miss counted", system.getPreviewCacheMisses(), equalTo(1L));
+	}
+
+	@Test
+	public void invalidatePreviewInvoices_nothingCached() {
+		// GIVEN
+		@SuppressWarnings("unchecked")
+		final Cache<String, SnfInvoice> cache = EasyMock.createMock(Cache.class);
+		system.setPreviewInvoiceCache(cache);
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(cache);
+		system.invalidatePreviewInvoices(userId);
+
+		// THEN
+		EasyMock.verify(cache);
+	}
+
+	@Test
+	public void renderInvoice_cached() throws IOException {
+		// GIVEN
+		@SuppressWarnings("unchecked")
+		final Cache<String, byte[]> cache = EasyMock.createMock(Cache.class);
+		system.setInvoiceRenderCache(cache);
+
+		final Address addr = new Address();
+		addr.setCountry("NZ");
+		addr.setTimeZoneId("Pacific/Auckland");
+		final SnfInvoice invoice = new SnfInvoice(randomUUID().getMostSignificantBits(), userId,
+				randomUUID().getMostSignificantBits(), Instant.now());
+		invoice.setAddress(addr);
+		invoice.setStartDate(startDate);
+		invoice.setEndDate(endDate);
+		invoice.setItems(emptySet());
+
+		final Properties messages = new Properties();
+		messages.setProperty("version", "2");
+		expect(messageDao.findMessages(anyObject(), anyObject(), anyObject())).andReturn(messages)
+				.anyTimes();
+
+		final MimeType pdf = MimeType.valueOf("application/pdf");
+		final byte[] data = new byte[] { 1, 2, 3 };
+		expect(cache.get(format("%d:%s:%s:2", invoice.getId().getId(), pdf, Locale.ENGLISH)))
+				.andReturn(data);
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(cache);
+		Resource result = system.renderInvoice(invoice, pdf, Locale.ENGLISH);
+
+		// THEN
+		EasyMock.verify(cache);
+		assertThat("Rendered invoice returned from cache without rendering",
+				FileCopyUtils.copyToByteArray(result.getInputStream()), equalTo(data));
+		assertThat("Cache hit counted", system.getInvoiceRenderCacheHits(), equalTo(1L));
+		assertThat("No cache miss counted", system.getInvoiceRenderCacheMisses(), equalTo(0L));
+	}
+
+	private SnfInvoice renderTestInvoice() {
+		final Address addr = new Address();
+		addr.setCountry("NZ");
+		addr.setTimeZoneId("Pacific/Auckland");
+		final SnfInvoice invoice = new SnfInvoice(randomUUID().getMostSignificantBits(), userId,
+				randomUUID().getMostSignificantBits(), Instant.now());
+		invoice.setAddress(addr);
+		invoice.setCurrencyCode("NZD");
+		invoice.setStartDate(startDate);
+		invoice.setEndDate(endDate);
+		invoice.setItems(emptySet());
+
+		final Properties messages = new Properties();
+		messages.setProperty("version", "2");
+		expect(messageDao.findMessages(anyObject(), anyObject(), anyObject())).andReturn(messages)
+				.anyTimes();
+		return invoice;
+	}
+
+	private static void writeAnswer(byte[] data) throws IOException {
+		((OutputStream) getCurrentArguments()[3]).write(data);
+	}
+
+	@Test
+	public void renderInvoices_htmlRenderedOnce() throws IOException {
+		// GIVEN
+		final SnfInvoice invoice = renderTestInvoice();
+		final MimeType html = MimeTypeUtils.TEXT_HTML;
+		final MimeType pdf = MimeType.valueOf("application/pdf");
+		final byte[] htmlData = "<html>Invoice</html>".getBytes(StandardCharsets.UTF_8);
+		final byte[] pdfData = new byte[] { 1, 2, 3 };
+
+		final SnfInvoiceRendererResolver resolver = EasyMock
+				.createMock(SnfInvoiceRendererResolver.class);
+		final TemplateRenderer htmlRenderer = EasyMock.createMock(TemplateRenderer.class);
+		final HtmlDerivedTemplateRenderer pdfRenderer = EasyMock
+				.createMock(HtmlDerivedTemplateRenderer.class);
+		system.setRendererResolvers(new StaticOptionalServiceCollection<>(singleton(resolver)));
+
+		expect(resolver.rendererForInvoice(same(invoice), eq(pdf), eq(Locale.ENGLISH)))
+				.andReturn(pdfRenderer);
+		expect(resolver.rendererForInvoice(same(invoice), eq(html), eq(Locale.ENGLISH)))
+				.andReturn(htmlRenderer);
+
+		// the HTML is rendered once, and shared by the PDF and HTML outputs
+		htmlRenderer.render(eq(Locale.ENGLISH), eq(html), anyObject(), anyObject());
+		expectLastCall().andAnswer(() -> {
+			writeAnswer(htmlData);
+			return null;
+		});
+		pdfRenderer.renderHtml(eq(Locale.ENGLISH), eq(pdf),
+				eq(new String(htmlData, StandardCharsets.UTF_8)), anyObject());
+		expectLastCall().andAnswer(() -> {
+			writeAnswer(pdfData);
+			return null;
+		});
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(resolver, htmlRenderer, pdfRenderer);
+		Map<MimeType, Resource> result = system.renderInvoice(invoice, asList(pdf, html),
+				Locale.ENGLISH);
+
+		// THEN
+		EasyMock.verify(resolver, htmlRenderer, pdfRenderer);
+		assertThat("Resource returned for each type", result.keySet(), contains(pdf, html));
+		assertThat("PDF derived from rendered HTML",
+				FileCopyUtils.copyToByteArray(result.get(pdf).getInputStream()),
+				equalTo(pdfData));
+		assertThat("HTML rendered once",
+				FileCopyUtils.copyToByteArray(result.get(html).getInputStream()),
+				equalTo(htmlData));
+	}
+
+	@Test
+	public void renderInvoices_cacheHitAndMiss() throws IOException {
+		// GIVEN
+		@SuppressWarnings("unchecked")
+		final Cache<String, byte[]> cache = EasyMock.createMock(Cache.class);
+		system.setInvoiceRenderCache(cache);
+
+		final SnfInvoice invoice = renderTestInvoice();
+		final MimeType html = MimeTypeUtils.TEXT_HTML;
+		final MimeType pdf = MimeType.valueOf("application/pdf");
+		final byte[] htmlData = "<html>Invoice</html>".getBytes(StandardCharsets.UTF_8);
+		final byte[] pdfData = new byte[] { 1, 2, 3 };
+
+		final SnfInvoiceRendererResolver resolver = EasyMock
+				.createMock(SnfInvoiceRendererResolver.class);
+		final HtmlDerivedTemplateRenderer pdfRenderer = EasyMock
+				.createMock(HtmlDerivedTemplateRenderer.class);
+		system.setRendererResolvers(new StaticOptionalServiceCollection<>(singleton(resolver)));
+
+		// HTML found in cache, PDF not
+		final String htmlKey = format("%d:%s:%s:2", invoice.getId().getId(), html, Locale.ENGLISH);
+		final String pdfKey = format("%d:%s:%s:2", invoice.getId().getId(), pdf, Locale.ENGLISH);
+		expect(cache.get(htmlKey)).andReturn(htmlData);
+		expect(cache.get(pdfKey)).andReturn(null);
+
+		// the PDF is derived from the cached HTML, without rendering HTML again
+		expect(resolver.rendererForInvoice(same(invoice), eq(pdf), eq(Locale.ENGLISH)))
+				.andReturn(pdfRenderer);
+		pdfRenderer.renderHtml(eq(Locale.ENGLISH), eq(pdf),
+				eq(new String(htmlData, StandardCharsets.UTF_8)), anyObject());
+		expectLastCall().andAnswer(() -> {
+			writeAnswer(pdfData);
+			return null;
+		});
+		cache.put(eq(pdfKey), aryEq(pdfData));
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(cache, resolver, pdfRenderer);
+		Map<MimeType, Resource> result = system.renderInvoice(invoice, asList(html, pdf),
+				Locale.ENGLISH);
+
+		// THEN
+		EasyMock.verify(cache, resolver, pdfRenderer);
+		assertThat("HTML returned from cache",
+				FileCopyUtils.copyToByteArray(result.get(html).getInputStream()),
+				equalTo(htmlData));
+		assertThat("PDF rendered from cached HTML",
+				FileCopyUtils.copyToByteArray(result.get(pdf).getInputStream()),
+				equalTo(pdfData));
+		assertThat("Cache hit counted", system.getInvoiceRenderCacheHits(), equalTo(1L));
+		assertThat("Cache miss counted", system.getInvoiceRenderCacheMisses(), equalTo(1L));
+	}
+
+	@Test
+	public void renderInvoice_outputStream() throws IOException {
+		// GIVEN
+		final SnfInvoice invoice = renderTestInvoice();
+		final MimeType html = MimeTypeUtils.TEXT_HTML;
+		final byte[] htmlData = "<html>Invoice</html>".getBytes(StandardCharsets.UTF_8);
+
+		final SnfInvoiceRendererResolver resolver = EasyMock
+				.createMock(SnfInvoiceRendererResolver.class);
+		final TemplateRenderer htmlRenderer = EasyMock.createMock(TemplateRenderer.class);
+		system.setRendererResolvers(new StaticOptionalServiceCollection<>(singleton(resolver)));
+
+		expect(resolver.rendererForInvoice(same(invoice), eq(html), eq(Locale.ENGLISH)))
+				.andReturn(htmlRenderer);
+		htmlRenderer.render(eq(Locale.ENGLISH), eq(html), anyObject(), anyObject());
+		expectLastCall().andAnswer(() -> {
+			writeAnswer(htmlData);
+			return null;
+		});
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(resolver, htmlRenderer);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		String filename = system.renderInvoice(invoice, html, Locale.ENGLISH, out);
+
+		// THEN
+		EasyMock.verify(resolver, htmlRenderer);
+		assertThat("Rendered directly to stream", out.toByteArray(), equalTo(htmlData));
+		assertThat("File name returned", filename, notNullValue());
+		assertThat("HTML file name", filename.endsWith(".html"), equalTo(true));
+	}
+
+	@Test
+	public void renderInvoice_largeResourceReadable() throws IOException {
+		// GIVEN
+		system.setRenderSpillThreshold(4);
+		final SnfInvoice invoice = renderTestInvoice();
+		final MimeType html = MimeTypeUtils.TEXT_HTML;
+		final byte[] htmlData = "<html>Invoice</html>".getBytes(StandardCharsets.UTF_8);
+
+		final SnfInvoiceRendererResolver resolver = EasyMock
+				.createMock(SnfInvoiceRendererResolver.class);
+		final TemplateRenderer htmlRenderer = EasyMock.createMock(TemplateRenderer.class);
+		system.setRendererResolvers(new StaticOptionalServiceCollection<>(singleton(resolver)));
+
+		expect(resolver.rendererForInvoice(same(invoice), eq(html), eq(Locale.ENGLISH)))
+				.andReturn(htmlRenderer);
+		htmlRenderer.render(eq(Locale.ENGLISH), eq(html), anyObject(), anyObject());
+		expectLastCall().andAnswer(() -> {
+			writeAnswer(htmlData);
+			return null;
+		});
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(resolver, htmlRenderer);
+		Resource result = system.renderInvoice(invoice, html, Locale.ENGLISH);
+
+		// THEN
+		EasyMock.verify(resolver, htmlRenderer);
+		assertThat("Resource can be read many times", result.isOpen(), equalTo(false));
+		assertThat("Content length", result.contentLength(), equalTo((long) htmlData.length));
+		assertThat("Content", FileCopyUtils.copyToByteArray(result.getInputStream()),
+				equalTo(htmlData));
+		assertThat("Content can be read again",
+				FileCopyUtils.copyToByteArray(result.getInputStream()), equalTo(htmlData));
+	}
+
+	@Test
+	public void renderInvoice_outputStream_cacheMissLarge() throws IOException {
+		// GIVEN
+		@SuppressWarnings("unchecked")
+		final Cache<String, byte[]> cache = EasyMock.createMock(Cache.class);
+		system.setInvoiceRenderCache(cache);
+		system.setRenderSpillThreshold(4);
+
+		final SnfInvoice invoice = renderTestInvoice();
+		final MimeType html = MimeTypeUtils.TEXT_HTML;
+		final byte[] head = "<html>".getBytes(StandardCharsets.UTF_8);
+		final byte[] tail = "Invoice</html>".getBytes(StandardCharsets.UTF_8);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		final SnfInvoiceRendererResolver resolver = EasyMock
+				.createMock(SnfInvoiceRendererResolver.class);
+		final TemplateRenderer htmlRenderer = EasyMock.createMock(TemplateRenderer.class);
+		system.setRendererResolvers(new StaticOptionalServiceCollection<>(singleton(resolver)));
+
+		final String key = format("%d:%s:%s:2", invoice.getId().getId(), html, Locale.ENGLISH);
+		expect(cache.get(key)).andReturn(null);
+
+		// output is streamed to the caller as it is rendered, and not cached
+		expect(resolver.rendererForInvoice(same(invoice), eq(html), eq(Locale.ENGLISH)))
+				.andReturn(htmlRenderer);
+		htmlRenderer.render(eq(Locale.ENGLISH), eq(html), anyObject(), anyObject());
+		expectLastCall().andAnswer(() -> {
+			writeAnswer(head);
+			assertThat("Output streamed to caller during render", out.toByteArray(),
+					equalTo(head));
+			writeAnswer(tail);
+			return null;
+		});
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(cache, resolver, htmlRenderer);
+		system.renderInvoice(invoice, html, Locale.ENGLISH, out);
+
+		// THEN
+		EasyMock.verify(cache, resolver, htmlRenderer);
+		assertThat("Rendered to stream", out.toString("UTF-8"), equalTo("<html>Invoice</html>"));
+		assertThat("Cache miss counted", system.getInvoiceRenderCacheMisses(), equalTo(1L));
+	}
+
+	@Test
+	public void renderInvoice_outputStream_cacheMissSmall() throws IOException {
+		// GIVEN
+		@SuppressWarnings("unchecked")
+		final Cache<String, byte[]> cache = EasyMock.createMock(Cache.class);
+		system.setInvoiceRenderCache(cache);
+
+		final SnfInvoice invoice = renderTestInvoice();
+		final MimeType html = MimeTypeUtils.TEXT_HTML;
+		final byte[] htmlData = "<html>Invoice</html>".getBytes(StandardCharsets.UTF_8);
+
+		final SnfInvoiceRendererResolver resolver = EasyMock
+				.createMock(SnfInvoiceRendererResolver.class);
+		final TemplateRenderer htmlRenderer = EasyMock.createMock(TemplateRenderer.class);
+		system.setRendererResolvers(new StaticOptionalServiceCollection<>(singleton(resolver)));
+
+		final String key = format("%d:%s:%s:2", invoice.getId().getId(), html, Locale.ENGLISH);
+		expect(cache.get(key)).andReturn(null);
+		expect(resolver.rendererForInvoice(same(invoice), eq(html), eq(Locale.ENGLISH)))
+				.andReturn(htmlRenderer);
+		htmlRenderer.render(eq(Locale.ENGLISH), eq(html), anyObject(), anyObject());
+		expectLastCall().andAnswer(() -> {
+			writeAnswer(htmlData);
+			return null;
+		});
+		cache.put(eq(key), aryEq(htmlData));
+
+		// WHEN
+		replayAll();
+		EasyMock.replay(cache, resolver, htmlRenderer);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		system.renderInvoice(invoice, html, Locale.ENGLISH, out);
+
+		// THEN
+		EasyMock.verify(cache, resolver, htmlRenderer);
+		assertThat("Rendered to stream", out.toByteArray(), equalTo(htmlData));
+		assertThat("Cache miss counted", system.getInvoiceRenderCacheMisses(), equalTo(1L));
+	}
+
 }
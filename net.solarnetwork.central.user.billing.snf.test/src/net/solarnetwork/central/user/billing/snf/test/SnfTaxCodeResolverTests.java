@@ -23,12 +23,18 @@
 package net.solarnetwork.central.user.billing.snf.test;
 
 import static java.time.Instant.now;
+import static java.util.Arrays.asList;
 import static java.util.UUID.randomUUID;
 import static net.solarnetwork.central.user.billing.snf.domain.TaxCodeFilter.filterFor;
 import static net.solarnetwork.central.user.billing.snf.test.SnfMatchers.matchesFilter;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import org.junit.Test;
 import net.solarnetwork.central.user.billing.snf.SnfBillingSystem;
 import net.solarnetwork.central.user.billing.snf.SnfTaxCodeResolver;
@@ -42,7 +48,7 @@ import net.solarnetwork.util.StaticOptionalService;
  * {@link SnfTaxCodeResolver}.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.2
  */
 public class SnfTaxCodeResolverTests extends AbstractSnfBililngSystemTest {
 
@@ -90,6 +96,43 @@ public class SnfTaxCodeResolverTests extends AbstractSnfBililngSystemTest {
 						"US.CA"));
 	}
 
+	private SnfInvoice invoice(String country, String state, LocalDate startDate) {
+		Address addr = new Address();
+		addr.setCountry(country);
+		addr.setStateOrProvince(state);
+		addr.setTimeZoneId("Pacific/Auckland");
+		SnfInvoice invoice = new SnfInvoice(randomUUID().getMostSignificantBits(), userId, now());
+		invoice.setAddress(addr);
+		invoice.setStartDate(startDate);
+		return invoice;
+	}
+
+	@Test
+	public void resolveTaxCodeFilters_grouped() {
+		// GIVEN
+		LocalDate invoiceStartDate = LocalDate.of(2020, 2, 1);
+		SnfInvoice inv1 = invoice("NZ", null, invoiceStartDate);
+		SnfInvoice inv2 = invoice("US", "CA", invoiceStartDate);
+		SnfInvoice inv3 = invoice("NZ", null, invoiceStartDate);
+		SnfInvoice inv4 = invoice("US", "CA", invoiceStartDate.plusMonths(1));
+
+		// WHEN
+		replayAll();
+		Map<TaxCodeFilter, List<SnfInvoice>> groups = system
+				.taxCodeFiltersForInvoices(asList(inv1, inv2, inv3, inv4));
+
+		// THEN
+		assertThat("Invoices grouped by zone and date", groups.values(),
+				contains(contains(inv1, inv3), contains(inv2), contains(inv4)));
+		List<TaxCodeFilter> filters = new ArrayList<>(groups.keySet());
+		assertThat("NZ filter", filters.get(0), matchesFilter(
+				invoiceStartDate.atStartOfDay(inv1.getTimeZone()).toInstant(), "NZ"));
+		assertThat("US.CA filter", filters.get(1), matchesFilter(
+				invoiceStartDate.atStartOfDay(inv2.getTimeZone()).toInstant(), "US", "US.CA"));
+		assertThat("Zones shared between filters for same country and state",
+				filters.get(2).getZones(), sameInstance(filters.get(1).getZones()));
+	}
+
 	@Test
 	public void resolveTaxCodeFilter_viaOptionalService() {
 		// GIVEN
@@ -121,4 +164,18 @@ public class SnfTaxCodeResolverTests extends AbstractSnfBililngSystemTest {
 		assertThat("Filter created from configured service", filter,
 				matchesFilter(invoiceStartDate.atStartOfDay(addr.getTimeZone()).toInstant(), testZone));
 	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void resolveTaxCodeFilters_noAddress() {
+		// GIVEN
+		LocalDate invoiceStartDate = LocalDate.of(2020, 2, 1);
+		SnfInvoice inv1 = invoice("NZ", null, invoiceStartDate);
+		SnfInvoice inv2 = new SnfInvoice(randomUUID().getMostSignificantBits(), userId, now());
+		inv2.setStartDate(invoiceStartDate);
+
+		// WHEN
+		replayAll();
+		system.taxCodeFiltersForInvoices(asList(inv1, inv2));
+	}
+
 }
@@ -0,0 +1,182 @@
+/* ==================================================================
+ * CachingTaxCodeDaoTests.java - 18/10/2026 3:05:52 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.util.test;
+
+import static java.util.Arrays.asList;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isNull;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import net.solarnetwork.central.user.billing.snf.dao.TaxCodeDao;
+import net.solarnetwork.central.user.billing.snf.domain.TaxCode;
+import net.solarnetwork.central.user.billing.snf.domain.TaxCodeFilter;
+import net.solarnetwork.central.user.billing.snf.util.CachingTaxCodeDao;
+import net.solarnetwork.dao.BasicFilterResults;
+import net.solarnetwork.dao.FilterResults;
+import net.solarnetwork.domain.SimpleSortDescriptor;
+import net.solarnetwork.domain.SortDescriptor;
+
+/**
+ * Test cases for the {@link CachingTaxCodeDao} class.
+ * 
+ * @author matt
+ * @version 1.0
+ */
+public class CachingTaxCodeDaoTests {
+
+	private static final Instant NOW = Instant.now().truncatedTo(ChronoUnit.DAYS);
+
+	private TaxCodeDao delegate;
+	private CachingTaxCodeDao dao;
+
+	private TaxCode nzGst;
+	private TaxCode nzGstOld;
+	private TaxCode nzOther;
+	private TaxCode auGst;
+
+	@Before
+	public void setup() {
+		delegate = EasyMock.createMock(TaxCodeDao.class);
+		dao = new CachingTaxCodeDao(delegate);
+
+		final Instant past = NOW.minus(365, ChronoUnit.DAYS);
+		nzGstOld = new TaxCode(1L, past, "NZ", "a", "GST", new BigDecimal("0.125"), past, NOW);
+		nzGst = new TaxCode(2L, NOW, "NZ", "a", "GST", new BigDecimal("0.15"), NOW, null);
+		nzOther = new TaxCode(3L, past, "NZ", "b", "GST", new BigDecimal("0.15"), past, null);
+		auGst = new TaxCode(4L, past, "AU", "a", "GST", new BigDecimal("0.10"), past, null);
+	}
+
+	@After
+	public void teardown() {
+		EasyMock.verify(delegate);
+	}
+
+	private void replayAll() {
+		EasyMock.replay(delegate);
+	}
+
+	private void expectLoad(TaxCode... codes) {
+		List<TaxCode> all = asList(codes);
+		expect(delegate.findFiltered(anyObject(TaxCodeFilter.class), eq(TaxCodeDao.SORT_BY_ITEM_KEY),
+				isNull(), isNull())).andReturn(new BasicFilterResults<>(all, (long) all.size(), 0,
+						all.size()));
+	}
+
+	@Test
+	public void findFiltered_zoneAndDate() {
+		// GIVEN
+		expectLoad(nzGstOld, nzGst, nzOther, auGst);
+
+		// WHEN
+		replayAll();
+		FilterResults<TaxCode, Long> results = dao
+				.findFiltered(TaxCodeFilter.filterFor(NOW.plusSeconds(1), "NZ"), null, null, null);
+
+		// THEN
+		assertThat("Current NZ codes returned", results, contains(nzGst, nzOther));
+		assertThat("Total results", results.getTotalResults(), equalTo(2L));
+	}
+
+	@Test
+	public void findFiltered_validToExclusive() {
+		// GIVEN
+		expectLoad(nzGstOld, nzGst, nzOther, auGst);
+
+		// WHEN
+		replayAll();
+		TaxCodeFilter filter = TaxCodeFilter.filterFor(NOW.minusSeconds(1), "NZ");
+		filter.setItemKey("a");
+		FilterResults<TaxCode, Long> before = dao.findFiltered(filter, null, null, null);
+		filter.setDate(NOW);
+		FilterResults<TaxCode, Long> at = dao.findFiltered(filter, null, null, null);
+
+		// THEN
+		assertThat("Old code valid before change", before, contains(nzGstOld));
+		assertThat("New code valid at change", at, contains(nzGst));
+	}
+
+	@Test
+	public void findFiltered_loadedOnce() {
+		// GIVEN
+		expectLoad(nzGstOld, nzGst, nzOther, auGst);
+
+		// WHEN
+		replayAll();
+		dao.findFiltered(TaxCodeFilter.filterFor(NOW, "NZ"), null, null, null);
+		FilterResults<TaxCode, Long> results = dao.findFiltered(TaxCodeFilter.filterFor(NOW, "AU"),
+				TaxCodeDao.SORT_BY_ITEM_KEY, null, null);
+
+		// THEN
+		assertThat("AU codes returned from cache", results, contains(auGst));
+		assertThat("Get by ID from cache", dao.get(nzOther.getId()), sameInstance(nzOther));
+	}
+
+	@Test
+	public void findFiltered_customSort() {
+		// GIVEN
+		List<SortDescriptor> sorts = asList(new SimpleSortDescriptor("ID"));
+		TaxCodeFilter filter = TaxCodeFilter.filterFor(NOW, "NZ");
+		FilterResults<TaxCode, Long> delegateResults = new BasicFilterResults<>(asList(nzGst),
+				1L, 0, 1);
+		expect(delegate.findFiltered(filter, sorts, null, null)).andReturn(delegateResults);
+
+		// WHEN
+		replayAll();
+		FilterResults<TaxCode, Long> results = dao.findFiltered(filter, sorts, null, null);
+
+		// THEN
+		assertThat("Custom sort passed to delegate", results, sameInstance(delegateResults));
+	}
+
+	@Test
+	public void reload() {
+		// GIVEN
+		expectLoad(nzGstOld);
+		expectLoad(nzGstOld, nzGst);
+
+		// WHEN
+		replayAll();
+		FilterResults<TaxCode, Long> results1 = dao.findFiltered(TaxCodeFilter.filterFor(NOW, "NZ"),
+				null, null, null);
+		dao.reload();
+		FilterResults<TaxCode, Long> results2 = dao.findFiltered(TaxCodeFilter.filterFor(NOW, "NZ"),
+				null, null, null);
+
+		// THEN
+		assertThat("No codes before reload", results1.getReturnedResultCount(), equalTo(0));
+		assertThat("New code available after reload", results2, contains(nzGst));
+	}
+
+}
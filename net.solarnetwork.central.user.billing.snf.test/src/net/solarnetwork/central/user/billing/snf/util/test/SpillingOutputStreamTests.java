@@ -0,0 +1,146 @@
+/* ==================================================================
+ * SpillingOutputStreamTests.java - 18/10/2026 6:20:15 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.util.test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Test;
+import org.springframework.util.FileCopyUtils;
+import net.solarnetwork.central.user.billing.snf.util.SpillingOutputStream;
+
+/**
+ * Test cases for the {@link SpillingOutputStream} class.
+ * 
+ * @author matt
+ * @version 1.1
+ */
+public class SpillingOutputStreamTests {
+
+	private static byte[] data(int len) {
+		byte[] data = new byte[len];
+		for ( int i = 0; i < len; i++ ) {
+			data[i] = (byte) i;
+		}
+		return data;
+	}
+
+	@Test
+	public void underThreshold() throws IOException {
+		// GIVEN
+		final byte[] data = data(10);
+		SpillingOutputStream out = new SpillingOutputStream(10, "test-");
+
+		// WHEN
+		out.write(data, 0, 5);
+		out.write(data, 5, 5);
+		out.close();
+
+		// THEN
+		assertThat("Not spilled", out.isSpilled(), equalTo(false));
+		assertThat("Size", out.size(), equalTo(10L));
+		assertThat("Content", FileCopyUtils.copyToByteArray(out.getInputStream()), equalTo(data));
+		assertThat("Content can be read again", FileCopyUtils.copyToByteArray(out.getInputStream()),
+				equalTo(data));
+	}
+
+	@Test
+	public void overThreshold() throws IOException {
+		// GIVEN
+		final byte[] data = data(100);
+		SpillingOutputStream out = new SpillingOutputStream(10, "test-");
+
+		// WHEN
+		out.write(data, 0, 8);
+		out.write(data[8]);
+		out.write(data, 9, 91);
+		out.close();
+
+		// THEN
+		assertThat("Spilled", out.isSpilled(), equalTo(true));
+		assertThat("Size", out.size(), equalTo(100L));
+		try (InputStream in = out.getInputStream()) {
+			assertThat("Content", FileCopyUtils.copyToByteArray(in), equalTo(data));
+		}
+		try (InputStream in = out.getInputStream()) {
+			assertThat("Content can be read again", FileCopyUtils.copyToByteArray(in),
+					equalTo(data));
+		}
+		out.discard();
+	}
+
+	@Test
+	public void overThreshold_discard() throws IOException {
+		// GIVEN
+		SpillingOutputStream out = new SpillingOutputStream(10, "test-");
+		out.write(data(100));
+		out.close();
+
+		// WHEN
+		out.discard();
+
+		// THEN
+		try {
+			out.getInputStream();
+			fail("Discarded data should not be readable");
+		} catch ( IOException e ) {
+			// expected
+		}
+	}
+
+	@Test
+	public void underThreshold_discard() throws IOException {
+		// GIVEN
+		SpillingOutputStream out = new SpillingOutputStream(10, "test-");
+		out.write(data(10));
+		out.close();
+
+		// WHEN
+		out.discard();
+
+		// THEN
+		try {
+			out.getInputStream();
+			fail("Discarded data should not be readable");
+		} catch ( IOException e ) {
+			// expected
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void getInputStream_notClosed() throws IOException {
+		SpillingOutputStream out = new SpillingOutputStream(10, "test-");
+		out.write(1);
+		out.getInputStream();
+	}
+
+	@Test(expected = IOException.class)
+	public void write_closed() throws IOException {
+		SpillingOutputStream out = new SpillingOutputStream(10, "test-");
+		out.close();
+		out.write(1);
+	}
+
+}
@@ -0,0 +1,64 @@
+/* ==================================================================
+ * HtmlDerivedTemplateRenderer.java - 18/10/2026 5:31:12 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import org.springframework.util.MimeType;
+import net.solarnetwork.support.TemplateRenderer;
+
+/**
+ * A {@link TemplateRenderer} whose output is derived from HTML rendered by
+ * another renderer.
+ * 
+ * <p>
+ * This allows the HTML for an invoice to be rendered once and then shared
+ * between multiple output formats, for example to deliver both HTML and PDF
+ * versions of the same invoice.
+ * </p>
+ * 
+ * @author matt
+ * @version 1.0
+ * @since 1.2
+ */
+public interface HtmlDerivedTemplateRenderer extends TemplateRenderer {
+
+	/**
+	 * Render already-rendered HTML to this renderer's output format.
+	 * 
+	 * @param locale
+	 *        the desired output locale
+	 * @param mimeType
+	 *        the desired output type
+	 * @param html
+	 *        the rendered HTML
+	 * @param out
+	 *        the output stream to write to
+	 * @throws IOException
+	 *         if any IO error occurs
+	 */
+	void renderHtml(Locale locale, MimeType mimeType, String html, OutputStream out)
+			throws IOException;
+
+}
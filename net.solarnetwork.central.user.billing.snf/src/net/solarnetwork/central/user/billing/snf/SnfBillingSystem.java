@@ -34,15 +34,17 @@ import static net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceItem.ME
 import static net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceItem.newItem;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.math.BigInteger;
-import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -50,10 +52,13 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.stream.StreamSupport;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.cache.Cache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,6 +68,8 @@ import org.springframework.core.io.Resource;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StreamUtils;
 import net.solarnetwork.central.RepeatableTaskException;
 import net.solarnetwork.central.dao.VersionedMessageDao;
 import net.solarnetwork.central.dao.VersionedMessageDao.VersionedMessages;
@@ -70,7 +77,6 @@ import net.solarnetwork.central.domain.FilterResults;
 import net.solarnetwork.central.domain.SortDescriptor;
 import net.solarnetwork.central.security.AuthorizationException;
 import net.solarnetwork.central.security.AuthorizationException.Reason;
-import net.solarnetwork.central.support.BasicFilterResults;
 import net.solarnetwork.central.support.VersionedMessageDaoMessageSource;
 import net.solarnetwork.central.user.billing.biz.BillingSystem;
 import net.solarnetwork.central.user.billing.domain.BillingSystemInfo;
@@ -79,6 +85,7 @@ import net.solarnetwork.central.user.billing.domain.InvoiceFilter;
 import net.solarnetwork.central.user.billing.domain.InvoiceItem;
 import net.solarnetwork.central.user.billing.domain.InvoiceMatch;
 import net.solarnetwork.central.user.billing.snf.dao.AccountDao;
+import net.solarnetwork.central.user.billing.snf.dao.NodeUsageAccrualDao;
 import net.solarnetwork.central.user.billing.snf.dao.NodeUsageDao;
 import net.solarnetwork.central.user.billing.snf.dao.SnfInvoiceDao;
 import net.solarnetwork.central.user.billing.snf.dao.SnfInvoiceItemDao;
@@ -86,7 +93,9 @@ import net.solarnetwork.central.user.billing.snf.dao.SnfInvoiceNodeUsageDao;
 import net.solarnetwork.central.user.billing.snf.dao.TaxCodeDao;
 import net.solarnetwork.central.user.billing.snf.domain.Account;
 import net.solarnetwork.central.user.billing.snf.domain.AccountBalance;
+import net.solarnetwork.central.user.billing.snf.domain.AccountInvoicedThrough;
 import net.solarnetwork.central.user.billing.snf.domain.Address;
+import net.solarnetwork.central.user.billing.snf.domain.ContinuationFilterResults;
 import net.solarnetwork.central.user.billing.snf.domain.InvoiceImpl;
 import net.solarnetwork.central.user.billing.snf.domain.InvoiceItemImpl;
 import net.solarnetwork.central.user.billing.snf.domain.InvoiceItemType;
@@ -94,12 +103,14 @@ import net.solarnetwork.central.user.billing.snf.domain.NamedCost;
 import net.solarnetwork.central.user.billing.snf.domain.NodeUsage;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceFilter;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceFilter.TotalCountMode;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceItem;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceNodeUsage;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoicingOptions;
-import net.solarnetwork.central.user.billing.snf.domain.TaxCode;
 import net.solarnetwork.central.user.billing.snf.domain.TaxCodeFilter;
+import net.solarnetwork.central.user.billing.snf.domain.TaxPlan;
 import net.solarnetwork.central.user.billing.snf.domain.UsageInfo;
+import net.solarnetwork.central.user.billing.snf.domain.UsageTiers;
 import net.solarnetwork.central.user.billing.snf.util.SnfBillingUtils;
 import net.solarnetwork.central.user.billing.support.BasicBillingSystemInfo;
 import net.solarnetwork.central.user.billing.support.LocalizedInvoice;
@@ -115,7 +126,7 @@ import net.solarnetwork.util.OptionalServiceCollection;
  * {@link BillingSystem} implementation for SolarNetwork Foundation.
  * 
  * @author matt
- * @version 1.1
+ * @version 1.2
  */
 public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfTaxCodeResolver {
 
@@ -131,6 +142,13 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 	/** The default {@code deliveryTimeoutSecs} property value. */
 	public static final int DEFAULT_DELIVERY_TIMEOUT = 60;
 
+	/**
+	 * The default {@code renderSpillThreshold} property value.
+	 * 
+	 * @since 1.2
+	 */
+	public static final int DEFAULT_RENDER_SPILL_THRESHOLD = 1024 * 1024;
+
 	/** The invoice ID used for dry-run (draft) invoice generation. */
 	public static final Long DRAFT_INVOICE_ID = Long.valueOf(Invoice.DRAFT_INVOICE_ID);
 
@@ -148,6 +166,16 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 	private final TaxCodeDao taxCodeDao;
 	private final VersionedMessageDao messageDao;
 	private Cache<String, VersionedMessages> messageCache;
+	private OptionalService<NodeUsageAccrualDao> usageAccrualDao;
+	private Cache<String, SnfInvoice> previewInvoiceCache;
+	private Cache<String, byte[]> previewRenderCache;
+	private final AtomicLong previewCacheHits = new AtomicLong();
+	private final AtomicLong previewCacheMisses = new AtomicLong();
+	private final ConcurrentMap<Long, Long> previewCacheGenerations = new ConcurrentHashMap<>(64);
+	private Cache<String, byte[]> invoiceRenderCache;
+	private int renderSpillThreshold = DEFAULT_RENDER_SPILL_THRESHOLD;
+	private final AtomicLong invoiceRenderCacheHits = new AtomicLong();
+	private final AtomicLong invoiceRenderCacheMisses = new AtomicLong();
 	private OptionalService<SnfTaxCodeResolver> taxCodeResolver;
 	private String datumPropertiesInKey = DATUM_PROPS_IN_KEY;
 	private String datumOutKey = DATUM_OUT_KEY;
@@ -156,6 +184,7 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 	private OptionalServiceCollection<SnfInvoiceDeliverer> deliveryServices;
 	private OptionalServiceCollection<SnfInvoiceRendererResolver> rendererResolvers;
 	private int deliveryTimeoutSecs = DEFAULT_DELIVERY_TIMEOUT;
+	private TotalCountMode invoiceListCountMode = TotalCountMode.EXACT;
 
 	private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -231,6 +260,17 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 	@Override
 	public FilterResults<InvoiceMatch> findFilteredInvoices(InvoiceFilter filter,
 			List<SortDescriptor> sortDescriptors, Integer offset, Integer max) {
+		return findInvoices(filter, null, offset, max);
+	}
+
+	@Override
+	public ContinuationFilterResults<InvoiceMatch> findFilteredInvoices(InvoiceFilter filter,
+			String continuationToken, Integer max) {
+		return findInvoices(filter, continuationToken, null, max);
+	}
+
+	private ContinuationFilterResults<InvoiceMatch> findInvoices(InvoiceFilter filter,
+			String continuationToken, Integer offset, Integer max) {
 		// get account
 		Account account = accountDao.getForUser(filter.getUserId());
 		if ( account == null ) {
@@ -240,12 +280,22 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 		if ( filter.getUnpaid() != null ) {
 			invoiceFilter.setUnpaidOnly(filter.getUnpaid());
 		}
+		invoiceFilter.setContinuationToken(continuationToken);
+		invoiceFilter.setTotalCountMode(invoiceListCountMode);
 		net.solarnetwork.dao.FilterResults<SnfInvoice, UserLongPK> results = invoiceDao
-				.findFiltered(invoiceFilter, SnfInvoiceDao.SORT_BY_INVOICE_DATE_DESCENDING, offset, max);
-		List<InvoiceMatch> matches = StreamSupport.stream(results.spliterator(), false)
-				.map(InvoiceImpl::new).collect(toList());
-		return new BasicFilterResults<>(matches, results.getTotalResults(), results.getStartingOffset(),
-				results.getReturnedResultCount());
+				.findFilteredSummaries(invoiceFilter, SnfInvoiceDao.SORT_BY_INVOICE_DATE_DESCENDING,
+						offset, max);
+		List<InvoiceMatch> matches = new ArrayList<>(results.getReturnedResultCount());
+		SnfInvoice last = null;
+		for ( SnfInvoice invoice : results ) {
+			matches.add(new InvoiceImpl(invoice));
+			last = invoice;
+		}
+		String nextToken = (max != null && max.intValue() > 0 && matches.size() >= max.intValue()
+				? SnfInvoiceFilter.continuationToken(last)
+				: null);
+		return new ContinuationFilterResults<>(matches, results.getTotalResults(),
+				results.getStartingOffset(), results.getReturnedResultCount(), nextToken);
 	}
 
 	private SnfInvoice getSnfInvoice(Long userId, String invoiceId) {
@@ -297,11 +347,15 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 						BigDecimal availCredit = (availCreditVal instanceof BigDecimal
 								? (BigDecimal) availCreditVal
 								: new BigDecimal(availCreditVal.toString()));
-						e.getMetadata().put("localizedAvailableCredit",
+						// localize a copy, as the invoice may be shared (e.g. a cached preview)
+						Map<String, Object> meta = new LinkedHashMap<>(e.getMetadata());
+						meta.put("localizedAvailableCredit",
 								MoneyUtils.formattedMoneyAmountFormatWithSymbolCurrencyStyle(locale,
 										invoice.getCurrencyCode(), availCredit));
+						item = new InvoiceItemImpl(invoice, itemWithMetadata(e, meta));
+					} else {
+						item = new InvoiceItemImpl(invoice, e);
 					}
-					item = new InvoiceItemImpl(invoice, e);
 				}
 				return new net.solarnetwork.central.user.billing.support.LocalizedInvoiceItem(item,
 						locale, desc);
@@ -316,6 +370,18 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 		return new InvoiceImpl(invoice, invoiceItems);
 	}
 
+	private static SnfInvoiceItem itemWithMetadata(SnfInvoiceItem item,
+			Map<String, Object> metadata) {
+		SnfInvoiceItem copy = new SnfInvoiceItem(item.getId(), item.getInvoiceId(),
+				item.getCreated());
+		copy.setItemType(item.getItemType());
+		copy.setKey(item.getKey());
+		copy.setAmount(item.getAmount());
+		copy.setQuantity(item.getQuantity());
+		copy.setMetadata(metadata);
+		return copy;
+	}
+
 	@Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
 	@Override
 	public Invoice getInvoice(Long userId, String invoiceId, Locale locale) {
@@ -345,9 +411,243 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 	@Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
 	@Override
 	public Resource renderInvoice(SnfInvoice invoice, MimeType outputType, Locale locale) {
-		TemplateRenderer renderer = renderer(invoice, outputType, locale);
 		VersionedMessageDaoMessageSource messageSource = (VersionedMessageDaoMessageSource) messageSourceForInvoice(
 				invoice);
+		final String cacheKey = invoiceRenderCacheKey(invoice, messageSource, outputType, locale);
+		if ( cacheKey != null ) {
+			byte[] data = cachedRenderInvoiceData(cacheKey, invoice, messageSource, outputType,
+					locale);
+			return invoiceResource(data, invoice, messageSource, outputType, locale);
+		}
+		byte[] data = renderInvoiceData(invoice, messageSource, outputType, locale);
+		return invoiceResource(data, invoice, messageSource, outputType, locale);
+	}
+
+	@Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+	@Override
+	public String renderInvoice(SnfInvoice invoice, MimeType outputType, Locale locale,
+			OutputStream out) throws IOException {
+		if ( out == null ) {
+			throw new IllegalArgumentException("The out argument must be provided.");
+		}
+		VersionedMessageDaoMessageSource messageSource = (VersionedMessageDaoMessageSource) messageSourceForInvoice(
+				invoice);
+		final String cacheKey = invoiceRenderCacheKey(invoice, messageSource, outputType, locale);
+		final Cache<String, byte[]> cache = (cacheKey != null ? getInvoiceRenderCache() : null);
+		final byte[] cached = (cache != null ? cache.get(cacheKey) : null);
+		if ( cached != null ) {
+			invoiceRenderCacheHit(cacheKey);
+			out.write(cached);
+		} else if ( cache != null ) {
+			// stream to the caller, keeping a copy to cache only while it stays small
+			invoiceRenderCacheMiss(cacheKey);
+			CapturingOutputStream capture = new CapturingOutputStream(out, renderSpillThreshold);
+			renderInvoiceData(invoice, messageSource, outputType, locale, capture);
+			byte[] data = capture.captured();
+			if ( data != null ) {
+				cache.put(cacheKey, data);
+			} else {
+				log.debug("Not caching rendered invoice {} larger than {} bytes", cacheKey,
+						renderSpillThreshold);
+			}
+		} else {
+			renderInvoiceData(invoice, messageSource, outputType, locale,
+					StreamUtils.nonClosing(out));
+		}
+		out.flush();
+		return invoiceFilename(invoice, messageSource, outputType, locale);
+	}
+
+	@Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+	@Override
+	public Map<MimeType, Resource> renderInvoice(SnfInvoice invoice, List<MimeType> outputTypes,
+			Locale locale) {
+		if ( outputTypes == null || outputTypes.isEmpty() ) {
+			throw new IllegalArgumentException("The outputTypes argument must be provided.");
+		}
+		VersionedMessageDaoMessageSource messageSource = (VersionedMessageDaoMessageSource) messageSourceForInvoice(
+				invoice);
+		final Cache<String, byte[]> cache = getInvoiceRenderCache();
+		Map<String, Object> parameters = null;
+		Map<MimeType, Resource> result = new LinkedHashMap<>(outputTypes.size());
+		byte[] html = null;
+		for ( MimeType outputType : outputTypes ) {
+			final String cacheKey = (cache != null
+					? invoiceRenderCacheKey(invoice, messageSource, outputType, locale)
+					: null);
+			byte[] data = (cacheKey != null ? cache.get(cacheKey) : null);
+			if ( data != null ) {
+				invoiceRenderCacheHit(cacheKey);
+				if ( html == null && MimeTypeUtils.TEXT_HTML.isCompatibleWith(outputType) ) {
+					// share cached HTML with any HTML-derived output types
+					html = data;
+				}
+			} else {
+				if ( cacheKey != null ) {
+					invoiceRenderCacheMiss(cacheKey);
+				}
+				if ( parameters == null ) {
+					parameters = renderParameters(invoice, messageSource, locale);
+				}
+				if ( html != null && MimeTypeUtils.TEXT_HTML.isCompatibleWith(outputType) ) {
+					data = html;
+				} else {
+					TemplateRenderer renderer = renderer(invoice, outputType, locale);
+					if ( renderer instanceof HtmlDerivedTemplateRenderer ) {
+						if ( html == null ) {
+							html = renderData(renderer(invoice, MimeTypeUtils.TEXT_HTML, locale),
+									MimeTypeUtils.TEXT_HTML, parameters, locale);
+						}
+						data = renderHtmlData((HtmlDerivedTemplateRenderer) renderer, outputType,
+								html, locale);
+					} else {
+						data = renderData(renderer, outputType, parameters, locale);
+						if ( html == null
+								&& MimeTypeUtils.TEXT_HTML.isCompatibleWith(outputType) ) {
+							html = data;
+						}
+					}
+				}
+				if ( cacheKey != null ) {
+					cacheRenderedInvoiceData(cache, cacheKey, data);
+				}
+			}
+			result.put(outputType, invoiceResource(data, invoice, messageSource, outputType, locale));
+		}
+		return result;
+	}
+
+	private byte[] cachedRenderInvoiceData(String cacheKey, SnfInvoice invoice,
+			VersionedMessageDaoMessageSource messageSource, MimeType outputType, Locale locale) {
+		final Cache<String, byte[]> cache = getInvoiceRenderCache();
+		byte[] data = cache.get(cacheKey);
+		if ( data != null ) {
+			invoiceRenderCacheHit(cacheKey);
+		} else {
+			invoiceRenderCacheMiss(cacheKey);
+			data = renderInvoiceData(invoice, messageSource, outputType, locale);
+			cacheRenderedInvoiceData(cache, cacheKey, data);
+		}
+		return data;
+	}
+
+	private void cacheRenderedInvoiceData(Cache<String, byte[]> cache, String cacheKey,
+			byte[] data) {
+		if ( data.length > renderSpillThreshold ) {
+			log.debug("Not caching rendered invoice {} of {} bytes", cacheKey, data.length);
+			return;
+		}
+		cache.put(cacheKey, data);
+	}
+
+	/**
+	 * Write to a delegate stream, keeping a copy of the data written as long
+	 * as it does not exceed a limit.
+	 */
+	private static final class CapturingOutputStream extends OutputStream {
+
+		private final OutputStream delegate;
+		private final int limit;
+		private ByteArrayOutputStream copy;
+
+		private CapturingOutputStream(OutputStream delegate, int limit) {
+			super();
+			this.delegate = delegate;
+			this.limit = limit;
+			this.copy = new ByteArrayOutputStream(Math.min(limit, 4096));
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			delegate.write(b);
+			if ( copy != null ) {
+				if ( copy.size() + 1 > limit ) {
+					copy = null;
+				} else {
+					copy.write(b);
+				}
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			delegate.write(b, off, len);
+			if ( copy != null ) {
+				if ( copy.size() + len > limit ) {
+					copy = null;
+				} else {
+					copy.write(b, off, len);
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			delegate.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			// leave the delegate open for the caller
+			flush();
+		}
+
+		private byte[] captured() {
+			return (copy != null ? copy.toByteArray() : null);
+		}
+
+	}
+
+	/**
+	 * Get a rendered invoice cache key.
+	 * 
+	 * <p>
+	 * Only finalized invoices are cached, so {@literal null} is returned for
+	 * draft invoices, or if no cache is configured. The template version is
+	 * resolved as the {@code version} message of the invoice's message bundles,
+	 * so publishing new messages for the invoice's date produces new cache
+	 * keys.
+	 * </p>
+	 */
+	private String invoiceRenderCacheKey(SnfInvoice invoice, MessageSource messageSource,
+			MimeType outputType, Locale locale) {
+		if ( getInvoiceRenderCache() == null || invoice == null || invoice.getId() == null
+				|| invoice.getId().getId() == null
+				|| DRAFT_INVOICE_ID.equals(invoice.getId().getId()) ) {
+			return null;
+		}
+		String version = messageSource.getMessage("version", null, "", locale);
+		return invoice.getId().getId() + ":" + outputType + ":" + locale + ":" + version;
+	}
+
+	private void invoiceRenderCacheHit(String key) {
+		long hits = invoiceRenderCacheHits.incrementAndGet();
+		log.debug("Invoice render cache hit for {} ({} hits, {} misses)", key, hits,
+				invoiceRenderCacheMisses.get());
+	}
+
+	private void invoiceRenderCacheMiss(String key) {
+		long misses = invoiceRenderCacheMisses.incrementAndGet();
+		log.debug("Invoice render cache miss for {} ({} hits, {} misses)", key,
+				invoiceRenderCacheHits.get(), misses);
+	}
+
+	private byte[] renderInvoiceData(SnfInvoice invoice,
+			VersionedMessageDaoMessageSource messageSource, MimeType outputType, Locale locale) {
+		TemplateRenderer renderer = renderer(invoice, outputType, locale);
+		return renderData(renderer, outputType, renderParameters(invoice, messageSource, locale),
+				locale);
+	}
+
+	private void renderInvoiceData(SnfInvoice invoice,
+			VersionedMessageDaoMessageSource messageSource, MimeType outputType, Locale locale,
+			OutputStream out) throws IOException {
+		TemplateRenderer renderer = renderer(invoice, outputType, locale);
+		renderer.render(locale, outputType, renderParameters(invoice, messageSource, locale), out);
+	}
+
+	private Map<String, Object> renderParameters(SnfInvoice invoice,
+			VersionedMessageDaoMessageSource messageSource, Locale locale) {
 		LocalizedInvoice localizedInvoice = new LocalizedInvoice(
 				invoiceForSnfInvoice(invoice, messageSource, locale), locale);
 		Properties messages = messageSource.propertiesForLocale(locale);
@@ -355,9 +655,24 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 		parameters.put("invoice", localizedInvoice);
 		parameters.put("address", invoice.getAddress());
 		parameters.put("messages", messages);
+		return parameters;
+	}
+
+	private static byte[] renderData(TemplateRenderer renderer, MimeType outputType,
+			Map<String, Object> parameters, Locale locale) {
 		try (ByteArrayOutputStream out = new ByteArrayOutputStream(4096)) {
 			renderer.render(locale, outputType, parameters, out);
-			return invoiceResource(out.toByteArray(), invoice, messageSource, outputType, locale);
+			return out.toByteArray();
+		} catch ( IOException e ) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static byte[] renderHtmlData(HtmlDerivedTemplateRenderer renderer, MimeType outputType,
+			byte[] html, Locale locale) {
+		try (ByteArrayOutputStream out = new ByteArrayOutputStream(4096)) {
+			renderer.renderHtml(locale, outputType, new String(html, StandardCharsets.UTF_8), out);
+			return out.toByteArray();
 		} catch ( IOException e ) {
 			throw new RuntimeException(e);
 		}
@@ -365,6 +680,19 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 
 	private Resource invoiceResource(byte[] data, SnfInvoice invoice, MessageSource messageSource,
 			MimeType outputType, Locale locale) {
+		final String filename = invoiceFilename(invoice, messageSource, outputType, locale);
+		return new ByteArrayResource(data) {
+
+			@Override
+			public String getFilename() {
+				return filename;
+			}
+
+		};
+	}
+
+	private static String invoiceFilename(SnfInvoice invoice, MessageSource messageSource,
+			MimeType outputType, Locale locale) {
 		String extension = ".txt";
 		if ( outputType.isCompatibleWith(MimeType.valueOf("application/pdf")) ) {
 			extension = ".pdf";
@@ -376,16 +704,8 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 						? messageSource.getMessage("draftInvoice", null, "DRAFT", locale)
 						: SnfBillingUtils.invoiceNumForId(invoice.getId().getId()),
 				YearMonth.from(invoice.getStartDate()).toString(), extension };
-		String filename = messageSource.getMessage("invoice.filename", filenameArgs,
+		return messageSource.getMessage("invoice.filename", filenameArgs,
 				"SolarNetwork Invoice {0} - {1}{2}", locale);
-		return new ByteArrayResource(data) {
-
-			@Override
-			public String getFilename() {
-				return filename;
-			}
-
-		};
 	}
 
 	@Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
@@ -405,6 +725,12 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 		return (itr != null && itr.hasNext() ? itr.next() : null);
 	}
 
+	@Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+	@Override
+	public List<AccountInvoicedThrough> invoicedThroughForUsers(Long[] userIds) {
+		return accountDao.findInvoicedThroughForUsers(userIds);
+	}
+
 	/**
 	 * Resolve tax codes for a given invoice.
 	 * 
@@ -432,6 +758,40 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 		if ( service != null ) {
 			return service.taxCodeFilterForInvoice(invoice);
 		}
+		return taxCodeFilter(invoice, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * The zones of all invoices with the same country and state or province
+	 * are resolved once and shared between the returned filters.
+	 * </p>
+	 * 
+	 * @since 1.2
+	 */
+	@Override
+	public Map<TaxCodeFilter, List<SnfInvoice>> taxCodeFiltersForInvoices(
+			Iterable<SnfInvoice> invoices) {
+		SnfTaxCodeResolver service = OptionalService.service(taxCodeResolver);
+		if ( service != null ) {
+			return service.taxCodeFiltersForInvoices(invoices);
+		}
+		Map<TaxCodeFilter, List<SnfInvoice>> result = new LinkedHashMap<>(8);
+		if ( invoices == null ) {
+			return result;
+		}
+		Map<String, String[]> zones = new HashMap<>(8);
+		for ( SnfInvoice invoice : invoices ) {
+			TaxCodeFilter filter = taxCodeFilter(invoice, zones);
+			result.computeIfAbsent(filter, k -> new ArrayList<>(8)).add(invoice);
+		}
+		return result;
+	}
+
+	private static TaxCodeFilter taxCodeFilter(SnfInvoice invoice,
+			Map<String, String[]> zonesCache) {
 		if ( invoice == null ) {
 			throw new IllegalArgumentException("The invoice argument must be provided.");
 		}
@@ -442,10 +802,16 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 		if ( addr.getCountry() == null || addr.getCountry().trim().isEmpty() ) {
 			throw new IllegalArgumentException("The address must provide a country.");
 		}
-		List<String> zones = new ArrayList<>(2);
-		zones.add(addr.getCountry());
-		if ( addr.getStateOrProvince() != null && !addr.getStateOrProvince().trim().isEmpty() ) {
-			zones.add(String.format("%s.%s", addr.getCountry(), addr.getStateOrProvince()));
+		final String country = addr.getCountry();
+		final String state = addr.getStateOrProvince();
+		final boolean hasState = (state != null && !state.trim().isEmpty());
+		final String zone = (hasState ? country + '.' + state : country);
+		String[] zones = (zonesCache != null ? zonesCache.get(zone) : null);
+		if ( zones == null ) {
+			zones = (hasState ? new String[] { country, zone } : new String[] { country });
+			if ( zonesCache != null ) {
+				zonesCache.put(zone, zones);
+			}
 		}
 
 		ZoneId tz = invoice.getTimeZone();
@@ -454,7 +820,7 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 		}
 
 		TaxCodeFilter filter = new TaxCodeFilter();
-		filter.setZones(zones.toArray(new String[zones.size()]));
+		filter.setZones(zones);
 
 		LocalDate date = invoice.getStartDate();
 		if ( date == null ) {
@@ -501,15 +867,56 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 			end = start.plusMonths(1);
 		}
 
+		final boolean useCredit = (options != null ? options.isUseAccountCredit() : false);
+		final Cache<String, SnfInvoice> cache = getPreviewInvoiceCache();
+		final String cacheKey = previewCacheKey(userId, start, useCredit);
+		if ( cache != null ) {
+			SnfInvoice invoice = cache.get(cacheKey);
+			if ( invoice != null ) {
+				previewCacheHit(cacheKey);
+				return invoice;
+			}
+			previewCacheMiss(cacheKey);
+		}
+
 		log.debug("Generating preview invoice for account {} (user {}) month {}", account.getId(),
 				account.getUserId(), start);
 
-		SnfInvoicingOptions opts = new SnfInvoicingOptions(true,
-				options != null ? options.isUseAccountCredit() : false);
+		SnfInvoicingOptions opts = new SnfInvoicingOptions(true, useCredit);
 		SnfInvoice invoice = generateInvoice(userId, start, end, opts);
+		if ( cache != null && invoice != null ) {
+			cache.put(cacheKey, invoice);
+		}
 		return invoice;
 	}
 
+	private String previewCacheKey(Long userId, LocalDate month, boolean useCredit) {
+		// the user's generation changes on invalidation, so older entries are no longer found
+		final Long generation = previewCacheGenerations.getOrDefault(userId, 0L);
+		return userId + ":" + generation + ":" + month + ":" + useCredit;
+	}
+
+	private void previewCacheHit(String key) {
+		long hits = previewCacheHits.incrementAndGet();
+		log.debug("Preview cache hit for {} ({} hits, {} misses)", key, hits,
+				previewCacheMisses.get());
+	}
+
+	private void previewCacheMiss(String key) {
+		long misses = previewCacheMisses.incrementAndGet();
+		log.debug("Preview cache miss for {} ({} hits, {} misses)", key, previewCacheHits.get(),
+				misses);
+	}
+
+	@Override
+	public void invalidatePreviewInvoices(Long userId) {
+		if ( userId == null ) {
+			throw new IllegalArgumentException("The userId argument must be provided.");
+		}
+		// entries cached under the previous generation expire from the caches on their own
+		previewCacheGenerations.merge(userId, 1L, Long::sum);
+	}
+
 	@Transactional(readOnly = true, propagation = Propagation.REQUIRED)
 	@Override
 	public Invoice getPreviewInvoice(Long userId,
@@ -526,7 +933,24 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 			net.solarnetwork.central.user.billing.domain.InvoiceGenerationOptions options,
 			MimeType outputType, Locale locale) {
 		SnfInvoice invoice = createPreviewInvoice(userId, options, locale);
-		return renderInvoice(invoice, outputType, locale);
+		final Cache<String, byte[]> cache = getPreviewRenderCache();
+		if ( cache == null || invoice == null ) {
+			return renderInvoice(invoice, outputType, locale);
+		}
+		final boolean useCredit = (options != null ? options.isUseAccountCredit() : false);
+		final String cacheKey = previewCacheKey(userId, invoice.getStartDate(), useCredit) + ":"
+				+ outputType + ":" + locale;
+		VersionedMessageDaoMessageSource messageSource = (VersionedMessageDaoMessageSource) messageSourceForInvoice(
+				invoice);
+		byte[] data = cache.get(cacheKey);
+		if ( data != null ) {
+			previewCacheHit(cacheKey);
+		} else {
+			previewCacheMiss(cacheKey);
+			data = renderInvoiceData(invoice, messageSource, outputType, locale);
+			cache.put(cacheKey, data);
+		}
+		return invoiceResource(data, invoice, messageSource, outputType, locale);
 	}
 
 	@Transactional(readOnly = false, propagation = Propagation.REQUIRED)
@@ -543,8 +967,25 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 		final boolean useCredit = (options != null ? options.isUseAccountCredit()
 				: dryRun ? false : true);
 
-		// query for usage
-		final List<NodeUsage> usages = usageDao.findUsageForAccount(userId, startDate, endDate);
+		// query for usage; a dry run needs all node usage for the returned invoice, so
+		// query for both account and node usage in a single round trip, using accrued
+		// usage if available for a whole month; otherwise node usage is streamed and
+		// saved later
+		final List<NodeUsage> usages;
+		final List<NodeUsage> nodeUsages;
+		if ( dryRun ) {
+			usages = new ArrayList<>(1);
+			nodeUsages = new ArrayList<>(16);
+			final NodeUsageAccrualDao accrualDao = OptionalService.service(usageAccrualDao);
+			if ( accrualDao == null || !isWholeMonth(startDate, endDate)
+					|| !findMonthToDateUsage(accrualDao, userId, startDate, usages, nodeUsages) ) {
+				usageDao.findUsageAndNodeUsageForAccount(userId, startDate, endDate, usages::add,
+						nodeUsages::add);
+			}
+		} else {
+			usages = usageDao.findUsageForAccount(userId, startDate, endDate);
+			nodeUsages = null;
+		}
 		if ( usages == null || usages.isEmpty() ) {
 			// no invoice necessary
 			return null;
@@ -569,9 +1010,6 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 		invoice.setStartDate(startDate);
 		invoice.setEndDate(endDate);
 
-		// query for node usage counts
-		final List<NodeUsage> nodeUsages = usageDao.findNodeUsageForAccount(userId, startDate, endDate);
-
 		// for dryRun support, we generate a negative invoice ID
 		final UserLongPK invoiceId = (dryRun ? new UserLongPK(userId, DRAFT_INVOICE_ID)
 				: invoiceDao.save(invoice));
@@ -588,31 +1026,25 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 			}
 			final Map<String, List<NamedCost>> tiersBreakdown = usage.getTiersCostBreakdown();
 			final Map<String, UsageInfo> usageInfo = usage.getUsageInfo();
-			if ( usage.getDatumPropertiesIn().compareTo(BigInteger.ZERO) > 0 ) {
+			UsageInfo info = usageInfo.get(DATUM_PROPS_IN_KEY);
+			if ( info.getAmount().signum() > 0 ) {
 				SnfInvoiceItem item = newItem(invoiceId.getId(), Usage, datumPropertiesInKey,
-						new BigDecimal(usage.getDatumPropertiesIn()), usage.getDatumPropertiesInCost());
+						info.getAmount(), usage.getDatumPropertiesInCost());
 				item.setMetadata(usageMetadata(usageInfo, tiersBreakdown, DATUM_PROPS_IN_KEY));
-				if ( !dryRun ) {
-					invoiceItemDao.save(item);
-				}
 				items.add(item);
 			}
-			if ( usage.getDatumOut().compareTo(BigInteger.ZERO) > 0 ) {
-				SnfInvoiceItem item = newItem(invoiceId.getId(), Usage, datumOutKey,
-						new BigDecimal(usage.getDatumOut()), usage.getDatumOutCost());
+			info = usageInfo.get(DATUM_OUT_KEY);
+			if ( info.getAmount().signum() > 0 ) {
+				SnfInvoiceItem item = newItem(invoiceId.getId(), Usage, datumOutKey, info.getAmount(),
+						usage.getDatumOutCost());
 				item.setMetadata(usageMetadata(usageInfo, tiersBreakdown, DATUM_OUT_KEY));
-				if ( !dryRun ) {
-					invoiceItemDao.save(item);
-				}
 				items.add(item);
 			}
-			if ( usage.getDatumDaysStored().compareTo(BigInteger.ZERO) > 0 ) {
+			info = usageInfo.get(DATUM_DAYS_STORED_KEY);
+			if ( info.getAmount().signum() > 0 ) {
 				SnfInvoiceItem item = newItem(invoiceId.getId(), Usage, datumDaysStoredKey,
-						new BigDecimal(usage.getDatumDaysStored()), usage.getDatumDaysStoredCost());
+						info.getAmount(), usage.getDatumDaysStoredCost());
 				item.setMetadata(usageMetadata(usageInfo, tiersBreakdown, DATUM_DAYS_STORED_KEY));
-				if ( !dryRun ) {
-					invoiceItemDao.save(item);
-				}
 				items.add(item);
 			}
 		}
@@ -621,24 +1053,32 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 
 		List<SnfInvoiceItem> taxItems = computeInvoiceTaxItems(invoice);
 		for ( SnfInvoiceItem taxItem : taxItems ) {
-			if ( !dryRun ) {
-				invoiceItemDao.save(taxItem);
-			}
 			invoice.getItems().add(taxItem);
 		}
+		if ( !dryRun ) {
+			// persist usage and tax items in bulk, before claiming any credit
+			invoiceItemDao.saveAll(invoice.getItems());
+		}
 
-		// claim credit, if available
+		// claim credit, if available; a dry run only projects the credit that would be
+		// claimed, so the account balance is not locked
 		if ( useCredit ) {
 			BigDecimal invoiceTotal = invoice.getTotalAmount();
 			if ( invoiceTotal.compareTo(BigDecimal.ZERO) > 0 ) {
-				BigDecimal credit = accountDao.claimAccountBalanceCredit(invoice.getAccountId(),
-						invoiceTotal);
+				BigDecimal credit = (dryRun
+						? accountDao.projectAccountBalanceCredit(invoice.getAccountId(), invoiceTotal)
+						: accountDao.claimAccountBalanceCredit(invoice.getAccountId(), invoiceTotal));
 				if ( credit.compareTo(BigDecimal.ZERO) > 0 ) {
 					AccountBalance balance = accountDao.getBalanceForUser(invoice.getUserId());
+					BigDecimal availableCredit = balance.getAvailableCredit();
+					if ( dryRun ) {
+						// the projected credit has not been claimed from the balance
+						availableCredit = availableCredit.subtract(credit);
+					}
 					SnfInvoiceItem creditItem = SnfInvoiceItem.newItem(invoice, InvoiceItemType.Credit,
 							accountCreditKey, BigDecimal.ONE, credit.negate());
 					creditItem.setMetadata(Collections.singletonMap(META_AVAILABLE_CREDIT,
-							balance.getAvailableCredit().toPlainString()));
+							availableCredit.toPlainString()));
 					if ( !dryRun ) {
 						invoiceItemDao.save(creditItem);
 					}
@@ -648,27 +1088,112 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 		}
 
 		// populate node usages
-		if ( nodeUsages != null ) {
-			List<SnfInvoiceNodeUsage> invoiceNodeUsages = new ArrayList<>(nodeUsages.size());
+		if ( !dryRun ) {
+			invoice.setUsages(saveInvoiceNodeUsages(invoice));
+		} else if ( nodeUsages != null ) {
+			Set<SnfInvoiceNodeUsage> invoiceNodeUsages = new LinkedHashSet<>(nodeUsages.size());
 			for ( NodeUsage nodeUsage : nodeUsages ) {
-				SnfInvoiceNodeUsage u = new SnfInvoiceNodeUsage(invoiceId.getId(), nodeUsage.getId(),
-						invoice.getCreated(), nodeUsage.getDatumPropertiesIn(), nodeUsage.getDatumOut(),
-						nodeUsage.getDatumDaysStored());
-				invoiceNodeUsages.add(u);
-				if ( !dryRun ) {
-					invoiceNodeUsageDao.save(u);
-				}
+				invoiceNodeUsages.add(invoiceNodeUsage(invoice, nodeUsage));
 			}
-			invoice.setUsages(new LinkedHashSet<>(invoiceNodeUsages));
+			invoice.setUsages(invoiceNodeUsages);
 		} else {
 			invoice.setUsages(Collections.emptySet());
 		}
 
+		if ( !dryRun ) {
+			// generating an invoice can claim account credit, which changes any previews
+			invalidatePreviewInvoices(userId);
+		}
+
 		log.info("Generated invoice for user {} for date {}: {}", userId, startDate, invoice);
 
 		return invoice;
 	}
 
+	private static boolean isWholeMonth(LocalDate startDate, LocalDate endDate) {
+		return (startDate.getDayOfMonth() == 1 && endDate.equals(startDate.plusMonths(1)));
+	}
+
+	/**
+	 * Find the month-to-date account and node usage for a user from the
+	 * accrued usage.
+	 * 
+	 * <p>
+	 * The accrued node usage counts are summed into an account-level usage,
+	 * and the effective usage tiers are then applied to compute the
+	 * account-level costs.
+	 * </p>
+	 * 
+	 * @param accrualDao
+	 *        the accrual DAO to use
+	 * @param userId
+	 *        the ID of the user to find usage for
+	 * @param month
+	 *        the month to find usage for
+	 * @param usages
+	 *        the list to add the account-level usage to
+	 * @param nodeUsages
+	 *        the list to add the node-level usage to
+	 * @return {@literal false} if no days have been accrued for the month yet,
+	 *         in which case no usage is added and the usage should be queried
+	 *         directly instead
+	 */
+	private boolean findMonthToDateUsage(NodeUsageAccrualDao accrualDao, Long userId,
+			LocalDate month, List<NodeUsage> usages, List<NodeUsage> nodeUsages) {
+		final LocalDate latest = accrualDao.findLatestAccrualDate();
+		if ( latest == null || latest.isBefore(month.withDayOfMonth(1)) ) {
+			return false;
+		}
+		accrualDao.findMonthToDateNodeUsage(userId, month, nodeUsages::add);
+		if ( nodeUsages.isEmpty() ) {
+			return true;
+		}
+		NodeUsage usage = new NodeUsage(null, Instant.now());
+		for ( NodeUsage nodeUsage : nodeUsages ) {
+			usage.addCounts(nodeUsage);
+		}
+		UsageTiers tiers = usageDao.effectiveUsageTiers(month);
+		if ( tiers != null ) {
+			tiers.applyTiers(usage);
+		}
+		usages.add(usage);
+		return true;
+	}
+
+	private static SnfInvoiceNodeUsage invoiceNodeUsage(SnfInvoice invoice, NodeUsage nodeUsage) {
+		return new SnfInvoiceNodeUsage(invoice.getId().getId(), nodeUsage.getId(),
+				invoice.getCreated(), nodeUsage.getDatumPropertiesIn(), nodeUsage.getDatumOut(),
+				nodeUsage.getDatumDaysStored());
+	}
+
+	/**
+	 * Stream the node usage for an invoice, then save the associated invoice
+	 * node usage entities.
+	 * 
+	 * <p>
+	 * Each node usage record is converted into its compact invoice node usage
+	 * entity as it is read, so the full node usage records (with their tier
+	 * breakdowns) are not held in memory for users with many nodes. The
+	 * entities are saved only after the usage query completes, so no inserts
+	 * are issued while the query result is still open; the DAO splits the
+	 * insert into batches.
+	 * </p>
+	 * 
+	 * @param invoice
+	 *        the invoice to save the node usages for
+	 * @return the saved invoice node usages
+	 */
+	private Set<SnfInvoiceNodeUsage> saveInvoiceNodeUsages(SnfInvoice invoice) {
+		final Set<SnfInvoiceNodeUsage> result = new LinkedHashSet<>();
+		usageDao.findNodeUsageForAccount(invoice.getUserId(), invoice.getStartDate(),
+				invoice.getEndDate(),
+				nodeUsage -> result.add(invoiceNodeUsage(invoice, nodeUsage)));
+		if ( !result.isEmpty() ) {
+			invoiceNodeUsageDao.saveAll(result);
+		}
+		return result;
+	}
+
 	/**
 	 * Compute the set of tax items for a given invoice.
 	 * 
@@ -684,42 +1209,63 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 	public List<SnfInvoiceItem> computeInvoiceTaxItems(SnfInvoice invoice) {
 		SnfTaxCodeResolver taxResolver = OptionalService.service(taxCodeResolver, this);
 		TaxCodeFilter taxFilter = taxResolver.taxCodeFilterForInvoice(invoice);
-		List<SnfInvoiceItem> taxItems = new ArrayList<>(8);
-		if ( taxFilter != null ) {
-			net.solarnetwork.dao.FilterResults<TaxCode, Long> taxes = taxCodeDao.findFiltered(taxFilter,
-					null, null, null);
-			if ( taxes != null && taxes.getReturnedResultCount() > 0 ) {
-				Map<String, BigDecimal> taxAmounts = new LinkedHashMap<>(taxes.getReturnedResultCount());
-				for ( SnfInvoiceItem item : invoice.getItems() ) {
-					final InvoiceItemType itemType = item.getItemType();
-					if ( itemType == InvoiceItemType.Tax ) {
-						continue;
-					}
-					final String itemKey = item.getKey();
-					final BigDecimal itemAmount = item.getAmount();
-					if ( itemKey == null || itemAmount == null ) {
-						continue;
-					}
-					for ( TaxCode tax : taxes ) {
-						final String taxCode = tax.getCode();
-						final BigDecimal taxRate = tax.getRate();
-						if ( taxCode == null || taxRate == null ) {
-							continue;
-						}
-						if ( itemKey.equalsIgnoreCase(tax.getItemKey()) ) {
-							taxAmounts.merge(taxCode, taxRate.multiply(itemAmount), BigDecimal::add);
-						}
-					}
-				}
-				for ( Map.Entry<String, BigDecimal> me : taxAmounts.entrySet() ) {
+		return taxPlan(taxFilter).taxItems(invoice);
+	}
 
-					SnfInvoiceItem taxItem = newItem(invoice, InvoiceItemType.Tax, me.getKey(),
-							BigDecimal.ONE, me.getValue().setScale(2, RoundingMode.HALF_UP));
-					taxItems.add(taxItem);
-				}
+	/**
+	 * Compute the set of tax items for a collection of invoices.
+	 * 
+	 * <p>
+	 * The invoices are grouped by tax code filter with
+	 * {@link SnfTaxCodeResolver#taxCodeFiltersForInvoices(Iterable)} and each
+	 * group shares a single compiled {@link TaxPlan}, so the applicable tax
+	 * codes are only looked up once per distinct zone and date combination.
+	 * This is meant for billing runs that compute taxes for many invoices at
+	 * once. Existing tax items are ignored in the given invoices. The invoices
+	 * are not mutated in any way.
+	 * </p>
+	 * 
+	 * @param invoices
+	 *        the invoices to compute tax items for
+	 * @return a list of tax item lists, in the same order as {@code invoices},
+	 *         never {@literal null}
+	 * @since 1.2
+	 */
+	public List<List<SnfInvoiceItem>> computeInvoiceTaxItems(List<SnfInvoice> invoices) {
+		if ( invoices == null || invoices.isEmpty() ) {
+			return Collections.emptyList();
+		}
+		SnfTaxCodeResolver taxResolver = OptionalService.service(taxCodeResolver, this);
+		Map<TaxCodeFilter, List<SnfInvoice>> groups = taxResolver.taxCodeFiltersForInvoices(invoices);
+		Map<SnfInvoice, List<SnfInvoiceItem>> taxItems = new IdentityHashMap<>(invoices.size());
+		for ( Map.Entry<TaxCodeFilter, List<SnfInvoice>> me : groups.entrySet() ) {
+			TaxPlan plan = taxPlan(me.getKey());
+			for ( SnfInvoice invoice : me.getValue() ) {
+				taxItems.put(invoice, plan.taxItems(invoice));
 			}
 		}
-		return taxItems;
+		List<List<SnfInvoiceItem>> result = new ArrayList<>(invoices.size());
+		for ( SnfInvoice invoice : invoices ) {
+			List<SnfInvoiceItem> items = taxItems.get(invoice);
+			result.add(items != null ? items : new ArrayList<>(0));
+		}
+		return result;
+	}
+
+	/**
+	 * Compile a tax plan for a tax code filter.
+	 * 
+	 * @param taxFilter
+	 *        the filter to find the applicable tax codes with, or
+	 *        {@literal null} for no taxes
+	 * @return the plan, never {@literal null}
+	 * @since 1.2
+	 */
+	public TaxPlan taxPlan(TaxCodeFilter taxFilter) {
+		if ( taxFilter == null ) {
+			return TaxPlan.EMPTY;
+		}
+		return TaxPlan.compile(taxCodeDao.findFiltered(taxFilter, null, null, null));
 	}
 
 	private SnfInvoiceDeliverer invoiceDeliverer(Long userId) {
@@ -918,6 +1464,191 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 		this.messageCache = messageCache;
 	}
 
+	/**
+	 * Get the preview invoice cache.
+	 * 
+	 * @return the cache
+	 * @since 1.2
+	 */
+	public Cache<String, SnfInvoice> getPreviewInvoiceCache() {
+		return previewInvoiceCache;
+	}
+
+	/**
+	 * Set the optional preview invoice cache.
+	 * 
+	 * <p>
+	 * Preview invoices are cached by user, month, and the "use account credit"
+	 * option. The key also includes a per-user generation number that
+	 * {@link #invalidatePreviewInvoices(Long)} increments, so invalidated
+	 * entries are never read again and are left to expire from the cache.
+	 * </p>
+	 * 
+	 * @param previewInvoiceCache
+	 *        the cache to set
+	 * @since 1.2
+	 */
+	public void setPreviewInvoiceCache(Cache<String, SnfInvoice> previewInvoiceCache) {
+		this.previewInvoiceCache = previewInvoiceCache;
+	}
+
+	/**
+	 * Get the rendered preview invoice cache.
+	 * 
+	 * @return the cache
+	 * @since 1.2
+	 */
+	public Cache<String, byte[]> getPreviewRenderCache() {
+		return previewRenderCache;
+	}
+
+	/**
+	 * Set the optional rendered preview invoice cache.
+	 * 
+	 * <p>
+	 * Rendered preview invoices are cached by user, preview generation, month,
+	 * the "use account credit" option, output type, and locale.
+	 * </p>
+	 * 
+	 * @param previewRenderCache
+	 *        the cache to set
+	 * @since 1.2
+	 */
+	public void setPreviewRenderCache(Cache<String, byte[]> previewRenderCache) {
+		this.previewRenderCache = previewRenderCache;
+	}
+
+	/**
+	 * Get the number of preview cache hits.
+	 * 
+	 * @return the number of hits, across both the preview invoice and rendered
+	 *         preview invoice caches
+	 * @since 1.2
+	 */
+	public long getPreviewCacheHits() {
+		return previewCacheHits.get();
+	}
+
+	/**
+	 * Get the number of preview cache misses.
+	 * 
+	 * @return the number of misses, across both the preview invoice and
+	 *         rendered preview invoice caches
+	 * @since 1.2
+	 */
+	public long getPreviewCacheMisses() {
+		return previewCacheMisses.get();
+	}
+
+	/**
+	 * Get the rendered invoice cache.
+	 * 
+	 * @return the cache
+	 * @since 1.2
+	 */
+	public Cache<String, byte[]> getInvoiceRenderCache() {
+		return invoiceRenderCache;
+	}
+
+	/**
+	 * Set the optional rendered invoice cache.
+	 * 
+	 * <p>
+	 * Rendered finalized (non-draft) invoices are cached by invoice ID, output
+	 * type, locale, and template version. As finalized invoices do not change,
+	 * this cache is meant to be size-bounded rather than short-lived, for
+	 * example with both heap and disk tiers, and to expire entries that have not
+	 * been accessed for some time. Only renders up to
+	 * {@link #setRenderSpillThreshold(int)} bytes are cached, so the cache can
+	 * be bounded by entry count.
+	 * </p>
+	 * 
+	 * @param invoiceRenderCache
+	 *        the cache to set
+	 * @since 1.2
+	 */
+	public void setInvoiceRenderCache(Cache<String, byte[]> invoiceRenderCache) {
+		this.invoiceRenderCache = invoiceRenderCache;
+	}
+
+	/**
+	 * Get the number of rendered invoice cache hits.
+	 * 
+	 * @return the number of hits
+	 * @since 1.2
+	 */
+	public long getInvoiceRenderCacheHits() {
+		return invoiceRenderCacheHits.get();
+	}
+
+	/**
+	 * Get the number of rendered invoice cache misses.
+	 * 
+	 * @return the number of misses
+	 * @since 1.2
+	 */
+	public long getInvoiceRenderCacheMisses() {
+		return invoiceRenderCacheMisses.get();
+	}
+
+	/**
+	 * Get the maximum number of bytes of rendered invoice data to cache.
+	 * 
+	 * @return the threshold, in bytes; defaults to
+	 *         {@link #DEFAULT_RENDER_SPILL_THRESHOLD}
+	 * @since 1.2
+	 */
+	public int getRenderSpillThreshold() {
+		return renderSpillThreshold;
+	}
+
+	/**
+	 * Set the maximum number of bytes of rendered invoice data to cache.
+	 * 
+	 * <p>
+	 * Rendered output larger than this is not added to the
+	 * {@code invoiceRenderCache}. When rendering to an {@link OutputStream}, a
+	 * copy of the output is only kept up to this size, so large invoices are
+	 * streamed to the caller without being held in memory.
+	 * </p>
+	 * 
+	 * @param renderSpillThreshold
+	 *        the threshold to set, in bytes
+	 * @since 1.2
+	 */
+	public void setRenderSpillThreshold(int renderSpillThreshold) {
+		this.renderSpillThreshold = renderSpillThreshold;
+	}
+
+	/**
+	 * Get the usage accrual DAO.
+	 * 
+	 * @return the DAO
+	 * @since 1.2
+	 */
+	public OptionalService<NodeUsageAccrualDao> getUsageAccrualDao() {
+		return usageAccrualDao;
+	}
+
+	/**
+	 * Set the usage accrual DAO.
+	 * 
+	 * <p>
+	 * If available, dry run invoices (such as preview invoices) will be
+	 * generated from the accrued month-to-date usage rather than re-scanning
+	 * the usage for the entire month. If the service is not available, the
+	 * invoice period is not exactly one calendar month, or no days have been
+	 * accrued for the month yet, the usage is queried directly.
+	 * </p>
+	 * 
+	 * @param usageAccrualDao
+	 *        the DAO to set
+	 * @since 1.2
+	 */
+	public void setUsageAccrualDao(OptionalService<NodeUsageAccrualDao> usageAccrualDao) {
+		this.usageAccrualDao = usageAccrualDao;
+	}
+
 	/**
 	 * Get the invoice delivery services.
 	 * 
@@ -977,4 +1708,34 @@ public class SnfBillingSystem implements BillingSystem, SnfInvoicingSystem, SnfT
 		this.deliveryTimeoutSecs = deliveryTimeoutSecs;
 	}
 
+	/**
+	 * Get the total count mode to use when finding invoices.
+	 * 
+	 * @return the mode; defaults to {@link TotalCountMode#EXACT}
+	 * @since 1.2
+	 */
+	public TotalCountMode getInvoiceListCountMode() {
+		return invoiceListCountMode;
+	}
+
+	/**
+	 * Set the total count mode to use when finding invoices.
+	 * 
+	 * <p>
+	 * Listings that do not display the total result count, such as those that
+	 * page through results on demand, can use {@link TotalCountMode#NONE} or
+	 * {@link TotalCountMode#ESTIMATE} to avoid the cost of counting every
+	 * matching invoice.
+	 * </p>
+	 * 
+	 * @param invoiceListCountMode
+	 *        the mode to set; if {@literal null} then
+	 *        {@link TotalCountMode#EXACT} will be used
+	 * @since 1.2
+	 */
+	public void setInvoiceListCountMode(TotalCountMode invoiceListCountMode) {
+		this.invoiceListCountMode = (invoiceListCountMode != null ? invoiceListCountMode
+				: TotalCountMode.EXACT);
+	}
+
 }
@@ -0,0 +1,396 @@
+/* ==================================================================
+ * SnfInvoiceBulkRenderer.java - 18/10/2026 6:28:52 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.MimeType;
+import org.springframework.util.StreamUtils;
+import net.solarnetwork.central.user.billing.snf.dao.SnfInvoiceDao;
+import net.solarnetwork.central.user.billing.snf.domain.Account;
+import net.solarnetwork.central.user.billing.snf.domain.InvoiceRenderResult;
+import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
+import net.solarnetwork.central.user.billing.snf.util.SpillingOutputStream;
+import net.solarnetwork.central.user.domain.UserLongPK;
+
+/**
+ * Render many invoices concurrently, to a directory or ZIP stream.
+ * 
+ * <p>
+ * Invoices are rendered via
+ * {@link SnfInvoicingSystem#renderInvoice(SnfInvoice, MimeType, Locale, OutputStream)}
+ * on an executor, with at most {@code parallelism} invoices in flight at once.
+ * Invoice IDs are only taken from the given {@link Iterable} as workers become
+ * available, so only that many invoices are loaded and rendered at a time.
+ * The taken IDs and a result for each invoice are held until all invoices
+ * have been rendered, so that the results can be returned in order; memory
+ * use thus grows with the number of invoices, but not with the size of their
+ * rendered output.
+ * </p>
+ * 
+ * <p>
+ * A failure rendering one invoice does not stop the others from being
+ * rendered. The time spent rendering each invoice, and any failure, is
+ * returned as an {@link InvoiceRenderResult}.
+ * </p>
+ * 
+ * @author matt
+ * @version 1.1
+ * @since 1.2
+ */
+public class SnfInvoiceBulkRenderer {
+
+	/** The default {@code parallelism} property value. */
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	private final SnfInvoicingSystem invoicingSystem;
+	private final SnfInvoiceDao invoiceDao;
+	private final ExecutorService executor;
+	private int parallelism = DEFAULT_PARALLELISM;
+	private int spillThreshold = SnfBillingSystem.DEFAULT_RENDER_SPILL_THRESHOLD;
+
+	private final Logger log = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * Write rendered invoice output to a destination.
+	 */
+	@FunctionalInterface
+	private interface RenderTarget {
+
+		/**
+		 * Render an invoice to the target.
+		 * 
+		 * @param invoice
+		 *        the invoice to render
+		 * @param locale
+		 *        the locale to render with
+		 * @return the output details
+		 * @throws IOException
+		 *         if any IO error occurs
+		 */
+		Output render(SnfInvoice invoice, Locale locale) throws IOException;
+
+	}
+
+	/**
+	 * Details on rendered invoice output.
+	 */
+	private static final class Output {
+
+		private final String filename;
+		private final long size;
+
+		private Output(String filename, long size) {
+			super();
+			this.filename = filename;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param invoicingSystem
+	 *        the invoicing system to render invoices with
+	 * @param invoiceDao
+	 *        the invoice DAO to load invoices with
+	 * @param executor
+	 *        the executor to render invoices with
+	 * @throws IllegalArgumentException
+	 *         if any argument is {@literal null}
+	 */
+	public SnfInvoiceBulkRenderer(SnfInvoicingSystem invoicingSystem, SnfInvoiceDao invoiceDao,
+			ExecutorService executor) {
+		super();
+		if ( invoicingSystem == null ) {
+			throw new IllegalArgumentException("The invoicingSystem argument must be provided.");
+		}
+		this.invoicingSystem = invoicingSystem;
+		if ( invoiceDao == null ) {
+			throw new IllegalArgumentException("The invoiceDao argument must be provided.");
+		}
+		this.invoiceDao = invoiceDao;
+		if ( executor == null ) {
+			throw new IllegalArgumentException("The executor argument must be provided.");
+		}
+		this.executor = executor;
+	}
+
+	/**
+	 * Render invoices to files in a directory.
+	 * 
+	 * <p>
+	 * Each invoice is written to a file named after the file name returned by
+	 * the invoicing system. Existing files are replaced.
+	 * </p>
+	 * 
+	 * @param invoiceIds
+	 *        the IDs of the invoices to render
+	 * @param outputType
+	 *        the desired output type
+	 * @param locale
+	 *        the locale to render with, or {@literal null} to use each
+	 *        invoice's account locale
+	 * @param directory
+	 *        the directory to write the invoices to; will be created if it does
+	 *        not exist
+	 * @return the render results, in the same order as {@code invoiceIds}
+	 * @throws IllegalArgumentException
+	 *         if any argument other than {@code locale} is {@literal null}
+	 * @throws IOException
+	 *         if the directory cannot be created
+	 */
+	public List<InvoiceRenderResult> renderToDirectory(Iterable<UserLongPK> invoiceIds,
+			MimeType outputType, Locale locale, Path directory) throws IOException {
+		if ( directory == null ) {
+			throw new IllegalArgumentException("The directory argument must be provided.");
+		}
+		Files.createDirectories(directory);
+		return render(invoiceIds, outputType, locale, (invoice, l) -> {
+			Path tmp = Files.createTempFile(directory, "snf-invoice-", ".tmp");
+			try {
+				String filename;
+				try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+					filename = safeFilename(
+							invoicingSystem.renderInvoice(invoice, outputType, l, out));
+				}
+				Path dest = directory.resolve(filename);
+				Files.move(tmp, dest, REPLACE_EXISTING);
+				return new Output(filename, Files.size(dest));
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+		});
+	}
+
+	/**
+	 * Render invoices as entries in a ZIP stream.
+	 * 
+	 * <p>
+	 * Each invoice is rendered to memory (spilling to a temporary file if
+	 * larger than {@code spillThreshold}) and then copied into the ZIP stream
+	 * as an entry named after the file name returned by the invoicing system.
+	 * The ZIP stream is finished, but {@code out} is not closed.
+	 * </p>
+	 * 
+	 * @param invoiceIds
+	 *        the IDs of the invoices to render
+	 * @param outputType
+	 *        the desired output type
+	 * @param locale
+	 *        the locale to render with, or {@literal null} to use each
+	 *        invoice's account locale
+	 * @param out
+	 *        the stream to write the ZIP data to
+	 * @return the render results, in the same order as {@code invoiceIds}
+	 * @throws IllegalArgumentException
+	 *         if any argument other than {@code locale} is {@literal null}
+	 * @throws IOException
+	 *         if any IO error occurs finishing the ZIP stream
+	 */
+	public List<InvoiceRenderResult> renderToZip(Iterable<UserLongPK> invoiceIds,
+			MimeType outputType, Locale locale, OutputStream out) throws IOException {
+		if ( out == null ) {
+			throw new IllegalArgumentException("The out argument must be provided.");
+		}
+		final ZipOutputStream zip = new ZipOutputStream(StreamUtils.nonClosing(out));
+		final List<InvoiceRenderResult> results = render(invoiceIds, outputType, locale,
+				(invoice, l) -> {
+					SpillingOutputStream buf = new SpillingOutputStream(spillThreshold,
+							"snf-invoice-bulk-");
+					try {
+						String filename = safeFilename(
+								invoicingSystem.renderInvoice(invoice, outputType, l, buf));
+						buf.close();
+						try (InputStream in = buf.getInputStream()) {
+							synchronized ( zip ) {
+								zip.putNextEntry(new ZipEntry(filename));
+								StreamUtils.copy(in, zip);
+								zip.closeEntry();
+							}
+						}
+						return new Output(filename, buf.size());
+					} finally {
+						buf.discard();
+					}
+				});
+		zip.finish();
+		zip.flush();
+		return results;
+	}
+
+	private List<InvoiceRenderResult> render(Iterable<UserLongPK> invoiceIds, MimeType outputType,
+			Locale locale, RenderTarget target) {
+		if ( invoiceIds == null ) {
+			throw new IllegalArgumentException("The invoiceIds argument must be provided.");
+		}
+		if ( outputType == null ) {
+			throw new IllegalArgumentException("The outputType argument must be provided.");
+		}
+		final long start = System.currentTimeMillis();
+		final int parallelism = Math.max(1, this.parallelism);
+		final Semaphore permits = new Semaphore(parallelism);
+		final ConcurrentMap<Long, Locale> accountLocales = new ConcurrentHashMap<>(16);
+		final List<UserLongPK> ids = new ArrayList<>(64);
+		final List<Future<InvoiceRenderResult>> futures = new ArrayList<>(64);
+		for ( UserLongPK invoiceId : invoiceIds ) {
+			try {
+				permits.acquire();
+			} catch ( InterruptedException e ) {
+				log.warn("Interrupted rendering invoices after {} submitted.", futures.size());
+				Thread.currentThread().interrupt();
+				break;
+			}
+			ids.add(invoiceId);
+			try {
+				futures.add(executor.submit(() -> {
+					try {
+						return renderInvoice(invoiceId, locale, accountLocales, target);
+					} finally {
+						permits.release();
+					}
+				}));
+			} catch ( RejectedExecutionException e ) {
+				permits.release();
+				throw e;
+			}
+		}
+
+		final List<InvoiceRenderResult> results = new ArrayList<>(futures.size());
+		int failureCount = 0;
+		for ( int i = 0, len = futures.size(); i < len; i++ ) {
+			InvoiceRenderResult result;
+			try {
+				result = futures.get(i).get();
+			} catch ( ExecutionException e ) {
+				result = InvoiceRenderResult.failure(ids.get(i), 0, e.getCause().toString());
+			} catch ( InterruptedException e ) {
+				log.warn("Interrupted waiting for invoices to render.");
+				Thread.currentThread().interrupt();
+				result = InvoiceRenderResult.failure(ids.get(i), 0, "Interrupted.");
+			}
+			if ( !result.isSuccess() ) {
+				failureCount++;
+			}
+			results.add(result);
+		}
+		log.info("Rendered {} invoices as {} with {} parallelism and {} failures in {}ms",
+				results.size(), outputType, parallelism, failureCount,
+				System.currentTimeMillis() - start);
+		return results;
+	}
+
+	private InvoiceRenderResult renderInvoice(UserLongPK invoiceId, Locale locale,
+			ConcurrentMap<Long, Locale> accountLocales, RenderTarget target) {
+		final long start = System.currentTimeMillis();
+		try {
+			final SnfInvoice invoice = invoiceDao.get(invoiceId);
+			if ( invoice == null ) {
+				return InvoiceRenderResult.failure(invoiceId, System.currentTimeMillis() - start,
+						"Invoice not found.");
+			}
+			final Locale l = (locale != null ? locale
+					: accountLocales.computeIfAbsent(invoice.getUserId(), this::accountLocale));
+			final Output output = target.render(invoice, l);
+			final long duration = System.currentTimeMillis() - start;
+			log.debug("Rendered invoice {} to [{}] ({} bytes) in {}ms", invoiceId, output.filename,
+					output.size, duration);
+			return InvoiceRenderResult.success(invoiceId, output.filename, output.size, duration);
+		} catch ( IOException | RuntimeException e ) {
+			final long duration = System.currentTimeMillis() - start;
+			log.warn("Error rendering invoice {}: {}", invoiceId, e.toString());
+			return InvoiceRenderResult.failure(invoiceId, duration, e.toString());
+		}
+	}
+
+	private Locale accountLocale(Long userId) {
+		Account account = invoicingSystem.accountForUser(userId);
+		return (account != null ? account.locale() : Locale.US);
+	}
+
+	private static String safeFilename(String filename) {
+		return filename.replaceAll("[/\\\\:]", "_");
+	}
+
+	/**
+	 * Get the maximum number of invoices to render concurrently.
+	 * 
+	 * @return the parallelism; defaults to {@link #DEFAULT_PARALLELISM}
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Set the maximum number of invoices to render concurrently.
+	 * 
+	 * @param parallelism
+	 *        the parallelism to set
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Get the maximum size of rendered invoice output to hold in memory when
+	 * rendering to a ZIP stream.
+	 * 
+	 * @return the threshold, in bytes; defaults to
+	 *         {@link SnfBillingSystem#DEFAULT_RENDER_SPILL_THRESHOLD}
+	 */
+	public int getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	/**
+	 * Set the maximum size of rendered invoice output to hold in memory when
+	 * rendering to a ZIP stream.
+	 * 
+	 * @param spillThreshold
+	 *        the threshold to set, in bytes; larger output is written to a
+	 *        temporary file instead
+	 */
+	public void setSpillThreshold(int spillThreshold) {
+		this.spillThreshold = spillThreshold;
+	}
+
+}
@@ -22,12 +22,20 @@
 
 package net.solarnetwork.central.user.billing.snf;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import org.springframework.context.MessageSource;
 import org.springframework.core.io.Resource;
 import org.springframework.util.MimeType;
+import net.solarnetwork.central.user.billing.domain.InvoiceFilter;
+import net.solarnetwork.central.user.billing.domain.InvoiceMatch;
 import net.solarnetwork.central.user.billing.snf.domain.Account;
+import net.solarnetwork.central.user.billing.snf.domain.AccountInvoicedThrough;
+import net.solarnetwork.central.user.billing.snf.domain.ContinuationFilterResults;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
 import net.solarnetwork.central.user.domain.UserLongPK;
 
@@ -35,7 +43,7 @@ import net.solarnetwork.central.user.domain.UserLongPK;
  * API for generating invoices for the {@link SnfBillingSystem}.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.2
  */
 public interface SnfInvoicingSystem {
 
@@ -81,6 +89,50 @@ public interface SnfInvoicingSystem {
 	 */
 	SnfInvoice findLatestInvoiceForAccount(UserLongPK accountId);
 
+	/**
+	 * Get the billing accounts for a set of users, along with the date
+	 * invoicing has been completed through for each account.
+	 * 
+	 * <p>
+	 * This combines {@link #accountForUser(Long)} and
+	 * {@link #findLatestInvoiceForAccount(UserLongPK)} for a batch of users.
+	 * </p>
+	 * 
+	 * @param userIds
+	 *        the IDs of the users to get the accounts for
+	 * @return the results, never {@literal null}; users without an account are
+	 *         not included
+	 * @since 1.2
+	 */
+	List<AccountInvoicedThrough> invoicedThroughForUsers(Long[] userIds);
+
+	/**
+	 * Find invoices, one page at a time, using continuation tokens.
+	 * 
+	 * <p>
+	 * Each page seeks directly to the invoices following the previous page, so
+	 * the time taken to find a page does not depend on how many invoices came
+	 * before it. Invoices are returned in date descending order. The total
+	 * result count is only provided for the first page, according to the
+	 * configured {@code invoiceListCountMode}.
+	 * </p>
+	 * 
+	 * @param filter
+	 *        the filter
+	 * @param continuationToken
+	 *        the continuation token returned with the previous page, or
+	 *        {@literal null} for the first page
+	 * @param max
+	 *        the maximum number of invoices to return
+	 * @return the results, with a continuation token if there may be more
+	 *         results
+	 * @throws IllegalArgumentException
+	 *         if {@code continuationToken} is not valid
+	 * @since 1.2
+	 */
+	ContinuationFilterResults<InvoiceMatch> findFilteredInvoices(InvoiceFilter filter,
+			String continuationToken, Integer max);
+
 	/**
 	 * Generate a new invoice.
 	 * 
@@ -100,6 +152,23 @@ public interface SnfInvoicingSystem {
 	SnfInvoice generateInvoice(Long userId, LocalDate startDate, LocalDate endDate,
 			InvoiceGenerationOptions options);
 
+	/**
+	 * Invalidate any cached preview invoices for a given user.
+	 * 
+	 * <p>
+	 * This should be called when something that affects a user's preview
+	 * invoices changes, such as the account balance, so the next preview
+	 * request generates a new invoice.
+	 * </p>
+	 * 
+	 * @param userId
+	 *        the ID of the user to invalidate the preview invoices for
+	 * @throws IllegalArgumentException
+	 *         if {@code userId} is {@literal null}
+	 * @since 1.1
+	 */
+	void invalidatePreviewInvoices(Long userId);
+
 	/**
 	 * Deliver an invoice via an account-specific delivery mechanism (such as
 	 * email).
@@ -129,6 +198,13 @@ public interface SnfInvoicingSystem {
 	 * already exists.
 	 * </p>
 	 * 
+	 * <p>
+	 * The returned resource holds the output in memory and can be read any
+	 * number of times. Use
+	 * {@link #renderInvoice(SnfInvoice, MimeType, Locale, OutputStream)} to
+	 * avoid holding large output in memory.
+	 * </p>
+	 * 
 	 * @param invoice
 	 *        the invoice to render
 	 * @param outputType
@@ -142,4 +218,62 @@ public interface SnfInvoicingSystem {
 	 */
 	Resource renderInvoice(SnfInvoice invoice, MimeType outputType, Locale locale);
 
+	/**
+	 * Render an invoice entity to an output stream.
+	 * 
+	 * <p>
+	 * This is similar to
+	 * {@link #renderInvoice(SnfInvoice, MimeType, Locale)} except the output
+	 * is written directly to the given stream rather than being held in
+	 * memory, even when the output is added to a render cache. The stream is
+	 * flushed but not closed.
+	 * </p>
+	 * 
+	 * @param invoice
+	 *        the invoice to render
+	 * @param outputType
+	 *        the desired output type
+	 * @param locale
+	 *        the output locale
+	 * @param out
+	 *        the stream to write the output to
+	 * @return the file name to use for the output
+	 * @throws IllegalArgumentException
+	 *         if {@code outputType} is not supported or {@code out} is
+	 *         {@literal null}
+	 * @throws IOException
+	 *         if any IO error occurs
+	 * @since 1.2
+	 */
+	String renderInvoice(SnfInvoice invoice, MimeType outputType, Locale locale, OutputStream out)
+			throws IOException;
+
+	/**
+	 * Render an invoice entity to multiple output types.
+	 * 
+	 * <p>
+	 * This is similar to calling
+	 * {@link #renderInvoice(SnfInvoice, MimeType, Locale)} for each output
+	 * type, except the invoice is only localized once and any HTML-derived
+	 * output (such as PDF) is rendered from the same HTML, which is also only
+	 * rendered once.
+	 * </p>
+	 * 
+	 * @param invoice
+	 *        the invoice to render
+	 * @param outputTypes
+	 *        the desired output types
+	 * @param locale
+	 *        the output locale
+	 * @return a mapping of output types to resources with the result data, in
+	 *         the same order as {@code outputTypes}
+	 * @throws IllegalArgumentException
+	 *         if {@code outputTypes} is {@literal null} or empty, or any output
+	 *         type is not supported
+	 * @see HtmlDerivedTemplateRenderer
+	 * @since 1.2
+	 */
+	Map<MimeType, Resource> renderInvoice(SnfInvoice invoice, List<MimeType> outputTypes,
+			Locale locale);
+
 }
@@ -22,6 +22,10 @@
 
 package net.solarnetwork.central.user.billing.snf;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
 import net.solarnetwork.central.user.billing.snf.domain.TaxCodeFilter;
 
@@ -29,7 +33,7 @@ import net.solarnetwork.central.user.billing.snf.domain.TaxCodeFilter;
  * API for resolving a filter of applicable tax codes for a given invoice.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.2
  */
 public interface SnfTaxCodeResolver {
 
@@ -47,7 +51,54 @@ public interface SnfTaxCodeResolver {
 	 *        the invoice to resolve taxes for; this will be fully populated
 	 *        with an appropriate account, date range, and item details
 	 * @return the filter to use to resolve tax codes with
+	 * @throws IllegalArgumentException
+	 *         if {@code invoice} is {@literal null} or lacks the details needed
+	 *         to resolve a filter, such as an address with a country and time
+	 *         zone
 	 */
 	TaxCodeFilter taxCodeFilterForInvoice(SnfInvoice invoice);
 
+	/**
+	 * Resolve tax code filters for a collection of invoices, grouping the
+	 * invoices that share the same filter.
+	 * 
+	 * <p>
+	 * Invoices that resolve to equal filters, for example the same
+	 * {@code zones} and {@code date}, share a single filter instance, so that
+	 * the applicable tax codes can be looked up once per group rather than
+	 * once per invoice. If {@link #taxCodeFilterForInvoice(SnfInvoice)} returns
+	 * {@literal null} for an invoice, that invoice is grouped under a
+	 * {@literal null} key.
+	 * </p>
+	 * 
+	 * <p>
+	 * This default implementation calls
+	 * {@link #taxCodeFilterForInvoice(SnfInvoice)} for each invoice and then
+	 * groups the resulting filters.
+	 * </p>
+	 * 
+	 * @param invoices
+	 *        the invoices to resolve taxes for
+	 * @return the invoices grouped by filter, in the order each filter was
+	 *         first resolved, never {@literal null}
+	 * @throws IllegalArgumentException
+	 *         if any invoice is {@literal null} or lacks the details needed to
+	 *         resolve a filter, as described in
+	 *         {@link #taxCodeFilterForInvoice(SnfInvoice)}
+	 * @since 1.1
+	 */
+	default Map<TaxCodeFilter, List<SnfInvoice>> taxCodeFiltersForInvoices(
+			Iterable<SnfInvoice> invoices) {
+		Map<TaxCodeFilter, List<SnfInvoice>> result = new LinkedHashMap<>(8);
+		if ( invoices == null ) {
+			return result;
+		}
+		for ( SnfInvoice invoice : invoices ) {
+			// the first equal filter resolved is kept as the shared key
+			TaxCodeFilter filter = taxCodeFilterForInvoice(invoice);
+			result.computeIfAbsent(filter, k -> new ArrayList<>(8)).add(invoice);
+		}
+		return result;
+	}
+
 }
@@ -23,8 +23,10 @@
 package net.solarnetwork.central.user.billing.snf.dao;
 
 import java.math.BigDecimal;
+import java.util.List;
 import net.solarnetwork.central.user.billing.snf.domain.Account;
 import net.solarnetwork.central.user.billing.snf.domain.AccountBalance;
+import net.solarnetwork.central.user.billing.snf.domain.AccountInvoicedThrough;
 import net.solarnetwork.central.user.domain.UserLongPK;
 import net.solarnetwork.dao.GenericDao;
 
@@ -32,7 +34,7 @@ import net.solarnetwork.dao.GenericDao;
  * DAO API for {@link Account} entities.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  */
 public interface AccountDao extends GenericDao<Account, UserLongPK> {
 
@@ -72,4 +74,47 @@ public interface AccountDao extends GenericDao<Account, UserLongPK> {
 	 */
 	BigDecimal claimAccountBalanceCredit(Long accountId, BigDecimal max);
 
+	/**
+	 * Project the portion of an account balance credit that would be claimed,
+	 * without claiming it.
+	 * 
+	 * <p>
+	 * This is a read-only version of
+	 * {@link #claimAccountBalanceCredit(Long, BigDecimal)} that neither
+	 * modifies nor locks the account balance, for use when generating invoices
+	 * that will not be persisted, such as previews.
+	 * </p>
+	 * 
+	 * @param accountId
+	 *        the account ID to project the credit claim for
+	 * @param max
+	 *        the maximum amount of credit to claim, or {@literal null} to claim
+	 *        all available credit
+	 * @return the credit that would be claimed, never {@literal null} but
+	 *         possibly less than the requested {@code max} if not enough credit
+	 *         is available
+	 * @since 1.1
+	 */
+	BigDecimal projectAccountBalanceCredit(Long accountId, BigDecimal max);
+
+	/**
+	 * Find the date invoicing has been completed through for a set of
+	 * accounts.
+	 * 
+	 * <p>
+	 * The invoiced-through date of an account is the end date of its latest
+	 * invoice that is not a credit-only invoice. All accounts are resolved in a
+	 * single query, so this is meant for batch processing of accounts.
+	 * </p>
+	 * 
+	 * @param userIds
+	 *        the IDs of the users to find the accounts for, or {@literal null}
+	 *        for all accounts
+	 * @return the results, ordered by account ID, never {@literal null}; an
+	 *         account without any invoices will have a {@literal null}
+	 *         {@code endDate}; users without an account are not included
+	 * @since 1.1
+	 */
+	List<AccountInvoicedThrough> findInvoicedThroughForUsers(Long[] userIds);
+
 }
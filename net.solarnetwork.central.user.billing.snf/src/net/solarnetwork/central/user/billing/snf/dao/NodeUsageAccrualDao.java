@@ -0,0 +1,108 @@
+/* ==================================================================
+ * NodeUsageAccrualDao.java - 18/10/2026 10:05:12 AM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.dao;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+import net.solarnetwork.central.user.billing.snf.domain.NodeUsage;
+
+/**
+ * DAO API for month-to-date node usage accrual.
+ * 
+ * <p>
+ * Usage is accrued as a per-account, per-node, per-day rollup of usage counts.
+ * Days are accrued in order by a periodic task, so that the usage for a month
+ * can be calculated by summing the accrued days plus the live usage for the
+ * days that have not been accrued yet, without re-scanning the entire month.
+ * </p>
+ * 
+ * @author matt
+ * @version 1.1
+ * @since 2.1
+ */
+public interface NodeUsageAccrualDao {
+
+	/**
+	 * Accrue the node usage for all accounts for a single day.
+	 * 
+	 * <p>
+	 * The day is interpreted in each account's time zone, and only accounts
+	 * for which the day has ended as of {@code asOf} in their time zone are
+	 * accrued. Any usage previously accrued for the given day will be
+	 * replaced.
+	 * </p>
+	 * 
+	 * @param day
+	 *        the day to accrue the usage for
+	 * @param asOf
+	 *        the current instant, used to decide which accounts have completed
+	 *        the day
+	 * @return the number of node usage rows accrued
+	 * @throws IllegalArgumentException
+	 *         if any argument is {@literal null}
+	 */
+	int accrueUsage(LocalDate day, Instant asOf);
+
+	/**
+	 * Get the latest day usage has been accrued for, across all accounts.
+	 * 
+	 * @return the latest accrued day, or {@literal null} if no usage has been
+	 *         accrued
+	 */
+	LocalDate findLatestAccrualDate();
+
+	/**
+	 * Delete accrued usage older than a given day.
+	 * 
+	 * @param day
+	 *        the day to delete accrued usage before (exclusive)
+	 * @return the number of node usage rows deleted
+	 * @throws IllegalArgumentException
+	 *         if {@code day} is {@literal null}
+	 */
+	int deleteAccruedUsageBefore(LocalDate day);
+
+	/**
+	 * Find node usage counts for a given user and month, combining accrued
+	 * usage with live usage for any days not accrued yet.
+	 * 
+	 * <p>
+	 * Only usage counts are provided; no costs are included. The
+	 * {@link NodeUsage#getId()} value of each provided instance will be the
+	 * node ID the usage relates to.
+	 * </p>
+	 * 
+	 * @param userId
+	 *        the ID of the user to get usage for
+	 * @param month
+	 *        the month to get usage for; the day of month is ignored
+	 * @param handler
+	 *        the handler to pass each node usage instance to, ordered by node
+	 *        ID
+	 * @throws IllegalArgumentException
+	 *         if any argument is {@literal null}
+	 */
+	void findMonthToDateNodeUsage(Long userId, LocalDate month, Consumer<NodeUsage> handler);
+
+}
@@ -24,6 +24,7 @@ package net.solarnetwork.central.user.billing.snf.dao;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Consumer;
 import net.solarnetwork.central.user.billing.snf.domain.NodeUsage;
 import net.solarnetwork.central.user.billing.snf.domain.UsageTiers;
 
@@ -31,7 +32,7 @@ import net.solarnetwork.central.user.billing.snf.domain.UsageTiers;
  * DAO API for billing usage data.
  * 
  * @author matt
- * @version 2.0
+ * @version 2.1
  */
 public interface NodeUsageDao {
 
@@ -88,4 +89,62 @@ public interface NodeUsageDao {
 	 */
 	List<NodeUsage> findNodeUsageForAccount(Long userId, LocalDate startDate, LocalDate endDate);
 
+	/**
+	 * Find all node usage for a given user and time range, passing each result
+	 * to a handler as it is read.
+	 * 
+	 * <p>
+	 * This method returns the same results as
+	 * {@link #findNodeUsageForAccount(Long, LocalDate, LocalDate)} but does not
+	 * collect them into a list, so memory use remains constant regardless of
+	 * the number of nodes owned by the user. The results are ordered by node
+	 * ID.
+	 * </p>
+	 * 
+	 * @param userId
+	 *        the user to get usage for
+	 * @param startDate
+	 *        the minimum date to get usage for (inclusive)
+	 * @param endDate
+	 *        the maximum date to get usage for (exclusive)
+	 * @param handler
+	 *        the handler to pass each usage instance to
+	 * @throws IllegalArgumentException
+	 *         if {@code userId}, {@code startDate}, or {@code handler} is
+	 *         {@literal null}
+	 * @since 2.1
+	 */
+	void findNodeUsageForAccount(Long userId, LocalDate startDate, LocalDate endDate,
+			Consumer<NodeUsage> handler);
+
+	/**
+	 * Find all account-level and node-level usage for a given user and time
+	 * range in a single query.
+	 * 
+	 * <p>
+	 * This method provides the combined results of
+	 * {@link #findUsageForAccount(Long, LocalDate, LocalDate)} and
+	 * {@link #findNodeUsageForAccount(Long, LocalDate, LocalDate)} with just
+	 * one database round trip. All account-level usage is passed to
+	 * {@code usageHandler} before any node-level usage is passed to
+	 * {@code nodeUsageHandler}, the latter ordered by node ID.
+	 * </p>
+	 * 
+	 * @param userId
+	 *        the user to get usage for
+	 * @param startDate
+	 *        the minimum date to get usage for (inclusive)
+	 * @param endDate
+	 *        the maximum date to get usage for (exclusive)
+	 * @param usageHandler
+	 *        the handler to pass each account-level usage instance to
+	 * @param nodeUsageHandler
+	 *        the handler to pass each node-level usage instance to
+	 * @throws IllegalArgumentException
+	 *         if any argument other than {@code endDate} is {@literal null}
+	 * @since 2.1
+	 */
+	void findUsageAndNodeUsageForAccount(Long userId, LocalDate startDate, LocalDate endDate,
+			Consumer<NodeUsage> usageHandler, Consumer<NodeUsage> nodeUsageHandler);
+
 }
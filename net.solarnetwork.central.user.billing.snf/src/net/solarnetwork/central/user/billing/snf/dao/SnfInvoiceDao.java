@@ -28,6 +28,7 @@ import java.util.List;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoice;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceFilter;
 import net.solarnetwork.central.user.domain.UserLongPK;
+import net.solarnetwork.dao.FilterResults;
 import net.solarnetwork.dao.FilterableDao;
 import net.solarnetwork.dao.GenericDao;
 import net.solarnetwork.domain.SimpleSortDescriptor;
@@ -37,7 +38,7 @@ import net.solarnetwork.domain.SortDescriptor;
  * DAO API for {@link SnfInvoice} entities.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  */
 public interface SnfInvoiceDao extends GenericDao<SnfInvoice, UserLongPK>,
 		FilterableDao<SnfInvoice, UserLongPK, SnfInvoiceFilter> {
@@ -63,4 +64,28 @@ public interface SnfInvoiceDao extends GenericDao<SnfInvoice, UserLongPK>,
 
 	}
 
+	/**
+	 * Find invoice summaries.
+	 * 
+	 * <p>
+	 * This method works like {@code findFiltered()} except that the returned
+	 * invoices include only the invoice properties, address, total amount,
+	 * paid amount, and tax amount. No items or node usages are included,
+	 * making this suitable for invoice listings.
+	 * </p>
+	 * 
+	 * @param filter
+	 *        the filter
+	 * @param sorts
+	 *        the optional sort descriptors
+	 * @param offset
+	 *        the optional starting offset
+	 * @param max
+	 *        the optional maximum result count
+	 * @return the results, never {@literal null}
+	 * @since 1.1
+	 */
+	FilterResults<SnfInvoice, UserLongPK> findFilteredSummaries(SnfInvoiceFilter filter,
+			List<SortDescriptor> sorts, Integer offset, Integer max);
+
 }
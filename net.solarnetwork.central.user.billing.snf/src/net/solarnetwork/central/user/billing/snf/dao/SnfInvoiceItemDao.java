@@ -22,6 +22,7 @@
 
 package net.solarnetwork.central.user.billing.snf.dao;
 
+import java.util.Collection;
 import java.util.UUID;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceItem;
 import net.solarnetwork.dao.GenericDao;
@@ -30,8 +31,23 @@ import net.solarnetwork.dao.GenericDao;
  * DAO API for {@link SnfInvoiceItem} entities.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  */
 public interface SnfInvoiceItemDao extends GenericDao<SnfInvoiceItem, UUID> {
 
+	/**
+	 * Save a collection of new invoice items in bulk.
+	 * 
+	 * <p>
+	 * This is functionally equivalent to calling {@link #save(Object)} for each
+	 * item, but allows the implementation to persist the items using far fewer
+	 * database round trips. Items that already exist are left unchanged.
+	 * </p>
+	 * 
+	 * @param items
+	 *        the items to save; if {@literal null} or empty nothing is saved
+	 * @since 1.1
+	 */
+	void saveAll(Collection<SnfInvoiceItem> items);
+
 }
@@ -22,6 +22,7 @@
 
 package net.solarnetwork.central.user.billing.snf.dao;
 
+import java.util.Collection;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceNodeUsage;
 import net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceRelatedPK;
 import net.solarnetwork.dao.GenericDao;
@@ -30,9 +31,25 @@ import net.solarnetwork.dao.GenericDao;
  * DAO API for {@link SnfInvoiceNodeUsage} entities.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  * @since 2.0
  */
 public interface SnfInvoiceNodeUsageDao extends GenericDao<SnfInvoiceNodeUsage, SnfInvoiceRelatedPK> {
 
+	/**
+	 * Save a collection of new invoice node usage entities in bulk.
+	 * 
+	 * <p>
+	 * This is functionally equivalent to calling {@link #save(Object)} for each
+	 * entity, but allows the implementation to persist the entities using far
+	 * fewer database round trips. Entities that already exist are left
+	 * unchanged.
+	 * </p>
+	 * 
+	 * @param usages
+	 *        the usages to save; if {@literal null} or empty nothing is saved
+	 * @since 1.1
+	 */
+	void saveAll(Collection<SnfInvoiceNodeUsage> usages);
+
 }
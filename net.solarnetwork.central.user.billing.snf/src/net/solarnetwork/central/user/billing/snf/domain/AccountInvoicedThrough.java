@@ -0,0 +1,173 @@
+/* ==================================================================
+ * AccountInvoicedThrough.java - 18/10/2026 5:02:48 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.domain;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * An account with the date its invoicing has been completed through.
+ * 
+ * <p>
+ * The {@code endDate} is the end date of the latest invoice for the account
+ * that is not a credit-only invoice, and {@code timeZoneId} is the time zone of
+ * that invoice's address.
+ * </p>
+ * 
+ * @author matt
+ * @version 1.0
+ * @since 2.3
+ */
+public class AccountInvoicedThrough {
+
+	private Account account;
+	private LocalDate endDate;
+	private String timeZoneId;
+
+	/**
+	 * Default constructor.
+	 */
+	public AccountInvoicedThrough() {
+		super();
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param account
+	 *        the account
+	 * @param endDate
+	 *        the latest invoice end date, or {@literal null} if the account has
+	 *        no invoices
+	 * @param timeZoneId
+	 *        the latest invoice time zone ID
+	 */
+	public AccountInvoicedThrough(Account account, LocalDate endDate, String timeZoneId) {
+		super();
+		this.account = account;
+		this.endDate = endDate;
+		this.timeZoneId = timeZoneId;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("AccountInvoicedThrough{");
+		builder.append("accountId=");
+		builder.append(account != null && account.getId() != null ? account.getId().getId() : null);
+		builder.append(", endDate=");
+		builder.append(endDate);
+		builder.append(", timeZoneId=");
+		builder.append(timeZoneId);
+		builder.append("}");
+		return builder.toString();
+	}
+
+	/**
+	 * Get the date invoicing has been completed through.
+	 * 
+	 * @return the start of the latest invoice end date, in the latest invoice
+	 *         time zone, or {@literal null} if the account has no invoices
+	 * @throws IllegalStateException
+	 *         if there is an end date but the time zone is not available
+	 */
+	public ZonedDateTime getInvoicedThroughDate() {
+		if ( endDate == null ) {
+			return null;
+		}
+		ZoneId zone = null;
+		if ( timeZoneId != null ) {
+			try {
+				zone = ZoneId.of(timeZoneId);
+			} catch ( DateTimeException e ) {
+				// ignore
+			}
+		}
+		if ( zone == null ) {
+			throw new IllegalStateException(String.format(
+					"Latest invoice for account %s has no time zone available.",
+					account != null && account.getId() != null ? account.getId().getId() : null));
+		}
+		return endDate.atStartOfDay(zone);
+	}
+
+	/**
+	 * Get the account.
+	 * 
+	 * @return the account
+	 */
+	public Account getAccount() {
+		return account;
+	}
+
+	/**
+	 * Set the account.
+	 * 
+	 * @param account
+	 *        the account to set
+	 */
+	public void setAccount(Account account) {
+		this.account = account;
+	}
+
+	/**
+	 * Get the latest invoice end date.
+	 * 
+	 * @return the end date, or {@literal null} if the account has no invoices
+	 */
+	public LocalDate getEndDate() {
+		return endDate;
+	}
+
+	/**
+	 * Set the latest invoice end date.
+	 * 
+	 * @param endDate
+	 *        the end date to set
+	 */
+	public void setEndDate(LocalDate endDate) {
+		this.endDate = endDate;
+	}
+
+	/**
+	 * Get the latest invoice time zone ID.
+	 * 
+	 * @return the time zone ID
+	 */
+	public String getTimeZoneId() {
+		return timeZoneId;
+	}
+
+	/**
+	 * Set the latest invoice time zone ID.
+	 * 
+	 * @param timeZoneId
+	 *        the time zone ID to set
+	 */
+	public void setTimeZoneId(String timeZoneId) {
+		this.timeZoneId = timeZoneId;
+	}
+
+}
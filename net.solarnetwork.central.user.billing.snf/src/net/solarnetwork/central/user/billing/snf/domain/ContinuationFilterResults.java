@@ -0,0 +1,71 @@
+/* ==================================================================
+ * ContinuationFilterResults.java - 18/10/2026 4:12:37 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.domain;
+
+import net.solarnetwork.central.support.BasicFilterResults;
+
+/**
+ * Filter results with a continuation token for the next page of results.
+ * 
+ * @param <T>
+ *        the result type
+ * @author matt
+ * @version 1.0
+ * @since 2.3
+ */
+public class ContinuationFilterResults<T> extends BasicFilterResults<T> {
+
+	private final String continuationToken;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param results
+	 *        the results
+	 * @param totalResults
+	 *        the total result count, or {@literal null} if not known
+	 * @param startingOffset
+	 *        the starting offset
+	 * @param returnedResultCount
+	 *        the returned result count
+	 * @param continuationToken
+	 *        the token to get the next page of results with, or
+	 *        {@literal null} if there are no more results
+	 */
+	public ContinuationFilterResults(Iterable<T> results, Long totalResults, Integer startingOffset,
+			Integer returnedResultCount, String continuationToken) {
+		super(results, totalResults, startingOffset, returnedResultCount);
+		this.continuationToken = continuationToken;
+	}
+
+	/**
+	 * Get the continuation token.
+	 * 
+	 * @return the token to get the next page of results with, or
+	 *         {@literal null} if there are no more results
+	 */
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+
+}
@@ -42,7 +42,7 @@ import net.solarnetwork.central.user.billing.snf.util.SnfBillingUtils;
  * {@link net.solarnetwork.central.user.billing.domain.Invoice}.
  * 
  * @author matt
- * @version 1.1
+ * @version 1.3
  */
 public class InvoiceImpl extends BaseStringEntity implements Invoice, InvoiceMatch {
 
@@ -128,17 +128,22 @@ public class InvoiceImpl extends BaseStringEntity implements Invoice, InvoiceMat
 
 	@Override
 	public BigDecimal getBalance() {
-		return invoice.getTotalAmount();
+		return invoice.getBalanceAmount();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * This returns {@link SnfInvoice#getTaxAmount()}, so invoice summaries
+	 * loaded without items report the persisted tax amount.
+	 * </p>
+	 * 
+	 * @return the tax amount, or {@literal null} if not known
+	 */
 	@Override
 	public BigDecimal getTaxAmount() {
-		Set<SnfInvoiceItem> items = invoice.getItems();
-		if ( items == null ) {
-			items = Collections.emptySet();
-		}
-		return items.stream().filter(e -> InvoiceItemType.Tax.equals(e.getItemType()))
-				.map(e -> e.getAmount()).reduce(BigDecimal.ZERO, BigDecimal::add);
+		return invoice.getTaxAmount();
 	}
 
 	@Override
@@ -0,0 +1,160 @@
+/* ==================================================================
+ * InvoiceRenderResult.java - 18/10/2026 6:20:37 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.domain;
+
+import net.solarnetwork.central.user.domain.UserLongPK;
+
+/**
+ * The result of rendering one invoice.
+ * 
+ * @author matt
+ * @version 1.0
+ * @since 2.3
+ */
+public final class InvoiceRenderResult {
+
+	private final UserLongPK invoiceId;
+	private final String filename;
+	private final long size;
+	private final long duration;
+	private final String message;
+
+	private InvoiceRenderResult(UserLongPK invoiceId, String filename, long size, long duration,
+			String message) {
+		super();
+		this.invoiceId = invoiceId;
+		this.filename = filename;
+		this.size = size;
+		this.duration = duration;
+		this.message = message;
+	}
+
+	/**
+	 * Create a successful result.
+	 * 
+	 * @param invoiceId
+	 *        the ID of the rendered invoice
+	 * @param filename
+	 *        the name of the rendered file
+	 * @param size
+	 *        the size of the rendered file, in bytes
+	 * @param duration
+	 *        the time spent rendering, in milliseconds
+	 * @return the result
+	 */
+	public static InvoiceRenderResult success(UserLongPK invoiceId, String filename, long size,
+			long duration) {
+		return new InvoiceRenderResult(invoiceId, filename, size, duration, null);
+	}
+
+	/**
+	 * Create a failed result.
+	 * 
+	 * @param invoiceId
+	 *        the ID of the invoice that failed to render
+	 * @param duration
+	 *        the time spent before failing, in milliseconds
+	 * @param message
+	 *        a message describing the failure
+	 * @return the result
+	 */
+	public static InvoiceRenderResult failure(UserLongPK invoiceId, long duration, String message) {
+		return new InvoiceRenderResult(invoiceId, null, 0, duration, message);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("InvoiceRenderResult{invoiceId=");
+		builder.append(invoiceId);
+		if ( isSuccess() ) {
+			builder.append(", filename=");
+			builder.append(filename);
+			builder.append(", size=");
+			builder.append(size);
+		} else {
+			builder.append(", message=");
+			builder.append(message);
+		}
+		builder.append(", duration=");
+		builder.append(duration);
+		builder.append("}");
+		return builder.toString();
+	}
+
+	/**
+	 * Test if the invoice was rendered successfully.
+	 * 
+	 * @return {@literal true} if the invoice was rendered
+	 */
+	public boolean isSuccess() {
+		return (filename != null);
+	}
+
+	/**
+	 * Get the invoice ID.
+	 * 
+	 * @return the invoice ID
+	 */
+	public UserLongPK getInvoiceId() {
+		return invoiceId;
+	}
+
+	/**
+	 * Get the name of the rendered file.
+	 * 
+	 * @return the file name, or {@literal null} if the invoice was not
+	 *         rendered
+	 */
+	public String getFilename() {
+		return filename;
+	}
+
+	/**
+	 * Get the size of the rendered file.
+	 * 
+	 * @return the size, in bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Get the time spent rendering the invoice.
+	 * 
+	 * @return the duration, in milliseconds
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Get the failure message.
+	 * 
+	 * @return the message, or {@literal null} if the invoice was rendered
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+}
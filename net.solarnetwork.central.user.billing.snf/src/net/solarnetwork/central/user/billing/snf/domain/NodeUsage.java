@@ -55,13 +55,21 @@ import net.solarnetwork.util.ArrayUtils;
  * and must be translated into real currencies elsewhere.
  * </p>
  * 
+ * <p>
+ * The usage counts are stored as {@code long} values (and the tier counts as
+ * {@code long[]} arrays), falling back to {@link BigInteger} values only for
+ * counts that do not fit in a {@code long}. The {@link #getUsageInfo()} and
+ * {@link #getTiersCostBreakdown()} views are computed on demand and cached
+ * until a count or cost property of this instance is changed.
+ * </p>
+ * 
  * @author matt
- * @version 2.0
+ * @version 2.1
  */
 public class NodeUsage extends BasicLongEntity
 		implements InvoiceUsageRecord<Long>, Differentiable<NodeUsage>, NodeUsages {
 
-	private static final long serialVersionUID = -3736903812257042879L;
+	private static final long serialVersionUID = 6118407524096651562L;
 
 	/**
 	 * Comparator that sorts {@link NodeUsage} objects by {@code id} in
@@ -69,17 +77,31 @@ public class NodeUsage extends BasicLongEntity
 	 */
 	public static final Comparator<NodeUsage> SORT_BY_NODE_ID = new NodeUsageNodeIdComparator();
 
-	private BigInteger datumPropertiesIn;
-	private BigInteger datumOut;
-	private BigInteger datumDaysStored;
+	private long datumPropertiesIn;
+	private long datumOut;
+	private long datumDaysStored;
 	private final NodeUsageCost costs;
 	private BigDecimal totalCost;
 
-	private BigInteger[] datumPropertiesInTiers;
-	private BigInteger[] datumOutTiers;
-	private BigInteger[] datumDaysStoredTiers;
+	// overflow values, only set when a count does not fit in a long
+	private BigInteger datumPropertiesInBig;
+	private BigInteger datumOutBig;
+	private BigInteger datumDaysStoredBig;
+
+	private long[] datumPropertiesInTiers;
+	private long[] datumOutTiers;
+	private long[] datumDaysStoredTiers;
 	private NodeUsageCost[] costsTiers;
 
+	// overflow values, only set when a tier count does not fit in a long
+	private BigInteger[] datumPropertiesInTiersBig;
+	private BigInteger[] datumOutTiersBig;
+	private BigInteger[] datumDaysStoredTiersBig;
+
+	// cached views, cleared when any count or cost changes
+	private transient Map<String, UsageInfo> usageInfo;
+	private transient Map<String, List<NamedCost>> tiersCostBreakdown;
+
 	/**
 	 * Compare {@link NodeUsage} instances by node ID in ascending order.
 	 */
@@ -124,9 +146,6 @@ public class NodeUsage extends BasicLongEntity
 	 */
 	public NodeUsage(Long nodeId, Instant created) {
 		super(nodeId, created);
-		setDatumPropertiesIn(BigInteger.ZERO);
-		setDatumOut(BigInteger.ZERO);
-		setDatumDaysStored(BigInteger.ZERO);
 		setTotalCost(BigDecimal.ZERO);
 		this.costs = new NodeUsageCost();
 	}
@@ -141,11 +160,11 @@ public class NodeUsage extends BasicLongEntity
 			builder.append(", ");
 		}
 		builder.append("datumPropertiesIn=");
-		builder.append(datumPropertiesIn);
+		builder.append(getDatumPropertiesIn());
 		builder.append(", datumOut=");
-		builder.append(datumOut);
+		builder.append(getDatumOut());
 		builder.append(", datumDaysStored=");
-		builder.append(datumDaysStored);
+		builder.append(getDatumDaysStored());
 		builder.append(", datumDaysStoredCost=");
 		builder.append(costs.getDatumDaysStoredCost());
 		builder.append(", datumPropertiesInCost=");
@@ -175,9 +194,12 @@ public class NodeUsage extends BasicLongEntity
 			return false;
 		}
 		// @formatter:off
-		return Objects.equals(datumPropertiesIn, other.datumPropertiesIn)
-				&& Objects.equals(datumOut, other.datumOut)
-				&& Objects.equals(datumDaysStored, other.datumDaysStored);
+		return datumPropertiesIn == other.datumPropertiesIn
+				&& datumOut == other.datumOut
+				&& datumDaysStored == other.datumDaysStored
+				&& Objects.equals(datumPropertiesInBig, other.datumPropertiesInBig)
+				&& Objects.equals(datumOutBig, other.datumOutBig)
+				&& Objects.equals(datumDaysStoredBig, other.datumDaysStoredBig);
 		// @formatter:on
 	}
 
@@ -193,13 +215,98 @@ public class NodeUsage extends BasicLongEntity
 
 	@Override
 	public List<InvoiceItemUsageRecord> getUsageRecords() {
-		List<InvoiceItemUsageRecord> recs = new ArrayList<>(3);
-		recs.add(new UsageInfo(DATUM_PROPS_IN_KEY, new BigDecimal(datumPropertiesIn),
-				costs.getDatumPropertiesInCost()));
-		recs.add(new UsageInfo(DATUM_OUT_KEY, new BigDecimal(datumOut), costs.getDatumOutCost()));
-		recs.add(new UsageInfo(DATUM_DAYS_STORED_KEY, new BigDecimal(datumDaysStored),
-				costs.getDatumDaysStoredCost()));
-		return recs;
+		return new ArrayList<>(getUsageInfo().values());
+	}
+
+	/**
+	 * Add the usage counts of another instance to this instance.
+	 * 
+	 * <p>
+	 * Only the {@code datumPropertiesIn}, {@code datumOut}, and
+	 * {@code datumDaysStored} counts are added; no tier or cost values are
+	 * changed.
+	 * </p>
+	 * 
+	 * @param other
+	 *        the usage to add
+	 * @since 2.1
+	 */
+	public void addCounts(NodeUsage other) {
+		if ( other == null ) {
+			return;
+		}
+		if ( datumPropertiesInBig == null && other.datumPropertiesInBig == null
+				&& canAdd(datumPropertiesIn, other.datumPropertiesIn) ) {
+			datumPropertiesIn += other.datumPropertiesIn;
+		} else {
+			setDatumPropertiesIn(getDatumPropertiesIn().add(other.getDatumPropertiesIn()));
+		}
+		if ( datumOutBig == null && other.datumOutBig == null
+				&& canAdd(datumOut, other.datumOut) ) {
+			datumOut += other.datumOut;
+		} else {
+			setDatumOut(getDatumOut().add(other.getDatumOut()));
+		}
+		if ( datumDaysStoredBig == null && other.datumDaysStoredBig == null
+				&& canAdd(datumDaysStored, other.datumDaysStored) ) {
+			datumDaysStored += other.datumDaysStored;
+		} else {
+			setDatumDaysStored(getDatumDaysStored().add(other.getDatumDaysStored()));
+		}
+		clearViews();
+	}
+
+	private static boolean canAdd(long a, long b) {
+		final long r = a + b;
+		return ((a ^ r) & (b ^ r)) >= 0;
+	}
+
+	private void clearViews() {
+		usageInfo = null;
+		tiersCostBreakdown = null;
+	}
+
+	private static BigInteger toBigInteger(long value, BigInteger overflow) {
+		return (overflow != null ? overflow : BigInteger.valueOf(value));
+	}
+
+	private static BigDecimal toBigDecimal(long value, BigInteger overflow) {
+		return (overflow != null ? new BigDecimal(overflow) : BigDecimal.valueOf(value));
+	}
+
+	private static boolean fitsLong(BigInteger value) {
+		return value.bitLength() < 64;
+	}
+
+	private static long[] toLongs(BigInteger[] values) {
+		if ( values == null ) {
+			return null;
+		}
+		long[] result = new long[values.length];
+		for ( int i = 0, len = values.length; i < len; i++ ) {
+			BigInteger v = values[i];
+			if ( v == null ) {
+				continue;
+			}
+			if ( !fitsLong(v) ) {
+				return null;
+			}
+			result[i] = v.longValue();
+		}
+		return result;
+	}
+
+	private static BigInteger[] toBigIntegers(long[] values, BigInteger[] overflow) {
+		if ( overflow != null ) {
+			return overflow.clone();
+		} else if ( values == null ) {
+			return null;
+		}
+		BigInteger[] result = new BigInteger[values.length];
+		for ( int i = 0, len = values.length; i < len; i++ ) {
+			result[i] = BigInteger.valueOf(values[i]);
+		}
+		return result;
 	}
 
 	/**
@@ -218,7 +325,7 @@ public class NodeUsage extends BasicLongEntity
 	 * @return the count, never {@literal null}
 	 */
 	public BigInteger getDatumPropertiesIn() {
-		return datumPropertiesIn;
+		return toBigInteger(datumPropertiesIn, datumPropertiesInBig);
 	}
 
 	/**
@@ -229,10 +336,15 @@ public class NodeUsage extends BasicLongEntity
 	 *        stored
 	 */
 	public void setDatumPropertiesIn(BigInteger datumPropertiesIn) {
-		if ( datumPropertiesIn == null ) {
-			datumPropertiesIn = BigInteger.ZERO;
+		if ( datumPropertiesIn == null || fitsLong(datumPropertiesIn) ) {
+			this.datumPropertiesIn = (datumPropertiesIn != null ? datumPropertiesIn.longValue()
+					: 0L);
+			this.datumPropertiesInBig = null;
+		} else {
+			this.datumPropertiesIn = 0L;
+			this.datumPropertiesInBig = datumPropertiesIn;
 		}
-		this.datumPropertiesIn = datumPropertiesIn;
+		clearViews();
 	}
 
 	/**
@@ -252,6 +364,7 @@ public class NodeUsage extends BasicLongEntity
 	 */
 	public void setDatumPropertiesInCost(BigDecimal datumPropertiesInCost) {
 		costs.setDatumPropertiesInCost(datumPropertiesInCost);
+		clearViews();
 	}
 
 	/**
@@ -260,7 +373,7 @@ public class NodeUsage extends BasicLongEntity
 	 * @return the count
 	 */
 	public BigInteger getDatumDaysStored() {
-		return datumDaysStored;
+		return toBigInteger(datumDaysStored, datumDaysStoredBig);
 	}
 
 	/**
@@ -271,10 +384,14 @@ public class NodeUsage extends BasicLongEntity
 	 *        stored
 	 */
 	public void setDatumDaysStored(BigInteger datumDaysStored) {
-		if ( datumDaysStored == null ) {
-			datumDaysStored = BigInteger.ZERO;
+		if ( datumDaysStored == null || fitsLong(datumDaysStored) ) {
+			this.datumDaysStored = (datumDaysStored != null ? datumDaysStored.longValue() : 0L);
+			this.datumDaysStoredBig = null;
+		} else {
+			this.datumDaysStored = 0L;
+			this.datumDaysStoredBig = datumDaysStored;
 		}
-		this.datumDaysStored = datumDaysStored;
+		clearViews();
 	}
 
 	/**
@@ -294,6 +411,7 @@ public class NodeUsage extends BasicLongEntity
 	 */
 	public void setDatumDaysStoredCost(BigDecimal datumDaysStoredCost) {
 		costs.setDatumDaysStoredCost(datumDaysStoredCost);
+		clearViews();
 	}
 
 	/**
@@ -302,7 +420,7 @@ public class NodeUsage extends BasicLongEntity
 	 * @return the count
 	 */
 	public BigInteger getDatumOut() {
-		return datumOut;
+		return toBigInteger(datumOut, datumOutBig);
 	}
 
 	/**
@@ -313,10 +431,14 @@ public class NodeUsage extends BasicLongEntity
 	 *        stored
 	 */
 	public void setDatumOut(BigInteger datumOut) {
-		if ( datumOut == null ) {
-			datumOut = BigInteger.ZERO;
+		if ( datumOut == null || fitsLong(datumOut) ) {
+			this.datumOut = (datumOut != null ? datumOut.longValue() : 0L);
+			this.datumOutBig = null;
+		} else {
+			this.datumOut = 0L;
+			this.datumOutBig = datumOut;
 		}
-		this.datumOut = datumOut;
+		clearViews();
 	}
 
 	/**
@@ -336,6 +458,7 @@ public class NodeUsage extends BasicLongEntity
 	 */
 	public void setDatumOutCost(BigDecimal datumOutCost) {
 		costs.setDatumOutCost(datumOutCost);
+		clearViews();
 	}
 
 	/**
@@ -368,7 +491,7 @@ public class NodeUsage extends BasicLongEntity
 			Function<NodeUsageCost, BigDecimal> f) {
 		BigDecimal[] result = null;
 		if ( costsTiers != null ) {
-			result = stream(costsTiers).map(e -> e.getDatumDaysStoredCost()).toArray(BigDecimal[]::new);
+			result = stream(costsTiers).map(f).toArray(BigDecimal[]::new);
 		}
 		return result;
 	}
@@ -384,21 +507,29 @@ public class NodeUsage extends BasicLongEntity
 		return ints;
 	}
 
-	private static List<NamedCost> tiersCostBreakdown(BigInteger[] counts, NodeUsageCost[] costsTiers,
-			Function<NodeUsageCost, BigDecimal> f) {
-		if ( counts == null || counts.length < 1 ) {
+	private static List<NamedCost> tiersCostBreakdown(long[] counts, BigInteger[] overflow,
+			NodeUsageCost[] costsTiers, Function<NodeUsageCost, BigDecimal> f) {
+		final int len = (overflow != null ? overflow.length : counts != null ? counts.length : 0);
+		if ( len < 1 ) {
 			return Collections.emptyList();
 		}
-		List<NamedCost> result = new ArrayList<>(counts != null ? counts.length : 4);
-		for ( int i = 0; i < counts.length; i++ ) {
-			BigInteger q = counts[i];
-			if ( BigInteger.ZERO.compareTo(q) == 0 ) {
+		List<NamedCost> result = new ArrayList<>(len);
+		for ( int i = 0; i < len; i++ ) {
+			BigInteger q;
+			if ( overflow != null ) {
+				q = overflow[i];
+				if ( BigInteger.ZERO.compareTo(q) == 0 ) {
+					break;
+				}
+			} else if ( counts[i] == 0L ) {
 				break;
+			} else {
+				q = BigInteger.valueOf(counts[i]);
 			}
 			BigDecimal c = (costsTiers != null && i < costsTiers.length ? f.apply(costsTiers[i]) : null);
 			result.add(NamedCost.forTier((i + 1), q, c));
 		}
-		return result;
+		return Collections.unmodifiableList(result);
 	}
 
 	/**
@@ -414,13 +545,23 @@ public class NodeUsage extends BasicLongEntity
 	 * <li>
 	 * </ol>
 	 * 
-	 * @return the map, never {@literal null}
+	 * <p>
+	 * The map is computed once and cached until a count or cost property is
+	 * changed.
+	 * </p>
+	 * 
+	 * @return the unmodifiable map, never {@literal null}
 	 */
 	public Map<String, List<NamedCost>> getTiersCostBreakdown() {
-		Map<String, List<NamedCost>> result = new LinkedHashMap<>(4);
-		result.put(DATUM_PROPS_IN_KEY, getDatumPropertiesInTiersCostBreakdown());
-		result.put(DATUM_OUT_KEY, getDatumOutTiersCostBreakdown());
-		result.put(DATUM_DAYS_STORED_KEY, getDatumDaysStoredTiersCostBreakdown());
+		Map<String, List<NamedCost>> result = tiersCostBreakdown;
+		if ( result == null ) {
+			result = new LinkedHashMap<>(4);
+			result.put(DATUM_PROPS_IN_KEY, getDatumPropertiesInTiersCostBreakdown());
+			result.put(DATUM_OUT_KEY, getDatumOutTiersCostBreakdown());
+			result.put(DATUM_DAYS_STORED_KEY, getDatumDaysStoredTiersCostBreakdown());
+			result = Collections.unmodifiableMap(result);
+			tiersCostBreakdown = result;
+		}
 		return result;
 	}
 
@@ -437,16 +578,30 @@ public class NodeUsage extends BasicLongEntity
 	 * <li>
 	 * </ol>
 	 * 
-	 * @return the map, never {@literal null}
+	 * <p>
+	 * The map is computed once and cached until a count or cost property is
+	 * changed.
+	 * </p>
+	 * 
+	 * @return the unmodifiable map, never {@literal null}
 	 */
 	public Map<String, UsageInfo> getUsageInfo() {
-		Map<String, UsageInfo> result = new LinkedHashMap<>(4);
-		result.put(DATUM_PROPS_IN_KEY, new UsageInfo(DATUM_PROPS_IN_KEY,
-				new BigDecimal(datumPropertiesIn), costs.getDatumPropertiesInCost()));
-		result.put(DATUM_OUT_KEY,
-				new UsageInfo(DATUM_OUT_KEY, new BigDecimal(datumOut), costs.getDatumOutCost()));
-		result.put(DATUM_DAYS_STORED_KEY, new UsageInfo(DATUM_DAYS_STORED_KEY,
-				new BigDecimal(datumDaysStored), costs.getDatumDaysStoredCost()));
+		Map<String, UsageInfo> result = usageInfo;
+		if ( result == null ) {
+			result = new LinkedHashMap<>(4);
+			result.put(DATUM_PROPS_IN_KEY,
+					new UsageInfo(DATUM_PROPS_IN_KEY,
+							toBigDecimal(datumPropertiesIn, datumPropertiesInBig),
+							costs.getDatumPropertiesInCost()));
+			result.put(DATUM_OUT_KEY, new UsageInfo(DATUM_OUT_KEY,
+					toBigDecimal(datumOut, datumOutBig), costs.getDatumOutCost()));
+			result.put(DATUM_DAYS_STORED_KEY,
+					new UsageInfo(DATUM_DAYS_STORED_KEY,
+							toBigDecimal(datumDaysStored, datumDaysStoredBig),
+							costs.getDatumDaysStoredCost()));
+			result = Collections.unmodifiableMap(result);
+			usageInfo = result;
+		}
 		return result;
 	}
 
@@ -468,6 +623,7 @@ public class NodeUsage extends BasicLongEntity
 	 */
 	public void setCostsTiers(NodeUsageCost[] costTiers) {
 		this.costsTiers = costTiers;
+		clearViews();
 	}
 
 	/**
@@ -477,7 +633,7 @@ public class NodeUsage extends BasicLongEntity
 	 */
 	@JsonIgnore
 	public List<NamedCost> getDatumPropertiesInTiersCostBreakdown() {
-		return tiersCostBreakdown(datumPropertiesInTiers, costsTiers,
+		return tiersCostBreakdown(datumPropertiesInTiers, datumPropertiesInTiersBig, costsTiers,
 				NodeUsageCost::getDatumPropertiesInCost);
 	}
 
@@ -487,7 +643,7 @@ public class NodeUsage extends BasicLongEntity
 	 * @return the counts
 	 */
 	public BigInteger[] getDatumPropertiesInTiers() {
-		return datumPropertiesInTiers;
+		return toBigIntegers(datumPropertiesInTiers, datumPropertiesInTiersBig);
 	}
 
 	/**
@@ -497,7 +653,12 @@ public class NodeUsage extends BasicLongEntity
 	 *        the counts to set
 	 */
 	public void setDatumPropertiesInTiers(BigInteger[] datumPropertiesInTiers) {
-		this.datumPropertiesInTiers = datumPropertiesInTiers;
+		long[] longs = toLongs(datumPropertiesInTiers);
+		this.datumPropertiesInTiers = longs;
+		this.datumPropertiesInTiersBig = (longs == null && datumPropertiesInTiers != null
+				? datumPropertiesInTiers.clone()
+				: null);
+		clearViews();
 	}
 
 	/**
@@ -507,7 +668,7 @@ public class NodeUsage extends BasicLongEntity
 	 *        the counts to set
 	 */
 	public void setDatumPropertiesInTiersNumeric(BigDecimal[] datumPropertiesInTiers) {
-		this.datumPropertiesInTiers = decimalsToIntegers(datumPropertiesInTiers);
+		setDatumPropertiesInTiers(decimalsToIntegers(datumPropertiesInTiers));
 	}
 
 	/**
@@ -533,6 +694,7 @@ public class NodeUsage extends BasicLongEntity
 					: null);
 			costsTiers[i].setDatumPropertiesInCost(val);
 		}
+		clearViews();
 	}
 
 	/**
@@ -542,7 +704,7 @@ public class NodeUsage extends BasicLongEntity
 	 */
 	@JsonIgnore
 	public List<NamedCost> getDatumDaysStoredTiersCostBreakdown() {
-		return tiersCostBreakdown(datumDaysStoredTiers, costsTiers,
+		return tiersCostBreakdown(datumDaysStoredTiers, datumDaysStoredTiersBig, costsTiers,
 				NodeUsageCost::getDatumDaysStoredCost);
 	}
 
@@ -552,7 +714,7 @@ public class NodeUsage extends BasicLongEntity
 	 * @return the counts
 	 */
 	public BigInteger[] getDatumDaysStoredTiers() {
-		return datumDaysStoredTiers;
+		return toBigIntegers(datumDaysStoredTiers, datumDaysStoredTiersBig);
 	}
 
 	/**
@@ -562,7 +724,12 @@ public class NodeUsage extends BasicLongEntity
 	 *        the counts to set
 	 */
 	public void setDatumDaysStoredTiers(BigInteger[] datumDaysStoredTiers) {
-		this.datumDaysStoredTiers = datumDaysStoredTiers;
+		long[] longs = toLongs(datumDaysStoredTiers);
+		this.datumDaysStoredTiers = longs;
+		this.datumDaysStoredTiersBig = (longs == null && datumDaysStoredTiers != null
+				? datumDaysStoredTiers.clone()
+				: null);
+		clearViews();
 	}
 
 	/**
@@ -573,7 +740,7 @@ public class NodeUsage extends BasicLongEntity
 	 *        the counts to set
 	 */
 	public void setDatumDaysStoredTiersNumeric(BigDecimal[] datumDaysStoredTiers) {
-		this.datumDaysStoredTiers = decimalsToIntegers(datumDaysStoredTiers);
+		setDatumDaysStoredTiers(decimalsToIntegers(datumDaysStoredTiers));
 	}
 
 	/**
@@ -599,6 +766,7 @@ public class NodeUsage extends BasicLongEntity
 					: null);
 			costsTiers[i].setDatumDaysStoredCost(val);
 		}
+		clearViews();
 	}
 
 	/**
@@ -608,7 +776,8 @@ public class NodeUsage extends BasicLongEntity
 	 */
 	@JsonIgnore
 	public List<NamedCost> getDatumOutTiersCostBreakdown() {
-		return tiersCostBreakdown(datumOutTiers, costsTiers, NodeUsageCost::getDatumOutCost);
+		return tiersCostBreakdown(datumOutTiers, datumOutTiersBig, costsTiers,
+				NodeUsageCost::getDatumOutCost);
 	}
 
 	/**
@@ -626,7 +795,7 @@ public class NodeUsage extends BasicLongEntity
 	 * @return the count
 	 */
 	public BigInteger[] getDatumOutTiers() {
-		return datumOutTiers;
+		return toBigIntegers(datumOutTiers, datumOutTiersBig);
 	}
 
 	/**
@@ -636,7 +805,12 @@ public class NodeUsage extends BasicLongEntity
 	 *        the counts to set
 	 */
 	public void setDatumOutTiers(BigInteger[] datumOutTiers) {
-		this.datumOutTiers = datumOutTiers;
+		long[] longs = toLongs(datumOutTiers);
+		this.datumOutTiers = longs;
+		this.datumOutTiersBig = (longs == null && datumOutTiers != null
+				? datumOutTiers.clone()
+				: null);
+		clearViews();
 	}
 
 	/**
@@ -646,7 +820,7 @@ public class NodeUsage extends BasicLongEntity
 	 *        the counts to set
 	 */
 	public void setDatumOutTiersNumeric(BigDecimal[] datumOutTiers) {
-		this.datumOutTiers = decimalsToIntegers(datumOutTiers);
+		setDatumOutTiers(decimalsToIntegers(datumOutTiers));
 	}
 
 	/**
@@ -672,6 +846,7 @@ public class NodeUsage extends BasicLongEntity
 					: null);
 			costsTiers[i].setDatumOutCost(val);
 		}
+		clearViews();
 	}
 
 }
@@ -45,7 +45,7 @@ import net.solarnetwork.domain.Differentiable;
  * SNF invoice entity.
  * 
  * @author matt
- * @version 1.1
+ * @version 1.3
  */
 public class SnfInvoice extends BasicEntity<UserLongPK>
 		implements UserRelatedEntity<UserLongPK>, Differentiable<SnfInvoice> {
@@ -65,6 +65,9 @@ public class SnfInvoice extends BasicEntity<UserLongPK>
 	private String currencyCode;
 	private Set<SnfInvoiceItem> items;
 	private Set<SnfInvoiceNodeUsage> usages;
+	private BigDecimal totalAmount;
+	private BigDecimal paidAmount;
+	private BigDecimal taxAmount;
 
 	/**
 	 * Compare {@link SnfInvoice} instances by start date in ascending order.
@@ -159,9 +162,18 @@ public class SnfInvoice extends BasicEntity<UserLongPK>
 	/**
 	 * Get the total amount of all invoice items.
 	 * 
+	 * <p>
+	 * If a total amount has been set, for example the total persisted with the
+	 * invoice, that amount is returned. Otherwise the amounts of all invoice
+	 * items are added together.
+	 * </p>
+	 * 
 	 * @return the total cost, never {@literal null}
 	 */
 	public BigDecimal getTotalAmount() {
+		if ( totalAmount != null ) {
+			return totalAmount;
+		}
 		BigDecimal result = BigDecimal.ZERO;
 		Set<SnfInvoiceItem> items = getItems();
 		if ( items != null ) {
@@ -170,6 +182,101 @@ public class SnfInvoice extends BasicEntity<UserLongPK>
 		return result;
 	}
 
+	/**
+	 * Set the total amount of all invoice items.
+	 * 
+	 * @param totalAmount
+	 *        the total amount to set, or {@literal null} to compute the total
+	 *        from the invoice items
+	 * @since 1.2
+	 */
+	public void setTotalAmount(BigDecimal totalAmount) {
+		this.totalAmount = totalAmount;
+	}
+
+	/**
+	 * Get the total amount of all payments made against this invoice.
+	 * 
+	 * @return the paid amount, or {@literal null} if not known
+	 * @since 1.2
+	 */
+	public BigDecimal getPaidAmount() {
+		return paidAmount;
+	}
+
+	/**
+	 * Set the total amount of all payments made against this invoice.
+	 * 
+	 * @param paidAmount
+	 *        the paid amount to set
+	 * @since 1.2
+	 */
+	public void setPaidAmount(BigDecimal paidAmount) {
+		this.paidAmount = paidAmount;
+	}
+
+	/**
+	 * Get the total amount of all tax invoice items.
+	 * 
+	 * <p>
+	 * If a tax amount has been set, for example the tax amount persisted with
+	 * the invoice, that amount is returned. Otherwise the amounts of all
+	 * {@link InvoiceItemType#Tax} invoice items are added together.
+	 * </p>
+	 * 
+	 * @return the tax amount, or {@literal null} if not set and the invoice
+	 *         items are not available
+	 * @since 1.3
+	 */
+	public BigDecimal getTaxAmount() {
+		if ( taxAmount != null ) {
+			return taxAmount;
+		}
+		Set<SnfInvoiceItem> items = getItems();
+		if ( items == null ) {
+			return null;
+		}
+		return items.stream().filter(e -> InvoiceItemType.Tax == e.getItemType())
+				.map(SnfInvoiceItem::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+	}
+
+	/**
+	 * Set the total amount of all tax invoice items.
+	 * 
+	 * @param taxAmount
+	 *        the tax amount to set, or {@literal null} to compute the tax
+	 *        amount from the invoice items
+	 * @since 1.3
+	 */
+	public void setTaxAmount(BigDecimal taxAmount) {
+		this.taxAmount = taxAmount;
+	}
+
+	/**
+	 * Get the amount remaining to be paid on this invoice.
+	 * 
+	 * @return the total amount less the paid amount, or the total amount if
+	 *         the paid amount is not known
+	 * @since 1.2
+	 */
+	@JsonIgnore
+	public BigDecimal getBalanceAmount() {
+		BigDecimal total = getTotalAmount();
+		return (paidAmount != null ? total.subtract(paidAmount) : total);
+	}
+
+	/**
+	 * Test if this invoice has been fully paid.
+	 * 
+	 * @return {@literal true} if the paid amount is known and is at least the
+	 *         total amount
+	 * @since 1.2
+	 */
+	@JsonIgnore
+	public boolean isPaid() {
+		return (paidAmount != null && paidAmount.compareTo(getTotalAmount()) >= 0);
+	}
+
 	/**
 	 * Get the invoice time zone.
 	 * 
@@ -22,23 +22,71 @@
 
 package net.solarnetwork.central.user.billing.snf.domain;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.Base64;
 import net.solarnetwork.domain.SimplePagination;
 
 /**
  * Query filter for {@link SnfInvoice} entities.
  * 
+ * <p>
+ * Results can be paged either by offset, or by a continuation token returned
+ * from {@link #continuationToken(SnfInvoice)} for the last invoice in the
+ * previous page. A continuation token seeks directly to the invoices that
+ * follow the given invoice in the default order of invoice date descending
+ * followed by ID ascending, so the cost of a page does not depend on how many
+ * invoices come before it.
+ * </p>
+ * 
+ * <p>
+ * The {@code totalCountMode} controls how the total result count is provided,
+ * which can be skipped entirely for listings that do not display it.
+ * </p>
+ * 
  * @author matt
- * @version 1.1
+ * @version 1.2
  */
 public class SnfInvoiceFilter extends SimplePagination {
 
+	/**
+	 * The default {@code estimatedCountLimit} property value.
+	 * 
+	 * @since 1.2
+	 */
+	public static final int DEFAULT_ESTIMATED_COUNT_LIMIT = 1000;
+
+	/**
+	 * An enumeration of ways to compute the total result count.
+	 * 
+	 * @since 1.2
+	 */
+	public enum TotalCountMode {
+
+		/** Count all matching invoices. */
+		EXACT,
+
+		/**
+		 * Count matching invoices up to {@code estimatedCountLimit}; if the
+		 * limit is reached the limit is returned as the count.
+		 */
+		ESTIMATE,
+
+		/** Do not compute the total count. */
+		NONE;
+
+	}
+
 	private Long userId;
 	private Long accountId;
 	private LocalDate startDate;
 	private LocalDate endDate;
 	private boolean unpaidOnly;
 	private boolean ignoreCreditOnly;
+	private LocalDate seekDate;
+	private Long seekId;
+	private TotalCountMode totalCountMode = TotalCountMode.EXACT;
+	private int estimatedCountLimit = DEFAULT_ESTIMATED_COUNT_LIMIT;
 
 	/**
 	 * Create a new filter with a user ID.
@@ -80,6 +128,31 @@ public class SnfInvoiceFilter extends SimplePagination {
 		return f;
 	}
 
+	/**
+	 * Create a continuation token for the page of invoices following a given
+	 * invoice.
+	 * 
+	 * @param invoice
+	 *        the last invoice of a page of results
+	 * @return the token, or {@literal null} if {@code invoice} is
+	 *         {@literal null} or has no start date or ID
+	 * @see #setContinuationToken(String)
+	 * @since 1.2
+	 */
+	public static String continuationToken(SnfInvoice invoice) {
+		if ( invoice == null || invoice.getStartDate() == null || invoice.getId() == null
+				|| invoice.getId().getId() == null ) {
+			return null;
+		}
+		return continuationToken(invoice.getStartDate(), invoice.getId().getId());
+	}
+
+	private static String continuationToken(LocalDate date, Long id) {
+		String key = date.toString() + '/' + id;
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString(key.getBytes(StandardCharsets.US_ASCII));
+	}
+
 	@Override
 	public SnfInvoiceFilter clone() {
 		return (SnfInvoiceFilter) super.clone();
@@ -201,4 +274,149 @@ public class SnfInvoiceFilter extends SimplePagination {
 		this.ignoreCreditOnly = ignoreCreditOnly;
 	}
 
+	/**
+	 * Get the continuation token.
+	 * 
+	 * @return the token derived from the configured seek date and ID, or
+	 *         {@literal null} if not configured
+	 * @since 1.2
+	 */
+	public String getContinuationToken() {
+		return (seekDate != null && seekId != null ? continuationToken(seekDate, seekId) : null);
+	}
+
+	/**
+	 * Set a continuation token to return the invoices following the invoice
+	 * the token was created from.
+	 * 
+	 * <p>
+	 * This sets the {@code seekDate} and {@code seekId} properties.
+	 * </p>
+	 * 
+	 * @param token
+	 *        the token, as returned from
+	 *        {@link #continuationToken(SnfInvoice)}, or {@literal null} to
+	 *        clear
+	 * @throws IllegalArgumentException
+	 *         if {@code token} is not a valid token
+	 * @since 1.2
+	 */
+	public void setContinuationToken(String token) {
+		if ( token == null || token.isEmpty() ) {
+			this.seekDate = null;
+			this.seekId = null;
+			return;
+		}
+		try {
+			String key = new String(Base64.getUrlDecoder().decode(token),
+					StandardCharsets.US_ASCII);
+			int idx = key.indexOf('/');
+			LocalDate date = LocalDate.parse(key.substring(0, idx));
+			Long id = Long.valueOf(key.substring(idx + 1));
+			this.seekDate = date;
+			this.seekId = id;
+		} catch ( RuntimeException e ) {
+			throw new IllegalArgumentException("The continuation token is not valid.");
+		}
+	}
+
+	/**
+	 * Test if a seek position is configured.
+	 * 
+	 * @return {@literal true} if both {@code seekDate} and {@code seekId} are
+	 *         configured
+	 * @since 1.2
+	 */
+	public boolean hasSeek() {
+		return (seekDate != null && seekId != null);
+	}
+
+	/**
+	 * Get the seek date.
+	 * 
+	 * @return the start date of the invoice to return results after
+	 * @since 1.2
+	 */
+	public LocalDate getSeekDate() {
+		return seekDate;
+	}
+
+	/**
+	 * Set the seek date.
+	 * 
+	 * @param seekDate
+	 *        the start date of the invoice to return results after
+	 * @since 1.2
+	 */
+	public void setSeekDate(LocalDate seekDate) {
+		this.seekDate = seekDate;
+	}
+
+	/**
+	 * Get the seek ID.
+	 * 
+	 * @return the ID of the invoice to return results after
+	 * @since 1.2
+	 */
+	public Long getSeekId() {
+		return seekId;
+	}
+
+	/**
+	 * Set the seek ID.
+	 * 
+	 * @param seekId
+	 *        the ID of the invoice to return results after
+	 * @since 1.2
+	 */
+	public void setSeekId(Long seekId) {
+		this.seekId = seekId;
+	}
+
+	/**
+	 * Get the total count mode.
+	 * 
+	 * @return the mode, never {@literal null}; defaults to
+	 *         {@link TotalCountMode#EXACT}
+	 * @since 1.2
+	 */
+	public TotalCountMode getTotalCountMode() {
+		return totalCountMode;
+	}
+
+	/**
+	 * Set the total count mode.
+	 * 
+	 * @param totalCountMode
+	 *        the mode to set; if {@literal null} then
+	 *        {@link TotalCountMode#EXACT} will be used
+	 * @since 1.2
+	 */
+	public void setTotalCountMode(TotalCountMode totalCountMode) {
+		this.totalCountMode = (totalCountMode != null ? totalCountMode : TotalCountMode.EXACT);
+	}
+
+	/**
+	 * Get the maximum number of invoices to count when estimating the total
+	 * count.
+	 * 
+	 * @return the limit; defaults to {@link #DEFAULT_ESTIMATED_COUNT_LIMIT}
+	 * @since 1.2
+	 */
+	public int getEstimatedCountLimit() {
+		return estimatedCountLimit;
+	}
+
+	/**
+	 * Set the maximum number of invoices to count when estimating the total
+	 * count.
+	 * 
+	 * @param estimatedCountLimit
+	 *        the limit to set
+	 * @since 1.2
+	 */
+	public void setEstimatedCountLimit(int estimatedCountLimit) {
+		this.estimatedCountLimit = estimatedCountLimit;
+	}
+
 }
@@ -32,7 +32,7 @@ import net.solarnetwork.domain.SimplePagination;
  * Query filter for {@code TaxCode} entities.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  */
 public class TaxCodeFilter extends SimplePagination implements Differentiable<TaxCodeFilter> {
 
@@ -87,6 +87,45 @@ public class TaxCodeFilter extends SimplePagination implements Differentiable<Ta
 		return !isSameAs(other);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * Only the criteria properties compared by {@link #isSameAs(TaxCodeFilter)}
+	 * are included; pagination properties are not.
+	 * </p>
+	 * 
+	 * @since 1.1
+	 */
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = Objects.hash(code, date, itemKey);
+		result = prime * result + Arrays.hashCode(zones);
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>
+	 * Two filters are equal if {@link #isSameAs(TaxCodeFilter)} is
+	 * {@literal true}; pagination properties are not compared.
+	 * </p>
+	 * 
+	 * @since 1.1
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if ( this == obj ) {
+			return true;
+		}
+		if ( !(obj instanceof TaxCodeFilter) ) {
+			return false;
+		}
+		return isSameAs((TaxCodeFilter) obj);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -0,0 +1,206 @@
+/* ==================================================================
+ * TaxPlan.java - 18/10/2026 3:31:40 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.domain;
+
+import static net.solarnetwork.central.user.billing.snf.domain.SnfInvoiceItem.newItem;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A compiled set of tax rates to apply to invoice items.
+ * 
+ * <p>
+ * A plan is compiled once from the set of {@link TaxCode} entities that apply
+ * to a set of tax zones and a date, mapping each item key to the tax rates that
+ * apply to it. Item keys are matched case-insensitively. The tax items for an
+ * invoice can then be computed with a single pass over the invoice items.
+ * Instances are immutable and thread-safe, so one plan can be applied to any
+ * number of invoices that share the same tax zones and date.
+ * </p>
+ * 
+ * @author matt
+ * @version 1.0
+ * @since 2.3
+ */
+public final class TaxPlan {
+
+	/** A plan with no tax rates. */
+	public static final TaxPlan EMPTY = new TaxPlan(Collections.emptyMap(), new String[0]);
+
+	/** The number of decimal places tax amounts are rounded to. */
+	public static final int TAX_SCALE = 2;
+
+	private final Map<String, Rate[]> rates;
+	private final String[] codes;
+
+	/**
+	 * A single tax rate, with the index of its tax code.
+	 */
+	private static final class Rate {
+
+		private final int code;
+		private final BigDecimal rate;
+
+		private Rate(int code, BigDecimal rate) {
+			super();
+			this.code = code;
+			this.rate = rate;
+		}
+	}
+
+	private TaxPlan(Map<String, Rate[]> rates, String[] codes) {
+		super();
+		this.rates = rates;
+		this.codes = codes;
+	}
+
+	/**
+	 * Compile a tax plan.
+	 * 
+	 * <p>
+	 * Tax codes without an item key, code, or rate are ignored. The order of
+	 * the given tax codes determines the order of tax items with the same first
+	 * matching invoice item.
+	 * </p>
+	 * 
+	 * @param taxes
+	 *        the tax codes to compile, or {@literal null}
+	 * @return the plan, never {@literal null}
+	 */
+	public static TaxPlan compile(Iterable<TaxCode> taxes) {
+		if ( taxes == null ) {
+			return EMPTY;
+		}
+		Map<String, Integer> codeIndexes = new LinkedHashMap<>(8);
+		Map<String, List<Rate>> itemRates = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for ( TaxCode tax : taxes ) {
+			if ( tax.getItemKey() == null || tax.getCode() == null || tax.getRate() == null ) {
+				continue;
+			}
+			Integer idx = codeIndexes.computeIfAbsent(tax.getCode(), k -> codeIndexes.size());
+			itemRates.computeIfAbsent(tax.getItemKey(), k -> new ArrayList<>(2))
+					.add(new Rate(idx, tax.getRate()));
+		}
+		if ( itemRates.isEmpty() ) {
+			return EMPTY;
+		}
+		Map<String, Rate[]> rates = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for ( Map.Entry<String, List<Rate>> me : itemRates.entrySet() ) {
+			rates.put(me.getKey(), me.getValue().toArray(new Rate[me.getValue().size()]));
+		}
+		return new TaxPlan(rates,
+				codeIndexes.keySet().toArray(new String[codeIndexes.size()]));
+	}
+
+	/**
+	 * Test if this plan has no tax rates.
+	 * 
+	 * @return {@literal true} if no tax applies to any item
+	 */
+	public boolean isEmpty() {
+		return rates.isEmpty();
+	}
+
+	/**
+	 * Compute the tax items for an invoice.
+	 * 
+	 * <p>
+	 * Existing tax items are ignored in the given invoice. The invoice is not
+	 * mutated in any way. One tax item is returned per tax code, with the
+	 * amount rounded to {@link #TAX_SCALE} decimal places.
+	 * </p>
+	 * 
+	 * @param invoice
+	 *        the invoice to compute the tax items for
+	 * @return the tax items, never {@literal null}
+	 */
+	public List<SnfInvoiceItem> taxItems(SnfInvoice invoice) {
+		if ( rates.isEmpty() || invoice == null || invoice.getItems() == null ) {
+			return new ArrayList<>(0);
+		}
+		final BigDecimal[] amounts = new BigDecimal[codes.length];
+
+		// the order tax codes were first applied in
+		final int[] order = new int[codes.length];
+		int count = 0;
+
+		for ( SnfInvoiceItem item : invoice.getItems() ) {
+			if ( item.getItemType() == InvoiceItemType.Tax ) {
+				continue;
+			}
+			final String itemKey = item.getKey();
+			final BigDecimal itemAmount = item.getAmount();
+			if ( itemKey == null || itemAmount == null ) {
+				continue;
+			}
+			final Rate[] itemRates = rates.get(itemKey);
+			if ( itemRates == null ) {
+				continue;
+			}
+			for ( Rate r : itemRates ) {
+				BigDecimal tax = r.rate.multiply(itemAmount);
+				if ( amounts[r.code] == null ) {
+					amounts[r.code] = tax;
+					order[count++] = r.code;
+				} else {
+					amounts[r.code] = amounts[r.code].add(tax);
+				}
+			}
+		}
+		List<SnfInvoiceItem> result = new ArrayList<>(count);
+		for ( int i = 0; i < count; i++ ) {
+			final int c = order[i];
+			result.add(newItem(invoice, InvoiceItemType.Tax, codes[c], BigDecimal.ONE,
+					amounts[c].setScale(TAX_SCALE, RoundingMode.HALF_UP)));
+		}
+		return result;
+	}
+
+	/**
+	 * Compute the tax items for a collection of invoices.
+	 * 
+	 * @param invoices
+	 *        the invoices to compute the tax items for
+	 * @return a list of tax item lists, in the same order as {@code invoices},
+	 *         never {@literal null}
+	 * @see #taxItems(SnfInvoice)
+	 */
+	public List<List<SnfInvoiceItem>> taxItems(Collection<SnfInvoice> invoices) {
+		if ( invoices == null ) {
+			return Collections.emptyList();
+		}
+		List<List<SnfInvoiceItem>> result = new ArrayList<>(invoices.size());
+		for ( SnfInvoice invoice : invoices ) {
+			result.add(taxItems(invoice));
+		}
+		return result;
+	}
+
+}
@@ -23,6 +23,11 @@
 package net.solarnetwork.central.user.billing.snf.domain;
 
 import static java.lang.String.format;
+import static net.solarnetwork.central.user.billing.snf.domain.NodeUsages.DATUM_DAYS_STORED_KEY;
+import static net.solarnetwork.central.user.billing.snf.domain.NodeUsages.DATUM_OUT_KEY;
+import static net.solarnetwork.central.user.billing.snf.domain.NodeUsages.DATUM_PROPS_IN_KEY;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -36,7 +41,7 @@ import java.util.stream.Collectors;
  * A collection of ordered {@link UsageTier} objects.
  * 
  * @author matt
- * @version 1.0
+ * @version 1.1
  * @since 1.1
  */
 public class UsageTiers {
@@ -132,6 +137,92 @@ public class UsageTiers {
 		}, LinkedHashMap::new));
 	}
 
+	/**
+	 * Apply the tiers in this collection to the usage counts of a given
+	 * {@link NodeUsage}, populating the per-tier counts and costs as well as
+	 * the overall costs.
+	 * 
+	 * <p>
+	 * Each tier's {@code quantity} is treated as the minimum quantity the
+	 * tier's cost applies to, up to the quantity of the next tier of the same
+	 * key. This matches how the database computes tiered usage costs, and
+	 * allows costs to be computed from usage counts that have been summed
+	 * outside the database.
+	 * </p>
+	 * 
+	 * @param usage
+	 *        the usage to apply the tiers to
+	 * @throws IllegalArgumentException
+	 *         if {@code usage} is {@literal null}
+	 * @since 1.1
+	 */
+	public void applyTiers(NodeUsage usage) {
+		if ( usage == null ) {
+			throw new IllegalArgumentException("The usage argument must be provided.");
+		}
+		BigDecimal total = BigDecimal.ZERO;
+
+		List<UsageTier> keyTiers = tiers(DATUM_PROPS_IN_KEY);
+		BigInteger[] counts = tierCounts(keyTiers, usage.getDatumPropertiesIn());
+		BigDecimal[] costs = tierCosts(keyTiers, counts);
+		usage.setDatumPropertiesInTiers(counts);
+		usage.setDatumPropertiesInCostTiers(costs);
+		usage.setDatumPropertiesInCost(sum(costs));
+		total = total.add(usage.getDatumPropertiesInCost());
+
+		keyTiers = tiers(DATUM_OUT_KEY);
+		counts = tierCounts(keyTiers, usage.getDatumOut());
+		costs = tierCosts(keyTiers, counts);
+		usage.setDatumOutTiers(counts);
+		usage.setDatumOutCostTiers(costs);
+		usage.setDatumOutCost(sum(costs));
+		total = total.add(usage.getDatumOutCost());
+
+		keyTiers = tiers(DATUM_DAYS_STORED_KEY);
+		counts = tierCounts(keyTiers, usage.getDatumDaysStored());
+		costs = tierCosts(keyTiers, counts);
+		usage.setDatumDaysStoredTiers(counts);
+		usage.setDatumDaysStoredCostTiers(costs);
+		usage.setDatumDaysStoredCost(sum(costs));
+		total = total.add(usage.getDatumDaysStoredCost());
+
+		usage.setTotalCost(total);
+	}
+
+	private static BigInteger[] tierCounts(List<UsageTier> tiers, BigInteger quantity) {
+		final int len = tiers.size();
+		final BigInteger q = (quantity != null ? quantity : BigInteger.ZERO);
+		BigInteger[] result = new BigInteger[len];
+		for ( int i = 0; i < len; i++ ) {
+			BigInteger min = tiers.get(i).getQuantity();
+			BigInteger max = (i + 1 < len ? tiers.get(i + 1).getQuantity() : null);
+			if ( q.compareTo(min) <= 0 ) {
+				result[i] = BigInteger.ZERO;
+			} else if ( max != null && q.compareTo(max) > 0 ) {
+				result[i] = max.subtract(min);
+			} else {
+				result[i] = q.subtract(min);
+			}
+		}
+		return result;
+	}
+
+	private static BigDecimal[] tierCosts(List<UsageTier> tiers, BigInteger[] counts) {
+		BigDecimal[] result = new BigDecimal[counts.length];
+		for ( int i = 0; i < counts.length; i++ ) {
+			result[i] = new BigDecimal(counts[i]).multiply(tiers.get(i).getCost());
+		}
+		return result;
+	}
+
+	private static BigDecimal sum(BigDecimal[] values) {
+		BigDecimal result = BigDecimal.ZERO;
+		for ( BigDecimal v : values ) {
+			result = result.add(v);
+		}
+		return result;
+	}
+
 	/**
 	 * Get the tiers.
 	 * 
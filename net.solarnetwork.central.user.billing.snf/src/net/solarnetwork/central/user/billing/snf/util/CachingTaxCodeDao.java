@@ -0,0 +1,338 @@
+/* ==================================================================
+ * CachingTaxCodeDao.java - 18/10/2026 2:41:27 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.util;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import net.solarnetwork.central.user.billing.snf.dao.TaxCodeDao;
+import net.solarnetwork.central.user.billing.snf.domain.TaxCode;
+import net.solarnetwork.central.user.billing.snf.domain.TaxCodeFilter;
+import net.solarnetwork.dao.BasicFilterResults;
+import net.solarnetwork.dao.FilterResults;
+import net.solarnetwork.domain.SortDescriptor;
+
+/**
+ * Caching implementation of {@link TaxCodeDao} that holds all tax codes in
+ * memory.
+ * 
+ * <p>
+ * All tax codes are loaded from a delegate {@link TaxCodeDao} into an
+ * immutable index of tax codes grouped by zone and item key, each group
+ * ordered by {@code validFrom}. Queries are then resolved against the current
+ * index without any locking. The index is replaced when {@link #reload()} is
+ * called, when tax codes are saved or deleted through this DAO, and when the
+ * index is older than {@code reloadSeconds} (if configured).
+ * </p>
+ * 
+ * <p>
+ * Only the default sort order of {@link TaxCodeDao#SORT_BY_ITEM_KEY} is
+ * supported by the index; queries using any other sort order are passed to the
+ * delegate DAO.
+ * </p>
+ * 
+ * @author matt
+ * @version 1.0
+ * @since 1.2
+ */
+public class CachingTaxCodeDao implements TaxCodeDao {
+
+	/** The default {@code reloadSeconds} property value. */
+	public static final int DEFAULT_RELOAD_SECONDS = 600;
+
+	private static final Logger log = LoggerFactory.getLogger(CachingTaxCodeDao.class);
+
+	/** Order tax codes by code, then ID. */
+	private static final Comparator<TaxCode> CODE_ORDER = Comparator
+			.comparing(TaxCode::getCode, Comparator.nullsLast(Comparator.naturalOrder()))
+			.thenComparing(TaxCode::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+	/** Order tax codes by valid from date. */
+	private static final Comparator<TaxCode> VALID_FROM_ORDER = Comparator
+			.comparing(TaxCode::getValidFrom, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+	private final TaxCodeDao delegate;
+	private final AtomicBoolean reloading = new AtomicBoolean(false);
+	private int reloadSeconds = DEFAULT_RELOAD_SECONDS;
+
+	private volatile TaxCodeIndex index;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param delegate
+	 *        the DAO to load tax codes from
+	 * @throws IllegalArgumentException
+	 *         if {@code delegate} is {@literal null}
+	 */
+	public CachingTaxCodeDao(TaxCodeDao delegate) {
+		super();
+		if ( delegate == null ) {
+			throw new IllegalArgumentException("The delegate argument must be provided.");
+		}
+		this.delegate = delegate;
+	}
+
+	/**
+	 * An immutable index of tax codes.
+	 */
+	private static final class TaxCodeIndex {
+
+		private final long loaded;
+		private final Map<Long, TaxCode> byId;
+
+		// zone -> item key -> codes ordered by validFrom
+		private final Map<String, Map<String, TaxCode[]>> byZone;
+
+		private TaxCodeIndex(long loaded, Iterable<TaxCode> codes) {
+			super();
+			this.loaded = loaded;
+			Map<Long, TaxCode> ids = new HashMap<>(64);
+			Map<String, Map<String, List<TaxCode>>> zones = new HashMap<>(16);
+			for ( TaxCode code : codes ) {
+				if ( code.getId() != null ) {
+					ids.put(code.getId(), code);
+				}
+				zones.computeIfAbsent(code.getZone(), k -> new HashMap<>(8))
+						.computeIfAbsent(code.getItemKey(), k -> new ArrayList<>(2)).add(code);
+			}
+			Map<String, Map<String, TaxCode[]>> idx = new HashMap<>(zones.size());
+			for ( Map.Entry<String, Map<String, List<TaxCode>>> z : zones.entrySet() ) {
+				Map<String, TaxCode[]> items = new HashMap<>(z.getValue().size());
+				for ( Map.Entry<String, List<TaxCode>> i : z.getValue().entrySet() ) {
+					TaxCode[] a = i.getValue().toArray(new TaxCode[i.getValue().size()]);
+					Arrays.sort(a, VALID_FROM_ORDER);
+					items.put(i.getKey(), a);
+				}
+				idx.put(z.getKey(), unmodifiableMap(items));
+			}
+			this.byId = unmodifiableMap(ids);
+			this.byZone = unmodifiableMap(idx);
+		}
+
+		private List<TaxCode> find(TaxCodeFilter filter) {
+			final String[] zones = filter.getZones();
+			final String itemKey = filter.getItemKey();
+			final String code = filter.getCode();
+			final Instant date = filter.getDate();
+			List<TaxCode> result = new ArrayList<>(8);
+			if ( zones != null && zones.length > 0 ) {
+				for ( String zone : zones ) {
+					Map<String, TaxCode[]> items = byZone.get(zone);
+					if ( items != null ) {
+						find(items, itemKey, code, date, result);
+					}
+				}
+			} else {
+				for ( Map<String, TaxCode[]> items : byZone.values() ) {
+					find(items, itemKey, code, date, result);
+				}
+			}
+			result.sort(CODE_ORDER);
+			return result;
+		}
+
+		private static void find(Map<String, TaxCode[]> items, String itemKey, String code,
+				Instant date, List<TaxCode> result) {
+			if ( itemKey != null ) {
+				TaxCode[] codes = items.get(itemKey);
+				if ( codes != null ) {
+					find(codes, code, date, result);
+				}
+			} else {
+				for ( TaxCode[] codes : items.values() ) {
+					find(codes, code, date, result);
+				}
+			}
+		}
+
+		private static void find(TaxCode[] codes, String code, Instant date, List<TaxCode> result) {
+			// only codes valid from on or before the date can match
+			final int end = (date != null ? validFromEnd(codes, date) : codes.length);
+			for ( int i = 0; i < end; i++ ) {
+				TaxCode tax = codes[i];
+				if ( code != null && !code.equals(tax.getCode()) ) {
+					continue;
+				}
+				if ( date != null && (tax.getValidFrom() == null
+						|| (tax.getValidTo() != null && !tax.getValidTo().isAfter(date))) ) {
+					continue;
+				}
+				result.add(tax);
+			}
+		}
+
+		/**
+		 * Get the index of the first code with a {@code validFrom} after a date.
+		 */
+		private static int validFromEnd(TaxCode[] codes, Instant date) {
+			int lo = 0;
+			int hi = codes.length;
+			while ( lo < hi ) {
+				int mid = (lo + hi) >>> 1;
+				Instant from = codes[mid].getValidFrom();
+				if ( from == null || !from.isAfter(date) ) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+	}
+
+	/**
+	 * Reload all tax codes from the delegate DAO.
+	 * 
+	 * <p>
+	 * The new index replaces the current index once it has been fully loaded,
+	 * so queries made while reloading use the previous index.
+	 * </p>
+	 * 
+	 * @return the number of tax codes loaded
+	 */
+	public int reload() {
+		FilterResults<TaxCode, Long> results = delegate.findFiltered(new TaxCodeFilter(),
+				SORT_BY_ITEM_KEY, null, null);
+		Iterable<TaxCode> codes = (results != null ? results : emptyList());
+		TaxCodeIndex idx = new TaxCodeIndex(System.currentTimeMillis(), codes);
+		this.index = idx;
+		log.info("Loaded {} tax codes", idx.byId.size());
+		return idx.byId.size();
+	}
+
+	private TaxCodeIndex index() {
+		TaxCodeIndex idx = this.index;
+		if ( idx == null ) {
+			synchronized ( this ) {
+				idx = this.index;
+				if ( idx == null ) {
+					reload();
+					idx = this.index;
+				}
+			}
+		} else if ( reloadSeconds > 0
+				&& idx.loaded + (reloadSeconds * 1000L) < System.currentTimeMillis()
+				&& reloading.compareAndSet(false, true) ) {
+			// only one thread reloads an expired index; others continue to use the current one
+			try {
+				reload();
+				idx = this.index;
+			} catch ( RuntimeException e ) {
+				log.warn("Error reloading tax codes, will continue using existing codes: {}",
+						e.toString());
+			} finally {
+				reloading.set(false);
+			}
+		}
+		return idx;
+	}
+
+	private static boolean isDefaultSort(List<SortDescriptor> sorts) {
+		return (sorts == null || sorts.isEmpty() || SORT_BY_ITEM_KEY.equals(sorts));
+	}
+
+	@Override
+	public FilterResults<TaxCode, Long> findFiltered(TaxCodeFilter filter, List<SortDescriptor> sorts,
+			Integer offset, Integer max) {
+		if ( !isDefaultSort(sorts) ) {
+			return delegate.findFiltered(filter, sorts, offset, max);
+		}
+		List<TaxCode> results = index().find(filter != null ? filter : new TaxCodeFilter());
+		final int total = results.size();
+		final int start = (offset != null ? Math.min(Math.max(offset.intValue(), 0), total) : 0);
+		final int end = (max != null ? Math.min(start + Math.max(max.intValue(), 0), total) : total);
+		if ( start > 0 || end < total ) {
+			results = results.subList(start, end);
+		}
+		return new BasicFilterResults<>(unmodifiableList(results), (long) total, start,
+				results.size());
+	}
+
+	@Override
+	public Class<? extends TaxCode> getObjectType() {
+		return delegate.getObjectType();
+	}
+
+	@Override
+	public Long save(TaxCode entity) {
+		Long id = delegate.save(entity);
+		reload();
+		return id;
+	}
+
+	@Override
+	public TaxCode get(Long id) {
+		return index().byId.get(id);
+	}
+
+	@Override
+	public Collection<TaxCode> getAll(List<SortDescriptor> sorts) {
+		if ( !isDefaultSort(sorts) ) {
+			return delegate.getAll(sorts);
+		}
+		List<TaxCode> all = new ArrayList<>(index().byId.values());
+		all.sort(CODE_ORDER);
+		return unmodifiableList(all);
+	}
+
+	@Override
+	public void delete(TaxCode entity) {
+		delegate.delete(entity);
+		reload();
+	}
+
+	/**
+	 * Get the maximum number of seconds to use loaded tax codes for before
+	 * reloading them.
+	 * 
+	 * @return the seconds; defaults to {@link #DEFAULT_RELOAD_SECONDS}
+	 */
+	public int getReloadSeconds() {
+		return reloadSeconds;
+	}
+
+	/**
+	 * Set the maximum number of seconds to use loaded tax codes for before
+	 * reloading them.
+	 * 
+	 * @param reloadSeconds
+	 *        the seconds to set, or {@literal 0} to only reload on demand via
+	 *        {@link #reload()}
+	 */
+	public void setReloadSeconds(int reloadSeconds) {
+		this.reloadSeconds = reloadSeconds;
+	}
+
+}
@@ -0,0 +1,207 @@
+/* ==================================================================
+ * SpillingOutputStream.java - 18/10/2026 6:04:37 PM
+ * 
+ * Copyright 2026 SolarNetwork.net Dev Team
+ * 
+ * This program is free software; you can redistribute it and/or 
+ * modify it under the terms of the GNU General Public License as 
+ * published by the Free Software Foundation; either version 2 of 
+ * the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, 
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU 
+ * General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License 
+ * along with this program; if not, write to the Free Software 
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 
+ * 02111-1307 USA
+ * ==================================================================
+ */
+
+package net.solarnetwork.central.user.billing.snf.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An {@link OutputStream} that buffers in memory up to a threshold, and then
+ * spills to a temporary file.
+ * 
+ * <p>
+ * Once the stream is closed, the written data can be read back via
+ * {@link #getInputStream()}, any number of times. The stream owns any
+ * temporary file it spills to: callers must call {@link #discard()} when they
+ * no longer need the data, typically in a {@code finally} block, which deletes
+ * the file.
+ * </p>
+ * 
+ * @author matt
+ * @version 1.1
+ * @since 1.2
+ */
+public class SpillingOutputStream extends OutputStream {
+
+	private final int threshold;
+	private final String tempFilePrefix;
+	private Buffer buffer;
+	private Path file;
+	private OutputStream fileOut;
+	private long size;
+	private boolean closed;
+
+	/**
+	 * Expose the internal buffer of a {@link ByteArrayOutputStream}, to avoid
+	 * copying it.
+	 */
+	private static final class Buffer extends ByteArrayOutputStream {
+
+		private Buffer(int size) {
+			super(size);
+		}
+
+		private InputStream inputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param threshold
+	 *        the maximum number of bytes to buffer in memory before spilling to
+	 *        a temporary file
+	 * @param tempFilePrefix
+	 *        the prefix to use for the temporary file name
+	 * @throws IllegalArgumentException
+	 *         if {@code threshold} is less than {@literal 0}
+	 */
+	public SpillingOutputStream(int threshold, String tempFilePrefix) {
+		super();
+		if ( threshold < 0 ) {
+			throw new IllegalArgumentException("The threshold argument must not be negative.");
+		}
+		this.threshold = threshold;
+		this.tempFilePrefix = (tempFilePrefix != null ? tempFilePrefix : "spill-");
+		this.buffer = new Buffer(Math.min(threshold, 8192));
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureCapacity(1).write(b);
+		size++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureCapacity(len).write(b, off, len);
+		size += len;
+	}
+
+	private OutputStream ensureCapacity(int len) throws IOException {
+		if ( closed ) {
+			throw new IOException("Stream closed.");
+		}
+		if ( fileOut != null ) {
+			return fileOut;
+		}
+		if ( size + len <= threshold ) {
+			return buffer;
+		}
+		file = Files.createTempFile(tempFilePrefix, ".tmp");
+		fileOut = Files.newOutputStream(file);
+		buffer.writeTo(fileOut);
+		buffer = null;
+		return fileOut;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if ( fileOut != null ) {
+			fileOut.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if ( closed ) {
+			return;
+		}
+		closed = true;
+		if ( fileOut != null ) {
+			fileOut.close();
+		}
+	}
+
+	/**
+	 * Release the written data, deleting the temporary file if the data was
+	 * spilled to one.
+	 * 
+	 * <p>
+	 * This must be called once the data is no longer needed. The data cannot
+	 * be read via {@link #getInputStream()} afterwards.
+	 * </p>
+	 * 
+	 * @throws IOException
+	 *         if any IO error occurs
+	 */
+	public void discard() throws IOException {
+		close();
+		buffer = null;
+		if ( file != null ) {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Test if the written data has been spilled to a temporary file.
+	 * 
+	 * @return {@literal true} if the data is in a temporary file
+	 */
+	public boolean isSpilled() {
+		return (file != null);
+	}
+
+	/**
+	 * Get the number of bytes written.
+	 * 
+	 * @return the number of bytes
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Get an input stream for the written data.
+	 * 
+	 * <p>
+	 * This can be called any number of times, until {@link #discard()} is
+	 * called.
+	 * </p>
+	 * 
+	 * @return the input stream
+	 * @throws IllegalStateException
+	 *         if the stream has not been closed
+	 * @throws IOException
+	 *         if the data has been discarded, or any other IO error occurs
+	 */
+	public InputStream getInputStream() throws IOException {
+		if ( !closed ) {
+			throw new IllegalStateException("The stream must be closed first.");
+		}
+		if ( file != null ) {
+			return Files.newInputStream(file);
+		}
+		if ( buffer == null ) {
+			throw new IOException("The data has been discarded.");
+		}
+		return buffer.inputStream();
+	}
+
+}